@@ -0,0 +1,60 @@
+package monitor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameDecodeBenchmark {
+
+    private byte[][] frames;
+    private String[] lines;
+    private int next;
+
+    private final LogFrameDecoder decoder = new LogFrameDecoder();
+    private final LogFrame frame = new LogFrame();
+
+    @Setup
+    public void setUp() {
+        frames = SyntheticFrames.frames(1024, 42);
+        lines = new String[frames.length];
+        for (int i = 0; i < frames.length; i++)
+            lines[i] = new String(frames[i], StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    public LogFrame decode() throws FrameFormatException {
+        byte[] bytes = frames[next++ & 1023];
+        return decoder.decode(bytes, 0, bytes.length, frame);
+    }
+
+    // The split-based decoding MonitorView.handleIncomingLine used before LogFrameDecoder, kept as a baseline
+    @Benchmark
+    public double splitBaseline() {
+        String content = lines[next++ & 1023];
+        String[] parameters = content.split("]:")[1].split(";");
+        String[] meterValues = parameters[6].split(",");
+        String[] suffixParts = parameters[9].split("\\|");
+        return Double.parseDouble(meterValues[26])
+                + Integer.parseInt(suffixParts[2])
+                + Integer.parseInt(parameters[1])
+                + Double.parseDouble(parameters[2])
+                + Double.parseDouble(parameters[3])
+                + Double.parseDouble(meterValues[1]);
+    }
+}
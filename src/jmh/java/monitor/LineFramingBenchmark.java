@@ -0,0 +1,54 @@
+package monitor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineFramingBenchmark {
+
+    // Bytes handed over per RXCHAR event
+    @Param({"1", "64", "4096"})
+    int readSize;
+
+    // Binary framings carry the frames as packets between text lines
+    @Param({"lines", "slip", "cobs", "length"})
+    String framing;
+
+    private byte[] stream;
+    private ReceiveBuffer receiveBuffer;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        Framing framing = Framing.parse(this.framing, true, Framing.DEFAULT_SYNC);
+        this.stream = SyntheticFrames.stream(1000, 42, framing);
+        this.blackhole = blackhole;
+        this.receiveBuffer = new ReceiveBuffer(64 * 1024, framing,
+                (buffer, offset, length) -> this.blackhole.consume(length),
+                (payload, payloadLength, raw, rawLength) -> this.blackhole.consume(payloadLength));
+    }
+
+    // One operation frames the whole 1000-line stream
+    @Benchmark
+    public void frameStream() {
+        for (int offset = 0; offset < stream.length; offset += readSize)
+            receiveBuffer.receive(stream, offset, Math.min(readSize, stream.length - offset));
+    }
+}
@@ -0,0 +1,63 @@
+package monitor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+// Measures the sendData path against an embedded H2 database standing in for Postgres.
+// The writer blocks when its queue is full, so the score is the sustained rate the database side can absorb.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:persistence;DB_CLOSE_DELAY=-1";
+
+    private TelemetryWriter writer;
+    private LogFrame frame;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, FrameFormatException {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            for (TelemetryField field : TelemetryField.rawFields())
+                statement.execute("CREATE TABLE IF NOT EXISTS " + field.getTable() + "(time BIGINT, value DOUBLE PRECISION)");
+        }
+
+        writer = new TelemetryWriter(new ConnectionPool(URL, "sa", "", 2), 2,
+                65536, 1000, 250, TelemetryWriter.Backpressure.BLOCK).start();
+
+        byte[] bytes = SyntheticFrames.frames(1, 42)[0];
+        frame = new LogFrameDecoder().decode(bytes, 0, bytes.length, new LogFrame());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        writer.close();
+    }
+
+    // One operation is one decoded frame, i.e. one row per persisted table
+    @Benchmark
+    public void sendData() {
+        for (TelemetryField field : TelemetryField.rawFields())
+            writer.submit(new Sample(field.getTable(), frame.getTime(), field.toValue(field.extract(frame))));
+    }
+}
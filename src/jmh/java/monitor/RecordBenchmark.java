@@ -0,0 +1,80 @@
+package monitor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Run with -prof gc to see allocation per operation next to the timings
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordBenchmark {
+
+    private static final int BATCH = 1000;
+
+    private byte[] line;
+    private byte[] arena = new byte[64 * 1024];
+    private int arenaPosition;
+
+    private RecordStore store;
+    private final List<Record> batch = new ArrayList<>(BATCH);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        line = SyntheticFrames.frames(1, 42)[0];
+        store = new RecordStore(100000, 32 * 1024 * 1024, new File(System.getProperty("java.io.tmpdir")));
+        for (int i = 0; i < BATCH; i++)
+            batch.add(new Record("COM1", i, line, 0, line.length));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.close();
+    }
+
+    // How Monitor built records before they became byte slices
+    @Benchmark
+    public Record stringRecord() {
+        return new Record("COM1", System.currentTimeMillis(), new String(Arrays.copyOfRange(line, 0, line.length)));
+    }
+
+    @Benchmark
+    public Record arenaSliceRecord() {
+        if (line.length > arena.length - arenaPosition) {
+            arena = new byte[64 * 1024];
+            arenaPosition = 0;
+        }
+        System.arraycopy(line, 0, arena, arenaPosition, line.length);
+        Record record = new Record("COM1", System.currentTimeMillis(), arena, arenaPosition, line.length);
+        arenaPosition += line.length;
+        return record;
+    }
+
+    // Retention in the columnar window, including spilling once the window is full
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int retain() {
+        store.appendAll(batch);
+        return store.size();
+    }
+}
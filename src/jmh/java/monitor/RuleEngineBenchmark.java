@@ -0,0 +1,75 @@
+package monitor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuleEngineBenchmark {
+
+    // Half contains, a quarter regex with a required literal, a quarter field thresholds; none of them fire
+    @Param({"10", "100", "500"})
+    public int rules;
+
+    private byte[][] frames;
+    private LogFrame[] decoded;
+    private int next;
+    private long time;
+
+    private RuleEngine engine;
+    private final List<String> scanned = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws FrameFormatException {
+        frames = SyntheticFrames.frames(1024, 42);
+        decoded = new LogFrame[frames.length];
+        LogFrameDecoder decoder = new LogFrameDecoder();
+        for (int i = 0; i < frames.length; i++)
+            decoded[i] = decoder.decode(frames[i], 0, frames[i].length, new LogFrame());
+
+        List<AlertRule> alertRules = new ArrayList<>();
+        for (int i = 0; i < rules; i++) {
+            switch (i % 4) {
+                case 0:
+                case 1:
+                    alertRules.add(AlertRule.contains("contains " + i, "fault code " + i, i % 2 == 0, 0));
+                    break;
+                case 2:
+                    alertRules.add(AlertRule.regex("regex " + i, "sensor " + i + " timeout after \\d+ ms", false, 0));
+                    break;
+                default:
+                    alertRules.add(AlertRule.field("field " + i, TelemetryField.values()[i % TelemetryField.values().length],
+                            1e9, -1e9, Double.NaN, 0, 0));
+                    break;
+            }
+        }
+        engine = new RuleEngine("bench", alertRules, alert -> scanned.add(alert.getMessage()));
+    }
+
+    @Benchmark
+    public int evaluate() {
+        int index = next++ & 1023;
+        byte[] bytes = frames[index];
+        engine.evaluateLine(time, bytes, 0, bytes.length);
+        decoded[index].setTime(time += 100);
+        engine.evaluateFrame(decoded[index]);
+        return scanned.size();
+    }
+}
@@ -0,0 +1,61 @@
+package monitor;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public final class SyntheticFrames {
+
+    private SyntheticFrames() {
+    }
+
+    public static String frame(Random random) {
+        StringBuilder builder = new StringBuilder(256);
+        builder.append("log[SN").append(1000 + random.nextInt(12)).append("]:A;")
+                .append(random.nextInt(2)).append(';')
+                .append(random.nextInt(1200) / 100.0).append(';')
+                .append(random.nextInt(1200) / 100.0 - 12).append(';')
+                .append(-12).append(";0;");
+        for (int i = 0; i < LogFrame.METER_VALUE_COUNT; i++) {
+            if (i > 0)
+                builder.append(',');
+            builder.append(random.nextInt(100000) / 10.0);
+        }
+        builder.append(";0;0;0.5|").append(random.nextInt(4)).append('|').append(random.nextInt(8))
+                .append('|').append(random.nextInt(100000) / 10.0).append('|')
+                .append(random.nextInt(100)).append(',').append(random.nextInt(100)).append(',').append(random.nextInt(1000))
+                .append("\r\n");
+        return builder.toString();
+    }
+
+    public static byte[][] frames(int count, long seed) {
+        Random random = new Random(seed);
+        byte[][] frames = new byte[count][];
+        for (int i = 0; i < count; i++)
+            frames[i] = frame(random).getBytes(StandardCharsets.US_ASCII);
+        return frames;
+    }
+
+    // A stream where one line in four is free-form console output rather than a log[ frame
+    public static byte[] stream(int lines, long seed) {
+        return stream(lines, seed, Framing.lines());
+    }
+
+    // The same mix with every frame sent as a packet, the console lines staying text
+    public static byte[] stream(int lines, long seed, Framing framing) {
+        Random random = new Random(seed);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream(lines * 200);
+        for (int i = 0; i < lines; i++) {
+            byte[] bytes;
+            if (i % 4 == 3) {
+                bytes = ("state machine tick " + i + "\r\n").getBytes(StandardCharsets.US_ASCII);
+            } else if (framing.getMode() == Framing.Mode.LINES) {
+                bytes = frame(random).getBytes(StandardCharsets.US_ASCII);
+            } else {
+                bytes = framing.encode(frame(random).trim().getBytes(StandardCharsets.US_ASCII));
+            }
+            stream.write(bytes, 0, bytes.length);
+        }
+        return stream.toByteArray();
+    }
+}
@@ -0,0 +1,102 @@
+package monitor;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class AggregateRow implements Row {
+
+    private static final Map<String, String> INSERT_SQL = new ConcurrentHashMap<>();
+    private static final Map<String, String> CREATE_SQL = new ConcurrentHashMap<>();
+
+    private final String table;
+    private final long time;
+    private final String device;
+    private final String field;
+    private final int count;
+    private final double min;
+    private final double max;
+    private final double avg;
+    private final double last;
+
+    public AggregateRow(String table, long time, String device, String field,
+                        int count, double min, double max, double avg, double last) {
+        this.table = table;
+        this.time = time;
+        this.device = device;
+        this.field = field;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.avg = avg;
+        this.last = last;
+    }
+
+    @Override
+    public String getTable() {
+        return table;
+    }
+
+    @Override
+    public String getInsertSql() {
+        return insertSql(table);
+    }
+
+    public static String insertSql(String table) {
+        return INSERT_SQL.computeIfAbsent(table, t -> String.format(
+                "INSERT INTO %s(time, device, field, count, min, max, avg, last) VALUES(?, ?, ?, ?, ?, ?, ?, ?)", t));
+    }
+
+    // One table per window, named from aggregate.table_prefix and the window length, so none is in a shipped schema
+    @Override
+    public String getCreateSql() {
+        return CREATE_SQL.computeIfAbsent(table, t -> String.format(
+                "CREATE TABLE IF NOT EXISTS %s(time BIGINT, device VARCHAR(64), field VARCHAR(64), count INTEGER, " +
+                        "min DOUBLE PRECISION, max DOUBLE PRECISION, avg DOUBLE PRECISION, last DOUBLE PRECISION)", t));
+    }
+
+    @Override
+    public void bind(PreparedStatement statement) throws SQLException {
+        statement.setLong(1, time);
+        statement.setString(2, device);
+        statement.setString(3, field);
+        statement.setInt(4, count);
+        statement.setDouble(5, min);
+        statement.setDouble(6, max);
+        statement.setDouble(7, avg);
+        statement.setDouble(8, last);
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public String getDevice() {
+        return device;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getAvg() {
+        return avg;
+    }
+
+    public double getLast() {
+        return last;
+    }
+}
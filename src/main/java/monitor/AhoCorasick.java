@@ -0,0 +1,138 @@
+package monitor;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class AhoCorasick {
+
+    public interface MatchHandler {
+        void onMatch(int pattern, int end);
+    }
+
+    private static final int[] NO_OUTPUTS = new int[0];
+
+    // Bytes that occur in no pattern share class 0, so a row of the transition table is only as wide as the patterns' alphabet
+    private final byte[] byteClasses = new byte[256];
+    private final int classCount;
+    private final int[] transitions;
+    private final int[][] outputs;
+    private final int stateCount;
+
+    // Patterns are matched case-insensitively and must already be folded with Record.foldCase
+    public AhoCorasick(List<byte[]> patterns) {
+        int classes = 1;
+        for (byte[] pattern : patterns) {
+            for (byte b : pattern) {
+                if (byteClasses[b & 0xFF] == 0) {
+                    int byteClass = classes++;
+                    byteClasses[b & 0xFF] = (byte) byteClass;
+                    if (b >= 'a' && b <= 'z')
+                        byteClasses[b - ('a' - 'A')] = (byte) byteClass;
+                }
+            }
+        }
+        if (classes > 256)
+            throw new IllegalArgumentException("Patterns use more than 255 distinct bytes");
+        this.classCount = classes;
+
+        int maxStates = 1;
+        for (byte[] pattern : patterns)
+            maxStates += pattern.length;
+
+        // Trie first, with -1 for missing edges
+        int[] trie = new int[maxStates * classCount];
+        Arrays.fill(trie, -1);
+        int[][] stateOutputs = new int[maxStates][];
+        int states = 1;
+        for (int p = 0; p < patterns.size(); p++) {
+            int state = 0;
+            for (byte b : patterns.get(p)) {
+                int edge = state * classCount + (byteClasses[b & 0xFF] & 0xFF);
+                if (trie[edge] < 0)
+                    trie[edge] = states++;
+                state = trie[edge];
+            }
+            stateOutputs[state] = append(stateOutputs[state], p);
+        }
+
+        // Breadth-first, every missing edge is resolved through the failure link, which turns the trie into a DFA:
+        // searching then costs one table lookup per byte however many patterns there are
+        int[] failure = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int c = 0; c < classCount; c++) {
+            int next = trie[c];
+            if (next < 0) {
+                trie[c] = 0;
+            } else {
+                failure[next] = 0;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            if (stateOutputs[failure[state]] != null)
+                stateOutputs[state] = concat(stateOutputs[state], stateOutputs[failure[state]]);
+
+            for (int c = 0; c < classCount; c++) {
+                int edge = state * classCount + c;
+                int next = trie[edge];
+                if (next < 0) {
+                    trie[edge] = trie[failure[state] * classCount + c];
+                } else {
+                    failure[next] = trie[failure[state] * classCount + c];
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        // Transitions hold the target row's offset rather than its state number, negated and minus one when the target
+        // reports matches, so the search loop does one load and one sign test per byte
+        this.stateCount = states;
+        this.transitions = new int[states * classCount];
+        this.outputs = new int[states][];
+        for (int edge = 0; edge < transitions.length; edge++) {
+            int target = trie[edge];
+            transitions[edge] = stateOutputs[target] == null ? target * classCount : -(target * classCount) - 1;
+        }
+        for (int state = 0; state < states; state++)
+            outputs[state] = stateOutputs[state] == null ? NO_OUTPUTS : stateOutputs[state];
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    // Reports every occurrence, overlapping ones included, with end as the exclusive end offset in bytes
+    public void search(byte[] bytes, int offset, int length, MatchHandler handler) {
+        int row = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int next = transitions[row + (byteClasses[bytes[i] & 0xFF] & 0xFF)];
+            if (next >= 0) {
+                row = next;
+                continue;
+            }
+            row = -next - 1;
+            for (int pattern : outputs[row / classCount])
+                handler.onMatch(pattern, i + 1);
+        }
+    }
+
+    private static int[] append(int[] values, int value) {
+        if (values == null)
+            return new int[]{value};
+        int[] appended = Arrays.copyOf(values, values.length + 1);
+        appended[values.length] = value;
+        return appended;
+    }
+
+    private static int[] concat(int[] first, int[] second) {
+        if (first == null)
+            return second;
+        int[] concatenated = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, concatenated, first.length, second.length);
+        return concatenated;
+    }
+}
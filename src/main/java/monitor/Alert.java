@@ -0,0 +1,32 @@
+package monitor;
+
+public class Alert {
+
+    private final long time;
+    private final String port;
+    private final String rule;
+    private final String message;
+
+    public Alert(long time, String port, String rule, String message) {
+        this.time = time;
+        this.port = port;
+        this.rule = rule;
+        this.message = message;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public String getPort() {
+        return port;
+    }
+
+    public String getRule() {
+        return rule;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,79 @@
+package monitor;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Appends alerts to a local text file from its own thread, so a burst of alerts never stalls a port's drain
+public class AlertLog implements AutoCloseable {
+
+    private final File file;
+    private final BlockingQueue<Alert> queue;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private final Counter alertsDropped = Metrics.counter("alerts.dropped");
+
+    public AlertLog(File file, int queueCapacity) {
+        this.file = file;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writer = new Thread(this::writeLoop, "alert-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public static AlertLog fromConfig() {
+        return new AlertLog(
+                new File(Config.get().getString("alerts.log_file", "alerts.log")),
+                Config.get().getLong("alerts.queue_capacity", 1024L).intValue());
+    }
+
+    public void offer(Alert alert) {
+        if (closed || !queue.offer(alert))
+            alertsDropped.increment();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            List<Alert> batch = new ArrayList<>();
+            while (!closed || !queue.isEmpty()) {
+                Alert first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+                batch.add(first);
+                queue.drainTo(batch);
+
+                for (Alert alert : batch) {
+                    out.write(Instant.ofEpochMilli(alert.getTime()) + "\t" + alert.getPort() + "\t" + alert.getRule() + "\t" + alert.getMessage());
+                    out.newLine();
+                }
+                out.flush();
+                batch.clear();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
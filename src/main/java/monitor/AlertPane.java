@@ -0,0 +1,28 @@
+package monitor;
+
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+public class AlertPane extends ListView<String> {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private final int maxAlerts;
+
+    public AlertPane(int maxAlerts) {
+        this.maxAlerts = maxAlerts;
+        setPlaceholder(new Label("No alerts"));
+    }
+
+    // Newest first; the oldest alerts fall off the bottom, the alert log keeps them all
+    public void add(Alert alert) {
+        getItems().add(0, FORMATTER.format(Instant.ofEpochMilli(alert.getTime())) + "  " + alert.getPort() + "  "
+                + alert.getRule() + ": " + alert.getMessage());
+        if (getItems().size() > maxAlerts)
+            getItems().remove(maxAlerts, getItems().size());
+    }
+}
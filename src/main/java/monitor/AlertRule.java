@@ -0,0 +1,150 @@
+package monitor;
+
+import com.moandjiezana.toml.Toml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public final class AlertRule {
+
+    public enum Kind {
+        CONTAINS,
+        REGEX,
+        FIELD
+    }
+
+    private final String name;
+    private final Kind kind;
+    private final String text;
+    private final boolean ignoreCase;
+    private final TelemetryField field;
+    private final double above;
+    private final double below;
+    private final double ratePerSecond;
+    private final long forMillis;
+    private final long cooldownMillis;
+
+    private AlertRule(String name, Kind kind, String text, boolean ignoreCase, TelemetryField field,
+                      double above, double below, double ratePerSecond, long forMillis, long cooldownMillis) {
+        this.name = name;
+        this.kind = kind;
+        this.text = text;
+        this.ignoreCase = ignoreCase;
+        this.field = field;
+        this.above = above;
+        this.below = below;
+        this.ratePerSecond = ratePerSecond;
+        this.forMillis = forMillis;
+        this.cooldownMillis = cooldownMillis;
+    }
+
+    public static AlertRule contains(String name, String text, boolean ignoreCase, long cooldownMillis) {
+        if (text.isEmpty())
+            throw new IllegalArgumentException("Rule " + name + " has an empty contains");
+        return new AlertRule(name, Kind.CONTAINS, text, ignoreCase, null, Double.NaN, Double.NaN, Double.NaN, 0, cooldownMillis);
+    }
+
+    public static AlertRule regex(String name, String regex, boolean ignoreCase, long cooldownMillis) {
+        Pattern.compile(regex);
+        return new AlertRule(name, Kind.REGEX, regex, ignoreCase, null, Double.NaN, Double.NaN, Double.NaN, 0, cooldownMillis);
+    }
+
+    // Fires when the value goes above or below the thresholds, or changes faster than ratePerSecond in either direction;
+    // NaN leaves a condition out. The condition has to hold for forMillis, and the rule re-arms once it clears.
+    public static AlertRule field(String name, TelemetryField field, double above, double below, double ratePerSecond,
+                                  long forMillis, long cooldownMillis) {
+        if (Double.isNaN(above) && Double.isNaN(below) && Double.isNaN(ratePerSecond))
+            throw new IllegalArgumentException("Rule " + name + " needs above, below or rate_per_s");
+        return new AlertRule(name, Kind.FIELD, null, false, field, above, below, ratePerSecond, forMillis, cooldownMillis);
+    }
+
+    public static List<AlertRule> fromConfig() {
+        List<AlertRule> rules = new ArrayList<>();
+        List<Toml> tables = Config.get().getTables("rules");
+        if (tables != null) {
+            for (Toml rule : tables)
+                rules.add(fromToml(rule));
+        }
+        return rules;
+    }
+
+    //   [[rules]]
+    //       name = "overheating"
+    //       field = "temperature"       any TelemetryField table name
+    //       above = 70                  and/or below, rate_per_s
+    //       for_ms = 5000
+    // or contains = "WDT reset" / regex = "error \\d+", with ignore_case = true; cooldown_ms applies to all kinds
+    static AlertRule fromToml(Toml toml) {
+        String name = toml.getString("name");
+        if (name == null)
+            throw new IllegalArgumentException("Every [[rules]] entry needs a name");
+        boolean ignoreCase = toml.getBoolean("ignore_case", false);
+        long cooldownMillis = toml.getLong("cooldown_ms", 0L);
+
+        if (toml.contains("contains"))
+            return contains(name, toml.getString("contains"), ignoreCase, cooldownMillis);
+        if (toml.contains("regex"))
+            return regex(name, toml.getString("regex"), ignoreCase, cooldownMillis);
+        if (!toml.contains("field"))
+            throw new IllegalArgumentException("Rule " + name + " needs contains, regex or field");
+
+        String table = toml.getString("field");
+        TelemetryField field = null;
+        for (TelemetryField candidate : TelemetryField.values()) {
+            if (candidate.getTable().equals(table))
+                field = candidate;
+        }
+        if (field == null)
+            throw new IllegalArgumentException("Rule " + name + " has unknown field " + table);
+
+        return field(name, field, number(toml, "above"), number(toml, "below"), number(toml, "rate_per_s"),
+                toml.getLong("for_ms", 0L), cooldownMillis);
+    }
+
+    // TOML keeps 70 and 70.0 apart, and a threshold may be written either way
+    private static double number(Toml toml, String key) {
+        Object value = toml.toMap().get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    public TelemetryField getField() {
+        return field;
+    }
+
+    public double getAbove() {
+        return above;
+    }
+
+    public double getBelow() {
+        return below;
+    }
+
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    public long getForMillis() {
+        return forMillis;
+    }
+
+    public long getCooldownMillis() {
+        return cooldownMillis;
+    }
+}
@@ -3,22 +3,32 @@ package monitor;
 import javafx.application.Application;
 import javafx.stage.Stage;
 
+import java.util.List;
+
 public class App extends Application {
 
+    private final PortWatcher portWatcher = PortWatcher.fromConfig();
+
     public static void main(String[] args) {
         launch(args);
     }
 
     @Override
     public void start(Stage ignored) {
-        new SettingsView()
+        portWatcher.start();
+        new SettingsView(portWatcher)
                 .onContinue(this::openMonitorView)
                 .initUI()
                 .show();
     }
 
-    private void openMonitorView(Settings settings) {
-        new MonitorView(settings)
+    private void openMonitorView(List<Settings> settings) {
+        new MonitorView(settings, portWatcher)
                 .showAndWait();
     }
+
+    @Override
+    public void stop() {
+        portWatcher.close();
+    }
 }
@@ -0,0 +1,243 @@
+package monitor;
+
+// Gorilla-style column encodings for archive blocks (Pelkonen et al., "Gorilla: A Fast, Scalable, In-Memory Time Series
+// Database", VLDB 2015), with bit packing for integer columns
+public final class ArchiveCodec {
+
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000};
+    private static final double MAX_EXACT = 1L << 53;
+
+    private ArchiveCodec() {
+    }
+
+    // The first timestamp in full, then delta-of-delta in variable-width buckets. Frames arrive at a steady rate, so most
+    // timestamps cost a single 0 bit and jitter of a few milliseconds nine bits.
+    public static void encodeTimes(long[] times, int count, BitWriter out) {
+        if (count == 0)
+            return;
+        out.write(times[0], 64);
+
+        long previousDelta = 0;
+        for (int i = 1; i < count; i++) {
+            long delta = times[i] - times[i - 1];
+            long deltaOfDelta = delta - previousDelta;
+            previousDelta = delta;
+
+            if (deltaOfDelta == 0) {
+                out.writeBit(false);
+            } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+                out.write(0b10, 2);
+                out.write(deltaOfDelta + 63, 7);
+            } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+                out.write(0b110, 3);
+                out.write(deltaOfDelta + 255, 9);
+            } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+                out.write(0b1110, 4);
+                out.write(deltaOfDelta + 2047, 12);
+            } else {
+                out.write(0b1111, 4);
+                out.write(deltaOfDelta, 64);
+            }
+        }
+    }
+
+    public static void decodeTimes(BitReader in, int count, long[] times) {
+        if (count == 0)
+            return;
+        times[0] = in.read(64);
+
+        long delta = 0;
+        for (int i = 1; i < count; i++) {
+            long deltaOfDelta;
+            if (!in.readBit()) {
+                deltaOfDelta = 0;
+            } else if (!in.readBit()) {
+                deltaOfDelta = in.read(7) - 63;
+            } else if (!in.readBit()) {
+                deltaOfDelta = in.read(9) - 255;
+            } else if (!in.readBit()) {
+                deltaOfDelta = in.read(12) - 2047;
+            } else {
+                deltaOfDelta = in.read(64);
+            }
+            delta += deltaOfDelta;
+            times[i] = times[i - 1] + delta;
+        }
+    }
+
+    // Double columns start with a mode bit. Frame values are parsed from text with two or three decimals, and XOR leaves
+    // most of the mantissa of a noisy decimal value in place, so when every value in the block is exactly a decimal with
+    // at most four digits after the point, the scaled integers' deltas are bit-packed instead if that is smaller.
+    public static void encodeDoubles(long[] bits, int count, BitWriter out, long[] scratch) {
+        int decimals = count == 0 ? -1 : decimals(bits, count, scratch);
+        if (decimals >= 0) {
+            for (int i = count - 1; i > 0; i--)
+                scratch[i] -= scratch[i - 1];
+            if (packedBits(scratch, 1, count) + 3 + 64 < encodeXor(bits, count, null)) {
+                out.writeBit(true);
+                out.write(decimals, 3);
+                out.write(scratch[0], 64);
+                encodePacked(scratch, 1, count, out);
+                return;
+            }
+        }
+        out.writeBit(false);
+        encodeXor(bits, count, out);
+    }
+
+    public static void decodeDoubles(BitReader in, int count, long[] bits) {
+        if (!in.readBit()) {
+            decodeXor(in, count, bits);
+            return;
+        }
+        long scale = POWERS_OF_TEN[(int) in.read(3)];
+        long scaled = in.read(64);
+        bits[0] = Double.doubleToRawLongBits((double) scaled / scale);
+        decodePacked(in, count - 1, bits, 1);
+        for (int i = 1; i < count; i++) {
+            scaled += bits[i];
+            bits[i] = Double.doubleToRawLongBits((double) scaled / scale);
+        }
+    }
+
+    // The fewest decimals that reproduce every value bit for bit, with the scaled values left in scaled; -1 if none do
+    private static int decimals(long[] bits, int count, long[] scaled) {
+        for (int decimals = 0; decimals < POWERS_OF_TEN.length; decimals++) {
+            long scale = POWERS_OF_TEN[decimals];
+            boolean exact = true;
+            for (int i = 0; i < count && exact; i++) {
+                double value = Double.longBitsToDouble(bits[i]);
+                double scaledValue = value * scale;
+                if (!(Math.abs(scaledValue) < MAX_EXACT))
+                    return -1;
+                scaled[i] = Math.round(scaledValue);
+                exact = Double.doubleToRawLongBits((double) scaled[i] / scale) == bits[i];
+            }
+            if (exact)
+                return decimals;
+        }
+        return -1;
+    }
+
+    // Each value is XORed with the previous one. An unchanged value costs one bit; otherwise the meaningful bits are
+    // written inside the previous leading/trailing zero window when they fit, or with a new window. Returns the bits
+    // written, and only counts them when out is null.
+    public static long encodeXor(long[] values, int count, BitWriter out) {
+        if (count == 0)
+            return 0;
+        long size = 64;
+        if (out != null)
+            out.write(values[0], 64);
+
+        int previousLeading = -1;
+        int previousTrailing = 0;
+        for (int i = 1; i < count; i++) {
+            long xor = values[i] ^ values[i - 1];
+            if (xor == 0) {
+                size++;
+                if (out != null)
+                    out.writeBit(false);
+                continue;
+            }
+
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                int meaningful = 64 - previousLeading - previousTrailing;
+                size += 2 + meaningful;
+                if (out != null) {
+                    out.write(0b10, 2);
+                    out.write(xor >>> previousTrailing, meaningful);
+                }
+            } else {
+                int meaningful = 64 - leading - trailing;
+                size += 2 + 5 + 6 + meaningful;
+                if (out != null) {
+                    out.write(0b11, 2);
+                    out.write(leading, 5);
+                    out.write(meaningful - 1, 6);
+                    out.write(xor >>> trailing, meaningful);
+                }
+                previousLeading = leading;
+                previousTrailing = trailing;
+            }
+        }
+        return size;
+    }
+
+    public static void decodeXor(BitReader in, int count, long[] values) {
+        if (count == 0)
+            return;
+        values[0] = in.read(64);
+
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 1; i < count; i++) {
+            if (!in.readBit()) {
+                values[i] = values[i - 1];
+                continue;
+            }
+            if (in.readBit()) {
+                leading = (int) in.read(5);
+                int meaningful = (int) in.read(6) + 1;
+                trailing = 64 - leading - meaningful;
+            }
+            values[i] = values[i - 1] ^ (in.read(64 - leading - trailing) << trailing);
+        }
+    }
+
+    // Frame of reference: the minimum, the bit width of the largest offset from it, then every offset at that width.
+    // A 0/1 flag takes one bit per frame, a constant status none at all.
+    public static void encodePacked(long[] values, int count, BitWriter out) {
+        encodePacked(values, 0, count, out);
+    }
+
+    public static void decodePacked(BitReader in, int count, long[] values) {
+        decodePacked(in, count, values, 0);
+    }
+
+    private static void encodePacked(long[] values, int from, int to, BitWriter out) {
+        if (from >= to)
+            return;
+        long min = min(values, from, to);
+        int width = width(values, from, to, min);
+
+        out.write(min, 64);
+        out.write(width, 7);
+        for (int i = from; i < to; i++)
+            out.write(values[i] - min, width);
+    }
+
+    private static void decodePacked(BitReader in, int count, long[] values, int offset) {
+        if (count <= 0)
+            return;
+        long min = in.read(64);
+        int width = (int) in.read(7);
+        for (int i = offset; i < offset + count; i++)
+            values[i] = min + in.read(width);
+    }
+
+    private static long packedBits(long[] values, int from, int to) {
+        if (from >= to)
+            return 0;
+        return 64 + 7 + (long) (to - from) * width(values, from, to, min(values, from, to));
+    }
+
+    private static long min(long[] values, int from, int to) {
+        long min = values[from];
+        for (int i = from + 1; i < to; i++)
+            min = Math.min(min, values[i]);
+        return min;
+    }
+
+    // Offsets are compared unsigned so a range wider than Long.MAX_VALUE still gets all 64 bits
+    private static int width(long[] values, int from, int to, long min) {
+        long widest = 0;
+        for (int i = from; i < to; i++) {
+            long offset = values[i] - min;
+            if (Long.compareUnsigned(offset, widest) > 0)
+                widest = offset;
+        }
+        return 64 - Long.numberOfLeadingZeros(widest);
+    }
+}
@@ -0,0 +1,146 @@
+package monitor;
+
+// Every value a log frame carries, in the order columns are stored in an archive block
+public enum ArchiveColumn {
+
+    ENERGY_WH(LogFrame.ENERGY_WH),
+    CURRENT_L1(LogFrame.CURRENT_L1),
+    CURRENT_L2(LogFrame.CURRENT_L2),
+    CURRENT_L3(LogFrame.CURRENT_L3),
+    POWER_L1(LogFrame.POWER_L1),
+    POWER_L2(LogFrame.POWER_L2),
+    POWER_L3(LogFrame.POWER_L3),
+    VOLTAGE_L1(LogFrame.VOLTAGE_L1),
+    VOLTAGE_L2(LogFrame.VOLTAGE_L2),
+    VOLTAGE_L3(LogFrame.VOLTAGE_L3),
+    FREQUENCY(LogFrame.FREQUENCY),
+    POWER_FACTOR(LogFrame.POWER_FACTOR),
+    ACTIVE_POWER(LogFrame.ACTIVE_POWER),
+    REACTIVE_POWER(LogFrame.REACTIVE_POWER),
+    POSITIVE_ACTIVE_ENERGY_L1(LogFrame.POSITIVE_ACTIVE_ENERGY_L1),
+    NEGATIVE_ACTIVE_ENERGY_L1(LogFrame.NEGATIVE_ACTIVE_ENERGY_L1),
+    POSITIVE_REACTIVE_ENERGY_L1(LogFrame.POSITIVE_REACTIVE_ENERGY_L1),
+    NEGATIVE_REACTIVE_ENERGY_L1(LogFrame.NEGATIVE_REACTIVE_ENERGY_L1),
+    POSITIVE_ACTIVE_ENERGY_L2(LogFrame.POSITIVE_ACTIVE_ENERGY_L2),
+    NEGATIVE_ACTIVE_ENERGY_L2(LogFrame.NEGATIVE_ACTIVE_ENERGY_L2),
+    POSITIVE_REACTIVE_ENERGY_L2(LogFrame.POSITIVE_REACTIVE_ENERGY_L2),
+    NEGATIVE_REACTIVE_ENERGY_L2(LogFrame.NEGATIVE_REACTIVE_ENERGY_L2),
+    POSITIVE_ACTIVE_ENERGY_L3(LogFrame.POSITIVE_ACTIVE_ENERGY_L3),
+    NEGATIVE_ACTIVE_ENERGY_L3(LogFrame.NEGATIVE_ACTIVE_ENERGY_L3),
+    POSITIVE_REACTIVE_ENERGY_L3(LogFrame.POSITIVE_REACTIVE_ENERGY_L3),
+    NEGATIVE_REACTIVE_ENERGY_L3(LogFrame.NEGATIVE_REACTIVE_ENERGY_L3),
+    TEMPERATURE(LogFrame.TEMPERATURE),
+    PP(Encoding.XOR) {
+        @Override
+        public double extract(LogFrame frame) {
+            return frame.getPp();
+        }
+    },
+    CP(Encoding.XOR) {
+        @Override
+        public double extract(LogFrame frame) {
+            return frame.getCp();
+        }
+    },
+    CPN(Encoding.XOR) {
+        @Override
+        public double extract(LogFrame frame) {
+            return frame.getCpn();
+        }
+    },
+    D_FIX_VALUE(Encoding.XOR) {
+        @Override
+        public double extract(LogFrame frame) {
+            return frame.getDFixValue();
+        }
+    },
+    METER_KWH(Encoding.XOR) {
+        @Override
+        public double extract(LogFrame frame) {
+            return frame.getMeterKwh();
+        }
+    },
+    CP100(Encoding.XOR) {
+        @Override
+        public double extract(LogFrame frame) {
+            return frame.getCp100();
+        }
+    },
+    CPN100(Encoding.XOR) {
+        @Override
+        public double extract(LogFrame frame) {
+            return frame.getCpn100();
+        }
+    },
+    LOCKED(Encoding.PACKED) {
+        @Override
+        public long extractLong(LogFrame frame) {
+            return frame.getLocked();
+        }
+    },
+    LED(Encoding.PACKED) {
+        @Override
+        public long extractLong(LogFrame frame) {
+            return frame.getLedStatus();
+        }
+    },
+    DO_STATUS(Encoding.PACKED) {
+        @Override
+        public long extractLong(LogFrame frame) {
+            return frame.getDoStatus();
+        }
+    },
+    LAST_ITERATIONS(Encoding.PACKED) {
+        @Override
+        public long extractLong(LogFrame frame) {
+            return frame.getLastIterations();
+        }
+    };
+
+    // XOR (or scaled decimal deltas, see ArchiveCodec.encodeDoubles) for floating point values, bit packing against the
+    // block minimum for integer status fields and counters
+    public enum Encoding {
+        XOR,
+        PACKED
+    }
+
+    private final Encoding encoding;
+    private final int meterIndex;
+
+    ArchiveColumn(int meterIndex) {
+        this.encoding = Encoding.XOR;
+        this.meterIndex = meterIndex;
+    }
+
+    ArchiveColumn(Encoding encoding) {
+        this.encoding = encoding;
+        this.meterIndex = -1;
+    }
+
+    // Telemetry fields share their constant names with the columns that hold them
+    public static ArchiveColumn forField(TelemetryField field) {
+        return valueOf(field.name());
+    }
+
+    public static ArchiveColumn forName(String name) {
+        return valueOf(name.toUpperCase());
+    }
+
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    // Meter values are read directly, status fields through extractLong; every other constant overrides one of the two
+    public double extract(LogFrame frame) {
+        return meterIndex >= 0 ? frame.getMeterValue(meterIndex) : toValue(extractLong(frame));
+    }
+
+    // The value as stored: raw IEEE 754 bits for XOR columns, the integer itself for packed ones
+    public long extractLong(LogFrame frame) {
+        return Double.doubleToRawLongBits(extract(frame));
+    }
+
+    public double toValue(long stored) {
+        return encoding == Encoding.XOR ? Double.longBitsToDouble(stored) : stored;
+    }
+}
@@ -0,0 +1,175 @@
+package monitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ArchiveReader {
+
+    public interface ValueHandler {
+        void onValue(long time, double value);
+    }
+
+    private static final int FIXED_HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+
+    private final File directory;
+
+    private final ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_SIZE + 4 * 256);
+    private byte[] timeBytes = new byte[0];
+    private byte[] columnBytes = new byte[0];
+    private long[] times = new long[0];
+    private long[] values = new long[0];
+
+    public ArchiveReader(File directory) {
+        this.directory = directory;
+    }
+
+    public static ArchiveReader fromConfig() {
+        return new ArchiveReader(new File(Config.get().getString("archive.directory", "archive")));
+    }
+
+    // Usage: ArchiveReader <device> <column> [<from> [<to>]]
+    // Prints time,value for one column of one device; times are ISO-8601 instants, columns ArchiveColumn names
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: ArchiveReader <device> <column> [<from> [<to>]]");
+            System.exit(1);
+        }
+        long from = args.length > 2 ? Instant.parse(args[2]).toEpochMilli() : Long.MIN_VALUE;
+        long to = args.length > 3 ? Instant.parse(args[3]).toEpochMilli() : Long.MAX_VALUE;
+
+        StringBuilder line = new StringBuilder();
+        long count = fromConfig().scan(args[0], ArchiveColumn.forName(args[1]), from, to, (time, value) -> {
+            line.setLength(0);
+            line.append(Instant.ofEpochMilli(time)).append(',').append(value);
+            System.out.println(line);
+        });
+        System.err.println(count + " values");
+    }
+
+    public List<String> getDevices() {
+        List<String> devices = new ArrayList<>();
+        File[] deviceDirectories = directory.listFiles(File::isDirectory);
+        if (deviceDirectories != null) {
+            for (File deviceDirectory : deviceDirectories)
+                devices.add(deviceDirectory.getName());
+        }
+        devices.sort(null);
+        return devices;
+    }
+
+    // Reads only the block headers, the time column and the one requested column of blocks overlapping [fromTime, toTime];
+    // returns the number of values passed to the handler
+    public long scan(String device, ArchiveColumn column, long fromTime, long toTime, ValueHandler handler) throws IOException {
+        File[] chunks = ArchiveWriter.deviceDirectory(directory, device).listFiles((dir, name) -> name.startsWith("chunk-") && name.endsWith(".tsa"));
+        if (chunks == null)
+            return 0;
+        Arrays.sort(chunks);
+
+        long scanned = 0;
+        for (File chunk : chunks) {
+            long partitionStart = Long.parseLong(chunk.getName().substring(6, chunk.getName().length() - 4));
+            if (partitionStart > toTime)
+                break;
+            scanned += scanChunk(chunk, 1 + column.ordinal(), column, fromTime, toTime, handler);
+        }
+        return scanned;
+    }
+
+    private long scanChunk(File chunk, int columnIndex, ArchiveColumn column, long fromTime, long toTime, ValueHandler handler) throws IOException {
+        long scanned = 0;
+        try (FileChannel channel = FileChannel.open(chunk.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position + FIXED_HEADER_SIZE <= size) {
+                header.clear().limit(FIXED_HEADER_SIZE);
+                readFully(channel, header, position);
+                if (header.getInt(0) != ArchiveWriter.MAGIC) {
+                    System.err.println(chunk + ": no block at " + position + ", skipping the rest");
+                    break;
+                }
+                int count = header.getInt(4);
+                long minTime = header.getLong(8);
+                long maxTime = header.getLong(16);
+                int columnCount = header.getInt(24);
+                if (columnCount <= 0 || columnCount > 256) {
+                    System.err.println(chunk + ": corrupt block header at " + position + ", skipping the rest");
+                    break;
+                }
+
+                int headerSize = FIXED_HEADER_SIZE + 4 * columnCount;
+                if (position + headerSize > size)
+                    break;
+                header.clear().limit(4 * columnCount);
+                readFully(channel, header, position + FIXED_HEADER_SIZE);
+
+                long columnOffset = position + headerSize;
+                long timeOffset = columnOffset;
+                long targetOffset = -1;
+                int timeLength = header.getInt(0);
+                int targetLength = 0;
+                for (int c = 0; c < columnCount; c++) {
+                    int length = header.getInt(4 * c);
+                    if (c == columnIndex) {
+                        targetOffset = columnOffset;
+                        targetLength = length;
+                    }
+                    columnOffset += length;
+                }
+                // A block cut short by a crash is the last one in the file
+                if (columnOffset > size)
+                    break;
+
+                if (targetOffset >= 0 && maxTime >= fromTime && minTime <= toTime)
+                    scanned += scanBlock(channel, count, timeOffset, timeLength, targetOffset, targetLength, column, fromTime, toTime, handler);
+                position = columnOffset;
+            }
+        }
+        return scanned;
+    }
+
+    private long scanBlock(FileChannel channel, int count, long timeOffset, int timeLength, long targetOffset, int targetLength,
+                           ArchiveColumn column, long fromTime, long toTime, ValueHandler handler) throws IOException {
+        if (timeBytes.length < timeLength)
+            timeBytes = new byte[timeLength];
+        if (columnBytes.length < targetLength)
+            columnBytes = new byte[targetLength];
+        if (times.length < count) {
+            times = new long[count];
+            values = new long[count];
+        }
+
+        readFully(channel, ByteBuffer.wrap(timeBytes, 0, timeLength), timeOffset);
+        readFully(channel, ByteBuffer.wrap(columnBytes, 0, targetLength), targetOffset);
+        ArchiveCodec.decodeTimes(new BitReader(timeBytes, 0, timeLength), count, times);
+        if (column.getEncoding() == ArchiveColumn.Encoding.XOR) {
+            ArchiveCodec.decodeDoubles(new BitReader(columnBytes, 0, targetLength), count, values);
+        } else {
+            ArchiveCodec.decodePacked(new BitReader(columnBytes, 0, targetLength), count, values);
+        }
+
+        long scanned = 0;
+        for (int i = 0; i < count; i++) {
+            if (times[i] >= fromTime && times[i] <= toTime) {
+                handler.onValue(times[i], column.toValue(values[i]));
+                scanned++;
+            }
+        }
+        return scanned;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Unexpected end of archive chunk");
+            position += read;
+        }
+    }
+}
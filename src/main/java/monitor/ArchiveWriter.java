@@ -0,0 +1,217 @@
+package monitor;
+
+import com.moandjiezana.toml.Toml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Keeps every decoded frame in a local columnar archive: one directory per device and one chunk file per time
+// partition, each a sequence of self-describing blocks. A block is written once it holds blockFrames frames, when a frame
+// falls into the next partition, or once its first frame is maxBlockAge old, so a crash loses at most that much. The age
+// is checked as frames arrive and, after start(), by a background thread, so a device that goes quiet is written too.
+//
+// Block layout: int magic, int frame count, long min time, long max time, int column count, one int byte length per
+// column, then the columns: times first, followed by ArchiveColumn.values() in order.
+public class ArchiveWriter implements AutoCloseable {
+
+    static final int MAGIC = 0x54534131;
+    static final int COLUMN_COUNT = 1 + ArchiveColumn.values().length;
+    static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 * COLUMN_COUNT;
+
+    private static final ArchiveColumn[] COLUMNS = ArchiveColumn.values();
+
+    private final File directory;
+    private final int blockFrames;
+    private final long partitionMillis;
+    private final long maxBlockAgeMillis;
+    private final Thread flusher;
+
+    private final List<Block> blocks = new ArrayList<>();
+    private final BitWriter[] columnWriters = new BitWriter[COLUMN_COUNT];
+    private final long[] scratch;
+
+    private final Counter framesArchived = Metrics.counter("archive.frames");
+    private final Counter bytesArchived = Metrics.counter("archive.bytes");
+    private final LatencyHistogram blockLatency = Metrics.histogram("archive.block");
+
+    public ArchiveWriter(File directory, int blockFrames, long partitionMillis, long maxBlockAgeMillis) {
+        this.directory = directory;
+        this.blockFrames = blockFrames;
+        this.partitionMillis = partitionMillis;
+        this.maxBlockAgeMillis = maxBlockAgeMillis;
+        this.scratch = new long[blockFrames];
+        for (int i = 0; i < COLUMN_COUNT; i++)
+            columnWriters[i] = new BitWriter(blockFrames * 2);
+
+        this.flusher = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(Math.max(10, Math.min(1000, maxBlockAgeMillis / 10)));
+                    flushAged(System.nanoTime());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "archive-flush");
+        flusher.setDaemon(true);
+    }
+
+    public static ArchiveWriter fromConfig() {
+        Toml toml = Config.get();
+        return new ArchiveWriter(
+                new File(toml.getString("archive.directory", "archive")),
+                toml.getLong("archive.block_frames", 1024L).intValue(),
+                TimeUnit.HOURS.toMillis(toml.getLong("archive.partition_hours", 24L)),
+                TimeUnit.SECONDS.toMillis(toml.getLong("archive.max_block_age_s", 60L)));
+    }
+
+    public ArchiveWriter start() {
+        flusher.start();
+        return this;
+    }
+
+    public static File deviceDirectory(File directory, String device) {
+        return new File(directory, device.replaceAll("[^A-Za-z0-9._-]", "_"));
+    }
+
+    public static String partitionFileName(long partitionStart) {
+        return String.format("chunk-%013d.tsa", partitionStart);
+    }
+
+    // Frames from every port come through here; a block is encoded on the caller's thread once per blockFrames frames
+    public synchronized void accept(LogFrame frame) {
+        Block block = block(frame);
+        long time = frame.getTime();
+        long partition = Math.floorDiv(time, partitionMillis) * partitionMillis;
+
+        if (block.count > 0 && (partition != block.partition || time - block.times[0] >= maxBlockAgeMillis))
+            flush(block);
+        if (block.count == 0) {
+            block.partition = partition;
+            block.openedNanos = System.nanoTime();
+        }
+
+        int index = block.count++;
+        block.times[index] = time;
+        for (int c = 0; c < COLUMNS.length; c++)
+            block.values[c][index] = COLUMNS[c].extractLong(frame);
+        framesArchived.increment();
+
+        if (block.count == blockFrames)
+            flush(block);
+    }
+
+    // Writes every block whose first frame arrived at least maxBlockAge before now, a System.nanoTime() value
+    synchronized void flushAged(long now) {
+        for (Block block : blocks) {
+            if (block.count > 0 && now - block.openedNanos >= TimeUnit.MILLISECONDS.toNanos(maxBlockAgeMillis))
+                flush(block);
+        }
+    }
+
+    @Override
+    public void close() {
+        flusher.interrupt();
+        flushAll();
+    }
+
+    private synchronized void flushAll() {
+        for (Block block : blocks) {
+            if (block.count > 0)
+                flush(block);
+        }
+    }
+
+    private void flush(Block block) {
+        long flushStart = System.nanoTime();
+        int count = block.count;
+        block.count = 0;
+
+        for (BitWriter writer : columnWriters)
+            writer.reset();
+        ArchiveCodec.encodeTimes(block.times, count, columnWriters[0]);
+        for (int c = 0; c < COLUMNS.length; c++) {
+            if (COLUMNS[c].getEncoding() == ArchiveColumn.Encoding.XOR) {
+                ArchiveCodec.encodeDoubles(block.values[c], count, columnWriters[c + 1], scratch);
+            } else {
+                ArchiveCodec.encodePacked(block.values[c], count, columnWriters[c + 1]);
+            }
+        }
+
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            minTime = Math.min(minTime, block.times[i]);
+            maxTime = Math.max(maxTime, block.times[i]);
+        }
+
+        int length = HEADER_SIZE;
+        for (BitWriter writer : columnWriters)
+            length += writer.byteLength();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(length);
+
+        // One write per block, so a crash leaves at most a truncated last block that readers skip
+        File file = new File(block.directory, partitionFileName(block.partition));
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            DataOutputStream blockOut = new DataOutputStream(buffer);
+            blockOut.writeInt(MAGIC);
+            blockOut.writeInt(count);
+            blockOut.writeLong(minTime);
+            blockOut.writeLong(maxTime);
+            blockOut.writeInt(COLUMN_COUNT);
+            for (BitWriter writer : columnWriters)
+                blockOut.writeInt(writer.byteLength());
+            for (BitWriter writer : columnWriters)
+                blockOut.write(writer.array(), 0, writer.byteLength());
+
+            buffer.writeTo(out);
+            bytesArchived.add(length);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        blockLatency.recordSince(flushStart);
+    }
+
+    // Few devices share an archive, so a linear scan over the serial numbers beats hashing a decoded String per frame
+    private Block block(LogFrame frame) {
+        for (Block block : blocks) {
+            if (frame.serialNumberEquals(block.key, 0, block.key.length))
+                return block;
+        }
+
+        File deviceDirectory = deviceDirectory(directory, frame.getSerialNumber());
+        try {
+            Files.createDirectories(deviceDirectory.toPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Block block = new Block(frame.copySerialNumber(), deviceDirectory, blockFrames);
+        blocks.add(block);
+        return block;
+    }
+
+    private static class Block {
+        final byte[] key;
+        final File directory;
+        final long[] times;
+        final long[][] values;
+        long partition;
+        long openedNanos;
+        int count;
+
+        Block(byte[] key, File directory, int capacity) {
+            this.key = key;
+            this.directory = directory;
+            this.times = new long[capacity];
+            this.values = new long[COLUMNS.length][capacity];
+        }
+    }
+}
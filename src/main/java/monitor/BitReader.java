@@ -0,0 +1,41 @@
+package monitor;
+
+public class BitReader {
+
+    private final byte[] bytes;
+    private final int offset;
+    private final long bitLimit;
+    private long bitPosition;
+
+    public BitReader(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.bitLimit = (long) length << 3;
+    }
+
+    public long read(int count) {
+        if (bitPosition + count > bitLimit)
+            throw new IllegalStateException("Read past the end of the column");
+
+        long value = 0;
+        int remaining = count;
+        while (remaining > 0) {
+            int current = bytes[offset + (int) (bitPosition >>> 3)] & 0xFF;
+            int available = 8 - (int) (bitPosition & 7);
+            int taken = Math.min(available, remaining);
+            int chunk = (current >>> (available - taken)) & ((1 << taken) - 1);
+            value = (value << taken) | chunk;
+            remaining -= taken;
+            bitPosition += taken;
+        }
+        return value;
+    }
+
+    public boolean readBit() {
+        if (bitPosition >= bitLimit)
+            throw new IllegalStateException("Read past the end of the column");
+        boolean bit = (bytes[offset + (int) (bitPosition >>> 3)] & (0x80 >>> (int) (bitPosition & 7))) != 0;
+        bitPosition++;
+        return bit;
+    }
+}
@@ -0,0 +1,57 @@
+package monitor;
+
+import java.util.Arrays;
+
+public class BitWriter {
+
+    private byte[] bytes;
+    private long bitLength;
+
+    public BitWriter(int initialCapacity) {
+        this.bytes = new byte[Math.max(initialCapacity, 8)];
+    }
+
+    public void reset() {
+        Arrays.fill(bytes, 0, byteLength(), (byte) 0);
+        bitLength = 0;
+    }
+
+    // Writes the low count bits of value, most significant first
+    public void write(long value, int count) {
+        if (count == 0)
+            return;
+        ensureCapacity(bitLength + count);
+
+        int remaining = count;
+        while (remaining > 0) {
+            int index = (int) (bitLength >>> 3);
+            int free = 8 - (int) (bitLength & 7);
+            int taken = Math.min(free, remaining);
+            int chunk = (int) (value >>> (remaining - taken)) & ((1 << taken) - 1);
+            bytes[index] |= chunk << (free - taken);
+            remaining -= taken;
+            bitLength += taken;
+        }
+    }
+
+    public void writeBit(boolean bit) {
+        ensureCapacity(bitLength + 1);
+        if (bit)
+            bytes[(int) (bitLength >>> 3)] |= 0x80 >>> (int) (bitLength & 7);
+        bitLength++;
+    }
+
+    public int byteLength() {
+        return (int) ((bitLength + 7) >>> 3);
+    }
+
+    public byte[] array() {
+        return bytes;
+    }
+
+    private void ensureCapacity(long bits) {
+        int needed = (int) ((bits + 7) >>> 3);
+        if (needed > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(needed, bytes.length * 2));
+    }
+}
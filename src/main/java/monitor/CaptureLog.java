@@ -0,0 +1,364 @@
+package monitor;
+
+import com.moandjiezana.toml.Toml;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CaptureLog implements AutoCloseable {
+
+    public interface EntryHandler {
+        boolean onEntry(long time, ByteBuffer content);
+    }
+
+    private static final int ENTRY_HEADER_SIZE = Integer.BYTES + Long.BYTES;
+    private static final int INDEX_ENTRY_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int INDEX_INTERVAL_BYTES = 64 * 1024;
+
+    private final File directory;
+    private final int segmentSize;
+    private final long maxBytes;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment activeSegment;
+    private DataOutputStream activeIndex;
+    private int lastIndexedOffset = -INDEX_INTERVAL_BYTES;
+    private long lastTime = Long.MIN_VALUE;
+
+    private long[] indexTimes = new long[1024];
+    private long[] indexPositions = new long[1024];
+    private int indexSize;
+
+    private volatile boolean closed;
+
+    private final Counter segmentsDropped = Metrics.counter("capture.segments.dropped");
+
+    public CaptureLog(File directory, int segmentSize) throws IOException {
+        this(directory, segmentSize, Long.MAX_VALUE);
+    }
+
+    // Past maxBytes of segments the oldest ones are deleted
+    public CaptureLog(File directory, int segmentSize, long maxBytes) throws IOException {
+        this(directory, segmentSize, maxBytes, true);
+    }
+
+    private CaptureLog(File directory, int segmentSize, long maxBytes, boolean writable) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxBytes = maxBytes;
+
+        Files.createDirectories(directory.toPath());
+        File[] segmentFiles = directory.listFiles((dir, name) -> name.startsWith("segment-") && name.endsWith(".log"));
+        if (segmentFiles != null) {
+            Arrays.sort(segmentFiles);
+            for (File segmentFile : segmentFiles)
+                openExistingSegment(segmentFile);
+        }
+        if (writable) {
+            if (resumeLastSegment()) {
+                dropOldSegments();
+            } else {
+                rollSegment();
+            }
+        } else {
+            closed = true;
+        }
+    }
+
+    // Maps the existing segments without starting a new one, for reading a capture another process may still append to
+    public static CaptureLog openForReading(File directory) throws IOException {
+        if (!directory.isDirectory())
+            throw new IOException("No capture log in " + directory);
+        return new CaptureLog(directory, 0, Long.MAX_VALUE, false);
+    }
+
+    public static CaptureLog fromConfig(String portName) {
+        Toml toml = Config.get();
+        File directory = new File(toml.getString("capture.directory", "captures"), portName.replaceAll("[^A-Za-z0-9._-]", "_"));
+        int segmentSize = toml.getLong("capture.segment_size_mb", 64L).intValue() * 1024 * 1024;
+        long maxBytes = toml.getLong("capture.max_size_mb", 4096L) * 1024 * 1024;
+
+        try {
+            return new CaptureLog(directory, segmentSize, maxBytes > 0 ? maxBytes : Long.MAX_VALUE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void append(long time, byte[] bytes, int offset, int length) {
+        if (closed)
+            return;
+
+        // Reads and the index rely on entries being in time order, so a wall clock stepping back is held at the last time
+        if (time < lastTime) {
+            time = lastTime;
+        } else {
+            lastTime = time;
+        }
+
+        try {
+            MappedByteBuffer buffer = activeSegment.buffer;
+            if (buffer.remaining() < ENTRY_HEADER_SIZE + length + Integer.BYTES) {
+                rollSegment();
+                buffer = activeSegment.buffer;
+            }
+
+            int entryOffset = buffer.position();
+            if (entryOffset - lastIndexedOffset >= INDEX_INTERVAL_BYTES) {
+                addIndexEntry(time, activeSegment.number, entryOffset);
+                activeIndex.writeLong(time);
+                activeIndex.writeInt(entryOffset);
+                activeIndex.flush();
+                lastIndexedOffset = entryOffset;
+            }
+
+            buffer.putInt(length);
+            buffer.putLong(time);
+            buffer.put(bytes, offset, length);
+            // A resumed segment may hold the remains of an entry a crashed run was writing, so the end is always marked
+            buffer.putInt(buffer.position(), 0);
+            activeSegment.end = buffer.position();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void read(long fromTime, long toTime, EntryHandler handler) {
+        long start = seek(fromTime);
+        if (start < 0)
+            return;
+
+        List<Segment> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(segments);
+        }
+
+        int segmentNumber = (int) (start >>> 32);
+        int segmentIndex = 0;
+        while (segmentIndex < snapshot.size() && snapshot.get(segmentIndex).number != segmentNumber)
+            segmentIndex++;
+        int offset = (int) start;
+        if (segmentIndex == snapshot.size()) {
+            // Dropped since the seek; everything left is newer
+            segmentIndex = 0;
+            offset = 0;
+        }
+
+        for (; segmentIndex < snapshot.size(); segmentIndex++, offset = 0) {
+            Segment segment = snapshot.get(segmentIndex);
+            ByteBuffer view = segment.buffer.duplicate();
+            int end = segment.end;
+
+            while (offset + ENTRY_HEADER_SIZE <= end) {
+                int length = view.getInt(offset);
+                if (length <= 0)
+                    break;
+                long time = view.getLong(offset + Integer.BYTES);
+                if (time > toTime)
+                    return;
+
+                int contentOffset = offset + ENTRY_HEADER_SIZE;
+                if (time >= fromTime) {
+                    view.limit(contentOffset + length).position(contentOffset);
+                    if (!handler.onEntry(time, view.slice()))
+                        return;
+                    view.clear();
+                }
+                offset = contentOffset + length;
+            }
+        }
+    }
+
+    // Time of the oldest entry, or Long.MAX_VALUE while the log is empty
+    public synchronized long getFirstTime() {
+        return indexSize == 0 ? Long.MAX_VALUE : indexTimes[0];
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (activeSegment == null)
+            return;
+        try {
+            activeSegment.buffer.force();
+            activeSegment.channel.close();
+            activeIndex.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized long seek(long time) {
+        if (indexSize == 0)
+            return -1;
+
+        int low = 0;
+        int high = indexSize - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (indexTimes[mid] < time) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return indexPositions[low];
+    }
+
+    private synchronized void addIndexEntry(long time, int segmentNumber, int offset) {
+        if (indexSize == indexTimes.length) {
+            indexTimes = Arrays.copyOf(indexTimes, indexSize * 2);
+            indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+        }
+        indexTimes[indexSize] = time;
+        indexPositions[indexSize] = ((long) segmentNumber << 32) | (offset & 0xFFFFFFFFL);
+        indexSize++;
+    }
+
+    private void openExistingSegment(File segmentFile) throws IOException {
+        int number = Integer.parseInt(segmentFile.getName().substring(8, segmentFile.getName().length() - 4));
+
+        try (FileChannel channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.READ)) {
+            Segment segment = new Segment(number, channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            int end = 0;
+            while (end + ENTRY_HEADER_SIZE <= segment.buffer.limit()) {
+                int length = segment.buffer.getInt(end);
+                if (length <= 0 || end + ENTRY_HEADER_SIZE + length > segment.buffer.limit())
+                    break;
+                lastTime = Math.max(lastTime, segment.buffer.getLong(end + Integer.BYTES));
+                end += ENTRY_HEADER_SIZE + length;
+            }
+            segment.end = end;
+            synchronized (this) {
+                segments.add(segment);
+            }
+        }
+
+        File indexFile = indexFile(number);
+        if (!indexFile.exists())
+            return;
+        try (DataInputStream index = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            while (true)
+                addIndexEntry(index.readLong(), number, index.readInt());
+        } catch (EOFException ignored) {
+        }
+    }
+
+    // Appends where the previous run stopped, so restarting does not leave a mostly empty segment behind every time
+    private boolean resumeLastSegment() throws IOException {
+        if (segments.isEmpty())
+            return false;
+        Segment last = segments.get(segments.size() - 1);
+        FileChannel channel = FileChannel.open(segmentFile(last.number).toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long capacity = channel.size();
+        if (capacity > Integer.MAX_VALUE || last.end + ENTRY_HEADER_SIZE + Integer.BYTES >= capacity) {
+            channel.close();
+            return false;
+        }
+
+        Segment segment = new Segment(last.number, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+        segment.buffer.position(last.end);
+        segment.end = last.end;
+
+        // Drops half an entry a crashed run may have left, so appended entries stay aligned
+        File indexFile = indexFile(last.number);
+        try (FileChannel index = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            index.truncate(index.size() - index.size() % INDEX_ENTRY_SIZE);
+        }
+        activeIndex = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+        activeSegment = segment;
+
+        synchronized (this) {
+            segments.set(segments.size() - 1, segment);
+            if (indexSize > 0 && (int) (indexPositions[indexSize - 1] >>> 32) == last.number)
+                lastIndexedOffset = (int) indexPositions[indexSize - 1];
+        }
+        return true;
+    }
+
+    // Deletes the oldest segments while the log is over maxBytes, never the one being appended to
+    private void dropOldSegments() {
+        long total = 0;
+        for (Segment segment : segments)
+            total += segment.buffer.capacity();
+
+        while (total > maxBytes && segments.size() > 1) {
+            Segment oldest;
+            synchronized (this) {
+                oldest = segments.remove(0);
+                int dropped = 0;
+                while (dropped < indexSize && (int) (indexPositions[dropped] >>> 32) == oldest.number)
+                    dropped++;
+                System.arraycopy(indexTimes, dropped, indexTimes, 0, indexSize - dropped);
+                System.arraycopy(indexPositions, dropped, indexPositions, 0, indexSize - dropped);
+                indexSize -= dropped;
+            }
+            total -= oldest.buffer.capacity();
+            segmentsDropped.increment();
+
+            // A reader still mapping it keeps its data; where the system refuses to delete a mapped file, it goes at exit
+            for (File file : new File[]{segmentFile(oldest.number), indexFile(oldest.number)}) {
+                if (!file.delete() && file.exists())
+                    file.deleteOnExit();
+            }
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        int number = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).number + 1;
+
+        if (activeSegment != null) {
+            activeSegment.buffer.force();
+            activeSegment.channel.close();
+            activeIndex.close();
+        }
+
+        FileChannel channel = FileChannel.open(segmentFile(number).toPath(),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        activeSegment = new Segment(number, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        activeIndex = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile(number))));
+        lastIndexedOffset = -INDEX_INTERVAL_BYTES;
+
+        synchronized (this) {
+            segments.add(activeSegment);
+        }
+        dropOldSegments();
+    }
+
+    private File segmentFile(int number) {
+        return new File(directory, String.format("segment-%010d.log", number));
+    }
+
+    private File indexFile(int number) {
+        return new File(directory, String.format("segment-%010d.idx", number));
+    }
+
+    private static class Segment {
+        final int number;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        volatile int end;
+
+        Segment(int number, FileChannel channel, MappedByteBuffer buffer) {
+            this.number = number;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
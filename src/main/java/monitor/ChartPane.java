@@ -0,0 +1,185 @@
+package monitor;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.collections.FXCollections;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ComboBox;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+import javafx.util.Duration;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ChartPane extends BorderPane {
+
+    private static final Color[] COLORS = {
+            Color.web("#1f77b4"), Color.web("#ff7f0e"), Color.web("#2ca02c"), Color.web("#d62728"),
+            Color.web("#9467bd"), Color.web("#8c564b"), Color.web("#e377c2"), Color.web("#17becf")
+    };
+    private static final double MARGIN = 40;
+    private static final DateTimeFormatter AXIS_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final TelemetrySeries series;
+    private final ComboBox<TelemetryField> field = new ComboBox<>(FXCollections.observableArrayList(TelemetryField.values()));
+    private final ComboBox<String> span = new ComboBox<>();
+    private final Map<String, Long> spans = new LinkedHashMap<>();
+    private final Canvas canvas = new Canvas();
+    private final Timeline refresh;
+
+    // Snapshot buffers sized to the ring; the downsampled points per device are sized to the canvas width
+    private final long[] times;
+    private final double[] values;
+    private long[][] sampledTimes = new long[0][];
+    private double[][] sampledValues = new double[0][];
+    private int[] sampledCounts = new int[0];
+
+    private final LatencyHistogram redrawLatency = Metrics.histogram("ui.chart.redraw");
+
+    public ChartPane(TelemetrySeries series, long refreshMillis) {
+        this.series = series;
+        this.times = new long[series.getCapacity()];
+        this.values = new double[series.getCapacity()];
+
+        spans.put("1 min", 60_000L);
+        spans.put("10 min", 600_000L);
+        spans.put("1 h", 3_600_000L);
+        spans.put("All", Long.MAX_VALUE);
+        span.getItems().addAll(spans.keySet());
+        span.getSelectionModel().select("10 min");
+        field.getSelectionModel().select(TelemetryField.TEMPERATURE);
+
+        Pane canvasHolder = new Pane(canvas);
+        canvas.widthProperty().bind(canvasHolder.widthProperty());
+        canvas.heightProperty().bind(canvasHolder.heightProperty());
+        canvasHolder.setMinHeight(0);
+
+        setTop(new HBox(field, span));
+        setCenter(canvasHolder);
+
+        refresh = new Timeline(new KeyFrame(Duration.millis(refreshMillis), event -> redraw()));
+        refresh.setCycleCount(Timeline.INDEFINITE);
+        field.valueProperty().addListener((observable, oldValue, newValue) -> redraw());
+        span.valueProperty().addListener((observable, oldValue, newValue) -> redraw());
+    }
+
+    public void start() {
+        refresh.play();
+    }
+
+    public void stop() {
+        refresh.stop();
+    }
+
+    // Each device's visible range is reduced to one point per pixel column, so drawing never depends on history length
+    private void redraw() {
+        long redrawStart = System.nanoTime();
+        GraphicsContext graphics = canvas.getGraphicsContext2D();
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        graphics.clearRect(0, 0, width, height);
+
+        int plotWidth = (int) (width - 2 * MARGIN);
+        double plotHeight = height - 2 * MARGIN;
+        if (plotWidth < 3 || plotHeight <= 0)
+            return;
+
+        long spanMillis = spans.get(span.getValue());
+        long now = System.currentTimeMillis();
+        long fromTime = spanMillis == Long.MAX_VALUE ? Long.MIN_VALUE : now - spanMillis;
+
+        int deviceCount = series.getDeviceCount();
+        ensureSampleBuffers(deviceCount, plotWidth);
+
+        long minTime = Long.MAX_VALUE;
+        double minValue = Double.POSITIVE_INFINITY;
+        double maxValue = Double.NEGATIVE_INFINITY;
+        for (int device = 0; device < deviceCount; device++) {
+            int count = series.snapshot(device, field.getValue(), fromTime, times, values);
+            for (int i = 0; i < count; i++) {
+                minValue = Math.min(minValue, values[i]);
+                maxValue = Math.max(maxValue, values[i]);
+            }
+            if (count > 0)
+                minTime = Math.min(minTime, times[0]);
+            sampledCounts[device] = Lttb.downsample(times, values, count, plotWidth, sampledTimes[device], sampledValues[device]);
+        }
+
+        if (minTime == Long.MAX_VALUE) {
+            redrawLatency.recordSince(redrawStart);
+            return;
+        }
+        if (maxValue == minValue) {
+            maxValue += 0.5;
+            minValue -= 0.5;
+        }
+        long startTime = spanMillis == Long.MAX_VALUE ? minTime : fromTime;
+        double timeScale = plotWidth / (double) Math.max(1, now - startTime);
+        double valueScale = plotHeight / (maxValue - minValue);
+
+        drawAxes(graphics, width, height, startTime, now, minValue, maxValue);
+
+        double[] xs = new double[plotWidth];
+        double[] ys = new double[plotWidth];
+        graphics.setLineWidth(1);
+        for (int device = 0; device < deviceCount; device++) {
+            int count = sampledCounts[device];
+            for (int i = 0; i < count; i++) {
+                xs[i] = MARGIN + (sampledTimes[device][i] - startTime) * timeScale;
+                ys[i] = height - MARGIN - (sampledValues[device][i] - minValue) * valueScale;
+            }
+            Color color = COLORS[device % COLORS.length];
+            graphics.setStroke(color);
+            graphics.strokePolyline(xs, ys, count);
+
+            graphics.setFill(color);
+            graphics.setTextAlign(TextAlignment.LEFT);
+            graphics.fillText(series.getDeviceName(device), MARGIN + 4 + device * 90, MARGIN - 8);
+        }
+
+        redrawLatency.recordSince(redrawStart);
+    }
+
+    private void drawAxes(GraphicsContext graphics, double width, double height, long startTime, long endTime,
+                          double minValue, double maxValue) {
+        graphics.setStroke(Color.GRAY);
+        graphics.strokeRect(MARGIN, MARGIN, width - 2 * MARGIN, height - 2 * MARGIN);
+
+        graphics.setFill(Color.GRAY);
+        graphics.setTextBaseline(VPos.CENTER);
+        graphics.setTextAlign(TextAlignment.RIGHT);
+        graphics.fillText(String.format("%.4g", maxValue), MARGIN - 4, MARGIN);
+        graphics.fillText(String.format("%.4g", minValue), MARGIN - 4, height - MARGIN);
+
+        graphics.setTextBaseline(VPos.TOP);
+        graphics.setTextAlign(TextAlignment.LEFT);
+        graphics.fillText(AXIS_FORMATTER.format(Instant.ofEpochMilli(startTime)), MARGIN, height - MARGIN + 4);
+        graphics.setTextAlign(TextAlignment.RIGHT);
+        graphics.fillText(AXIS_FORMATTER.format(Instant.ofEpochMilli(endTime)), width - MARGIN, height - MARGIN + 4);
+        graphics.setTextBaseline(VPos.BASELINE);
+    }
+
+    private void ensureSampleBuffers(int deviceCount, int plotWidth) {
+        if (sampledTimes.length < deviceCount) {
+            sampledTimes = Arrays.copyOf(sampledTimes, deviceCount);
+            sampledValues = Arrays.copyOf(sampledValues, deviceCount);
+            sampledCounts = Arrays.copyOf(sampledCounts, deviceCount);
+        }
+        for (int device = 0; device < deviceCount; device++) {
+            if (sampledTimes[device] == null || sampledTimes[device].length < plotWidth) {
+                sampledTimes[device] = new long[plotWidth];
+                sampledValues[device] = new double[plotWidth];
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package monitor;
+
+import com.moandjiezana.toml.Toml;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class ConnectionPool implements AutoCloseable {
+
+    private final String url;
+    private final String user;
+    private final String password;
+
+    private final BlockingQueue<Connection> idle;
+    private final BlockingQueue<Boolean> permits;
+
+    public ConnectionPool(String url, String user, String password, int size) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.permits = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++)
+            permits.add(Boolean.TRUE);
+    }
+
+    public static ConnectionPool fromConfig(int size) {
+        Toml toml = Config.get();
+
+        String url = String.format("jdbc:postgresql://%s:%s/temperature?reWriteBatchedInserts=true",
+                toml.getString("postgres.host"),
+                toml.getString("postgres.port"));
+        String user = toml.getString("postgres.user");
+        String password = Config.getSecret().getString("postgres.password");
+
+        return new ConnectionPool(url, user, password, size);
+    }
+
+    public Connection borrow() throws SQLException, InterruptedException {
+        permits.take();
+        try {
+            Connection connection = idle.poll();
+            if (connection == null || connection.isClosed())
+                connection = DriverManager.getConnection(url, user, password);
+            return connection;
+        } catch (SQLException e) {
+            permits.add(Boolean.TRUE);
+            throw e;
+        }
+    }
+
+    public void release(Connection connection, boolean broken) {
+        if (broken) {
+            closeQuietly(connection);
+        } else {
+            idle.offer(connection);
+        }
+        permits.add(Boolean.TRUE);
+    }
+
+    @Override
+    public void close() {
+        Connection connection;
+        while ((connection = idle.poll()) != null)
+            closeQuietly(connection);
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package monitor;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class Counter implements CounterMXBean {
+
+    private final LongAdder count = new LongAdder();
+
+    private long lastCount;
+    private long lastNanos = System.nanoTime();
+    private double rate;
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long delta) {
+        count.add(delta);
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    // The rate is recomputed at most once a second, from the count seen by the previous caller
+    @Override
+    public synchronized double getRatePerSecond() {
+        long now = System.nanoTime();
+        long elapsed = now - lastNanos;
+        if (elapsed >= 1_000_000_000L) {
+            long current = count.sum();
+            rate = (current - lastCount) * 1e9 / elapsed;
+            lastCount = current;
+            lastNanos = now;
+        }
+        return rate;
+    }
+}
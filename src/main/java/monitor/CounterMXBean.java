@@ -0,0 +1,8 @@
+package monitor;
+
+public interface CounterMXBean {
+
+    long getCount();
+
+    double getRatePerSecond();
+}
@@ -0,0 +1,198 @@
+package monitor;
+
+import com.moandjiezana.toml.Toml;
+import jssc.SerialPort;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class Daemon {
+
+    private final List<Monitor> monitors = new ArrayList<>();
+    private final List<CaptureLog> captureLogs = new ArrayList<>();
+    private final List<AlertRule> alertRules = AlertRule.fromConfig();
+    private final AlertLog alertLog = AlertLog.fromConfig();
+    private final ArchiveWriter archive = Config.get().getBoolean("archive.enabled", true) ? ArchiveWriter.fromConfig().start() : null;
+    private final TraceReport traceReport = TraceReport.fromConfig();
+    private final PortWatcher portWatcher = PortWatcher.fromConfig();
+    private final List<Settings> settingsList;
+    private final ExecutorService monitorExecutor;
+    private final TelemetryWriter telemetryWriter;
+    private final boolean captureEnabled;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    public Daemon(List<Settings> settingsList, TelemetryWriter telemetryWriter, boolean captureEnabled) {
+        this.monitorExecutor = MonitorExecutor.create(settingsList.size());
+        this.telemetryWriter = telemetryWriter;
+        this.captureEnabled = captureEnabled;
+        this.settingsList = settingsList;
+
+        for (Settings settings : settingsList)
+            monitors.add(initializeMonitor(settings));
+    }
+
+    // Usage: Daemon [--port <name>[:<baud rate>[:<data bits>[:<stop bits>]]]]...
+    // A name can also be tcp:<host>:<port>, tcp-listen:[<bind address>:]<port> or replay:<path>, see Transport.forName
+    // Runs the receive, decode and persistence path without loading JavaFX; ports default to [daemon] in config.toml
+    public static void main(String[] args) throws InterruptedException {
+        Settings defaults = defaultSettings(null);
+        List<Settings> settingsList = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].equals("--port") || i + 1 == args.length) {
+                System.err.println("Usage: Daemon [--port <name>[:<baud rate>[:<data bits>[:<stop bits>]]]]...");
+                System.exit(1);
+            }
+            settingsList.add(parseSettings(args[++i], defaults));
+        }
+        if (settingsList.isEmpty())
+            settingsList = settingsFromConfig();
+        if (settingsList.isEmpty()) {
+            System.err.println("No ports given on the command line or in daemon.ports");
+            System.exit(1);
+        }
+
+        Daemon daemon = new Daemon(
+                settingsList,
+                TelemetryWriter.fromConfig().start(),
+                Config.get().getBoolean("capture.enabled", true));
+
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::stop, "daemon-shutdown"));
+        daemon.start();
+
+        for (Settings settings : settingsList) {
+            if (Transport.isSerial(settings.getPortName())) {
+                System.out.println("Monitoring " + settings.getPortName() + " at " + settings.getBaudRate() + " baud");
+            } else {
+                System.out.println("Monitoring " + settings.getPortName());
+            }
+        }
+        daemon.awaitStop();
+    }
+
+    static List<Settings> settingsFromConfig() {
+        List<Settings> settingsList = new ArrayList<>();
+        for (String portName : Config.get().<String>getList("daemon.ports", new ArrayList<>()))
+            settingsList.add(defaultSettings(portName));
+        return settingsList;
+    }
+
+    // The serial settings of [daemon] in config.toml
+    static Settings defaultSettings(String portName) {
+        Toml toml = Config.get();
+        return new Settings(
+                portName,
+                toml.getLong("daemon.baud_rate", (long) SerialPort.BAUDRATE_38400).intValue(),
+                toml.getLong("daemon.data_bits", (long) SerialPort.DATABITS_8).intValue(),
+                parseStopBits(toml.getString("daemon.stop_bits", "1")));
+    }
+
+    // Whatever the spec leaves out is taken from defaults
+    static Settings parseSettings(String spec, Settings defaults) {
+        if (!Transport.isSerial(spec))
+            return new Settings(spec, defaults.getBaudRate(), defaults.getDataBits(), defaults.getStopBits());
+
+        String[] parts = spec.split(":");
+        return new Settings(
+                parts[0],
+                parts.length > 1 ? Integer.parseInt(parts[1]) : defaults.getBaudRate(),
+                parts.length > 2 ? Integer.parseInt(parts[2]) : defaults.getDataBits(),
+                parts.length > 3 ? parseStopBits(parts[3]) : defaults.getStopBits());
+    }
+
+    static int parseStopBits(String stopBits) {
+        switch (stopBits) {
+            case "1":
+                return SerialPort.STOPBITS_1;
+            case "1.5":
+                return SerialPort.STOPBITS_1_5;
+            case "2":
+                return SerialPort.STOPBITS_2;
+            default:
+                throw new IllegalArgumentException("Unknown stop bits " + stopBits);
+        }
+    }
+
+    private Monitor initializeMonitor(Settings settings) {
+        Monitor monitor = new Monitor(
+                settings.getPortName(),
+                settings.getBaudRate(),
+                settings.getDataBits(),
+                settings.getStopBits());
+
+        monitor.setTracer(Tracer.fromConfig());
+
+        // No record or interactive callbacks: without a table to feed, lines only go to the capture log and the decoder
+        if (archive != null) {
+            monitor.setFrameCallback(frame -> {
+                telemetryWriter.submit(frame);
+                archive.accept(frame);
+            });
+        } else {
+            monitor.setFrameCallback(telemetryWriter::submit);
+        }
+
+        if (captureEnabled) {
+            CaptureLog captureLog = CaptureLog.fromConfig(settings.getPortName());
+            captureLogs.add(captureLog);
+            monitor.setCaptureLog(captureLog);
+        }
+
+        if (!alertRules.isEmpty()) {
+            monitor.setRuleEngine(new RuleEngine(settings.getPortName(), alertRules, alert -> {
+                alertLog.offer(alert);
+                System.out.println("ALERT " + alert.getPort() + " " + alert.getRule() + ": " + alert.getMessage());
+            }));
+        }
+
+        return monitor;
+    }
+
+    public void start() {
+        if (traceReport != null)
+            traceReport.start();
+        for (Monitor monitor : monitors)
+            monitor.start(monitorExecutor);
+        // Ports that could not be opened yet are opened once they show up
+        for (int i = 0; i < monitors.size(); i++)
+            portWatcher.watch(monitors.get(i), settingsList.get(i));
+        portWatcher.start();
+    }
+
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    // Called from the shutdown hook on SIGTERM or SIGINT: stop reading, let in-flight drains finish, then flush the writer
+    public synchronized void stop() {
+        if (stopped.getCount() == 0)
+            return;
+
+        portWatcher.close();
+        for (Monitor monitor : monitors)
+            monitor.stop();
+
+        monitorExecutor.shutdown();
+        try {
+            if (!monitorExecutor.awaitTermination(5, TimeUnit.SECONDS))
+                System.err.println("Monitor executor did not finish draining within 5 s");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        telemetryWriter.close();
+        if (archive != null)
+            archive.close();
+        alertLog.close();
+        if (traceReport != null)
+            traceReport.close();
+        for (CaptureLog captureLog : captureLogs)
+            captureLog.close();
+
+        System.out.println("Stopped after writing " + telemetryWriter.getRowsWritten() + " rows ("
+                + telemetryWriter.getRowsDropped() + " dropped, " + telemetryWriter.getRowsFailed() + " failed)");
+        stopped.countDown();
+    }
+}
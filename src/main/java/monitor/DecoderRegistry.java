@@ -0,0 +1,105 @@
+package monitor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+// Which decoder handles a line or packet, by framing mode and leading bytes. Each mode compiles into a trie with a
+// 256-way transition row per node, so dispatch reads a line only as far as it shares a prefix with some decoder, and a
+// line no decoder claims costs a single lookup.
+public class DecoderRegistry {
+
+    private final Map<Framing.Mode, List<Registration>> registrations = new EnumMap<>(Framing.Mode.class);
+
+    // The built-in decoder plus every FrameDecoder on the classpath
+    public static DecoderRegistry load() {
+        DecoderRegistry registry = new DecoderRegistry();
+        new LogFrameDecoder().register(registry);
+        for (FrameDecoder decoder : ServiceLoader.load(FrameDecoder.class))
+            decoder.register(registry);
+        return registry;
+    }
+
+    // Prefix characters are taken as single bytes (ISO-8859-1), so binary type bytes can be written as "\u0081"
+    public void register(Framing.Mode mode, String prefix, FrameDecoder decoder) {
+        register(mode, prefix.getBytes(StandardCharsets.ISO_8859_1), decoder);
+    }
+
+    // The longest matching prefix wins; an empty prefix takes everything of that mode no other prefix claims
+    public void register(Framing.Mode mode, byte[] prefix, FrameDecoder decoder) {
+        List<Registration> list = registrations.computeIfAbsent(mode, key -> new ArrayList<>());
+        for (Registration registration : list) {
+            if (Arrays.equals(registration.prefix, prefix))
+                throw new IllegalArgumentException("Prefix " + new String(prefix, StandardCharsets.ISO_8859_1) + " of "
+                        + mode + " is already claimed by " + registration.decoder.getClass().getName());
+        }
+        list.add(new Registration(prefix.clone(), decoder));
+    }
+
+    public Trie compile(Framing.Mode mode) {
+        List<Registration> list = registrations.getOrDefault(mode, new ArrayList<>());
+
+        int nodeCount = 1;
+        for (Registration registration : list)
+            nodeCount += registration.prefix.length;
+        int[] next = new int[nodeCount << 8];
+        FrameDecoder[] decoders = new FrameDecoder[nodeCount];
+
+        int used = 1;
+        for (Registration registration : list) {
+            int node = 0;
+            for (byte b : registration.prefix) {
+                int slot = node << 8 | b & 0xFF;
+                if (next[slot] == 0)
+                    next[slot] = used++;
+                node = next[slot];
+            }
+            decoders[node] = registration.decoder;
+        }
+        return new Trie(Arrays.copyOf(next, used << 8), Arrays.copyOf(decoders, used));
+    }
+
+    public static final class Trie {
+
+        // Node 0 is the root, which is never a child, so 0 in a transition row means no child
+        private final int[] next;
+        private final FrameDecoder[] decoders;
+
+        private Trie(int[] next, FrameDecoder[] decoders) {
+            this.next = next;
+            this.decoders = decoders;
+        }
+
+        public boolean isEmpty() {
+            return decoders.length == 1 && decoders[0] == null;
+        }
+
+        // The decoder with the longest prefix of the content, or null
+        public FrameDecoder find(byte[] buffer, int offset, int length) {
+            FrameDecoder found = decoders[0];
+            int node = 0;
+            for (int i = 0; i < length; i++) {
+                node = next[node << 8 | buffer[offset + i] & 0xFF];
+                if (node == 0)
+                    break;
+                if (decoders[node] != null)
+                    found = decoders[node];
+            }
+            return found;
+        }
+    }
+
+    private static class Registration {
+        final byte[] prefix;
+        final FrameDecoder decoder;
+
+        Registration(byte[] prefix, FrameDecoder decoder) {
+            this.prefix = prefix;
+            this.decoder = decoder;
+        }
+    }
+}
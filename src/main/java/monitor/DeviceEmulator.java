@@ -0,0 +1,212 @@
+package monitor;
+
+import jssc.SerialPort;
+import jssc.SerialPortException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+public class DeviceEmulator {
+
+    public interface SentListener {
+        void sent(long sequence, long nanoTime);
+    }
+
+    private final OutboundWriter.Sink sink;
+    private final String serialNumber;
+    private final Random random;
+    private final StringBuilder builder = new StringBuilder(512);
+
+    private long sequence;
+    private double energyWh;
+    private double temperature = 35;
+    private int consoleEvery;
+    private Framing framing = Framing.lines();
+
+    public DeviceEmulator(OutboundWriter.Sink sink, String serialNumber, long seed) {
+        this.sink = sink;
+        this.serialNumber = serialNumber;
+        this.random = new Random(seed);
+        this.energyWh = 1_000_000 + random.nextInt(1_000_000);
+    }
+
+    // Usage: DeviceEmulator <port> [--serial <serial number>] [--baud <rate>] [--rate <frames/s>] [--seconds <n>] [--console-every <n>]
+    //                       [--framing lines|slip|cobs|length]
+    // Point it at one end of a pseudo-terminal pair and open the other end in jaspm, e.g.
+    //   socat -d -d pty,raw,echo=0,link=/tmp/ttyEMU0 pty,raw,echo=0,link=/tmp/ttyEMU1
+    // A rate of 0 sends as fast as the baud rate allows.
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: DeviceEmulator <port> [--serial <serial number>] [--baud <rate>] [--rate <frames/s>] [--seconds <n>] [--console-every <n>] [--framing lines|slip|cobs|length]");
+            System.exit(1);
+        }
+
+        String serialNumber = "EMU0001";
+        int baudRate = SerialPort.BAUDRATE_115200;
+        double rate = 10;
+        long seconds = Long.MAX_VALUE;
+        int consoleEvery = 0;
+        String framing = "lines";
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--serial":
+                    serialNumber = args[i + 1];
+                    break;
+                case "--baud":
+                    baudRate = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--rate":
+                    rate = Double.parseDouble(args[i + 1]);
+                    break;
+                case "--seconds":
+                    seconds = Long.parseLong(args[i + 1]);
+                    break;
+                case "--console-every":
+                    consoleEvery = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--framing":
+                    framing = args[i + 1];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        SerialPort port = new SerialPort(args[0]);
+        port.openPort();
+        port.setParams(baudRate, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                port.closePort();
+            } catch (SerialPortException e) {
+                e.printStackTrace();
+            }
+        }));
+
+        DeviceEmulator emulator = new DeviceEmulator(port::writeBytes, serialNumber, System.nanoTime());
+        emulator.setConsoleEvery(consoleEvery);
+        // Console lines between packets need a port that expects text as well
+        emulator.setFraming(Framing.parse(framing, consoleEvery > 0, Framing.DEFAULT_SYNC));
+        long durationNanos = seconds == Long.MAX_VALUE ? Long.MAX_VALUE : TimeUnit.SECONDS.toNanos(seconds);
+        long sent = emulator.run(rate, baudRate, durationNanos, null);
+        System.out.println("Sent " + sent + " frames");
+    }
+
+    // Every n-th line is free-form console output instead of a frame; 0 sends frames only
+    public void setConsoleEvery(int consoleEvery) {
+        this.consoleEvery = consoleEvery;
+    }
+
+    // Frames go out as packets of this framing, with the line ending left off; console lines stay text
+    public void setFraming(Framing framing) {
+        this.framing = framing;
+    }
+
+    // Sends frames at the given rate, never faster than the line can carry at 10 bits per byte; returns the frames sent
+    public long run(double framesPerSecond, int baudRate, long durationNanos, SentListener listener) throws Exception {
+        double bytesPerSecond = baudRate / 10.0;
+        long start = System.nanoTime();
+        long next = start;
+        long frames = 0;
+
+        while (System.nanoTime() - start < durationNanos && !Thread.currentThread().isInterrupted()) {
+            int consoleBytes = 0;
+            if (consoleEvery > 0 && sequence % consoleEvery == consoleEvery - 1) {
+                byte[] console = ("state machine tick " + sequence + "\r\n").getBytes(StandardCharsets.US_ASCII);
+                sink.write(console);
+                consoleBytes = console.length;
+            }
+
+            long frameSequence = sequence;
+            byte[] frame = nextFrame();
+            if (framing.getMode() != Framing.Mode.LINES)
+                frame = framing.encode(Arrays.copyOf(frame, frame.length - 2));
+            // Reported before the write so a fast receiver never sees a frame whose send time is not yet known
+            if (listener != null)
+                listener.sent(frameSequence, System.nanoTime());
+            sink.write(frame);
+            frames++;
+
+            // Console lines share the wire with the frames
+            double lineSeconds = (consoleBytes + frame.length) / bytesPerSecond;
+            double frameSeconds = framesPerSecond > 0 ? Math.max(1 / framesPerSecond, lineSeconds) : lineSeconds;
+            next += (long) (frameSeconds * 1e9);
+            long wait = next - System.nanoTime();
+            if (wait > 0)
+                LockSupport.parkNanos(wait);
+        }
+        return frames;
+    }
+
+    // A frame with plausible, slowly drifting values; the sequence number travels in the last suffix field (iterations)
+    public byte[] nextFrame() {
+        double voltage = 230 + random.nextGaussian() * 2;
+        double current = Math.max(0, 16 + random.nextGaussian() * 4);
+        double powerFactor = 0.9 + random.nextDouble() * 0.1;
+        double power = voltage * current * powerFactor;
+        energyWh += power * 3 / 3600;
+        temperature += random.nextGaussian() * 0.05;
+        int locked = current > 1 ? 1 : 0;
+
+        double[] meters = new double[LogFrame.METER_VALUE_COUNT];
+        meters[LogFrame.ENERGY_WH] = energyWh;
+        for (int phase = 0; phase < 3; phase++) {
+            double phaseVoltage = voltage + random.nextGaussian();
+            double phaseCurrent = Math.max(0, current + random.nextGaussian() * 0.2);
+            meters[LogFrame.CURRENT_L1 + phase] = phaseCurrent;
+            meters[LogFrame.VOLTAGE_L1 + phase] = phaseVoltage;
+            meters[LogFrame.POWER_L1 + phase] = phaseVoltage * phaseCurrent * powerFactor;
+            meters[LogFrame.POSITIVE_ACTIVE_ENERGY_L1 + phase * 4] = energyWh / 3;
+            meters[LogFrame.NEGATIVE_ACTIVE_ENERGY_L1 + phase * 4] = 0;
+            meters[LogFrame.POSITIVE_REACTIVE_ENERGY_L1 + phase * 4] = energyWh / 3 * Math.sqrt(1 - powerFactor * powerFactor);
+            meters[LogFrame.NEGATIVE_REACTIVE_ENERGY_L1 + phase * 4] = 0;
+        }
+        meters[LogFrame.FREQUENCY] = 50 + random.nextGaussian() * 0.02;
+        meters[LogFrame.POWER_FACTOR] = powerFactor;
+        meters[LogFrame.ACTIVE_POWER] = meters[LogFrame.POWER_L1] + meters[LogFrame.POWER_L2] + meters[LogFrame.POWER_L3];
+        meters[LogFrame.REACTIVE_POWER] = meters[LogFrame.ACTIVE_POWER] * Math.tan(Math.acos(powerFactor));
+        meters[LogFrame.TEMPERATURE] = temperature;
+
+        builder.setLength(0);
+        builder.append("log[").append(serialNumber).append("]:A;")
+                .append(locked).append(';');
+        appendFixed(builder, 9 + random.nextGaussian() * 0.1, 2).append(';');
+        appendFixed(builder, 6 + random.nextGaussian() * 0.1, 2).append(';');
+        appendFixed(builder, -12 + random.nextGaussian() * 0.1, 2).append(";0;");
+        for (int i = 0; i < meters.length; i++) {
+            if (i > 0)
+                builder.append(',');
+            appendFixed(builder, meters[i], 3);
+        }
+        builder.append(";0;0;0.5|").append(locked).append('|').append(locked * 2 + 1).append('|');
+        appendFixed(builder, energyWh / 1000, 3).append('|');
+        builder.append(random.nextInt(100)).append(',').append(random.nextInt(100)).append(',').append(sequence++)
+                .append("\r\n");
+
+        byte[] bytes = new byte[builder.length()];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) builder.charAt(i);
+        return bytes;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    private static StringBuilder appendFixed(StringBuilder builder, double value, int decimals) {
+        long scale = decimals == 2 ? 100 : 1000;
+        long scaled = Math.round(value * scale);
+        if (scaled < 0) {
+            builder.append('-');
+            scaled = -scaled;
+        }
+        builder.append(scaled / scale).append('.');
+        String fraction = Long.toString(scaled % scale);
+        for (int i = fraction.length(); i < decimals; i++)
+            builder.append('0');
+        return builder.append(fraction);
+    }
+}
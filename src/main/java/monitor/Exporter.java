@@ -0,0 +1,406 @@
+package monitor;
+
+import com.moandjiezana.toml.Toml;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Streams captured lines out of the capture logs into a file. A reader thread scans and filters the logs, a writer
+// thread decodes, formats and writes, and the two only hand a fixed pool of batches back and forth, so an export of any
+// size holds batchCount * batchRows lines in memory at most. Ports are exported one after another, each in time order.
+public class Exporter {
+
+    public enum Format {
+        // time,port,content for every matching line
+        LINES_CSV,
+        // time,port,device and every archive column for every matching line that decodes as a frame
+        FRAMES_CSV,
+        // Matching frames into an archive directory, to be read back with ArchiveReader
+        FRAMES_ARCHIVE
+    }
+
+    // Both are called on the writer thread
+    public interface ProgressListener {
+        void progress(double fraction, long rows);
+
+        void finished(long rows, boolean cancelled, Exception error);
+    }
+
+    private static final long PROGRESS_INTERVAL_MILLIS = 100;
+    private static final int ARCHIVE_BLOCK_FRAMES = 1024;
+    private static final int INITIAL_BATCH_BYTES = 128;
+    private static final ArchiveColumn[] COLUMNS = ArchiveColumn.values();
+    private static final Batch END = new Batch(0, 0);
+
+    private final List<String> ports;
+    private final List<CaptureLog> captureLogs;
+    private final RecordQuery query;
+    private final Format format;
+    private final File file;
+    private final ProgressListener listener;
+
+    private final BlockingQueue<Batch> free;
+    private final BlockingQueue<Batch> full;
+    private final Thread reader;
+    private final Thread writer;
+
+    private volatile boolean cancelled;
+    // Set by the reader before it queues END, so the writer sees it once it takes END
+    private volatile RuntimeException readError;
+
+    // Reader thread only
+    private Batch current;
+    private int currentPort;
+    private long rangeStart;
+    private long rangeEnd;
+
+    // Writer thread only
+    private final LogFrameDecoder decoder = new LogFrameDecoder();
+    private final LogFrame frame = new LogFrame();
+    private final StringBuilder line = new StringBuilder(1024);
+    private byte[] lineBytes = new byte[1024];
+    private long rows;
+    private long skipped;
+
+    private final Counter rowsExported = Metrics.counter("export.rows");
+    private final Counter linesScanned = Metrics.counter("export.scanned");
+
+    public Exporter(Map<String, CaptureLog> captureLogs, RecordQuery query, Format format, File file,
+                    int batchCount, int batchRows, ProgressListener listener) {
+        this.ports = new ArrayList<>(captureLogs.keySet());
+        this.captureLogs = new ArrayList<>(captureLogs.values());
+        this.query = query;
+        this.format = format;
+        this.file = file;
+        this.listener = listener;
+
+        this.free = new ArrayBlockingQueue<>(batchCount);
+        this.full = new ArrayBlockingQueue<>(batchCount + 1);
+        for (int i = 0; i < batchCount; i++)
+            free.add(new Batch(batchRows, batchRows * INITIAL_BATCH_BYTES));
+
+        this.reader = new Thread(this::readLoop, "monitor-export-read");
+        this.writer = new Thread(this::writeLoop, "monitor-export-write");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+    }
+
+    public static Exporter fromConfig(Map<String, CaptureLog> captureLogs, RecordQuery query, Format format, File file,
+                                      ProgressListener listener) {
+        Toml toml = Config.get();
+        return new Exporter(captureLogs, query, format, file,
+                toml.getLong("export.batch_count", 4L).intValue(),
+                toml.getLong("export.batch_rows", 4096L).intValue(),
+                listener);
+    }
+
+    public Exporter start() {
+        writer.start();
+        reader.start();
+        return this;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public void join() throws InterruptedException {
+        reader.join();
+        writer.join();
+    }
+
+    private void readLoop() {
+        long now = System.currentTimeMillis();
+        try {
+            current = takeFree();
+            for (currentPort = 0; currentPort < ports.size() && current != null; currentPort++) {
+                CaptureLog captureLog = captureLogs.get(currentPort);
+                rangeStart = Math.max(query.getFromTime(), captureLog.getFirstTime());
+                rangeEnd = Math.min(query.getToTime(), now);
+                captureLog.read(query.getFromTime(), query.getToTime(), this::onEntry);
+            }
+            if (current != null && current.count > 0) {
+                current.fraction = 1;
+                full.add(current);
+            }
+        } catch (InterruptedException e) {
+            cancelled = true;
+        } catch (RuntimeException e) {
+            // A capture log that fails to read ends the export as failed rather than as a complete, truncated file
+            readError = e;
+        } finally {
+            current = null;
+            full.add(END);
+        }
+    }
+
+    private boolean onEntry(long time, ByteBuffer content) {
+        linesScanned.increment();
+        int length = content.remaining();
+        if (current.count > 0 && current.length + length > current.bytes.length) {
+            handOff(time);
+            if (current == null)
+                return false;
+        }
+
+        Batch batch = current;
+        int start = batch.length;
+        if (start + length > batch.bytes.length)
+            batch.bytes = Arrays.copyOf(batch.bytes, start + length);
+        content.get(batch.bytes, start, length);
+
+        if (format != Format.LINES_CSV && !LogFrameDecoder.isLogFrame(batch.bytes, start, length))
+            return !cancelled;
+        if (!query.matches(new Record(ports.get(currentPort), time, batch.bytes, start, length)))
+            return !cancelled;
+
+        batch.times[batch.count] = time;
+        batch.ports[batch.count] = currentPort;
+        batch.ends[batch.count] = start + length;
+        batch.count++;
+        batch.length = start + length;
+
+        if (batch.count == batch.times.length)
+            handOff(time);
+        return current != null && !cancelled;
+    }
+
+    private void handOff(long time) {
+        double portFraction = rangeEnd > rangeStart ? (time - rangeStart) / (double) (rangeEnd - rangeStart) : 1;
+        current.fraction = (currentPort + Math.max(0, Math.min(1, portFraction))) / ports.size();
+        full.add(current);
+        try {
+            current = takeFree();
+        } catch (InterruptedException e) {
+            cancelled = true;
+            current = null;
+        }
+    }
+
+    // Null once the export is cancelled, so a reader waiting on a writer that failed does not wait forever
+    private Batch takeFree() throws InterruptedException {
+        Batch batch = null;
+        while (batch == null && !cancelled)
+            batch = free.poll(100, TimeUnit.MILLISECONDS);
+        return batch;
+    }
+
+    private void writeLoop() {
+        Exception error = null;
+        OutputStream out = null;
+        ArchiveWriter archive = null;
+        try {
+            if (format == Format.FRAMES_ARCHIVE) {
+                archive = new ArchiveWriter(file, ARCHIVE_BLOCK_FRAMES, TimeUnit.DAYS.toMillis(1), Long.MAX_VALUE);
+            } else {
+                out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+                writeHeader(out);
+            }
+
+            long lastProgress = System.currentTimeMillis();
+            Batch batch;
+            while ((batch = full.take()) != END) {
+                if (!cancelled) {
+                    if (archive != null) {
+                        writeArchive(archive, batch);
+                    } else if (format == Format.FRAMES_CSV) {
+                        writeFrames(out, batch);
+                    } else {
+                        writeLines(out, batch);
+                    }
+                }
+                double fraction = batch.fraction;
+                batch.count = 0;
+                batch.length = 0;
+                free.add(batch);
+
+                long now = System.currentTimeMillis();
+                if (now - lastProgress >= PROGRESS_INTERVAL_MILLIS && !cancelled) {
+                    listener.progress(fraction, rows);
+                    lastProgress = now;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            error = e;
+        } catch (InterruptedException e) {
+            cancelled = true;
+        } finally {
+            boolean wasCancelled = cancelled;
+            // Stops the reader too when the writer gave up
+            cancelled = true;
+            try {
+                if (out != null)
+                    out.close();
+            } catch (IOException e) {
+                if (error == null)
+                    error = e;
+            }
+            if (archive != null)
+                archive.close();
+            if (error == null)
+                error = readError;
+            if (skipped > 0)
+                System.err.println("Export to " + file + " skipped " + skipped + " lines that did not decode as frames");
+            listener.finished(rows, wasCancelled && error == null, error);
+        }
+    }
+
+    private void writeHeader(OutputStream out) throws IOException {
+        line.setLength(0);
+        if (format == Format.LINES_CSV) {
+            line.append("time,port,content");
+        } else {
+            line.append("time,port,device");
+            for (ArchiveColumn column : COLUMNS)
+                line.append(',').append(column.name().toLowerCase());
+        }
+        line.append('\n');
+        writeLine(out);
+    }
+
+    private void writeLines(OutputStream out, Batch batch) throws IOException {
+        int start = 0;
+        for (int i = 0; i < batch.count; i++) {
+            line.setLength(0);
+            line.append(Instant.ofEpochMilli(batch.times[i])).append(',');
+            appendQuoted(line, ports.get(batch.ports[i]));
+            line.append(",\"");
+            writeLine(out);
+
+            int end = trimLineEnd(batch.bytes, start, batch.ends[i]);
+            // Content goes out as raw bytes, with every quote doubled
+            int run = start;
+            for (int j = start; j < end; j++) {
+                if (batch.bytes[j] == '"') {
+                    out.write(batch.bytes, run, j + 1 - run);
+                    run = j;
+                }
+            }
+            out.write(batch.bytes, run, end - run);
+            out.write('"');
+            out.write('\n');
+
+            start = batch.ends[i];
+            rows++;
+        }
+        rowsExported.add(batch.count);
+    }
+
+    private void writeFrames(OutputStream out, Batch batch) throws IOException {
+        int start = 0;
+        int written = 0;
+        for (int i = 0; i < batch.count; i++) {
+            if (decode(batch, start, i)) {
+                line.setLength(0);
+                line.append(Instant.ofEpochMilli(batch.times[i])).append(',');
+                appendQuoted(line, ports.get(batch.ports[i]));
+                line.append(',');
+                appendQuoted(line, frame.getSerialNumber());
+                for (ArchiveColumn column : COLUMNS) {
+                    line.append(',');
+                    if (column.getEncoding() == ArchiveColumn.Encoding.PACKED) {
+                        line.append(column.extractLong(frame));
+                    } else {
+                        line.append(column.extract(frame));
+                    }
+                }
+                line.append('\n');
+                writeLine(out);
+                written++;
+            }
+            start = batch.ends[i];
+        }
+        rows += written;
+        rowsExported.add(written);
+    }
+
+    private void writeArchive(ArchiveWriter archive, Batch batch) {
+        int start = 0;
+        int written = 0;
+        for (int i = 0; i < batch.count; i++) {
+            if (decode(batch, start, i)) {
+                archive.accept(frame);
+                written++;
+            }
+            start = batch.ends[i];
+        }
+        rows += written;
+        rowsExported.add(written);
+    }
+
+    private boolean decode(Batch batch, int start, int row) {
+        try {
+            decoder.decode(batch.bytes, start, batch.ends[row] - start, frame);
+            frame.setTime(batch.times[row]);
+            return true;
+        } catch (FrameFormatException e) {
+            skipped++;
+            return false;
+        }
+    }
+
+    private void writeLine(OutputStream out) throws IOException {
+        int length = line.length();
+        if (length > lineBytes.length)
+            lineBytes = new byte[Math.max(length, lineBytes.length * 2)];
+        boolean ascii = true;
+        for (int i = 0; i < length && ascii; i++) {
+            char c = line.charAt(i);
+            lineBytes[i] = (byte) c;
+            ascii = c < 0x80;
+        }
+        if (ascii) {
+            out.write(lineBytes, 0, length);
+        } else {
+            out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void appendQuoted(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"')
+                builder.append('"');
+            builder.append(c);
+        }
+        builder.append('"');
+    }
+
+    private static int trimLineEnd(byte[] bytes, int start, int end) {
+        while (end > start && (bytes[end - 1] == '\n' || bytes[end - 1] == '\r'))
+            end--;
+        return end;
+    }
+
+    // Matching lines packed back to back: the content of line i runs from ends[i - 1] (or 0) to ends[i]
+    private static class Batch {
+        final long[] times;
+        final int[] ports;
+        final int[] ends;
+        byte[] bytes;
+        int count;
+        int length;
+        double fraction;
+
+        Batch(int rows, int bytes) {
+            this.times = new long[rows];
+            this.ports = new int[rows];
+            this.ends = new int[rows];
+            this.bytes = new byte[bytes];
+        }
+    }
+}
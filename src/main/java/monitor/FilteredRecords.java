@@ -0,0 +1,95 @@
+package monitor;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableListBase;
+
+import java.util.Arrays;
+
+public class FilteredRecords extends ObservableListBase<Record> {
+
+    private final RecordStore store;
+    private final RecordQuery query;
+    private final ListChangeListener<Record> storeListener = this::onStoreChanged;
+
+    private int[] matches;
+    private int size;
+
+    // The first records of a store that a query accepts, as found by search()
+    public static class Matches {
+        private int[] indices = new int[1024];
+        private int size;
+        private int searched;
+
+        private void add(int index) {
+            if (size == indices.length)
+                indices = Arrays.copyOf(indices, size * 2);
+            indices[size++] = index;
+        }
+    }
+
+    // Reads the store through its index and may run on any thread; null when the thread was interrupted before it
+    // finished, as a search is once a newer filter replaces it
+    public static Matches search(RecordStore store, RecordQuery query) {
+        Matches matches = new Matches();
+        matches.searched = store.getIndex().search(query, store::get, matches::add);
+        return Thread.currentThread().isInterrupted() ? null : matches;
+    }
+
+    // On the FX thread: lines appended since the search are tested here, and later ones as they arrive
+    public FilteredRecords(RecordStore store, RecordQuery query, Matches initial) {
+        this.store = store;
+        this.query = query;
+        this.matches = initial.indices;
+        this.size = initial.size;
+
+        for (int index = initial.searched; index < store.size(); index++) {
+            if (query.matches(store.get(index)))
+                addMatch(index);
+        }
+        store.addListener(storeListener);
+    }
+
+    public RecordQuery getQuery() {
+        return query;
+    }
+
+    public void dispose() {
+        store.removeListener(storeListener);
+    }
+
+    @Override
+    public Record get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        return store.get(matches[index]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void onStoreChanged(ListChangeListener.Change<? extends Record> change) {
+        int from = size;
+        while (change.next()) {
+            if (!change.wasAdded())
+                continue;
+            for (int index = change.getFrom(); index < change.getTo(); index++) {
+                if (query.matches(store.get(index)))
+                    addMatch(index);
+            }
+        }
+
+        if (size > from) {
+            beginChange();
+            nextAdd(from, size);
+            endChange();
+        }
+    }
+
+    private void addMatch(int index) {
+        if (size == matches.length)
+            matches = Arrays.copyOf(matches, size * 2);
+        matches[size++] = index;
+    }
+}
@@ -0,0 +1,12 @@
+package monitor;
+
+// Turns one text line or binary packet into a LogFrame. Besides the built-in LogFrameDecoder, implementations are found
+// with ServiceLoader (listed in META-INF/services/monitor.FrameDecoder on the classpath). Every port loads its own
+// instances, so a decoder is only ever called from one thread at a time.
+public interface FrameDecoder {
+
+    // Claims lines or packets by leading bytes, per framing mode; see DecoderRegistry.register
+    void register(DecoderRegistry registry);
+
+    LogFrame decode(byte[] buffer, int offset, int length, LogFrame frame) throws FrameFormatException;
+}
@@ -0,0 +1,17 @@
+package monitor;
+
+public class FrameFormatException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int position;
+
+    public FrameFormatException(String message, int position) {
+        super(message + " at position " + position);
+        this.position = position;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,188 @@
+package monitor;
+
+import com.moandjiezana.toml.Toml;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+// How a port's byte stream is cut into units: newline-terminated text lines, or binary packets in one of three framings.
+// With text enabled a binary framing also passes text lines through, and every packet starts with its opening byte
+// (SLIP END, a COBS zero or the sync byte), none of which occur in UTF-8 text.
+public final class Framing {
+
+    public enum Mode {
+        LINES,
+        // RFC 1055: packets end with END (0xC0); END and ESC (0xDB) in the payload are escaped as ESC 0xDC and ESC 0xDD
+        SLIP,
+        // Consistent overhead byte stuffing: the payload is rewritten without zero bytes and a zero ends each packet
+        COBS,
+        // A sync byte, a two-byte big-endian payload length, then the payload
+        LENGTH_PREFIXED
+    }
+
+    public static final int SLIP_END = 0xC0;
+    public static final int SLIP_ESC = 0xDB;
+    public static final int SLIP_ESC_END = 0xDC;
+    public static final int SLIP_ESC_ESC = 0xDD;
+    // Never valid in UTF-8, so it cannot be mistaken for text
+    public static final int DEFAULT_SYNC = 0xC1;
+
+    private static final Framing LINES = new Framing(Mode.LINES, true, DEFAULT_SYNC);
+
+    private final Mode mode;
+    private final boolean text;
+    private final int sync;
+
+    private Framing(Mode mode, boolean text, int sync) {
+        this.mode = mode;
+        this.text = text;
+        this.sync = sync;
+    }
+
+    public static Framing lines() {
+        return LINES;
+    }
+
+    public static Framing slip(boolean text) {
+        return new Framing(Mode.SLIP, text, DEFAULT_SYNC);
+    }
+
+    public static Framing cobs(boolean text) {
+        return new Framing(Mode.COBS, text, DEFAULT_SYNC);
+    }
+
+    public static Framing lengthPrefixed(boolean text, int sync) {
+        return new Framing(Mode.LENGTH_PREFIXED, text, sync & 0xFF);
+    }
+
+    //   [framing]
+    //       mode = "cobs"       lines, slip, cobs or length
+    //       text = true
+    //       sync = 193          length framing only
+    //   [[framing.ports]]       overrides [framing] for one port
+    //       name = "COM7"
+    //       mode = "slip"
+    public static Framing fromConfig(String portName) {
+        Toml toml = Config.get();
+        Toml framing = toml.getTable("framing");
+        if (framing == null)
+            return lines();
+
+        List<Toml> ports = toml.getTables("framing.ports");
+        if (ports != null) {
+            for (Toml port : ports) {
+                if (portName.equals(port.getString("name")))
+                    return fromToml(port, framing);
+            }
+        }
+        return fromToml(framing, framing);
+    }
+
+    static Framing fromToml(Toml toml, Toml defaults) {
+        String mode = toml.getString("mode", defaults.getString("mode", "lines"));
+        boolean text = toml.getBoolean("text", defaults.getBoolean("text", false));
+        int sync = toml.getLong("sync", defaults.getLong("sync", (long) DEFAULT_SYNC)).intValue();
+        return parse(mode, text, sync);
+    }
+
+    public static Framing parse(String mode, boolean text, int sync) {
+        switch (mode.toLowerCase()) {
+            case "lines":
+                return lines();
+            case "slip":
+                return slip(text);
+            case "cobs":
+                return cobs(text);
+            case "length":
+                return lengthPrefixed(text, sync);
+            default:
+                throw new IllegalArgumentException("Unknown framing " + mode + ", expected lines, slip, cobs or length");
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    // Whether text lines can appear on the port, on their own or between packets
+    public boolean hasText() {
+        return mode == Mode.LINES || text;
+    }
+
+    public int getSync() {
+        return sync;
+    }
+
+    // The byte that opens a packet when text is interleaved, and always for length framing
+    int openingByte() {
+        switch (mode) {
+            case SLIP:
+                return SLIP_END;
+            case COBS:
+                return 0;
+            case LENGTH_PREFIXED:
+                return sync;
+            default:
+                return -1;
+        }
+    }
+
+    // Wire bytes of one packet, for emulators and tests; lines are sent as they are
+    public byte[] encode(byte[] payload) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length + payload.length / 64 + 4);
+        switch (mode) {
+            case SLIP:
+                out.write(SLIP_END);
+                for (byte b : payload) {
+                    if ((b & 0xFF) == SLIP_END) {
+                        out.write(SLIP_ESC);
+                        out.write(SLIP_ESC_END);
+                    } else if ((b & 0xFF) == SLIP_ESC) {
+                        out.write(SLIP_ESC);
+                        out.write(SLIP_ESC_ESC);
+                    } else {
+                        out.write(b);
+                    }
+                }
+                out.write(SLIP_END);
+                break;
+            case COBS:
+                if (text)
+                    out.write(0);
+                // Each block is a code byte, the distance to the next zero, followed by the bytes up to it; a block of
+                // 254 bytes (code 0xFF) has no zero after it
+                byte[] block = new byte[254];
+                int blockLength = 0;
+                for (byte b : payload) {
+                    if (b != 0)
+                        block[blockLength++] = b;
+                    if (b == 0 || blockLength == 254) {
+                        out.write(blockLength + 1);
+                        out.write(block, 0, blockLength);
+                        blockLength = 0;
+                    }
+                }
+                out.write(blockLength + 1);
+                out.write(block, 0, blockLength);
+                out.write(0);
+                break;
+            case LENGTH_PREFIXED:
+                if (payload.length > 0xFFFF)
+                    throw new IllegalArgumentException("Payload of " + payload.length + " bytes does not fit a length prefix");
+                out.write(sync);
+                out.write(payload.length >>> 8);
+                out.write(payload.length);
+                out.write(payload, 0, payload.length);
+                break;
+            default:
+                out.write(payload, 0, payload.length);
+                break;
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public String toString() {
+        return mode.name().toLowerCase() + (mode != Mode.LINES && text ? "+text" : "");
+    }
+}
@@ -0,0 +1,29 @@
+package monitor;
+
+import java.util.function.LongSupplier;
+
+public class Gauge implements GaugeMXBean {
+
+    private static final LongSupplier ZERO = () -> 0;
+
+    private volatile LongSupplier supplier;
+
+    public Gauge(LongSupplier supplier) {
+        this.supplier = supplier;
+    }
+
+    public synchronized void setSupplier(LongSupplier supplier) {
+        this.supplier = supplier;
+    }
+
+    // Reads 0 from now on if supplier is still the one read, so the gauge no longer keeps its closed owner reachable
+    public synchronized void release(LongSupplier supplier) {
+        if (this.supplier == supplier)
+            this.supplier = ZERO;
+    }
+
+    @Override
+    public long getValue() {
+        return supplier.getAsLong();
+    }
+}
@@ -0,0 +1,6 @@
+package monitor;
+
+public interface GaugeMXBean {
+
+    long getValue();
+}
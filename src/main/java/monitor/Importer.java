@@ -0,0 +1,345 @@
+package monitor;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+public class Importer {
+
+    private static final long MAX_CHUNK_SIZE = 64L * 1024 * 1024;
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final int FLUSH_FRAMES = 16 * 1024;
+
+    private final File file;
+    private final ConnectionPool connectionPool;
+    private final int parallelism;
+    private final long intervalMillis;
+    private long startMillis = -1;
+
+    public Importer(File file, ConnectionPool connectionPool, int parallelism, long intervalMillis) {
+        this.file = file;
+        this.connectionPool = connectionPool;
+        this.parallelism = parallelism;
+        this.intervalMillis = intervalMillis;
+    }
+
+    // Usage: Importer <capture-file> [--start <ISO-8601 instant>] [--interval-ms <millis>] [--threads <n>]
+    // Raw dumps carry no timestamps, so line n is stamped start + n * interval. By default the last line lands on the file's modification time.
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: Importer <capture-file> [--start <ISO-8601 instant>] [--interval-ms <millis>] [--threads <n>]");
+            System.exit(1);
+        }
+
+        File file = new File(args[0]);
+        long intervalMillis = 1000;
+        long startMillis = -1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--start":
+                    startMillis = Instant.parse(args[i + 1]).toEpochMilli();
+                    break;
+                case "--interval-ms":
+                    intervalMillis = Long.parseLong(args[i + 1]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        try (ConnectionPool connectionPool = ConnectionPool.fromConfig(threads)) {
+            Importer importer = new Importer(file, connectionPool, threads, intervalMillis);
+            if (startMillis >= 0)
+                importer.setStartMillis(startMillis);
+
+            long start = System.nanoTime();
+            Result result = importer.run();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Imported %d frames from %d lines in %.2f s (%d malformed)%n",
+                    result.frames, result.lines, seconds, result.malformed);
+        }
+    }
+
+    public void setStartMillis(long startMillis) {
+        this.startMillis = startMillis;
+    }
+
+    public Result run() throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            List<Chunk> chunks = split(channel);
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                // First pass only counts lines, so every chunk knows the global number of its first line
+                pool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+                        for (Chunk chunk : chunks)
+                            tasks.add(ForkJoinTask.adapt(chunk::countLines));
+                        invokeAll(tasks);
+                    }
+                });
+
+                long lines = 0;
+                for (Chunk chunk : chunks) {
+                    chunk.firstLine = lines;
+                    chunk.committedLine = lines;
+                    lines += chunk.lineCount;
+                }
+                if (startMillis < 0)
+                    startMillis = file.lastModified() - Math.max(0, lines - 1) * intervalMillis;
+
+                pool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+                        for (Chunk chunk : chunks)
+                            tasks.add(ForkJoinTask.adapt(chunk::load));
+                        invokeAll(tasks);
+                    }
+                });
+
+                Result result = new Result();
+                result.lines = lines;
+                for (Chunk chunk : chunks) {
+                    if (chunk.error != null)
+                        throw new IOException("Importing " + file + " failed, committed " + committedLines(chunks), chunk.error);
+                    result.frames += chunk.frameCount;
+                    result.malformed += chunk.malformedCount;
+                }
+                return result;
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private List<Chunk> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(1, size / (parallelism * 4L)));
+
+        List<Chunk> chunks = new ArrayList<>();
+        long start = 0;
+        while (start < size) {
+            // A chunk always ends on a newline, however long the line, so no line is counted twice
+            long end = lineEnd(channel, Math.min(size, start + chunkSize) - 1, size);
+            chunks.add(new Chunk(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start)));
+            start = end;
+        }
+        return chunks;
+    }
+
+    // Position just past the first newline at or after from, or size if the last line has none
+    private static long lineEnd(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(MAX_LINE_LENGTH);
+        long position = from;
+        while (position < size) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read < 0)
+                break;
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == '\n')
+                    return position + i + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    // Chunks commit on their own, so a failed import reports the lines that made it in: 1-based, "1-4000, 8001-12000"
+    private static String committedLines(List<Chunk> chunks) {
+        StringBuilder ranges = new StringBuilder();
+        long rangeStart = -1;
+        long rangeEnd = -1;
+        for (Chunk chunk : chunks) {
+            if (chunk.committedLine == chunk.firstLine)
+                continue;
+            if (chunk.firstLine != rangeEnd) {
+                appendRange(ranges, rangeStart, rangeEnd);
+                rangeStart = chunk.firstLine;
+            }
+            rangeEnd = chunk.committedLine;
+        }
+        appendRange(ranges, rangeStart, rangeEnd);
+        return ranges.length() == 0 ? "no lines" : "lines " + ranges;
+    }
+
+    private static void appendRange(StringBuilder ranges, long start, long end) {
+        if (start < 0)
+            return;
+        if (ranges.length() > 0)
+            ranges.append(", ");
+        ranges.append(start + 1).append('-').append(end);
+    }
+
+    public static class Result {
+        long lines;
+        long frames;
+        long malformed;
+
+        public long getLines() {
+            return lines;
+        }
+
+        public long getFrames() {
+            return frames;
+        }
+
+        public long getMalformed() {
+            return malformed;
+        }
+    }
+
+    private class Chunk {
+        private final MappedByteBuffer buffer;
+
+        long firstLine;
+        long lineCount;
+        long lineNumber;
+        // Lines from firstLine up to here are in the database
+        long committedLine;
+        long frameCount;
+        long malformedCount;
+        Exception error;
+
+        private final TelemetryField[] fields = TelemetryField.rawFields();
+        private final long[] times = new long[FLUSH_FRAMES];
+        private final double[][] values = new double[fields.length][FLUSH_FRAMES];
+        private int buffered;
+
+        Chunk(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void countLines() {
+            long count = 0;
+            int limit = buffer.limit();
+            for (int i = 0; i < limit; i++) {
+                if (buffer.get(i) == '\n')
+                    count++;
+            }
+            if (limit > 0 && buffer.get(limit - 1) != '\n')
+                count++;
+            lineCount = count;
+        }
+
+        void load() {
+            LogFrameDecoder decoder = new LogFrameDecoder();
+            LogFrame frame = new LogFrame();
+            byte[] line = new byte[MAX_LINE_LENGTH];
+
+            try {
+                lineNumber = firstLine;
+                int limit = buffer.limit();
+                int lineStart = 0;
+                while (lineStart < limit) {
+                    int lineEnd = lineStart;
+                    while (lineEnd < limit && buffer.get(lineEnd) != '\n')
+                        lineEnd++;
+
+                    int length = Math.min(lineEnd - lineStart, MAX_LINE_LENGTH);
+                    buffer.position(lineStart);
+                    buffer.get(line, 0, length);
+
+                    if (LogFrameDecoder.isLogFrame(line, 0, length)) {
+                        try {
+                            decoder.decode(line, 0, length, frame);
+                            add(frame);
+                        } catch (FrameFormatException e) {
+                            malformedCount++;
+                        }
+                    }
+
+                    lineNumber++;
+                    lineStart = lineEnd + 1;
+                }
+                flush(lineNumber);
+            } catch (Exception e) {
+                error = e;
+            }
+        }
+
+        private void add(LogFrame frame) throws SQLException, IOException, InterruptedException {
+            times[buffered] = startMillis + lineNumber * intervalMillis;
+            for (int i = 0; i < fields.length; i++)
+                values[i][buffered] = fields[i].extract(frame);
+            buffered++;
+            frameCount++;
+
+            if (buffered == FLUSH_FRAMES)
+                flush(lineNumber + 1);
+        }
+
+        private void flush(long throughLine) throws SQLException, IOException, InterruptedException {
+            if (buffered == 0) {
+                committedLine = throughLine;
+                return;
+            }
+
+            Connection connection = connectionPool.borrow();
+            boolean broken = true;
+            try {
+                connection.setAutoCommit(false);
+                if (connection.isWrapperFor(PGConnection.class)) {
+                    copy(connection.unwrap(PGConnection.class).getCopyAPI());
+                } else {
+                    insert(connection);
+                }
+                connection.commit();
+                broken = false;
+            } finally {
+                connectionPool.release(connection, broken);
+            }
+            buffered = 0;
+            committedLine = throughLine;
+        }
+
+        private void copy(CopyManager copyManager) throws SQLException, IOException {
+            StringBuilder text = new StringBuilder(buffered * 24);
+            for (int field = 0; field < fields.length; field++) {
+                text.setLength(0);
+                for (int i = 0; i < buffered; i++) {
+                    text.append(times[i]).append('\t');
+                    fields[field].appendText(text, values[field][i]);
+                    text.append('\n');
+                }
+                copyManager.copyIn("COPY " + fields[field].getTable() + "(time, value) FROM STDIN", new StringReader(text.toString()));
+            }
+        }
+
+        // Fallback for databases without COPY support
+        private void insert(Connection connection) throws SQLException {
+            for (int field = 0; field < fields.length; field++) {
+                try (PreparedStatement statement = connection.prepareStatement(Sample.insertSql(fields[field].getTable()))) {
+                    for (int i = 0; i < buffered; i++) {
+                        statement.setLong(1, times[i]);
+                        statement.setObject(2, fields[field].toValue(values[field][i]));
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package monitor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class LogFrame {
+
+    public static final int METER_VALUE_COUNT = 27;
+
+    public static final int ENERGY_WH = 0;
+    public static final int CURRENT_L1 = 1;
+    public static final int CURRENT_L2 = 2;
+    public static final int CURRENT_L3 = 3;
+    public static final int POWER_L1 = 4;
+    public static final int POWER_L2 = 5;
+    public static final int POWER_L3 = 6;
+    public static final int VOLTAGE_L1 = 7;
+    public static final int VOLTAGE_L2 = 8;
+    public static final int VOLTAGE_L3 = 9;
+    public static final int FREQUENCY = 10;
+    public static final int POWER_FACTOR = 11;
+    public static final int ACTIVE_POWER = 12;
+    public static final int REACTIVE_POWER = 13;
+    public static final int POSITIVE_ACTIVE_ENERGY_L1 = 14;
+    public static final int NEGATIVE_ACTIVE_ENERGY_L1 = 15;
+    public static final int POSITIVE_REACTIVE_ENERGY_L1 = 16;
+    public static final int NEGATIVE_REACTIVE_ENERGY_L1 = 17;
+    public static final int POSITIVE_ACTIVE_ENERGY_L2 = 18;
+    public static final int NEGATIVE_ACTIVE_ENERGY_L2 = 19;
+    public static final int POSITIVE_REACTIVE_ENERGY_L2 = 20;
+    public static final int NEGATIVE_REACTIVE_ENERGY_L2 = 21;
+    public static final int POSITIVE_ACTIVE_ENERGY_L3 = 22;
+    public static final int NEGATIVE_ACTIVE_ENERGY_L3 = 23;
+    public static final int POSITIVE_REACTIVE_ENERGY_L3 = 24;
+    public static final int NEGATIVE_REACTIVE_ENERGY_L3 = 25;
+    public static final int TEMPERATURE = 26;
+
+    private long time;
+
+    private byte[] serialNumber = new byte[32];
+    private int serialNumberLength;
+
+    private int locked;
+    private double pp;
+    private double cp;
+    private double cpn;
+    private final double[] meterValues = new double[METER_VALUE_COUNT];
+
+    private double dFixValue;
+    private int doStatus;
+    private int ledStatus;
+    private double meterKwh;
+    private double cp100;
+    private double cpn100;
+    private long lastIterations;
+    private Trace trace;
+
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    // The trace of the line this frame was decoded from, or null
+    public Trace getTrace() {
+        return trace;
+    }
+
+    public void setTrace(Trace trace) {
+        this.trace = trace;
+    }
+
+    public String getSerialNumber() {
+        return new String(serialNumber, 0, serialNumberLength, StandardCharsets.US_ASCII);
+    }
+
+    public byte[] copySerialNumber() {
+        return Arrays.copyOf(serialNumber, serialNumberLength);
+    }
+
+    public void setSerialNumber(byte[] bytes, int offset, int length) {
+        if (length > serialNumber.length)
+            serialNumber = new byte[Math.max(length, serialNumber.length * 2)];
+        System.arraycopy(bytes, offset, serialNumber, 0, length);
+        serialNumberLength = length;
+    }
+
+    public boolean serialNumberEquals(byte[] bytes, int offset, int length) {
+        if (length != serialNumberLength)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (serialNumber[i] != bytes[offset + i])
+                return false;
+        }
+        return true;
+    }
+
+    public int getLocked() {
+        return locked;
+    }
+
+    public boolean isLocked() {
+        return locked != 0;
+    }
+
+    public void setLocked(int locked) {
+        this.locked = locked;
+    }
+
+    public double getPp() {
+        return pp;
+    }
+
+    public void setPp(double pp) {
+        this.pp = pp;
+    }
+
+    public double getCp() {
+        return cp;
+    }
+
+    public void setCp(double cp) {
+        this.cp = cp;
+    }
+
+    public double getCpn() {
+        return cpn;
+    }
+
+    public void setCpn(double cpn) {
+        this.cpn = cpn;
+    }
+
+    public double getMeterValue(int index) {
+        return meterValues[index];
+    }
+
+    public void setMeterValue(int index, double value) {
+        meterValues[index] = value;
+    }
+
+    public double getTemperature() {
+        return meterValues[TEMPERATURE];
+    }
+
+    public double getCurrentL1() {
+        return meterValues[CURRENT_L1];
+    }
+
+    public double getDFixValue() {
+        return dFixValue;
+    }
+
+    public void setDFixValue(double dFixValue) {
+        this.dFixValue = dFixValue;
+    }
+
+    public int getDoStatus() {
+        return doStatus;
+    }
+
+    public void setDoStatus(int doStatus) {
+        this.doStatus = doStatus;
+    }
+
+    public int getLedStatus() {
+        return ledStatus;
+    }
+
+    public void setLedStatus(int ledStatus) {
+        this.ledStatus = ledStatus;
+    }
+
+    public double getMeterKwh() {
+        return meterKwh;
+    }
+
+    public void setMeterKwh(double meterKwh) {
+        this.meterKwh = meterKwh;
+    }
+
+    public double getCp100() {
+        return cp100;
+    }
+
+    public void setCp100(double cp100) {
+        this.cp100 = cp100;
+    }
+
+    public double getCpn100() {
+        return cpn100;
+    }
+
+    public void setCpn100(double cpn100) {
+        this.cpn100 = cpn100;
+    }
+
+    public long getLastIterations() {
+        return lastIterations;
+    }
+
+    public void setLastIterations(long lastIterations) {
+        this.lastIterations = lastIterations;
+    }
+
+    public void copyTo(LogFrame other) {
+        other.time = time;
+        other.setSerialNumber(serialNumber, 0, serialNumberLength);
+        other.locked = locked;
+        other.pp = pp;
+        other.cp = cp;
+        other.cpn = cpn;
+        System.arraycopy(meterValues, 0, other.meterValues, 0, METER_VALUE_COUNT);
+        other.dFixValue = dFixValue;
+        other.doStatus = doStatus;
+        other.ledStatus = ledStatus;
+        other.meterKwh = meterKwh;
+        other.cp100 = cp100;
+        other.cpn100 = cpn100;
+        other.lastIterations = lastIterations;
+    }
+
+    @Override
+    public String toString() {
+        return "LogFrame{" +
+                "time=" + time +
+                ", serialNumber=" + getSerialNumber() +
+                ", locked=" + locked +
+                ", pp=" + pp +
+                ", cp=" + cp +
+                ", meterValues=" + Arrays.toString(meterValues) +
+                ", ledStatus=" + ledStatus +
+                '}';
+    }
+}
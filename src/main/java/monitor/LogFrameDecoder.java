@@ -0,0 +1,277 @@
+package monitor;
+
+import java.nio.charset.StandardCharsets;
+
+public class LogFrameDecoder implements FrameDecoder {
+
+    private static final byte[] PREFIX = {'l', 'o', 'g', '['};
+    private static final int PARAMETER_COUNT = 10;
+    private static final int SUFFIX_PART_COUNT = 5;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    // Text frames, and the same text wrapped whole in a packet by boards with a binary framing
+    @Override
+    public void register(DecoderRegistry registry) {
+        for (Framing.Mode mode : Framing.Mode.values())
+            registry.register(mode, PREFIX, this);
+    }
+
+    public static boolean isLogFrame(byte[] bytes, int offset, int length) {
+        if (length < PREFIX.length)
+            return false;
+        for (int i = 0; i < PREFIX.length; i++) {
+            if (bytes[offset + i] != PREFIX[i])
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public LogFrame decode(byte[] bytes, int offset, int length, LogFrame frame) throws FrameFormatException {
+        int end = offset + length;
+        while (end > offset && (bytes[end - 1] == '\n' || bytes[end - 1] == '\r'))
+            end--;
+
+        if (!isLogFrame(bytes, offset, end - offset))
+            throw new FrameFormatException("Frame does not start with log[", 0);
+
+        int serialStart = offset + PREFIX.length;
+        int serialEnd = indexOf(bytes, serialStart, end, (byte) ']');
+        if (serialEnd < 0 || serialEnd + 1 >= end || bytes[serialEnd + 1] != ':')
+            throw new FrameFormatException("Serial number is not terminated by ]:", serialStart - offset);
+        frame.setSerialNumber(bytes, serialStart, serialEnd - serialStart);
+
+        int position = serialEnd + 2;
+        for (int parameter = 0; parameter < PARAMETER_COUNT; parameter++) {
+            int parameterEnd = indexOf(bytes, position, end, (byte) ';');
+            if (parameterEnd < 0) {
+                if (parameter < PARAMETER_COUNT - 1)
+                    throw new FrameFormatException("Expected " + PARAMETER_COUNT + " parameters, found " + (parameter + 1), end - offset);
+                parameterEnd = end;
+            }
+
+            switch (parameter) {
+                case 1:
+                    frame.setLocked((int) parseLong(bytes, position, parameterEnd, offset, "locked"));
+                    break;
+                case 2:
+                    frame.setPp(parseDouble(bytes, position, parameterEnd, offset, "pp"));
+                    break;
+                case 3:
+                    frame.setCp(parseDouble(bytes, position, parameterEnd, offset, "cp"));
+                    break;
+                case 4:
+                    frame.setCpn(parseOptionalDouble(bytes, position, parameterEnd));
+                    break;
+                case 6:
+                    decodeMeterValues(bytes, position, parameterEnd, offset, frame);
+                    break;
+                case 9:
+                    decodeSuffix(bytes, position, parameterEnd, offset, frame);
+                    break;
+                default:
+                    break;
+            }
+
+            position = parameterEnd + 1;
+        }
+
+        return frame;
+    }
+
+    private void decodeMeterValues(byte[] bytes, int start, int end, int offset, LogFrame frame) throws FrameFormatException {
+        int position = start;
+        for (int i = 0; i < LogFrame.METER_VALUE_COUNT; i++) {
+            int valueEnd = indexOf(bytes, position, end, (byte) ',');
+            if (valueEnd < 0) {
+                if (i < LogFrame.METER_VALUE_COUNT - 1)
+                    throw new FrameFormatException("Expected " + LogFrame.METER_VALUE_COUNT + " meter values, found " + (i + 1), end - offset);
+                valueEnd = end;
+            }
+            frame.setMeterValue(i, parseDouble(bytes, position, valueEnd, offset, "meter value"));
+            position = valueEnd + 1;
+        }
+    }
+
+    private void decodeSuffix(byte[] bytes, int start, int end, int offset, LogFrame frame) throws FrameFormatException {
+        int position = start;
+        for (int part = 0; part < SUFFIX_PART_COUNT; part++) {
+            int partEnd = indexOf(bytes, position, end, (byte) '|');
+            if (partEnd < 0) {
+                if (part < SUFFIX_PART_COUNT - 1)
+                    throw new FrameFormatException("Expected " + SUFFIX_PART_COUNT + " suffix parts, found " + (part + 1), end - offset);
+                partEnd = end;
+            }
+
+            switch (part) {
+                case 0:
+                    frame.setDFixValue(parseOptionalDouble(bytes, position, partEnd));
+                    break;
+                case 1:
+                    frame.setDoStatus((int) parseOptionalLong(bytes, position, partEnd));
+                    break;
+                case 2:
+                    frame.setLedStatus((int) parseLong(bytes, position, partEnd, offset, "led status"));
+                    break;
+                case 3:
+                    frame.setMeterKwh(parseOptionalDouble(bytes, position, partEnd));
+                    break;
+                case 4:
+                    decodeIterations(bytes, position, partEnd, frame);
+                    break;
+            }
+
+            position = partEnd + 1;
+        }
+    }
+
+    private void decodeIterations(byte[] bytes, int start, int end, LogFrame frame) {
+        int cp100End = indexOf(bytes, start, end, (byte) ',');
+        int cpn100End = cp100End < 0 ? -1 : indexOf(bytes, cp100End + 1, end, (byte) ',');
+        int lastIterationsEnd = cpn100End < 0 ? -1 : indexOf(bytes, cpn100End + 1, end, (byte) ',');
+
+        frame.setCp100(cp100End < 0 ? Double.NaN : parseOptionalDouble(bytes, start, cp100End));
+        frame.setCpn100(cpn100End < 0 ? Double.NaN : parseOptionalDouble(bytes, cp100End + 1, cpn100End));
+        frame.setLastIterations(cpn100End < 0 ? -1 : parseOptionalLong(bytes, cpn100End + 1, lastIterationsEnd < 0 ? end : lastIterationsEnd));
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == b)
+                return i;
+        }
+        return -1;
+    }
+
+    // Optional fields are often empty or a placeholder, so they are parsed without building the exception a required
+    // field is reported with: NaN or -1 when there is no number
+    private static double parseOptionalDouble(byte[] bytes, int start, int end) {
+        double value = parsePlainDecimal(bytes, start, end);
+        if (!Double.isNaN(value) || !isDecimal(bytes, start, end))
+            return value;
+        return Double.parseDouble(text(bytes, start, end));
+    }
+
+    private static long parseOptionalLong(byte[] bytes, int start, int end) {
+        long value = parseDigits(bytes, start, end);
+        return value == Long.MIN_VALUE ? -1 : value;
+    }
+
+    static long parseLong(byte[] bytes, int start, int end, int offset, String name) throws FrameFormatException {
+        long value = parseDigits(bytes, start, end);
+        if (value == Long.MIN_VALUE)
+            throw new FrameFormatException("Invalid integer for " + name + ": '" + text(bytes, start, end) + "'", start - offset);
+        return value;
+    }
+
+    static double parseDouble(byte[] bytes, int start, int end, int offset, String name) throws FrameFormatException {
+        double value = parsePlainDecimal(bytes, start, end);
+        if (!Double.isNaN(value))
+            return value;
+        return parseDoubleSlow(bytes, start, end, offset, name);
+    }
+
+    // Long.MIN_VALUE, which 18 digits cannot reach, when the bytes are not an optionally signed integer
+    private static long parseDigits(byte[] bytes, int start, int end) {
+        int position = start;
+        boolean negative = position < end && bytes[position] == '-';
+        if (negative)
+            position++;
+        if (position == end || end - position > 18)
+            return Long.MIN_VALUE;
+
+        long value = 0;
+        for (; position < end; position++) {
+            int digit = bytes[position] - '0';
+            if (digit < 0 || digit > 9)
+                return Long.MIN_VALUE;
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    // Digits with an optional sign and decimal point whose value a double holds exactly; NaN for anything else, which is
+    // left to Double.parseDouble
+    private static double parsePlainDecimal(byte[] bytes, int start, int end) {
+        int position = start;
+        boolean negative = position < end && bytes[position] == '-';
+        if (negative)
+            position++;
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; position < end; position++) {
+            byte b = bytes[position];
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else if (b >= '0' && b <= '9' && digits < 18) {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (fractionDigits >= 0)
+                    fractionDigits++;
+            } else {
+                return Double.NaN;
+            }
+        }
+
+        if (digits == 0 || mantissa >= MAX_EXACT_MANTISSA)
+            return Double.NaN;
+
+        // Both operands are exact doubles, so a single division is correctly rounded
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    // Sign, digits with at most one decimal point, then an optional exponent: the subset of Double.parseDouble's syntax
+    // an optional field is read with, so it never throws
+    private static boolean isDecimal(byte[] bytes, int start, int end) {
+        int position = start;
+        if (position < end && (bytes[position] == '-' || bytes[position] == '+'))
+            position++;
+
+        int digits = 0;
+        boolean point = false;
+        for (; position < end && bytes[position] != 'e' && bytes[position] != 'E'; position++) {
+            byte b = bytes[position];
+            if (b == '.' && !point)
+                point = true;
+            else if (b >= '0' && b <= '9')
+                digits++;
+            else
+                return false;
+        }
+        if (digits == 0)
+            return false;
+        if (position == end)
+            return true;
+
+        position++;
+        if (position < end && (bytes[position] == '-' || bytes[position] == '+'))
+            position++;
+        if (position == end)
+            return false;
+        for (; position < end; position++) {
+            if (bytes[position] < '0' || bytes[position] > '9')
+                return false;
+        }
+        return true;
+    }
+
+    private static double parseDoubleSlow(byte[] bytes, int start, int end, int offset, String name) throws FrameFormatException {
+        try {
+            return Double.parseDouble(text(bytes, start, end));
+        } catch (NumberFormatException e) {
+            throw new FrameFormatException("Invalid number for " + name + ": '" + text(bytes, start, end) + "'", start - offset);
+        }
+    }
+
+    private static String text(byte[] bytes, int start, int end) {
+        return new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+    }
+}
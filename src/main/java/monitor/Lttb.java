@@ -0,0 +1,66 @@
+package monitor;
+
+public final class Lttb {
+
+    private Lttb() {
+    }
+
+    // Largest-Triangle-Three-Buckets: keeps the first and last point and, per bucket in between, the point spanning the
+    // largest triangle with the previously kept point and the next bucket's average. Returns the number of points written.
+    public static int downsample(long[] times, double[] values, int count, int threshold, long[] sampledTimes, double[] sampledValues) {
+        if (count <= threshold) {
+            System.arraycopy(times, 0, sampledTimes, 0, count);
+            System.arraycopy(values, 0, sampledValues, 0, count);
+            return count;
+        }
+        if (threshold < 3)
+            throw new IllegalArgumentException("Threshold must be at least 3: " + threshold);
+
+        // Times relative to the first point keep the triangle areas well inside double precision
+        long origin = times[0];
+        double bucketSize = (double) (count - 2) / (threshold - 2);
+
+        int kept = 0;
+        sampledTimes[kept] = times[0];
+        sampledValues[kept++] = values[0];
+
+        int previous = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int nextStart = (int) ((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, count);
+            double averageTime = 0;
+            double averageValue = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageTime += times[i] - origin;
+                averageValue += values[i];
+            }
+            int nextCount = nextEnd - nextStart;
+            averageTime /= nextCount;
+            averageValue /= nextCount;
+
+            double previousTime = times[previous] - origin;
+            double previousValue = values[previous];
+
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = nextStart;
+            double maxArea = -1;
+            int selected = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((previousTime - averageTime) * (values[i] - previousValue)
+                        - (previousTime - (times[i] - origin)) * (averageValue - previousValue));
+                if (area > maxArea) {
+                    maxArea = area;
+                    selected = i;
+                }
+            }
+
+            sampledTimes[kept] = times[selected];
+            sampledValues[kept++] = values[selected];
+            previous = selected;
+        }
+
+        sampledTimes[kept] = times[count - 1];
+        sampledValues[kept++] = values[count - 1];
+        return kept;
+    }
+}
@@ -0,0 +1,59 @@
+package monitor;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+public class Metrics {
+
+    private static final String DOMAIN = "jaspm";
+
+    private static final Metrics instance = new Metrics();
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name) {
+        return instance.counters.computeIfAbsent(name, n -> instance.register("Counter", n, new Counter()));
+    }
+
+    public static Gauge gauge(String name, LongSupplier supplier) {
+        Gauge gauge = instance.gauges.computeIfAbsent(name, n -> instance.register("Gauge", n, new Gauge(supplier)));
+        gauge.setSupplier(supplier);
+        return gauge;
+    }
+
+    public static Gauge gauge(String name) {
+        return instance.gauges.computeIfAbsent(name, n -> instance.register("Gauge", n, new Gauge(() -> 0)));
+    }
+
+    // Called by the owner of supplier when it closes; a gauge another owner has taken over since is left alone
+    public static void release(String name, LongSupplier supplier) {
+        Gauge gauge = instance.gauges.get(name);
+        if (gauge != null)
+            gauge.release(supplier);
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        return instance.histograms.computeIfAbsent(name, n -> instance.register("Histogram", n, new LatencyHistogram()));
+    }
+
+    private <T> T register(String type, String name, T metric) {
+        try {
+            mBeanServer.registerMBean(metric, new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name)));
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        return metric;
+    }
+}
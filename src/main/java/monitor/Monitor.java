@@ -1,37 +1,129 @@
 package monitor;
 
-import javafx.concurrent.Task;
-import jssc.SerialPort;
-import jssc.SerialPortException;
-import jssc.SerialPortList;
-
+import java.io.File;
+import java.io.IOException;
 import java.time.Instant;
-import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+public class Monitor implements Transport.Receiver {
 
-public class Monitor {
+    private static final int RECEIVE_BUFFER_SIZE = 64 * 1024;
+    private static final int RECORD_ARENA_SIZE = 64 * 1024;
+    private static final long MAX_PENDING_BYTES = 4 * 1024 * 1024;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
-    private SerialPort serialPort;
+    private final Transport transport;
+    private final String portName;
     private Consumer<Record> recordCallback;
     private Consumer<String> interactiveCallback;
+    private Consumer<LogFrame> frameCallback;
+    private CaptureLog captureLog;
+    private RuleEngine ruleEngine;
+
+    private final OutboundWriter outbound;
+
+    private final Framing framing;
+    private final ReceiveBuffer receiveBuffer;
+    private final DecoderRegistry.Trie lineDecoders;
+    private final DecoderRegistry.Trie packetDecoders;
+    private final LogFrame frame = new LogFrame();
+    private final String packetLabel;
+    private byte[] packetText = new byte[256];
+
+    private Executor executor;
+    private final Queue<Chunk> inbound = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private long chunkTime = Transport.LIVE;
+
+    private volatile boolean connected;
+    private final LongSupplier discardedGauge;
+    private final LongSupplier malformedPacketsGauge;
+    private final LongSupplier connectedGauge = () -> connected ? 1 : 0;
+    private volatile boolean stopped;
+    private boolean openFailureReported;
+    private long disconnectedNanos;
 
-    private final AtomicBoolean listening = new AtomicBoolean(true);
+    // Off unless the caller sets one, typically Tracer.fromConfig()
+    private Tracer tracer = Tracer.off();
+    private long chunkNanos;
+    private long lineStartNanos;
+    private Trace trace;
+
+    private final Counter bytesReceived;
+    private final Counter linesReceived;
+    private final Counter packetsReceived;
+    private final Counter framesDecoded;
+    private final Counter malformedFrames;
+    private final LatencyHistogram decodeLatency;
+    private final Counter disconnects;
+    private final LatencyHistogram reconnectLatency;
+
+    private byte[] recordArena = new byte[RECORD_ARENA_SIZE];
+    private int recordArenaPosition;
 
     public Monitor(String portName, int baudRate, int dataBits, int stopBits) {
-        this.serialPort = new SerialPort(portName);
+        this(portName, Transport.forName(portName, baudRate, dataBits, stopBits));
+    }
 
-        try {
-            serialPort.openPort();
-            serialPort.setParams(baudRate, dataBits, stopBits, SerialPort.PARITY_NONE);
-            serialPort.setFlowControlMode(SerialPort.FLOWCONTROL_NONE);
-        } catch (SerialPortException e) {
-            e.printStackTrace();
-        }
+    public Monitor(String portName, Transport transport) {
+        this(portName, transport, Framing.fromConfig(portName), DecoderRegistry.load());
+    }
+
+    public Monitor(String portName, Transport transport, Framing framing, DecoderRegistry decoders) {
+        this(portName, transport, framing, decoders, OutboundWriter.fromConfig(portName, transport::write));
+    }
+
+    // Reads nothing from Config, so tests can build one without a config file; the writer's sink should be transport::write
+    public Monitor(String portName, Transport transport, Framing framing, DecoderRegistry decoders, OutboundWriter outbound) {
+        this.transport = transport;
+        this.portName = portName;
+        this.framing = framing;
+        this.receiveBuffer = new ReceiveBuffer(RECEIVE_BUFFER_SIZE, framing, this::handleLine, this::handlePacket);
+        this.lineDecoders = decoders.compile(Framing.Mode.LINES);
+        this.packetDecoders = decoders.compile(framing.getMode());
+        this.packetLabel = "[" + framing.getMode().name().toLowerCase() + "] ";
+
+        String metricPrefix = "monitor." + portName + ".";
+        this.bytesReceived = Metrics.counter(metricPrefix + "bytes");
+        this.linesReceived = Metrics.counter(metricPrefix + "lines");
+        this.packetsReceived = Metrics.counter(metricPrefix + "packets");
+        this.discardedGauge = receiveBuffer::getDiscardedBytes;
+        this.malformedPacketsGauge = receiveBuffer::getMalformedPackets;
+        Metrics.gauge(metricPrefix + "discarded", discardedGauge);
+        Metrics.gauge(metricPrefix + "packets.malformed", malformedPacketsGauge);
+        this.framesDecoded = Metrics.counter(metricPrefix + "frames");
+        this.malformedFrames = Metrics.counter(metricPrefix + "frames.malformed");
+        this.decodeLatency = Metrics.histogram(metricPrefix + "decode");
+        this.disconnects = Metrics.counter(metricPrefix + "disconnects");
+        this.reconnectLatency = Metrics.histogram(metricPrefix + "reconnect");
+        Metrics.gauge(metricPrefix + "connected", connectedGauge);
+        this.outbound = outbound;
+    }
+
+    public String getPortName() {
+        return portName;
+    }
+
+    // Queued for the port's writer thread; returns false when the queue is full and the bytes were dropped
+    public boolean send(byte[] bytes) {
+        return outbound.offer(bytes);
     }
 
-    public void writeBytes(byte[] bytes) throws SerialPortException {
-        serialPort.writeBytes(bytes);
+    public void runScript(File script) {
+        outbound.runScript(script);
+    }
+
+    public void cancelScript() {
+        outbound.cancelScript();
     }
 
     public void setRecordCallback(Consumer<Record> recordCallback) {
@@ -42,44 +134,268 @@ public class Monitor {
         this.interactiveCallback = interactiveCallback;
     }
 
-    public void stopListening() {
-        listening.set(false);
+    public void setFrameCallback(Consumer<LogFrame> frameCallback) {
+        this.frameCallback = frameCallback;
     }
 
-    public Task<Void> initListenTask() {
-        return new Task<Void>() {
-            @Override
-            protected Void call() {
-                serialListenLoop();
-                return null;
-            }
-        };
+    public void setCaptureLog(CaptureLog captureLog) {
+        this.captureLog = captureLog;
+    }
+
+    public void setRuleEngine(RuleEngine ruleEngine) {
+        this.ruleEngine = ruleEngine;
+    }
+
+    public void setTracer(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    // A port that cannot be opened yet leaves the monitor disconnected, for a PortWatcher to retry
+    public void start(Executor executor) {
+        this.executor = executor;
+        outbound.start();
+        connect();
     }
 
-    private void serialListenLoop() {
+    public void stop() {
+        synchronized (this) {
+            stopped = true;
+            connected = false;
+        }
+        outbound.stop();
+        transport.close();
+
+        String metricPrefix = "monitor." + portName + ".";
+        Metrics.release(metricPrefix + "discarded", discardedGauge);
+        Metrics.release(metricPrefix + "packets.malformed", malformedPacketsGauge);
+        Metrics.release(metricPrefix + "connected", connectedGauge);
+    }
+
+    // Opens the transport again after a disconnect. The receive buffer, record arena and callbacks are left as they
+    // were, so a line cut off by the drop completes with the first bytes after it and the window never notices.
+    public synchronized boolean connect() {
+        if (stopped || connected)
+            return connected;
         try {
-            int lineBufferSize = 1024;
-            byte[] lineBuffer = new byte[lineBufferSize];
-            int lineBufferIndex = 0;
+            transport.open(this);
+        } catch (IOException e) {
+            transport.close();
+            // Retried on every scan while the device is coming up, so only the first failure is reported
+            if (!openFailureReported)
+                System.err.println(portName + ": cannot open, " + e.getMessage());
+            openFailureReported = true;
+            return false;
+        }
+
+        connected = true;
+        openFailureReported = false;
+        if (disconnectedNanos != 0) {
+            reconnectLatency.recordSince(disconnectedNanos);
+            System.out.println(portName + ": reconnected after "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - disconnectedNanos) + " ms");
+            disconnectedNanos = 0;
+        }
+        return true;
+    }
+
+    // From the transport's own thread when a read fails, or from a PortWatcher when the port disappears
+    @Override
+    public void disconnected(String reason) {
+        // Checked before locking, so a read failing while the watcher already closes the port does not block that close
+        if (!connected)
+            return;
+        synchronized (this) {
+            if (!connected)
+                return;
+            connected = false;
+            disconnectedNanos = System.nanoTime();
+            transport.close();
+        }
+        disconnects.increment();
+        System.out.println(portName + ": disconnected, " + reason);
+    }
 
-            while (listening.get()) {
-                byte[] buffer = serialPort.readBytes(1);
-                final byte byteRead = buffer[0];
+    // Transport threads only read; framing, decoding and callbacks run on the shared executor, one drain per port at a time.
+    // When draining falls this far behind the reading thread is held back, which is TCP flow control for sockets and
+    // keeps a replay at full speed from queueing the whole file
+    @Override
+    public void received(byte[] bytes, long time) {
+        inbound.offer(new Chunk(bytes, time, System.nanoTime()));
+        scheduleDrain();
 
-                lineBuffer[lineBufferIndex++] = byteRead;
+        if (pendingBytes.addAndGet(bytes.length) > MAX_PENDING_BYTES) {
+            while (pendingBytes.get() > MAX_PENDING_BYTES && !Thread.currentThread().isInterrupted())
+                LockSupport.parkNanos(100_000);
+        }
+    }
 
-                if (byteRead == '\n') {
-                    Record record = new Record(Instant.now().toEpochMilli(), new String(Arrays.copyOfRange(lineBuffer, 0, lineBufferIndex)));
-                    recordCallback.accept(record);
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true))
+            executor.execute(this::drain);
+    }
 
-                    lineBuffer = new byte[lineBufferSize];
-                    lineBufferIndex = 0;
-                } else {
-                    interactiveCallback.accept(new String(new byte[]{byteRead}));
-                }
+    private void drain() {
+        try {
+            Chunk chunk;
+            while ((chunk = inbound.poll()) != null) {
+                pendingBytes.addAndGet(-chunk.bytes.length);
+                chunkTime = chunk.time;
+                chunkNanos = chunk.nanos;
+                handleBytes(chunk.bytes, chunk.bytes.length);
             }
-        } catch (SerialPortException e) {
+        } catch (RuntimeException e) {
             e.printStackTrace();
+        } finally {
+            draining.set(false);
+        }
+
+        if (!inbound.isEmpty())
+            scheduleDrain();
+    }
+
+    private void handleBytes(byte[] bytes, int length) {
+        bytesReceived.add(length);
+        // Nothing pending means the next line starts in this read
+        if (receiveBuffer.pending() == 0)
+            lineStartNanos = chunkNanos;
+        receiveBuffer.receive(bytes, 0, length);
+
+        // A partial packet would only show up as noise
+        if (framing.getMode() != Framing.Mode.LINES)
+            return;
+
+        int lastNewline = length - 1;
+        while (lastNewline >= 0 && bytes[lastNewline] != '\n')
+            lastNewline--;
+
+        int partialLineStart = lastNewline + 1;
+        if (interactiveCallback != null && partialLineStart < length)
+            interactiveCallback.accept(new String(bytes, partialLineStart, length - partialLineStart, Record.CHARSET));
+    }
+
+    private void handleLine(byte[] buffer, int offset, int length) {
+        long time = chunkTime != Transport.LIVE ? chunkTime : Instant.now().toEpochMilli();
+        linesReceived.increment();
+        beginTrace();
+        if (captureLog != null)
+            captureLog.append(time, buffer, offset, length);
+        outbound.lineReceived(buffer, offset, length);
+
+        if (recordCallback != null)
+            recordCallback.accept(newRecord(time, buffer, offset, length));
+        if (ruleEngine != null)
+            ruleEngine.evaluateLine(time, buffer, offset, length);
+
+        if (frameCallback != null || ruleEngine != null)
+            decode(lineDecoders.find(buffer, offset, length), time, buffer, offset, length);
+    }
+
+    // Captured as received so a replay frames it again; shown and matched by rules as its payload
+    private void handlePacket(byte[] payload, int payloadLength, byte[] raw, int rawLength) {
+        long time = chunkTime != Transport.LIVE ? chunkTime : Instant.now().toEpochMilli();
+        packetsReceived.increment();
+        beginTrace();
+        if (captureLog != null)
+            captureLog.append(time, raw, 0, rawLength);
+        outbound.lineReceived(payload, 0, payloadLength);
+
+        if (recordCallback != null) {
+            int textLength = packetText(payload, payloadLength);
+            recordCallback.accept(newRecord(time, packetText, 0, textLength));
+        }
+        if (ruleEngine != null)
+            ruleEngine.evaluateLine(time, payload, 0, payloadLength);
+
+        if (frameCallback != null || ruleEngine != null)
+            decode(packetDecoders.find(payload, 0, payloadLength), time, payload, 0, payloadLength);
+    }
+
+    private void decode(FrameDecoder decoder, long time, byte[] buffer, int offset, int length) {
+        if (decoder == null)
+            return;
+        try {
+            long decodeStart = System.nanoTime();
+            decoder.decode(buffer, offset, length, frame);
+            decodeLatency.recordSince(decodeStart);
+            framesDecoded.increment();
+            if (trace != null)
+                trace.mark(Trace.Stage.DECODED);
+
+            frame.setTime(time);
+            frame.setTrace(trace);
+            if (ruleEngine != null)
+                ruleEngine.evaluateFrame(frame);
+            if (frameCallback != null)
+                frameCallback.accept(frame);
+        } catch (FrameFormatException e) {
+            malformedFrames.increment();
+            System.err.println("Malformed frame: " + e.getMessage() + ": " + new String(buffer, offset, length, Record.CHARSET).trim());
+        }
+    }
+
+    // Whatever follows this line starts in the current read at the earliest
+    private void beginTrace() {
+        trace = tracer.begin(lineStartNanos);
+        lineStartNanos = chunkNanos;
+        if (trace != null)
+            trace.mark(Trace.Stage.LINE_COMPLETE);
+    }
+
+    // Packets of printable text read as text, anything else as hex, both behind the framing name
+    private int packetText(byte[] payload, int length) {
+        boolean printable = true;
+        for (int i = 0; i < length && printable; i++) {
+            int b = payload[i] & 0xFF;
+            printable = (b >= 0x20 && b < 0x7F) || b == '\t' || b == '\r' || b == '\n';
+        }
+
+        int textLength = packetLabel.length() + (printable ? length : length * 3);
+        if (textLength > packetText.length)
+            packetText = new byte[Math.max(textLength, packetText.length * 2)];
+        int position = 0;
+        for (int i = 0; i < packetLabel.length(); i++)
+            packetText[position++] = (byte) packetLabel.charAt(i);
+
+        if (printable) {
+            System.arraycopy(payload, 0, packetText, position, length);
+            return textLength;
+        }
+        for (int i = 0; i < length; i++) {
+            int b = payload[i] & 0xFF;
+            packetText[position++] = (byte) HEX_DIGITS[b >>> 4];
+            packetText[position++] = (byte) HEX_DIGITS[b & 0xF];
+            if (i + 1 < length)
+                packetText[position++] = ' ';
+        }
+        return position;
+    }
+
+    // Records are slices of shared chunks, so a line costs one small object rather than a String and two arrays
+    private Record newRecord(long time, byte[] buffer, int offset, int length) {
+        if (length > recordArena.length - recordArenaPosition) {
+            recordArena = new byte[Math.max(RECORD_ARENA_SIZE, length)];
+            recordArenaPosition = 0;
+        }
+
+        System.arraycopy(buffer, offset, recordArena, recordArenaPosition, length);
+        Record record = new Record(portName, time, recordArena, recordArenaPosition, length, trace);
+        recordArenaPosition += length;
+        return record;
+    }
+
+    private static class Chunk {
+        final byte[] bytes;
+        final long time;
+        final long nanos;
+
+        Chunk(byte[] bytes, long time, long nanos) {
+            this.bytes = bytes;
+            this.time = time;
+            this.nanos = nanos;
         }
     }
 }
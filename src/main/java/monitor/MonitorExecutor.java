@@ -0,0 +1,34 @@
+package monitor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class MonitorExecutor {
+
+    private MonitorExecutor() {
+    }
+
+    // Bounded to the core count however many ports are open; threads are virtual on runtimes that have them
+    public static ExecutorService create(int portCount) {
+        int threads = Math.max(1, Math.min(portCount, Runtime.getRuntime().availableProcessors()));
+        return Executors.newFixedThreadPool(threads, threadFactory());
+    }
+
+    private static ThreadFactory threadFactory() {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "monitor-", 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicInteger count = new AtomicInteger();
+            return runnable -> {
+                Thread thread = new Thread(runnable, "monitor-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+}
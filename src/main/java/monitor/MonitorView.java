@@ -1,10 +1,9 @@
 package monitor;
 
-import com.moandjiezana.toml.Toml;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyStringWrapper;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.geometry.Orientation;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.input.KeyCode;
@@ -12,44 +11,141 @@ import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
-import jssc.SerialPortException;
+import javafx.util.Duration;
 
 import java.io.File;
 import java.io.IOException;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
 import java.time.Instant;
 import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.PatternSyntaxException;
 
 public class MonitorView extends Stage {
 
-    final ObservableList<Record> data = FXCollections.observableArrayList();
+    final RecordStore data = RecordStore.fromConfig();
     final TableView<Record> serialOutput = new TableView<>(data);
     final TextField serialInteractiveOutput = new TextField();
     final TextField userInput = new TextField();
     final CheckBox interactiveMode = new CheckBox("Interactive");
 
-    public MonitorView(Settings settings) {
-        initializeUI();
-        Monitor monitor = initializeMonitor(settings);
-        coupleUIEvents(monitor);
+    final ComboBox<String> targetPort = new ComboBox<>();
+
+    final TextField filter = new TextField();
+    final CheckBox regexFilter = new CheckBox("Regex");
+    final TextField filterFrom = new TextField();
+    final TextField filterTo = new TextField();
+    private FilteredRecords filteredRecords;
+    // Typing only searches once the filter fields have been still for the delay, on one background thread
+    private final PauseTransition filterDelay = new PauseTransition(Duration.millis(Config.get().getLong("ui.filter_delay_ms", 150L)));
+    private final ExecutorService filterExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "monitor-filter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<?> filterSearch;
+    private int filterGeneration;
+
+    final ProgressBar exportProgress = new ProgressBar(0);
+    final Label exportStatus = new Label();
+    final HBox exportPane = new HBox(exportProgress, exportStatus);
+    private Exporter exporter;
+
+    private static final DateTimeFormatter TIME_FORMATTER =
+            DateTimeFormatter
+                    .ofPattern("dd.MM.yyyy:HH.mm.ss")
+                    .withLocale(Locale.getDefault())
+                    .withZone(ZoneId.systemDefault());
+
+    private final TelemetryWriter telemetryWriter = TelemetryWriter.fromConfig().start();
+    private final LatencyHistogram sendDataLatency = Metrics.histogram("monitor.sendData");
+    private final Map<String, Monitor> monitors = new LinkedHashMap<>();
+    private final Map<String, CaptureLog> captureLogs = new LinkedHashMap<>();
+    private final long sessionStart = System.currentTimeMillis();
+    private final ExecutorService monitorExecutor;
+    private final UiBridge uiBridge;
+    private final StatusPane statusPane;
+    private final TelemetrySeries telemetrySeries = TelemetrySeries.fromConfig();
+    private final ChartPane chartPane = new ChartPane(telemetrySeries, Config.get().getLong("chart.refresh_ms", 250L));
+    private final List<AlertRule> alertRules = AlertRule.fromConfig();
+    private final AlertLog alertLog = AlertLog.fromConfig();
+    private final ArchiveWriter archive = Config.get().getBoolean("archive.enabled", true) ? ArchiveWriter.fromConfig().start() : null;
+    private final PortWatcher portWatcher;
+    private final TraceReport traceReport = TraceReport.fromConfig();
+    private final AlertPane alertPane = new AlertPane(Config.get().getLong("alerts.max_shown", 500L).intValue());
+
+    public MonitorView(List<Settings> settingsList, PortWatcher portWatcher) {
+        this.portWatcher = portWatcher;
+        List<String> portNames = new ArrayList<>();
+        for (Settings settings : settingsList)
+            portNames.add(settings.getPortName());
+
+        monitorExecutor = MonitorExecutor.create(portNames.size());
+        uiBridge = new UiBridge(
+                Config.get().getLong("ui.max_records_per_frame", 2000L).intValue(),
+                portNames.size() > 1 ? Config.get().getLong("ui.reorder_window_ms", 100L) : 0,
+                data::appendAll,
+                serialInteractiveOutput);
+        uiBridge.setAlertSink(alertPane::add);
+        statusPane = new StatusPane(portNames);
+
+        initializeUI(portNames);
+        for (Settings settings : settingsList)
+            monitors.put(settings.getPortName(), initializeMonitor(settings));
+        uiBridge.start();
+        statusPane.start();
+        chartPane.start();
+        if (traceReport != null)
+            traceReport.start();
+        coupleUIEvents();
     }
 
-    private void initializeUI() {
-        setTitle("spm");
+    private void initializeUI(List<String> portNames) {
+        setTitle("spm - " + String.join(", ", portNames));
 
         MenuBar menuBar = initializeMenuBar();
         initializeTableView();
 
-        HBox userInputPane = new HBox(userInput, interactiveMode);
+        targetPort.getItems().addAll(portNames);
+        targetPort.getSelectionModel().select(0);
+        targetPort.setVisible(portNames.size() > 1);
+        targetPort.setManaged(portNames.size() > 1);
+
+        HBox userInputPane = new HBox(targetPort, userInput, interactiveMode);
+
+        filter.setPromptText("Filter");
+        filterFrom.setPromptText("From dd.MM.yyyy:HH.mm.ss");
+        filterTo.setPromptText("To dd.MM.yyyy:HH.mm.ss");
+        HBox filterPane = new HBox(filter, regexFilter, filterFrom, filterTo);
+        HBox.setHgrow(filter, Priority.ALWAYS);
+        filterPane.setVisible(data.getIndex() != null);
+        filterPane.setManaged(data.getIndex() != null);
+
+        SplitPane outputPane = new SplitPane(serialOutput, chartPane);
+        outputPane.setOrientation(Orientation.VERTICAL);
+        outputPane.setDividerPositions(0.6);
+        if (!alertRules.isEmpty()) {
+            outputPane.getItems().add(alertPane);
+            outputPane.setDividerPositions(0.5, 0.8);
+        }
+
+        exportPane.setVisible(false);
+        exportPane.setManaged(false);
 
-        VBox root = new VBox(menuBar, serialOutput, serialInteractiveOutput, userInputPane);
-        VBox.setVgrow(serialOutput, Priority.ALWAYS);
+        VBox root = new VBox(menuBar, filterPane, exportPane, outputPane, serialInteractiveOutput, userInputPane, statusPane);
+        VBox.setVgrow(outputPane, Priority.ALWAYS);
 
         setScene(new Scene(root, 400, 400));
     }
@@ -84,25 +180,60 @@ public class MonitorView extends Stage {
 
         Menu menu = new Menu("Upload", null, menuItemBoot, menuItemProgram);
 
-        return new MenuBar(menu);
+        MenuItem menuItemRunScript = new MenuItem("Run...");
+        MenuItem menuItemCancelScript = new MenuItem("Cancel");
+
+        menuItemRunScript.setOnAction(event -> {
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setTitle("Script for " + targetPort.getValue());
+            File script = fileChooser.showOpenDialog(this);
+            if (script != null)
+                monitors.get(targetPort.getValue()).runScript(script);
+        });
+
+        menuItemCancelScript.setOnAction(event -> monitors.get(targetPort.getValue()).cancelScript());
+
+        Menu scriptMenu = new Menu("Script", null, menuItemRunScript, menuItemCancelScript);
+
+        MenuItem menuItemExportLines = new MenuItem("Lines as CSV...");
+        MenuItem menuItemExportFrames = new MenuItem("Frames as CSV...");
+        MenuItem menuItemExportArchive = new MenuItem("Frames as archive...");
+        MenuItem menuItemCancelExport = new MenuItem("Cancel");
+
+        menuItemExportLines.setOnAction(event -> export(Exporter.Format.LINES_CSV));
+        menuItemExportFrames.setOnAction(event -> export(Exporter.Format.FRAMES_CSV));
+        menuItemExportArchive.setOnAction(event -> export(Exporter.Format.FRAMES_ARCHIVE));
+        menuItemCancelExport.setOnAction(event -> {
+            if (exporter != null)
+                exporter.cancel();
+        });
+
+        Menu exportMenu = new Menu("Export", null, menuItemExportLines, menuItemExportFrames, menuItemExportArchive, menuItemCancelExport);
+        exportMenu.setVisible(Config.get().getBoolean("capture.enabled", true));
+
+        return new MenuBar(menu, scriptMenu, exportMenu);
     }
 
     void initializeTableView() {
         TableColumn<Record, String> timeColumn = new TableColumn<>("Time");
+        TableColumn<Record, String> portColumn = new TableColumn<>("Port");
         TableColumn<Record, String> contentColumn = new TableColumn<>("Content");
 
-        DateTimeFormatter formatter =
-                DateTimeFormatter
-                        .ofPattern("dd.MM.yyyy:HH.mm.ss")
-                        .withLocale(Locale.getDefault())
-                        .withZone(ZoneId.systemDefault());
-        timeColumn.setCellValueFactory(item -> new ReadOnlyStringWrapper(formatter.format(Instant.ofEpochMilli(item.getValue().getTime()))));
+        timeColumn.setCellValueFactory(item -> new ReadOnlyStringWrapper(TIME_FORMATTER.format(Instant.ofEpochMilli(item.getValue().getTime()))));
+        portColumn.setCellValueFactory(item -> new ReadOnlyStringWrapper(item.getValue().getPort()));
         contentColumn.setCellValueFactory(item -> new ReadOnlyStringWrapper(item.getValue().getContent()));
 
+        // The store is append-only and mostly on disk, so it cannot be sorted in place
+        timeColumn.setSortable(false);
+        portColumn.setSortable(false);
+        contentColumn.setSortable(false);
+
         timeColumn.prefWidthProperty().bind(serialOutput.widthProperty().divide(4));
-        contentColumn.prefWidthProperty().bind(serialOutput.widthProperty().divide(4).multiply(3));
+        portColumn.prefWidthProperty().bind(serialOutput.widthProperty().divide(8));
+        contentColumn.prefWidthProperty().bind(serialOutput.widthProperty().divide(8).multiply(5));
 
         serialOutput.getColumns().add(timeColumn);
+        serialOutput.getColumns().add(portColumn);
         serialOutput.getColumns().add(contentColumn);
     }
 
@@ -113,145 +244,202 @@ public class MonitorView extends Stage {
                 settings.getDataBits(),
                 settings.getStopBits());
 
-        monitor.setRecordCallback(this::handleIncoming);
-        monitor.setInteractiveCallback(this::handleIncoming);
+        monitor.setTracer(Tracer.fromConfig());
+        monitor.setRecordCallback(uiBridge::offerRecord);
+        monitor.setInteractiveCallback(uiBridge::offerInteractive);
+        monitor.setFrameCallback(this::handleFrame);
+
+        if (Config.get().getBoolean("capture.enabled", true)) {
+            CaptureLog captureLog = CaptureLog.fromConfig(settings.getPortName());
+            captureLogs.put(settings.getPortName(), captureLog);
+            monitor.setCaptureLog(captureLog);
+        }
+
+        if (!alertRules.isEmpty()) {
+            monitor.setRuleEngine(new RuleEngine(settings.getPortName(), alertRules, alert -> {
+                alertLog.offer(alert);
+                uiBridge.offerAlert(alert);
+            }));
+        }
 
-        new Thread(monitor.initListenTask()).start();
+        monitor.start(monitorExecutor);
+        portWatcher.watch(monitor, settings);
 
         return monitor;
     }
 
-    void coupleUIEvents(Monitor monitor) {
-        setOnCloseRequest(event -> monitor.stopListening());
+    void coupleUIEvents() {
+        setOnCloseRequest(event -> {
+            for (Monitor monitor : monitors.values()) {
+                portWatcher.unwatch(monitor);
+                monitor.stop();
+            }
+            monitorExecutor.shutdown();
+            uiBridge.stop();
+            statusPane.stop();
+            chartPane.stop();
+            if (exporter != null)
+                exporter.cancel();
+            telemetryWriter.close();
+            if (archive != null)
+                archive.close();
+            alertLog.close();
+            if (traceReport != null)
+                traceReport.close();
+            filterDelay.stop();
+            filterGeneration++;
+            filterExecutor.shutdownNow();
+            if (filteredRecords != null)
+                filteredRecords.dispose();
+            data.close();
+            for (CaptureLog captureLog : captureLogs.values())
+                captureLog.close();
+        });
+
+        filterDelay.setOnFinished(e -> applyFilter());
+        filter.textProperty().addListener((observable, oldValue, newValue) -> filterDelay.playFromStart());
+        regexFilter.selectedProperty().addListener((observable, oldValue, newValue) -> applyFilter());
+        filterFrom.textProperty().addListener((observable, oldValue, newValue) -> filterDelay.playFromStart());
+        filterTo.textProperty().addListener((observable, oldValue, newValue) -> filterDelay.playFromStart());
 
         userInput.addEventFilter(KeyEvent.KEY_PRESSED, e -> {
-            try {
-                if (interactiveMode.isSelected()) {
-                    monitor.writeBytes(e.getText().getBytes());
-                } else {
-                    if (e.getCode().equals(KeyCode.ENTER)) {
-                        monitor.writeBytes(userInput.getText().getBytes());
-                        monitor.writeBytes(new byte[]{'\r'});
-                        userInput.clear();
-                    }
+            Monitor monitor = monitors.get(targetPort.getValue());
+            if (interactiveMode.isSelected()) {
+                monitor.send(e.getText().getBytes(Record.CHARSET));
+            } else {
+                if (e.getCode().equals(KeyCode.ENTER)) {
+                    monitor.send((userInput.getText() + "\r").getBytes(Record.CHARSET));
+                    userInput.clear();
                 }
-            } catch (SerialPortException serialPortException) {
-                serialPortException.printStackTrace();
             }
         });
     }
 
-    <T> void handleIncoming(T incoming) {
-        Platform.runLater(() -> {
-            if (incoming.getClass() == Record.class) {
-                handleIncomingLine((Record) incoming);
-            } else if (incoming.getClass() == String.class) {
-                serialInteractiveOutput.appendText((String) incoming);
-            }
+    // The index narrows the search to candidate blocks, but a short literal or an alternation still reads every record,
+    // so the search runs off the FX thread. The table keeps the previous result until the new one is published, and a
+    // search still running when the filter changes again is interrupted and its result dropped
+    private void applyFilter() {
+        filterDelay.stop();
+        RecordQuery query = filterQuery(Long.MIN_VALUE);
+        if (query == null)
+            return;
+
+        int generation = ++filterGeneration;
+        if (filterSearch != null)
+            filterSearch.cancel(true);
+        if (query.matchesEverything()) {
+            showFiltered(null);
+            return;
+        }
+
+        filterSearch = filterExecutor.submit(() -> {
+            FilteredRecords.Matches matches = FilteredRecords.search(data, query);
+            if (matches == null)
+                return;
+            Platform.runLater(() -> {
+                if (generation == filterGeneration)
+                    showFiltered(new FilteredRecords(data, query, matches));
+            });
         });
     }
 
-    private void handleIncomingLine(Record record) {
-        data.add(record);
-        serialInteractiveOutput.clear();
-
-        String content = record.getContent();
-        if (content.startsWith("log[")) {
-            String serialNumber = content.substring(4).split("]")[0];
-            String[] parameters = content.split("]:")[1].split(";");
-            String firstPart = parameters[0];
-            String locked = parameters[1];
-            String pp = parameters[2];
-            String cp = parameters[3];
-            String cpn = parameters[4];
-            String unknown = parameters[5];
-
-            String[] meterValues = parameters[6].split(",");
-            String energyWh = meterValues[0];
-            String currentL1 = meterValues[1];
-            String currentL2 = meterValues[2];
-            String currentL3 = meterValues[3];
-            String powerL1 = meterValues[4];
-            String powerL2 = meterValues[5];
-            String powerL3 = meterValues[6];
-            String voltageL1 = meterValues[7];
-            String voltageL2 = meterValues[8];
-            String voltageL3 = meterValues[9];
-            String freq = meterValues[10];
-            String powerFactor = meterValues[11];
-            String activePower = meterValues[12];
-            String reActivePower = meterValues[13];
-            String positiveActiveEnergyL1 = meterValues[14];
-            String negativeActiveEnergyL1 = meterValues[15];
-            String positiveReActiveEnergyL1 = meterValues[16];
-            String negativeReActiveEnergyL1 = meterValues[17];
-            String positiveActiveEnergyL2 = meterValues[18];
-            String negativeActiveEnergyL2 = meterValues[19];
-            String positiveReActiveEnergyL2 = meterValues[20];
-            String negativeReActiveEnergyL2 = meterValues[21];
-            String positiveActiveEnergyL3 = meterValues[22];
-            String negativeActiveEnergyL3 = meterValues[23];
-            String positiveReActiveEnergyL3 = meterValues[24];
-            String negativeReActiveEnergyL3 = meterValues[25];
-            String temperature = meterValues[26];
-
-            String suffix = parameters[9];
-            String[] suffixParts = suffix.split("\\|");
-            String dFixValue = suffixParts[0];
-            String doStatus = suffixParts[1];
-            String ledStatus = suffixParts[2];
-            String meterKWH = suffixParts[3];
-
-            String[] evenMoreSuffixParts = suffixParts[4].split(",");
-            String cp100 = evenMoreSuffixParts[0];
-            String cpn100 = evenMoreSuffixParts[1];
-            String lastIteraties = evenMoreSuffixParts[2];
-
-            System.out.println("TEMPERATURE " + temperature);
-            System.out.println("LED STATUS " + ledStatus);
-            System.out.println("LOCKED: " + locked);
-
-            sendData(
-                    record.getTime(),
-                    Double.parseDouble(temperature),
-                    Integer.parseInt(ledStatus),
-                    Integer.parseInt(locked) != 0,
-                    Double.parseDouble(pp),
-                    Double.parseDouble(cp),
-                    Double.parseDouble(currentL1));
-        }
+    private void showFiltered(FilteredRecords filtered) {
+        if (filteredRecords != null)
+            filteredRecords.dispose();
+        filteredRecords = filtered;
+        serialOutput.setItems(filteredRecords == null ? data : filteredRecords);
     }
 
-    private void insert(String url, String user, String password, String table, long time, Object value) {
-        String query = String.format("INSERT INTO %s(time, value) VALUES(?, ?)", table);
-        try (Connection con = DriverManager.getConnection(url, user, password);
-             PreparedStatement pst = con.prepareStatement(query)) {
-
-            pst.setLong(1, time);
+    // Null while one of the filter fields does not parse
+    private RecordQuery filterQuery(long unboundedFrom) {
+        Long from = parseFilterTime(filterFrom, unboundedFrom);
+        Long to = parseFilterTime(filterTo, Long.MAX_VALUE);
+        if (from == null || to == null)
+            return null;
+
+        try {
+            RecordQuery query = regexFilter.isSelected()
+                    ? RecordQuery.regex(filter.getText(), from, to)
+                    : RecordQuery.substring(filter.getText(), from, to);
+            filter.setStyle(null);
+            return query;
+        } catch (PatternSyntaxException e) {
+            filter.setStyle("-fx-text-fill: red");
+            return null;
+        }
+    }
 
-            pst.setObject(2, value);
+    // Exports what the filter shows, read back from the capture logs on background threads. Without a from time the
+    // export covers this session rather than everything ever captured on these ports.
+    private void export(Exporter.Format format) {
+        RecordQuery query = filterQuery(sessionStart);
+        if (exporter != null || query == null || captureLogs.isEmpty())
+            return;
+
+        File file;
+        if (format == Exporter.Format.FRAMES_ARCHIVE) {
+            DirectoryChooser directoryChooser = new DirectoryChooser();
+            directoryChooser.setTitle("Export frames to archive");
+            file = directoryChooser.showDialog(this);
+        } else {
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setTitle(format == Exporter.Format.LINES_CSV ? "Export lines" : "Export frames");
+            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV", "*.csv"));
+            file = fileChooser.showSaveDialog(this);
+        }
+        if (file == null)
+            return;
+
+        exportProgress.setProgress(0);
+        exportStatus.setText("Exporting to " + file.getName());
+        exportPane.setVisible(true);
+        exportPane.setManaged(true);
+
+        exporter = Exporter.fromConfig(captureLogs, query, format, file, new Exporter.ProgressListener() {
+            @Override
+            public void progress(double fraction, long rows) {
+                Platform.runLater(() -> {
+                    exportProgress.setProgress(fraction);
+                    exportStatus.setText(rows + " rows to " + file.getName());
+                });
+            }
 
-            pst.executeUpdate();
+            @Override
+            public void finished(long rows, boolean cancelled, Exception error) {
+                if (error != null)
+                    error.printStackTrace();
+                String result = error != null ? "Export failed after " + rows + " rows: " + error.getMessage()
+                        : cancelled ? "Export cancelled after " + rows + " rows"
+                        : "Exported " + rows + " rows to " + file.getName();
+                Platform.runLater(() -> {
+                    exporter = null;
+                    exportProgress.setProgress(1);
+                    exportStatus.setText(result);
+                });
+            }
+        }).start();
+    }
 
-        } catch (SQLException ignored) {
+    private static Long parseFilterTime(TextField field, long unbounded) {
+        String text = field.getText().trim();
+        try {
+            Long time = text.isEmpty() ? unbounded : ZonedDateTime.parse(text, TIME_FORMATTER).toInstant().toEpochMilli();
+            field.setStyle(null);
+            return time;
+        } catch (DateTimeParseException e) {
+            field.setStyle("-fx-text-fill: red");
+            return null;
         }
     }
 
-    private void sendData(long time, double temperature, int ledStatus, boolean locked, double pp, double cp, double currentL1) {
-        Toml toml = Config.get();
-
-        String user = Config.get().getString("postgres.user");
-        String password = Config.getSecret().getString("postgres.password");
+    private void handleFrame(LogFrame frame) {
+        telemetrySeries.accept(frame);
 
-        String url = String.format("jdbc:postgresql://%s:%s/temperature",
-                toml.getString("postgres.host"),
-                toml.getString("postgres.port"));
+        long sendDataStart = System.nanoTime();
+        telemetryWriter.submit(frame);
+        sendDataLatency.recordSince(sendDataStart);
 
-        insert(url, user, password, "temperature", time, temperature);
-        insert(url, user, password, "led", time, ledStatus);
-        insert(url, user, password, "locked", time, locked);
-        insert(url, user, password, "pp", time, pp);
-        insert(url, user, password, "cp", time, cp);
-        insert(url, user, password, "current_l1", time, currentL1);
+        if (archive != null)
+            archive.accept(frame);
     }
 }
@@ -0,0 +1,249 @@
+package monitor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class OutboundWriter {
+
+    public interface Sink {
+        void write(byte[] bytes) throws Exception;
+    }
+
+    private static final long DEFAULT_EXPECT_TIMEOUT_MILLIS = 5000;
+
+    private final String name;
+    private final Sink sink;
+    private final BlockingQueue<byte[]> queue;
+    private final int maxWriteBytes;
+    private final long lineDelayMillis;
+    private final Thread writer;
+
+    private byte[] buffer;
+    private long enqueued;
+    private long written;
+
+    private Thread script;
+    private volatile byte[] expected;
+    private volatile CountDownLatch expectedSeen;
+
+    private final Counter bytesSent;
+    private final Counter writesDropped;
+    private final LatencyHistogram writeLatency;
+
+    public OutboundWriter(String name, Sink sink, int queueCapacity, int maxWriteBytes, long lineDelayMillis) {
+        this.name = name;
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxWriteBytes = maxWriteBytes;
+        this.lineDelayMillis = lineDelayMillis;
+        this.buffer = new byte[maxWriteBytes];
+
+        this.writer = new Thread(this::writeLoop, "monitor-out-" + name);
+        writer.setDaemon(true);
+
+        String metricPrefix = "monitor." + name + ".out.";
+        this.bytesSent = Metrics.counter(metricPrefix + "bytes");
+        this.writesDropped = Metrics.counter(metricPrefix + "dropped");
+        this.writeLatency = Metrics.histogram(metricPrefix + "write");
+    }
+
+    public static OutboundWriter fromConfig(String name, Sink sink) {
+        return new OutboundWriter(
+                name,
+                sink,
+                Config.get().getLong("outbound.queue_capacity", 1024L).intValue(),
+                Config.get().getLong("outbound.max_write_bytes", 4096L).intValue(),
+                Config.get().getLong("outbound.line_delay_ms", 0L));
+    }
+
+    public void start() {
+        writer.start();
+    }
+
+    public void stop() {
+        cancelScript();
+        writer.interrupt();
+    }
+
+    // Never blocks the caller: when the port cannot keep up the write is dropped and counted
+    public boolean offer(byte[] bytes) {
+        synchronized (this) {
+            if (!queue.offer(bytes)) {
+                writesDropped.increment();
+                return false;
+            }
+            enqueued++;
+        }
+        return true;
+    }
+
+    // Streams a script on its own thread: each line is sent followed by a carriage return, except for
+    //   # comment
+    //   @sleep <millis>
+    //   @expect <text> [<timeout millis>]   waits until a received line contains the text, or aborts the script
+    public synchronized void runScript(File file) {
+        cancelScript();
+        script = new Thread(() -> {
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                int lineNumber = 0;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    if (!runScriptLine(line)) {
+                        System.err.println("Script " + file.getName() + " aborted at line " + lineNumber + ": " + line);
+                        return;
+                    }
+                }
+                System.out.println("Script " + file.getName() + " finished on " + name);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                System.out.println("Script " + file.getName() + " cancelled on " + name);
+            }
+        }, "monitor-script-" + name);
+        script.setDaemon(true);
+        script.start();
+    }
+
+    public synchronized void cancelScript() {
+        if (script != null)
+            script.interrupt();
+        script = null;
+    }
+
+    // Called from the receive path for every line; costs a volatile read unless a script is waiting on @expect
+    public void lineReceived(byte[] bytes, int offset, int length) {
+        byte[] text = expected;
+        if (text != null && contains(bytes, offset, length, text)) {
+            expected = null;
+            expectedSeen.countDown();
+        }
+    }
+
+    private boolean runScriptLine(String line) throws InterruptedException {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#"))
+            return true;
+
+        if (trimmed.startsWith("@sleep ")) {
+            awaitWritten();
+            Thread.sleep(Long.parseLong(trimmed.substring("@sleep ".length()).trim()));
+            return true;
+        }
+
+        if (trimmed.startsWith("@expect ")) {
+            String argument = trimmed.substring("@expect ".length()).trim();
+            long timeout = DEFAULT_EXPECT_TIMEOUT_MILLIS;
+            int lastSpace = argument.lastIndexOf(' ');
+            if (lastSpace > 0 && argument.substring(lastSpace + 1).matches("\\d+")) {
+                timeout = Long.parseLong(argument.substring(lastSpace + 1));
+                argument = argument.substring(0, lastSpace);
+            }
+
+            expectedSeen = new CountDownLatch(1);
+            expected = argument.getBytes(StandardCharsets.UTF_8);
+            awaitWritten();
+            boolean seen = expectedSeen.await(timeout, TimeUnit.MILLISECONDS);
+            expected = null;
+            return seen;
+        }
+
+        // A full queue only slows the script down; interactive sends keep their non-blocking offer
+        byte[] bytes = (line + "\r").getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            while (!queue.offer(bytes))
+                wait(10);
+            enqueued++;
+        }
+        return true;
+    }
+
+    private synchronized void awaitWritten() throws InterruptedException {
+        while (written < enqueued)
+            wait();
+    }
+
+    // Everything queued while the previous write was in flight goes out in one writeBytes call
+    private void writeLoop() {
+        try {
+            while (true) {
+                byte[] first = queue.take();
+                int length = append(first, 0);
+                int count = 1;
+
+                byte[] next;
+                while (length < maxWriteBytes && (next = queue.poll()) != null) {
+                    length = append(next, length);
+                    count++;
+                }
+
+                long writeStart = System.nanoTime();
+                write(length);
+                writeLatency.recordSince(writeStart);
+                bytesSent.add(length);
+
+                synchronized (this) {
+                    written += count;
+                    notifyAll();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int append(byte[] bytes, int length) {
+        if (length + bytes.length > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + bytes.length));
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        return length + bytes.length;
+    }
+
+    // With a line delay, firmware with a small RX buffer gets one line at a time and time to consume it
+    private void write(int length) throws InterruptedException {
+        if (lineDelayMillis <= 0) {
+            writeToSink(Arrays.copyOf(buffer, length));
+            return;
+        }
+
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            boolean lineEnd = buffer[i] == '\n' || (buffer[i] == '\r' && (i + 1 == length || buffer[i + 1] != '\n'));
+            if (lineEnd) {
+                writeToSink(Arrays.copyOfRange(buffer, start, i + 1));
+                start = i + 1;
+                Thread.sleep(lineDelayMillis);
+            }
+        }
+        if (start < length)
+            writeToSink(Arrays.copyOfRange(buffer, start, length));
+    }
+
+    private void writeToSink(byte[] bytes) {
+        try {
+            sink.write(bytes);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static boolean contains(byte[] bytes, int offset, int length, byte[] text) {
+        int last = offset + length - text.length;
+        for (int i = offset; i <= last; i++) {
+            int j = 0;
+            while (j < text.length && bytes[i + j] == text[j])
+                j++;
+            if (j == text.length)
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,242 @@
+package monitor;
+
+import com.moandjiezana.toml.Toml;
+import jssc.SerialPortList;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// Keeps a cached list of the serial ports present and the settings each port was last opened with, and brings watched
+// monitors back after a hot-plug. Every scan checks whether each watched serial port still exists: a monitor whose port
+// disappeared is disconnected, one whose port is back is reopened right away, keeping everything it buffered.
+// Listing ports through jssc opens every candidate, which can reset boards that are not being monitored, so the full
+// list is only refreshed on the slower list interval. Watched device paths are checked on every scan by file existence
+// alone; a missing name like COM7 is retried every retry interval by opening that one port, and a fresh list that no
+// longer has it disconnects it.
+public class PortWatcher implements AutoCloseable {
+
+    public interface Listener {
+        // Called on the watcher thread
+        void portsChanged(List<String> portNames);
+    }
+
+    // Symlinks named after the adapter's serial number, which survive re-enumeration as another ttyUSB
+    private static final File BY_ID = new File("/dev/serial/by-id");
+
+    private final long scanIntervalNanos;
+    private final long listIntervalNanos;
+    private final long retryIntervalNanos;
+    private final File settingsFile;
+    private final Supplier<String[]> lister;
+    private final Thread thread;
+
+    private final Map<String, Settings> lastSettings = new ConcurrentHashMap<>();
+    private final List<Monitor> monitors = new CopyOnWriteArrayList<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile List<String> portNames = Collections.emptyList();
+    private volatile boolean closed;
+
+    // Watcher thread only
+    private long lastList;
+    private boolean listed;
+    private long lastRetry;
+
+    private final LatencyHistogram listLatency = Metrics.histogram("ports.list");
+
+    // A null settings file keeps the last settings in memory only
+    public PortWatcher(long scanIntervalMillis, long listIntervalMillis, long retryIntervalMillis, File settingsFile,
+                       Supplier<String[]> lister) {
+        this.scanIntervalNanos = TimeUnit.MILLISECONDS.toNanos(scanIntervalMillis);
+        this.listIntervalNanos = TimeUnit.MILLISECONDS.toNanos(listIntervalMillis);
+        this.retryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(retryIntervalMillis);
+        this.settingsFile = settingsFile;
+        this.lister = lister;
+        this.thread = new Thread(this::scanLoop, "port-watcher");
+        thread.setDaemon(true);
+        loadSettings();
+    }
+
+    public static PortWatcher fromConfig() {
+        Toml toml = Config.get();
+        String settingsFile = toml.getString("ports.settings_file", "ports.tsv");
+        return new PortWatcher(
+                toml.getLong("ports.scan_interval_ms", 100L),
+                toml.getLong("ports.list_interval_ms", 2000L),
+                toml.getLong("ports.retry_interval_ms", 500L),
+                settingsFile.isEmpty() ? null : new File(settingsFile),
+                PortWatcher::listSerialPorts);
+    }
+
+    // jssc's list plus the stable /dev/serial/by-id names where the system has them
+    static String[] listSerialPorts() {
+        List<String> names = new ArrayList<>(Arrays.asList(SerialPortList.getPortNames()));
+        File[] links = BY_ID.listFiles();
+        if (links != null) {
+            for (File link : links)
+                names.add(link.getPath());
+        }
+        return names.toArray(new String[0]);
+    }
+
+    // Lists the ports once before returning, so the cached list is filled when the first window asks for it
+    public PortWatcher start() {
+        scan();
+        thread.start();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Sorted, as of the last list
+    public List<String> getPortNames() {
+        return portNames;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Null when the port was never opened
+    public Settings getSettings(String portName) {
+        return portName == null ? null : lastSettings.get(portName);
+    }
+
+    public void remember(Settings settings) {
+        lastSettings.put(settings.getPortName(), settings);
+        saveSettings();
+    }
+
+    // Only serial ports are watched; tcp-listen already takes the next connection and replays end on their own
+    public void watch(Monitor monitor, Settings settings) {
+        remember(settings);
+        if (Transport.isSerial(monitor.getPortName()))
+            monitors.add(monitor);
+    }
+
+    public void unwatch(Monitor monitor) {
+        monitors.remove(monitor);
+    }
+
+    private void scanLoop() {
+        while (!closed) {
+            LockSupport.parkNanos(scanIntervalNanos);
+            if (closed)
+                break;
+            try {
+                scan();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    void scan() {
+        long now = System.nanoTime();
+        boolean listNow = !listed || now - lastList >= listIntervalNanos;
+        if (listNow)
+            list(now);
+        boolean retryNow = now - lastRetry >= retryIntervalNanos;
+        if (retryNow)
+            lastRetry = now;
+
+        Set<String> present = new HashSet<>(portNames);
+        for (Monitor monitor : monitors) {
+            String portName = monitor.getPortName();
+            File device = new File(portName);
+            if (device.isAbsolute()) {
+                boolean exists = device.exists();
+                if (!exists && monitor.isConnected()) {
+                    monitor.disconnected("port removed");
+                } else if (exists && !monitor.isConnected()) {
+                    monitor.connect();
+                }
+            } else if (monitor.isConnected()) {
+                // Between lists a failing read is what reports it gone
+                if (listNow && !present.contains(portName))
+                    monitor.disconnected("port removed");
+            } else if (retryNow || (listNow && present.contains(portName))) {
+                monitor.connect();
+            }
+        }
+    }
+
+    private void list(long now) {
+        String[] names = lister.get();
+        listLatency.recordSince(now);
+        lastList = now;
+        listed = true;
+
+        List<String> sorted = Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(Arrays.asList(names))));
+        if (sorted.equals(portNames))
+            return;
+        portNames = sorted;
+        for (Listener listener : listeners)
+            listener.portsChanged(sorted);
+    }
+
+    //   <port name> <tab> <baud rate> <tab> <data bits> <tab> <stop bits>
+    private void loadSettings() {
+        if (settingsFile == null || !settingsFile.exists())
+            return;
+        try {
+            for (String line : Files.readAllLines(settingsFile.toPath(), StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t");
+                if (fields.length != 4)
+                    continue;
+                lastSettings.put(fields[0], new Settings(fields[0],
+                        Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), Integer.parseInt(fields[3])));
+            }
+        } catch (IOException | NumberFormatException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized void saveSettings() {
+        if (settingsFile == null)
+            return;
+        File temporary = new File(settingsFile.getPath() + ".tmp");
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(temporary.toPath(), StandardCharsets.UTF_8)) {
+                for (String portName : new TreeSet<>(lastSettings.keySet())) {
+                    Settings settings = lastSettings.get(portName);
+                    out.write(settings.getPortName() + "\t" + settings.getBaudRate() + "\t" + settings.getDataBits()
+                            + "\t" + settings.getStopBits());
+                    out.newLine();
+                }
+            }
+            Files.move(temporary.toPath(), settingsFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package monitor;
+
+public class ReceiveBuffer {
+
+    public interface LineHandler {
+        void onLine(byte[] buffer, int offset, int length);
+    }
+
+    // The payload as decoded, and the packet as it came over the wire including its delimiters, for capture and replay
+    public interface PacketHandler {
+        void onPacket(byte[] payload, int payloadLength, byte[] raw, int rawLength);
+    }
+
+    private final byte[] ring;
+    private final int mask;
+    private final byte[] line;
+    private final LineHandler lineHandler;
+
+    private final Framing.Mode mode;
+    private final boolean text;
+    private final int openingByte;
+    private final byte[] packet;
+    private final PacketHandler packetHandler;
+
+    private long readPosition;
+    private long scanPosition;
+    private long writePosition;
+
+    // Packet state, carried across receive calls: binary framers decode straight out of the ring into packet
+    private boolean inPacket;
+    private boolean discarding;
+    private int packetLength;
+    private boolean slipEscaped;
+    private int cobsRemaining;
+    private boolean cobsZeroPending;
+    private boolean cobsStarted;
+    private int lengthHeaderBytes;
+    private int expectedLength;
+
+    private long discardedBytes;
+    private long malformedPackets;
+
+    public ReceiveBuffer(int capacity, LineHandler lineHandler) {
+        this(capacity, Framing.lines(), lineHandler, null);
+    }
+
+    public ReceiveBuffer(int capacity, Framing framing, LineHandler lineHandler, PacketHandler packetHandler) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+
+        this.ring = new byte[capacity];
+        this.mask = capacity - 1;
+        this.line = new byte[capacity];
+        this.lineHandler = lineHandler;
+
+        this.mode = framing.getMode();
+        this.text = framing.hasText();
+        this.openingByte = framing.openingByte();
+        this.packet = mode == Framing.Mode.LINES ? null : new byte[capacity];
+        this.packetHandler = packetHandler;
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    public int pending() {
+        return (int) (writePosition - readPosition);
+    }
+
+    // Bytes outside any packet on a port without text, and packets too large for the ring
+    public long getDiscardedBytes() {
+        return discardedBytes;
+    }
+
+    public long getMalformedPackets() {
+        return malformedPackets;
+    }
+
+    public void receive(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            int written = write(bytes, offset, length);
+            offset += written;
+            length -= written;
+            if (mode == Framing.Mode.LINES) {
+                drainLines();
+            } else {
+                drainPackets();
+            }
+        }
+    }
+
+    private int write(byte[] bytes, int offset, int length) {
+        int count = Math.min(length, ring.length - pending());
+        int start = (int) (writePosition & mask);
+        int firstPart = Math.min(count, ring.length - start);
+
+        System.arraycopy(bytes, offset, ring, start, firstPart);
+        System.arraycopy(bytes, offset + firstPart, ring, 0, count - firstPart);
+
+        writePosition += count;
+        return count;
+    }
+
+    private void drainLines() {
+        while (scanPosition < writePosition) {
+            byte b = ring[(int) (scanPosition++ & mask)];
+            if (b == '\n') {
+                emit(readPosition, scanPosition);
+                readPosition = scanPosition;
+            }
+        }
+
+        // A line longer than the ring is delivered in ring-sized pieces instead of overflowing
+        if (pending() == ring.length) {
+            emit(readPosition, writePosition);
+            readPosition = writePosition;
+        }
+    }
+
+    private void emit(long from, long to) {
+        lineHandler.onLine(line, 0, copyOut(from, to, line, 0));
+    }
+
+    private int copyOut(long from, long to, byte[] destination, int offset) {
+        int length = (int) (to - from);
+        int start = (int) (from & mask);
+        int firstPart = Math.min(length, ring.length - start);
+
+        System.arraycopy(ring, start, destination, offset, firstPart);
+        System.arraycopy(ring, 0, destination, offset + firstPart, length - firstPart);
+        return length;
+    }
+
+    private void drainPackets() {
+        while (scanPosition < writePosition) {
+            if (inPacket && mode == Framing.Mode.LENGTH_PREFIXED && lengthHeaderBytes == 2) {
+                copyLengthPrefixedPayload();
+                continue;
+            }
+
+            int b = ring[(int) (scanPosition++ & mask)] & 0xFF;
+            if (!inPacket) {
+                if (b == openingByte || (!text && mode != Framing.Mode.LENGTH_PREFIXED)) {
+                    // Text cut short by a packet still goes out as a line of its own
+                    if (text && scanPosition - 1 > readPosition)
+                        emit(readPosition, scanPosition - 1);
+                    startPacket(scanPosition - 1);
+                    if (b == openingByte)
+                        continue;
+                } else if (text) {
+                    if (b == '\n') {
+                        emit(readPosition, scanPosition);
+                        readPosition = scanPosition;
+                    }
+                    continue;
+                } else {
+                    // Without text, length framing treats anything before the next sync byte as noise
+                    discardedBytes++;
+                    readPosition = scanPosition;
+                    continue;
+                }
+            }
+
+            switch (mode) {
+                case SLIP:
+                    slipByte(b);
+                    break;
+                case COBS:
+                    cobsByte(b);
+                    break;
+                default:
+                    lengthHeaderByte(b);
+                    break;
+            }
+        }
+
+        // The ring is full and nothing in it can be emitted: a text line is split, a packet is dropped
+        if (pending() == ring.length) {
+            if (inPacket) {
+                discardedBytes += pending();
+                discarding = true;
+            } else {
+                emit(readPosition, writePosition);
+            }
+            readPosition = writePosition;
+        }
+    }
+
+    private void startPacket(long rawStart) {
+        readPosition = rawStart;
+        inPacket = true;
+        discarding = false;
+        packetLength = 0;
+        slipEscaped = false;
+        cobsRemaining = 0;
+        cobsZeroPending = false;
+        cobsStarted = false;
+        lengthHeaderBytes = 0;
+        expectedLength = 0;
+    }
+
+    private void slipByte(int b) {
+        if (b == Framing.SLIP_END) {
+            // Senders may open every packet with END as well, so back-to-back ENDs are not an empty packet
+            if (packetLength > 0 || discarding)
+                finishPacket();
+            return;
+        }
+        if (slipEscaped) {
+            slipEscaped = false;
+            b = b == Framing.SLIP_ESC_END ? Framing.SLIP_END : b == Framing.SLIP_ESC_ESC ? Framing.SLIP_ESC : b;
+        } else if (b == Framing.SLIP_ESC) {
+            slipEscaped = true;
+            return;
+        }
+        append(b);
+    }
+
+    private void cobsByte(int b) {
+        if (b == 0) {
+            if (cobsRemaining > 0) {
+                // The zero came before the block its code byte announced was complete
+                malformedPackets++;
+                discarding = true;
+            }
+            if (cobsStarted || discarding)
+                finishPacket();
+            return;
+        }
+        if (cobsRemaining == 0) {
+            if (cobsZeroPending)
+                append(0);
+            cobsRemaining = b - 1;
+            cobsZeroPending = b != 0xFF;
+            cobsStarted = true;
+        } else {
+            append(b);
+            cobsRemaining--;
+        }
+    }
+
+    private void lengthHeaderByte(int b) {
+        expectedLength = expectedLength << 8 | b;
+        if (++lengthHeaderBytes < 2)
+            return;
+        if (expectedLength > packet.length)
+            discarding = true;
+        if (expectedLength == 0)
+            finishPacket();
+    }
+
+    // The payload length is known up front, so it is copied out of the ring in one go as it arrives
+    private void copyLengthPrefixedPayload() {
+        int count = (int) Math.min(writePosition - scanPosition, expectedLength - packetLength);
+        if (discarding) {
+            discardedBytes += count;
+            readPosition = scanPosition + count;
+        } else {
+            copyOut(scanPosition, scanPosition + count, packet, packetLength);
+        }
+        scanPosition += count;
+        packetLength += count;
+        if (packetLength == expectedLength)
+            finishPacket();
+    }
+
+    // Once a packet is being discarded its bytes are released as they are scanned, so it cannot fill the ring again
+    private void append(int b) {
+        if (discarding) {
+            discardedBytes++;
+            readPosition = scanPosition;
+        } else {
+            packet[packetLength] = (byte) b;
+        }
+        packetLength++;
+    }
+
+    private void finishPacket() {
+        if (!discarding) {
+            int rawLength = copyOut(readPosition, scanPosition, line, 0);
+            packetHandler.onPacket(packet, packetLength, line, rawLength);
+        }
+        readPosition = scanPosition;
+        inPacket = false;
+        discarding = false;
+    }
+}
@@ -1,27 +1,93 @@
 package monitor;
 
-public class Record {
-    private long time;
-    private String content;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
-    public Record(long time, String content) {
-        this.time = time;
-        this.content = content;
+public final class Record {
+
+    public static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    private final String port;
+    private final long time;
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+    private final Trace trace;
+
+    public Record(String port, long time, byte[] bytes, int offset, int length) {
+        this(port, time, bytes, offset, length, null);
     }
 
-    public void setTime(long time) {
+    public Record(String port, long time, byte[] bytes, int offset, int length, Trace trace) {
+        this.port = port;
         this.time = time;
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.trace = trace;
+    }
+
+    public Record(String port, long time, String content) {
+        this(port, time, content.getBytes(CHARSET));
     }
 
-    public void setContent(String content) {
-        this.content = content;
+    private Record(String port, long time, byte[] bytes) {
+        this(port, time, bytes, 0, bytes.length);
+    }
+
+    public String getPort() {
+        return port;
     }
 
     public long getTime() {
         return this.time;
     }
 
+    // Null unless the line was sampled for tracing; not kept once the record is spilled
+    public Trace getTrace() {
+        return trace;
+    }
+
     public String getContent() {
-        return this.content;
+        return new String(bytes, offset, length, CHARSET);
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public byte byteAt(int index) {
+        return bytes[offset + index];
+    }
+
+    public void copyContent(int from, byte[] destination, int destinationOffset, int count) {
+        System.arraycopy(bytes, offset + from, destination, destinationOffset, count);
+    }
+
+    public boolean startsWith(byte[] prefix) {
+        if (length < prefix.length)
+            return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[offset + i] != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+    // The needle must already be ASCII lower case; content is folded on the fly
+    public boolean containsIgnoreCase(byte[] needle) {
+        int last = length - needle.length;
+        for (int i = 0; i <= last; i++) {
+            int j = 0;
+            while (j < needle.length && foldCase(bytes[offset + i + j]) == needle[j])
+                j++;
+            if (j == needle.length)
+                return true;
+        }
+        return false;
+    }
+
+    public static byte foldCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,278 @@
+package monitor;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+public class RecordIndex {
+
+    // Postings point at blocks of records rather than single records: a line repeats most of its neighbours' trigrams,
+    // so this keeps the index a fraction of the content size, and verifying one block is a short sequential read
+    private static final int BLOCK_SHIFT = 6;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final long maxPostingBytes;
+
+    private int size;
+
+    private int blockCount;
+    // Blocks below this had their postings dropped to stay under maxPostingBytes; a search always reads them
+    private int firstIndexedBlock;
+    private long[] blockMinTimes = new long[INITIAL_CAPACITY];
+    private long[] blockMaxTimes = new long[INITIAL_CAPACITY];
+
+    // Open-addressing map from case-folded trigram (three bytes, stored + 1 so 0 means empty) to posting list id
+    private int[] trigramKeys = new int[INITIAL_CAPACITY * 4];
+    private int[] trigramIds = new int[trigramKeys.length];
+    private int trigramCount;
+
+    private int[][] postings = new int[INITIAL_CAPACITY][];
+    private int[] postingSizes = new int[INITIAL_CAPACITY];
+    private long postingBytes;
+
+    public RecordIndex() {
+        this(Long.MAX_VALUE);
+    }
+
+    public RecordIndex(long maxPostingBytes) {
+        this.maxPostingBytes = maxPostingBytes;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int getTrigramCount() {
+        return trigramCount;
+    }
+
+    public synchronized long getPostingBytes() {
+        return postingBytes;
+    }
+
+    public synchronized int getFirstIndexedBlock() {
+        return firstIndexedBlock;
+    }
+
+    public synchronized long getPostingCount() {
+        long count = 0;
+        for (int i = 0; i < trigramCount; i++)
+            count += postingSizes[i];
+        return count;
+    }
+
+    public synchronized void add(Record record) {
+        int block = size++ >>> BLOCK_SHIFT;
+        long time = record.getTime();
+        if (block == blockCount) {
+            if (postingBytes > maxPostingBytes)
+                dropOldestPostings();
+            if (blockCount == blockMinTimes.length) {
+                blockMinTimes = Arrays.copyOf(blockMinTimes, blockCount * 2);
+                blockMaxTimes = Arrays.copyOf(blockMaxTimes, blockCount * 2);
+            }
+            blockMinTimes[block] = time;
+            blockMaxTimes[block] = time;
+            blockCount++;
+        } else {
+            blockMinTimes[block] = Math.min(blockMinTimes[block], time);
+            blockMaxTimes[block] = Math.max(blockMaxTimes[block], time);
+        }
+
+        int length = record.getLength();
+        if (length < 3)
+            return;
+
+        int trigram = (Record.foldCase(record.byteAt(0)) & 0xFF) << 8 | Record.foldCase(record.byteAt(1)) & 0xFF;
+        for (int i = 2; i < length; i++) {
+            trigram = (trigram << 8 | Record.foldCase(record.byteAt(i)) & 0xFF) & 0xFFFFFF;
+            addPosting(trigramId(trigram, true), block);
+        }
+    }
+
+    // Calls matches with the index of every record below size() that the query accepts, in ascending order, and returns
+    // that size. Records are added on the FX thread while a search may run on another one, so only the block lookup
+    // holds the lock; the search stops early when its thread is interrupted because a newer one superseded it
+    public int search(RecordQuery query, IntFunction<Record> records, IntConsumer matches) {
+        int limit;
+        int[] blocks;
+        int blockLimit = 0;
+        synchronized (this) {
+            limit = size;
+            int[] candidates = candidateBlocks(query.getIndexLiteral());
+            int candidateLimit = candidates == null ? blockCount : candidates.length;
+            blocks = new int[candidateLimit];
+            for (int i = 0; i < candidateLimit; i++) {
+                int block = candidates == null ? i : candidates[i];
+                if (query.overlaps(blockMinTimes[block], blockMaxTimes[block]))
+                    blocks[blockLimit++] = block;
+            }
+        }
+
+        for (int i = 0; i < blockLimit; i++) {
+            if (Thread.currentThread().isInterrupted())
+                break;
+            int block = blocks[i];
+            int end = Math.min(limit, (block + 1) << BLOCK_SHIFT);
+            for (int index = block << BLOCK_SHIFT; index < end; index++) {
+                if (query.matches(records.apply(index)))
+                    matches.accept(index);
+            }
+        }
+        return limit;
+    }
+
+    // Blocks containing every trigram of the literal plus every block without postings, or null when the literal is too
+    // short to narrow anything down
+    int[] candidateBlocks(byte[] literal) {
+        if (literal == null || literal.length < 3)
+            return null;
+
+        int trigramTotal = literal.length - 2;
+        int[] ids = new int[trigramTotal];
+        int trigram = (literal[0] & 0xFF) << 8 | literal[1] & 0xFF;
+        for (int i = 0; i < trigramTotal; i++) {
+            trigram = (trigram << 8 | literal[i + 2] & 0xFF) & 0xFFFFFF;
+            ids[i] = trigramId(trigram, false);
+            if (ids[i] < 0)
+                return withUnindexedBlocks(new int[0], 0);
+        }
+
+        // Intersect starting from the rarest trigram so the working set only shrinks
+        Arrays.sort(ids);
+        int rarest = ids[0];
+        for (int id : ids) {
+            if (postingSizes[id] < postingSizes[rarest])
+                rarest = id;
+        }
+
+        int[] result = Arrays.copyOf(postings[rarest], postingSizes[rarest]);
+        int resultSize = result.length;
+        int previous = -1;
+        for (int id : ids) {
+            if (id == rarest || id == previous)
+                continue;
+            previous = id;
+            resultSize = intersect(result, resultSize, postings[id], postingSizes[id]);
+            if (resultSize == 0)
+                break;
+        }
+        return withUnindexedBlocks(result, resultSize);
+    }
+
+    private int[] withUnindexedBlocks(int[] indexed, int indexedSize) {
+        int[] blocks = new int[firstIndexedBlock + indexedSize];
+        for (int block = 0; block < firstIndexedBlock; block++)
+            blocks[block] = block;
+        System.arraycopy(indexed, 0, blocks, firstIndexedBlock, indexedSize);
+        return blocks;
+    }
+
+    // Drops the postings of the oldest quarter of the indexed blocks until the rest fit, so a long session keeps the
+    // index bounded and only searches of its oldest records fall back to reading them all
+    private void dropOldestPostings() {
+        while (postingBytes > maxPostingBytes && firstIndexedBlock < blockCount) {
+            firstIndexedBlock += Math.max(1, (blockCount - firstIndexedBlock) / 4);
+            postingBytes = 0;
+            for (int id = 0; id < trigramCount; id++) {
+                int[] posting = postings[id];
+                if (posting == null)
+                    continue;
+
+                int count = postingSizes[id];
+                int from = 0;
+                while (from < count && posting[from] < firstIndexedBlock)
+                    from++;
+                count -= from;
+                if (count == 0) {
+                    posting = null;
+                } else if (count * 2 < posting.length) {
+                    posting = Arrays.copyOfRange(posting, from, from + Math.max(4, count));
+                } else if (from > 0) {
+                    System.arraycopy(posting, from, posting, 0, count);
+                }
+                postings[id] = posting;
+                postingSizes[id] = count;
+                if (posting != null)
+                    postingBytes += (long) posting.length * Integer.BYTES;
+            }
+        }
+    }
+
+    private static int intersect(int[] result, int resultSize, int[] posting, int postingSize) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < resultSize && j < postingSize; i++) {
+            int block = result[i];
+            while (j < postingSize && posting[j] < block)
+                j++;
+            if (j < postingSize && posting[j] == block)
+                result[kept++] = block;
+        }
+        return kept;
+    }
+
+    private void addPosting(int id, int block) {
+        int count = postingSizes[id];
+        int[] posting = postings[id];
+        if (count > 0 && posting[count - 1] == block)
+            return;
+
+        if (posting == null) {
+            posting = postings[id] = new int[4];
+            postingBytes += posting.length * Integer.BYTES;
+        } else if (count == posting.length) {
+            posting = postings[id] = Arrays.copyOf(posting, count * 2);
+            postingBytes += count * Integer.BYTES;
+        }
+        posting[count] = block;
+        postingSizes[id] = count + 1;
+    }
+
+    private int trigramId(int trigram, boolean create) {
+        int key = trigram + 1;
+        int mask = trigramKeys.length - 1;
+        int slot = mix(key) & mask;
+        while (trigramKeys[slot] != 0) {
+            if (trigramKeys[slot] == key)
+                return trigramIds[slot];
+            slot = (slot + 1) & mask;
+        }
+        if (!create)
+            return -1;
+
+        int id = trigramCount++;
+        trigramKeys[slot] = key;
+        trigramIds[slot] = id;
+        if (id == postings.length) {
+            postings = Arrays.copyOf(postings, id * 2);
+            postingSizes = Arrays.copyOf(postingSizes, id * 2);
+        }
+        if (trigramCount * 2 > trigramKeys.length)
+            rehash();
+        return id;
+    }
+
+    private void rehash() {
+        int[] oldKeys = trigramKeys;
+        int[] oldIds = trigramIds;
+        trigramKeys = new int[oldKeys.length * 2];
+        trigramIds = new int[trigramKeys.length];
+        int mask = trigramKeys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == 0)
+                continue;
+            int slot = mix(oldKeys[i]) & mask;
+            while (trigramKeys[slot] != 0)
+                slot = (slot + 1) & mask;
+            trigramKeys[slot] = oldKeys[i];
+            trigramIds[slot] = oldIds[i];
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,213 @@
+package monitor;
+
+import java.util.regex.Pattern;
+
+public final class RecordQuery {
+
+    // Escapes that stand for exactly one position or character class and take no argument
+    private static final String SIMPLE_ESCAPES = "dDsSwWhHvVbBAGZzRXntrfae";
+
+    private final String text;
+    private final Pattern pattern;
+    private final byte[] needle;
+    private final byte[] indexLiteral;
+    private final long fromTime;
+    private final long toTime;
+
+    private RecordQuery(String text, Pattern pattern, long fromTime, long toTime) {
+        this.text = text;
+        this.pattern = pattern;
+        this.needle = pattern == null ? fold(text) : null;
+        this.indexLiteral = pattern == null ? needle : fold(requiredLiteral(text));
+        this.fromTime = fromTime;
+        this.toTime = toTime;
+    }
+
+    // Case-insensitive substring match; an empty text matches every line in the time range
+    public static RecordQuery substring(String text, long fromTime, long toTime) {
+        return new RecordQuery(text, null, fromTime, toTime);
+    }
+
+    public static RecordQuery regex(String regex, long fromTime, long toTime) {
+        return new RecordQuery(regex, Pattern.compile(regex), fromTime, toTime);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean isRegex() {
+        return pattern != null;
+    }
+
+    public long getFromTime() {
+        return fromTime;
+    }
+
+    public long getToTime() {
+        return toTime;
+    }
+
+    public boolean matchesEverything() {
+        return text.isEmpty() && fromTime == Long.MIN_VALUE && toTime == Long.MAX_VALUE;
+    }
+
+    public boolean overlaps(long minTime, long maxTime) {
+        return maxTime >= fromTime && minTime <= toTime;
+    }
+
+    public boolean matches(Record record) {
+        long time = record.getTime();
+        if (time < fromTime || time > toTime)
+            return false;
+        if (pattern != null)
+            return pattern.matcher(record.getContent()).find();
+        return record.containsIgnoreCase(needle);
+    }
+
+    // Case-folded bytes every match must contain, or null when nothing can be required
+    byte[] getIndexLiteral() {
+        return indexLiteral;
+    }
+
+    // The longest run of plain characters that any match of the regex has to contain. Conservative: groups, classes and
+    // anything under an optional quantifier end the run, while alternation, quoting, comments mode and any escape not
+    // known to be two characters long give up entirely, so the caller scans everything rather than missing a match.
+    static String requiredLiteral(String regex) {
+        if (regex.indexOf('|') >= 0 || quotesOrComments(regex))
+            return null;
+
+        String longest = "";
+        StringBuilder run = new StringBuilder();
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            switch (c) {
+                case '\\':
+                    if (i + 1 == regex.length())
+                        return null;
+                    char escaped = regex.charAt(i + 1);
+                    if (!Character.isLetterOrDigit(escaped)) {
+                        run.append(escaped);
+                    } else if (SIMPLE_ESCAPES.indexOf(escaped) >= 0) {
+                        longest = longer(longest, run);
+                    } else {
+                        // Hex, octal, unicode, control and property escapes, named and numbered backreferences
+                        return null;
+                    }
+                    i += 2;
+                    break;
+                case '[':
+                    longest = longer(longest, run);
+                    i = skipClass(regex, i);
+                    break;
+                case '(':
+                    longest = longer(longest, run);
+                    i = skipGroup(regex, i);
+                    break;
+                case '*':
+                case '?':
+                case '{':
+                    // The quantified character may be absent, so it cannot be part of the run
+                    if (run.length() > 0)
+                        run.setLength(run.length() - 1);
+                    longest = longer(longest, run);
+                    i = c == '{' ? regex.indexOf('}', i) + 1 : i + 1;
+                    if (i == 0)
+                        i = regex.length();
+                    break;
+                case '+':
+                    longest = longer(longest, run);
+                    i++;
+                    break;
+                case '.':
+                case '^':
+                case '$':
+                case ')':
+                case ']':
+                    longest = longer(longest, run);
+                    i++;
+                    break;
+                default:
+                    run.append(c);
+                    i++;
+                    break;
+            }
+        }
+        longest = longer(longest, run);
+        return longest.isEmpty() ? null : longest;
+    }
+
+    // \Q...\E quoting or the (?x) comments flag anywhere, either of which changes how the rest of the regex reads
+    private static boolean quotesOrComments(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q')
+                    return true;
+                i++;
+            } else if (c == '(' && i + 1 < regex.length() && regex.charAt(i + 1) == '?') {
+                int j = i + 2;
+                while (j < regex.length() && (Character.isLetter(regex.charAt(j)) || regex.charAt(j) == '-')) {
+                    if (regex.charAt(j) == 'x')
+                        return true;
+                    j++;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String longer(String longest, StringBuilder run) {
+        String candidate = run.toString();
+        run.setLength(0);
+        return candidate.length() > longest.length() ? candidate : longest;
+    }
+
+    private static int skipClass(String regex, int i) {
+        i++;
+        while (i < regex.length() && regex.charAt(i) != ']')
+            i += regex.charAt(i) == '\\' ? 2 : 1;
+        return i + 1;
+    }
+
+    private static int skipGroup(String regex, int i) {
+        int depth = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                i = skipClass(regex, i);
+                continue;
+            }
+            if (c == '(')
+                depth++;
+            if (c == ')' && --depth == 0)
+                return skipQuantifier(regex, i + 1);
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipQuantifier(String regex, int i) {
+        if (i < regex.length() && "*+?".indexOf(regex.charAt(i)) >= 0)
+            return i + 1;
+        if (i < regex.length() && regex.charAt(i) == '{') {
+            int end = regex.indexOf('}', i);
+            return end < 0 ? regex.length() : end + 1;
+        }
+        return i;
+    }
+
+    private static byte[] fold(String text) {
+        if (text == null)
+            return null;
+        byte[] bytes = text.getBytes(Record.CHARSET);
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = Record.foldCase(bytes[i]);
+        return bytes;
+    }
+}
@@ -0,0 +1,293 @@
+package monitor;
+
+import com.moandjiezana.toml.Toml;
+import javafx.collections.ObservableListBase;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+public class RecordStore extends ObservableListBase<Record> implements AutoCloseable {
+
+    private static final int PAGE_SIZE = 256;
+    private static final int CACHED_PAGES = 32;
+    private static final int RECORD_HEADER_SIZE = Long.BYTES + Short.BYTES + Integer.BYTES;
+    private static final int MIN_WINDOW_BYTES = 128 * 1024;
+
+    // The in-memory window is columnar: per slot a time, an arena position and a length, with all content packed in one byte ring
+    private final long[] times;
+    private final short[] portIds;
+    private final long[] positions;
+    private final int[] lengths;
+    private final byte[] arena;
+    private long arenaWritePosition;
+
+    private int size;
+    private int spilledCount;
+
+    private final File spillDataFile;
+    private final File spillIndexFile;
+    private final DataOutputStream spillData;
+    private final DataOutputStream spillIndex;
+    private final FileChannel spillDataReader;
+    private final FileChannel spillIndexReader;
+    private long spillDataLength;
+    private boolean spillDirty;
+
+    private final RecordIndex index;
+
+    private final List<String> portNames = new ArrayList<>();
+    private final Map<String, Short> portIdsByName = new HashMap<>();
+
+    private final LongSupplier retainedGauge = () -> size - spilledCount;
+    private final LongSupplier spilledGauge = () -> spilledCount;
+
+    private final Map<Integer, Record[]> pageCache = new LinkedHashMap<Integer, Record[]>(CACHED_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Record[]> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+
+    public RecordStore(int windowSize, int windowBytes, File spillDirectory) throws IOException {
+        this(windowSize, windowBytes, spillDirectory, new RecordIndex());
+    }
+
+    // A null index leaves the store unsearchable
+    public RecordStore(int windowSize, int windowBytes, File spillDirectory, RecordIndex index) throws IOException {
+        this.index = index;
+        this.times = new long[windowSize];
+        this.portIds = new short[windowSize];
+        this.positions = new long[windowSize];
+        this.lengths = new int[windowSize];
+        this.arena = new byte[Math.max(windowBytes, MIN_WINDOW_BYTES)];
+
+        this.spillDataFile = File.createTempFile("jaspm-records-", ".dat", spillDirectory);
+        this.spillIndexFile = File.createTempFile("jaspm-records-", ".idx", spillDirectory);
+        this.spillData = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillDataFile), 64 * 1024));
+        this.spillIndex = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillIndexFile), 8 * 1024));
+        this.spillDataReader = FileChannel.open(spillDataFile.toPath(), StandardOpenOption.READ);
+        this.spillIndexReader = FileChannel.open(spillIndexFile.toPath(), StandardOpenOption.READ);
+
+        Metrics.gauge("store.retained", retainedGauge);
+        Metrics.gauge("store.spilled", spilledGauge);
+    }
+
+    public static RecordStore fromConfig() {
+        Toml toml = Config.get();
+        int windowSize = toml.getLong("store.window_size", 100000L).intValue();
+        int windowBytes = toml.getLong("store.window_bytes", 32L * 1024 * 1024).intValue();
+        String spillDirectory = toml.getString("store.spill_directory", System.getProperty("java.io.tmpdir"));
+
+        try {
+            File directory = new File(spillDirectory);
+            Files.createDirectories(directory.toPath());
+            RecordIndex index = toml.getBoolean("store.search_index", true)
+                    ? new RecordIndex(toml.getLong("store.index_max_bytes", 64L * 1024 * 1024))
+                    : null;
+            return new RecordStore(windowSize, windowBytes, directory, index);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void appendAll(List<Record> records) {
+        if (records.isEmpty())
+            return;
+
+        int from;
+        int to;
+        synchronized (this) {
+            from = size;
+            try {
+                for (Record record : records)
+                    append(record);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            to = size;
+        }
+
+        beginChange();
+        nextAdd(from, to);
+        endChange();
+    }
+
+    // Null when the store was created without a search index
+    public RecordIndex getIndex() {
+        return index;
+    }
+
+    public int getSpilledCount() {
+        return spilledCount;
+    }
+
+    // Appends come from the FX thread, but a filter search reads records from a background thread as well
+    @Override
+    public synchronized Record get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+
+        if (index >= spilledCount) {
+            int slot = index % times.length;
+            byte[] content = new byte[lengths[slot]];
+            readArena(positions[slot], content, 0, content.length);
+            return new Record(portNames.get(portIds[slot]), times[slot], content, 0, content.length);
+        }
+
+        try {
+            int page = index / PAGE_SIZE;
+            Record[] records = pageCache.get(page);
+            if (records == null) {
+                records = readPage(page);
+                // The last page keeps filling as more records spill, so only complete pages are cached
+                if (records.length == PAGE_SIZE)
+                    pageCache.put(page, records);
+            }
+            return records[index % PAGE_SIZE];
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() {
+        Metrics.release("store.retained", retainedGauge);
+        Metrics.release("store.spilled", spilledGauge);
+        try {
+            spillData.close();
+            spillIndex.close();
+            spillDataReader.close();
+            spillIndexReader.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        spillDataFile.delete();
+        spillIndexFile.delete();
+    }
+
+    private void append(Record record) throws IOException {
+        int length = Math.min(record.getLength(), arena.length);
+
+        while (size - spilledCount == times.length
+                || (size > spilledCount && arenaWritePosition + length - positions[spilledCount % times.length] > arena.length))
+            spillOldest();
+
+        int slot = size % times.length;
+        times[slot] = record.getTime();
+        portIds[slot] = portId(record.getPort());
+        positions[slot] = arenaWritePosition;
+        lengths[slot] = length;
+
+        int start = (int) (arenaWritePosition % arena.length);
+        int firstPart = Math.min(length, arena.length - start);
+        record.copyContent(0, arena, start, firstPart);
+        record.copyContent(firstPart, arena, 0, length - firstPart);
+
+        arenaWritePosition += length;
+        size++;
+
+        if (index != null)
+            index.add(record);
+    }
+
+    private short portId(String port) {
+        Short id = portIdsByName.get(port);
+        if (id == null) {
+            id = (short) portNames.size();
+            portNames.add(port);
+            portIdsByName.put(port, id);
+        }
+        return id;
+    }
+
+    private void spillOldest() throws IOException {
+        int slot = spilledCount % times.length;
+        int length = lengths[slot];
+
+        spillIndex.writeLong(spillDataLength);
+        spillData.writeLong(times[slot]);
+        spillData.writeShort(portIds[slot]);
+        spillData.writeInt(length);
+
+        int start = (int) (positions[slot] % arena.length);
+        int firstPart = Math.min(length, arena.length - start);
+        spillData.write(arena, start, firstPart);
+        spillData.write(arena, 0, length - firstPart);
+
+        spillDataLength += RECORD_HEADER_SIZE + length;
+        spillDirty = true;
+        spilledCount++;
+    }
+
+    private void readArena(long position, byte[] destination, int offset, int length) {
+        int start = (int) (position % arena.length);
+        int firstPart = Math.min(length, arena.length - start);
+        System.arraycopy(arena, start, destination, offset, firstPart);
+        System.arraycopy(arena, 0, destination, offset + firstPart, length - firstPart);
+    }
+
+    private Record[] readPage(int page) throws IOException {
+        if (spillDirty) {
+            spillData.flush();
+            spillIndex.flush();
+            spillDirty = false;
+        }
+
+        int first = page * PAGE_SIZE;
+        int count = Math.min(PAGE_SIZE, spilledCount - first);
+
+        ByteBuffer offsets = ByteBuffer.allocate(Long.BYTES);
+        readFully(spillIndexReader, offsets, (long) first * Long.BYTES);
+        long start = offsets.getLong(0);
+
+        long end = spillDataLength;
+        if (first + count < spilledCount) {
+            offsets.clear();
+            readFully(spillIndexReader, offsets, (long) (first + count) * Long.BYTES);
+            end = offsets.getLong(0);
+        }
+
+        ByteBuffer data = ByteBuffer.allocate((int) (end - start));
+        readFully(spillDataReader, data, start);
+        data.flip();
+
+        // Records of a page share the page buffer instead of each owning a copy
+        Record[] records = new Record[count];
+        for (int i = 0; i < count; i++) {
+            long time = data.getLong();
+            String port = portNames.get(data.getShort());
+            int length = data.getInt();
+            records[i] = new Record(port, time, data.array(), data.position(), length);
+            data.position(data.position() + length);
+        }
+        return records;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Unexpected end of spill file at " + position);
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package monitor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+public class ReplayTransport implements Transport {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final String name;
+    private final File source;
+    private final double speed;
+    private Thread replay;
+    private volatile boolean closed;
+    private volatile boolean finished;
+
+    // A capture log directory is replayed with its original timestamps, paced at speed times real time (0 for as fast as
+    // possible); any other file is streamed as fast as possible and its lines are stamped on arrival
+    public ReplayTransport(String name, File source, double speed) {
+        this.name = name;
+        this.source = source;
+        this.speed = speed;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public void open(Receiver receiver) throws IOException {
+        if (!source.exists())
+            throw new FileNotFoundException(source.getPath());
+
+        replay = new Thread(() -> {
+            try {
+                long entries = source.isDirectory() ? replayCapture(receiver) : replayFile(receiver);
+                System.out.println(name + ": replayed " + entries + (source.isDirectory() ? " lines" : " chunks"));
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                finished = true;
+            }
+        }, "monitor-replay-" + name);
+        replay.setDaemon(true);
+        replay.start();
+    }
+
+    // Sending to a recording goes nowhere
+    @Override
+    public void write(byte[] bytes) {
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (replay != null)
+            replay.interrupt();
+    }
+
+    private long replayCapture(Receiver receiver) throws IOException {
+        long[] replayed = new long[1];
+        long[] firstTime = {Long.MIN_VALUE};
+        long startNanos = System.nanoTime();
+
+        try (CaptureLog captureLog = CaptureLog.openForReading(source)) {
+            captureLog.read(Long.MIN_VALUE, Long.MAX_VALUE, (time, content) -> {
+                if (closed)
+                    return false;
+
+                if (firstTime[0] == Long.MIN_VALUE)
+                    firstTime[0] = time;
+                if (speed > 0) {
+                    long due = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(time - firstTime[0]) / speed);
+                    long wait;
+                    while ((wait = due - System.nanoTime()) > 0 && !closed)
+                        LockSupport.parkNanos(wait);
+                }
+
+                byte[] bytes = new byte[content.remaining()];
+                content.get(bytes);
+                receiver.received(bytes, time);
+                replayed[0]++;
+                return true;
+            });
+        }
+        return replayed[0];
+    }
+
+    private long replayFile(Receiver receiver) throws IOException {
+        long chunks = 0;
+        byte[] chunk = new byte[CHUNK_SIZE];
+        try (InputStream input = new FileInputStream(source)) {
+            int count;
+            while (!closed && (count = input.read(chunk)) > 0) {
+                receiver.received(Arrays.copyOf(chunk, count), LIVE);
+                chunks++;
+            }
+        }
+        return chunks;
+    }
+}
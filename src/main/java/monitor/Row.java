@@ -0,0 +1,24 @@
+package monitor;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+public interface Row {
+
+    String getTable();
+
+    String getInsertSql();
+
+    void bind(PreparedStatement statement) throws SQLException;
+
+    // Creates the table if it is missing, for tables the application derives itself; null when the table is part of
+    // the schema the database is set up with
+    default String getCreateSql() {
+        return null;
+    }
+
+    // Marked committed once the row's batch is; at most one row per traced frame carries it
+    default Trace getTrace() {
+        return null;
+    }
+}
@@ -0,0 +1,365 @@
+package monitor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+// One engine per port, driven from that port's drain: evaluation is single-threaded and keeps its state in plain arrays
+public class RuleEngine {
+
+    private final String portName;
+    private final Consumer<Alert> alerts;
+
+    // Line rules. Every contains literal, and the literal any match of a regex must contain, goes into one automaton, so a
+    // line is scanned once however many rules there are; a regex only runs on lines that contain its literal
+    private final AlertRule[] lineRules;
+    private final byte[][] exactTexts;
+    private final Pattern[] patterns;
+    private final AhoCorasick automaton;
+    private final int[][] patternRules;
+    private final int[] unfilteredRules;
+    private final long[] lastFired;
+    private final long[] evaluatedLine;
+    private final AhoCorasick.MatchHandler matchHandler = this::onMatch;
+
+    private long lineNumber;
+    private long lineTime;
+    private byte[] lineBytes;
+    private int lineOffset;
+    private int lineLength;
+    private String lineText;
+
+    // Field rules, grouped by field, with the debounce and rate state kept per device
+    private final AlertRule[] fieldRules;
+    private final FieldIndex[] fieldIndexes;
+    private byte[][] deviceKeys = new byte[4][];
+    private DeviceState[] devices = new DeviceState[4];
+    private int deviceCount;
+
+    private final Counter alertsFired;
+    private final LatencyHistogram lineLatency;
+
+    public RuleEngine(String portName, List<AlertRule> rules, Consumer<Alert> alerts) {
+        this.portName = portName;
+        this.alerts = alerts;
+
+        List<AlertRule> lines = new ArrayList<>();
+        List<AlertRule> fields = new ArrayList<>();
+        for (AlertRule rule : rules)
+            (rule.getKind() == AlertRule.Kind.FIELD ? fields : lines).add(rule);
+        this.lineRules = lines.toArray(new AlertRule[0]);
+        this.fieldRules = fields.toArray(new AlertRule[0]);
+        this.fieldIndexes = fields.stream()
+                .map(AlertRule::getField)
+                .distinct()
+                .map(field -> new FieldIndex(field, fieldRules))
+                .toArray(FieldIndex[]::new);
+
+        this.exactTexts = new byte[lineRules.length][];
+        this.patterns = new Pattern[lineRules.length];
+        this.lastFired = new long[lineRules.length];
+        this.evaluatedLine = new long[lineRules.length];
+        Arrays.fill(lastFired, Long.MIN_VALUE);
+        Arrays.fill(evaluatedLine, -1);
+
+        Map<String, List<Integer>> literalRules = new LinkedHashMap<>();
+        List<Integer> unfiltered = new ArrayList<>();
+        for (int i = 0; i < lineRules.length; i++) {
+            AlertRule rule = lineRules[i];
+            String literal;
+            if (rule.getKind() == AlertRule.Kind.CONTAINS) {
+                literal = rule.getText();
+                if (!rule.isIgnoreCase())
+                    exactTexts[i] = rule.getText().getBytes(Record.CHARSET);
+            } else {
+                patterns[i] = Pattern.compile(rule.getText(), rule.isIgnoreCase() ? Pattern.CASE_INSENSITIVE : 0);
+                literal = RecordQuery.requiredLiteral(rule.getText());
+            }
+
+            if (literal == null) {
+                unfiltered.add(i);
+            } else {
+                literalRules.computeIfAbsent(new String(fold(literal), StandardCharsets.ISO_8859_1), l -> new ArrayList<>()).add(i);
+            }
+        }
+
+        List<byte[]> literals = new ArrayList<>();
+        this.patternRules = new int[literalRules.size()][];
+        int pattern = 0;
+        for (Map.Entry<String, List<Integer>> entry : literalRules.entrySet()) {
+            literals.add(entry.getKey().getBytes(StandardCharsets.ISO_8859_1));
+            patternRules[pattern++] = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+        }
+        this.automaton = literals.isEmpty() ? null : new AhoCorasick(literals);
+        this.unfilteredRules = unfiltered.stream().mapToInt(Integer::intValue).toArray();
+
+        this.alertsFired = Metrics.counter("alerts.fired");
+        this.lineLatency = Metrics.histogram("monitor." + portName + ".rules");
+    }
+
+    public int getRuleCount() {
+        return lineRules.length + fieldRules.length;
+    }
+
+    public void evaluateLine(long time, byte[] bytes, int offset, int length) {
+        if (lineRules.length == 0)
+            return;
+
+        long evaluateStart = System.nanoTime();
+        lineNumber++;
+        lineTime = time;
+        lineBytes = bytes;
+        lineOffset = offset;
+        lineLength = length;
+        lineText = null;
+
+        if (automaton != null)
+            automaton.search(bytes, offset, length, matchHandler);
+        for (int rule : unfilteredRules)
+            evaluateRegex(rule);
+
+        lineBytes = null;
+        lineLatency.recordSince(evaluateStart);
+    }
+
+    public void evaluateFrame(LogFrame frame) {
+        if (fieldRules.length == 0)
+            return;
+
+        DeviceState device = device(frame);
+        long time = frame.getTime();
+        long frameNumber = ++device.frameNumber;
+
+        for (int f = 0; f < fieldIndexes.length; f++) {
+            FieldIndex index = fieldIndexes[f];
+            double value = index.field.extract(frame);
+            if (Double.isNaN(value))
+                continue;
+
+            // Two samples in the same millisecond give no rate, so the rate rules keep the one before rather than re-arm
+            if (device.fieldTimes[f] != Long.MIN_VALUE && time > device.fieldTimes[f])
+                device.fieldRates[f] = Math.abs(value - device.fieldValues[f]) * 1000 / (time - device.fieldTimes[f]);
+            double rate = device.fieldRates[f];
+            device.fieldValues[f] = value;
+            device.fieldTimes[f] = time;
+
+            holding(device, index.aboveRules, countBelow(index.aboveThresholds, value), frameNumber, time);
+            holding(device, index.belowRules, countBelow(index.belowThresholds, -value), frameNumber, time);
+            if (!Double.isNaN(rate))
+                holding(device, index.rateRules, countBelow(index.rateThresholds, rate), frameNumber, time);
+        }
+
+        // Rules that held on the previous frame and not on this one re-arm
+        int kept = 0;
+        for (int i = 0; i < device.activeCount; i++) {
+            int rule = device.active[i];
+            if (device.heldFrame[rule] == frameNumber) {
+                device.active[kept++] = rule;
+            } else {
+                device.since[rule] = Long.MIN_VALUE;
+                device.fired[rule] = false;
+            }
+        }
+        device.activeCount = kept;
+
+        for (int i = 0; i < kept; i++) {
+            int rule = device.active[i];
+            if (device.fired[rule] || time - device.since[rule] < fieldRules[rule].getForMillis())
+                continue;
+            if (device.lastFired[rule] != Long.MIN_VALUE && time - device.lastFired[rule] < fieldRules[rule].getCooldownMillis())
+                continue;
+
+            device.fired[rule] = true;
+            device.lastFired[rule] = time;
+            fire(time, fieldRules[rule], describe(device, fieldRules[rule], frame));
+        }
+    }
+
+    // The first count rules of a threshold-sorted list hold on this frame
+    private static void holding(DeviceState device, int[] rules, int count, long frameNumber, long time) {
+        for (int i = 0; i < count; i++) {
+            int rule = rules[i];
+            if (device.heldFrame[rule] == frameNumber)
+                continue;
+            device.heldFrame[rule] = frameNumber;
+            if (device.since[rule] == Long.MIN_VALUE) {
+                device.since[rule] = time;
+                device.active[device.activeCount++] = rule;
+            }
+        }
+    }
+
+    private static String describe(DeviceState device, AlertRule rule, LogFrame frame) {
+        double value = rule.getField().extract(frame);
+        String reason;
+        if (value > rule.getAbove()) {
+            reason = "above " + rule.getAbove();
+        } else if (value < rule.getBelow()) {
+            reason = "below " + rule.getBelow();
+        } else {
+            reason = "changing faster than " + rule.getRatePerSecond() + "/s";
+        }
+        return device.name + " " + rule.getField().getTable() + " " + value + " " + reason;
+    }
+
+    // Number of sorted thresholds strictly below value
+    private static int countBelow(double[] thresholds, double value) {
+        int low = 0;
+        int high = thresholds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (thresholds[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void onMatch(int pattern, int end) {
+        for (int rule : patternRules[pattern]) {
+            if (evaluatedLine[rule] == lineNumber)
+                continue;
+
+            if (patterns[rule] != null) {
+                evaluateRegex(rule);
+            } else if (exactTexts[rule] == null || regionEquals(exactTexts[rule], end)) {
+                evaluatedLine[rule] = lineNumber;
+                fireLine(rule);
+            }
+        }
+    }
+
+    private void evaluateRegex(int rule) {
+        evaluatedLine[rule] = lineNumber;
+        if (lineText == null)
+            lineText = new String(lineBytes, lineOffset, lineLength, Record.CHARSET);
+        if (patterns[rule].matcher(lineText).find())
+            fireLine(rule);
+    }
+
+    // The automaton matched case-insensitively; a case-sensitive contains checks the bytes that ended at end
+    private boolean regionEquals(byte[] text, int end) {
+        int start = end - text.length;
+        if (start < lineOffset)
+            return false;
+        for (int i = 0; i < text.length; i++) {
+            if (lineBytes[start + i] != text[i])
+                return false;
+        }
+        return true;
+    }
+
+    private void fireLine(int rule) {
+        if (lastFired[rule] != Long.MIN_VALUE && lineTime - lastFired[rule] < lineRules[rule].getCooldownMillis())
+            return;
+        lastFired[rule] = lineTime;
+        String line = lineText != null ? lineText : new String(lineBytes, lineOffset, lineLength, Record.CHARSET);
+        fire(lineTime, lineRules[rule], line.trim());
+    }
+
+    private void fire(long time, AlertRule rule, String message) {
+        alertsFired.increment();
+        alerts.accept(new Alert(time, portName, rule.getName(), message));
+    }
+
+    // Few devices share a port, so a linear scan over the serial numbers beats hashing a decoded String per frame
+    private DeviceState device(LogFrame frame) {
+        for (int i = 0; i < deviceCount; i++) {
+            byte[] key = deviceKeys[i];
+            if (frame.serialNumberEquals(key, 0, key.length))
+                return devices[i];
+        }
+
+        if (deviceCount == deviceKeys.length) {
+            deviceKeys = Arrays.copyOf(deviceKeys, deviceCount * 2);
+            devices = Arrays.copyOf(devices, deviceCount * 2);
+        }
+        deviceKeys[deviceCount] = frame.copySerialNumber();
+        return devices[deviceCount++] = new DeviceState(frame.getSerialNumber(), fieldIndexes.length, fieldRules.length);
+    }
+
+    private static byte[] fold(String text) {
+        byte[] bytes = text.getBytes(Record.CHARSET);
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = Record.foldCase(bytes[i]);
+        return bytes;
+    }
+
+    private static class FieldIndex {
+        final TelemetryField field;
+        final int[] aboveRules;
+        final double[] aboveThresholds;
+        final int[] belowRules;
+        final double[] belowThresholds;
+        final int[] rateRules;
+        final double[] rateThresholds;
+
+        // Each condition is a list of rules sorted by threshold, so the rules that hold for a value are a prefix found by
+        // binary search: a frame costs a lookup per field plus the rules that hold, not a pass over every rule.
+        // Below thresholds are negated to sort the same way.
+        FieldIndex(TelemetryField field, AlertRule[] rules) {
+            this.field = field;
+            List<Integer> above = new ArrayList<>();
+            List<Integer> below = new ArrayList<>();
+            List<Integer> rate = new ArrayList<>();
+            for (int i = 0; i < rules.length; i++) {
+                if (rules[i].getField() != field)
+                    continue;
+                if (!Double.isNaN(rules[i].getAbove()))
+                    above.add(i);
+                if (!Double.isNaN(rules[i].getBelow()))
+                    below.add(i);
+                if (!Double.isNaN(rules[i].getRatePerSecond()))
+                    rate.add(i);
+            }
+            above.sort(Comparator.comparingDouble(i -> rules[i].getAbove()));
+            below.sort(Comparator.comparingDouble(i -> -rules[i].getBelow()));
+            rate.sort(Comparator.comparingDouble(i -> rules[i].getRatePerSecond()));
+
+            this.aboveRules = above.stream().mapToInt(Integer::intValue).toArray();
+            this.aboveThresholds = above.stream().mapToDouble(i -> rules[i].getAbove()).toArray();
+            this.belowRules = below.stream().mapToInt(Integer::intValue).toArray();
+            this.belowThresholds = below.stream().mapToDouble(i -> -rules[i].getBelow()).toArray();
+            this.rateRules = rate.stream().mapToInt(Integer::intValue).toArray();
+            this.rateThresholds = rate.stream().mapToDouble(i -> rules[i].getRatePerSecond()).toArray();
+        }
+    }
+
+    private static class DeviceState {
+        final String name;
+        final double[] fieldValues;
+        final long[] fieldTimes;
+        final double[] fieldRates;
+        final long[] heldFrame;
+        final long[] since;
+        final long[] lastFired;
+        final boolean[] fired;
+        final int[] active;
+        int activeCount;
+        long frameNumber;
+
+        DeviceState(String name, int fieldCount, int ruleCount) {
+            this.name = name;
+            this.fieldValues = new double[fieldCount];
+            this.fieldTimes = new long[fieldCount];
+            this.fieldRates = new double[fieldCount];
+            this.heldFrame = new long[ruleCount];
+            this.since = new long[ruleCount];
+            this.lastFired = new long[ruleCount];
+            this.fired = new boolean[ruleCount];
+            this.active = new int[ruleCount];
+            Arrays.fill(fieldTimes, Long.MIN_VALUE);
+            Arrays.fill(fieldRates, Double.NaN);
+            Arrays.fill(since, Long.MIN_VALUE);
+            Arrays.fill(lastFired, Long.MIN_VALUE);
+        }
+    }
+}
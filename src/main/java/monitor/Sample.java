@@ -0,0 +1,60 @@
+package monitor;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class Sample implements Row {
+
+    private static final Map<String, String> INSERT_SQL = new ConcurrentHashMap<>();
+
+    private final String table;
+    private final long time;
+    private final Object value;
+    private final Trace trace;
+
+    public Sample(String table, long time, Object value) {
+        this(table, time, value, null);
+    }
+
+    public Sample(String table, long time, Object value, Trace trace) {
+        this.table = table;
+        this.time = time;
+        this.value = value;
+        this.trace = trace;
+    }
+
+    @Override
+    public String getTable() {
+        return table;
+    }
+
+    @Override
+    public String getInsertSql() {
+        return insertSql(table);
+    }
+
+    public static String insertSql(String table) {
+        return INSERT_SQL.computeIfAbsent(table, t -> String.format("INSERT INTO %s(time, value) VALUES(?, ?)", t));
+    }
+
+    @Override
+    public void bind(PreparedStatement statement) throws SQLException {
+        statement.setLong(1, time);
+        statement.setObject(2, value);
+    }
+
+    @Override
+    public Trace getTrace() {
+        return trace;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,83 @@
+package monitor;
+
+import jssc.SerialPort;
+import jssc.SerialPortEvent;
+import jssc.SerialPortEventListener;
+import jssc.SerialPortException;
+
+import java.io.IOException;
+
+public class SerialTransport implements Transport, SerialPortEventListener {
+
+    private final String portName;
+    private final int baudRate;
+    private final int dataBits;
+    private final int stopBits;
+    private volatile SerialPort serialPort;
+    private Receiver receiver;
+
+    public SerialTransport(String portName, int baudRate, int dataBits, int stopBits) {
+        this.portName = portName;
+        this.baudRate = baudRate;
+        this.dataBits = dataBits;
+        this.stopBits = stopBits;
+    }
+
+    @Override
+    public void open(Receiver receiver) throws IOException {
+        this.receiver = receiver;
+        // A fresh handle each time, since closing one whose adapter was unplugged can leave it half open
+        SerialPort serialPort = new SerialPort(portName);
+        this.serialPort = serialPort;
+        try {
+            serialPort.openPort();
+            serialPort.setParams(baudRate, dataBits, stopBits, SerialPort.PARITY_NONE);
+            serialPort.setFlowControlMode(SerialPort.FLOWCONTROL_NONE);
+            serialPort.addEventListener(this, SerialPort.MASK_RXCHAR);
+        } catch (SerialPortException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes) throws IOException {
+        SerialPort serialPort = this.serialPort;
+        if (serialPort == null)
+            throw new IOException(portName + " is not open");
+        try {
+            serialPort.writeBytes(bytes);
+        } catch (SerialPortException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        SerialPort serialPort = this.serialPort;
+        if (serialPort == null)
+            return;
+        try {
+            if (serialPort.isOpened()) {
+                serialPort.removeEventListener();
+                serialPort.closePort();
+            }
+        } catch (SerialPortException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void serialEvent(SerialPortEvent event) {
+        if (!event.isRXCHAR() || event.getEventValue() <= 0)
+            return;
+
+        try {
+            byte[] bytesRead = serialPort.readBytes();
+            if (bytesRead != null)
+                receiver.received(bytesRead, LIVE);
+        } catch (SerialPortException e) {
+            // What an unplugged adapter looks like; jssc lets the listener close the port from its own event thread
+            receiver.disconnected(e.getExceptionType());
+        }
+    }
+}
@@ -1,50 +1,65 @@
 package monitor;
 
 import com.sun.javafx.collections.ImmutableObservableList;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.SelectionMode;
+import javafx.scene.control.TextField;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
 import javafx.stage.Stage;
 import jssc.SerialPort;
-import jssc.SerialPortList;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
 
 public class SettingsView extends Stage {
 
-    private ComboBox<String> portsComboBox;
+    private ListView<String> portsListView;
     private ComboBox<Integer> baudRatesComboBox;
     private ComboBox<Integer> dataBitsComboBox;
     private ComboBox<String> stopBitsComboBox;
 
     private final Map<String, Integer> stopBits = new HashMap<>();
 
-    private Consumer<Settings> onContinueCallback;
+    private final PortWatcher portWatcher;
+    private final PortWatcher.Listener portsListener = portNames -> Platform.runLater(() -> updatePorts(portNames));
+    private final List<String> otherPorts = new ArrayList<>();
 
-    public SettingsView() {
+    private Consumer<List<Settings>> onContinueCallback;
+
+    public SettingsView(PortWatcher portWatcher) {
+        this.portWatcher = portWatcher;
         setTitle("jaspm Settings");
+        setOnHidden(event -> portWatcher.removeListener(portsListener));
     }
 
-    public SettingsView onContinue(Consumer<Settings> onContinueCallback) {
+    public SettingsView onContinue(Consumer<List<Settings>> onContinueCallback) {
         this.onContinueCallback = onContinueCallback;
         return this;
     }
 
     public SettingsView initUI() {
         GridPane settingsGrid = createSettingsGrid(onContinueCallback);
-        setScene(new Scene(settingsGrid, 400, 250));
+        setScene(new Scene(settingsGrid, 400, 380));
         return this;
     }
 
-    private GridPane createSettingsGrid(Consumer<Settings> onContinueCallback) {
+    private GridPane createSettingsGrid(Consumer<List<Settings>> onContinueCallback) {
         GridPane settingsGrid = new GridPane();
 
         addPortsRow(settingsGrid);
+        addOtherPortRow(settingsGrid);
         addBautRatesRow(settingsGrid);
         addDataBitsRow(settingsGrid);
         addStopBitsRow(settingsGrid);
@@ -59,15 +74,69 @@ public class SettingsView extends Stage {
         return settingsGrid;
     }
 
+    // The watcher's cached list, kept current while the window is open so an adapter plugged in now shows up
     private void addPortsRow(GridPane settingsGrid) {
-        String[] portNames = SerialPortList.getPortNames();
-        Label portLabel = new Label("Port to monitor");
-        portsComboBox = new ComboBox<>(new ImmutableObservableList<>(portNames));
+        Label portLabel = new Label("Ports to monitor");
+        portsListView = new ListView<>(FXCollections.observableArrayList(portWatcher.getPortNames()));
+        portsListView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        portsListView.setPrefHeight(100);
+
+        settingsGrid.addRow(0, portLabel, portsListView);
+
+        portsListView.prefWidthProperty().bind(settingsGrid.widthProperty().divide(8).multiply(5));
+        portsListView.getSelectionModel().select(0);
+        portsListView.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue != null)
+                applyRemembered(portWatcher.getSettings(newValue));
+        });
+        portWatcher.addListener(portsListener);
+    }
+
+    private void updatePorts(List<String> portNames) {
+        List<String> selected = new ArrayList<>(portsListView.getSelectionModel().getSelectedItems());
+        List<String> items = new ArrayList<>(portNames);
+        items.addAll(otherPorts);
+        portsListView.getItems().setAll(items);
+        for (String portName : selected)
+            portsListView.getSelectionModel().select(portName);
+    }
 
-        settingsGrid.addRow(0, portLabel, portsComboBox);
+    // The settings the port was last opened with, if it ever was
+    private void applyRemembered(Settings settings) {
+        if (settings == null)
+            return;
+        if (baudRatesComboBox.getItems().contains(settings.getBaudRate()))
+            baudRatesComboBox.getSelectionModel().select(Integer.valueOf(settings.getBaudRate()));
+        dataBitsComboBox.getSelectionModel().select(Integer.valueOf(settings.getDataBits()));
+        for (Map.Entry<String, Integer> entry : stopBits.entrySet()) {
+            if (entry.getValue() == settings.getStopBits())
+                stopBitsComboBox.getSelectionModel().select(entry.getKey());
+        }
+    }
+
+    // Network and replay sources aren't enumerable, so they are typed in and added to the list, see Transport.forName
+    private void addOtherPortRow(GridPane settingsGrid) {
+        Label otherPortLabel = new Label("Other source");
+        TextField otherPort = new TextField();
+        otherPort.setPromptText("tcp:host:port, tcp-listen:port, replay:path");
+        Button addButton = new Button("Add");
+        addButton.disableProperty().bind(otherPort.textProperty().isEmpty());
+        addButton.setOnAction(event -> {
+            String portName = otherPort.getText().trim();
+            if (!portsListView.getItems().contains(portName)) {
+                otherPorts.add(portName);
+                portsListView.getItems().add(portName);
+            }
+            portsListView.getSelectionModel().select(portName);
+            otherPort.clear();
+        });
+        otherPort.setOnAction(event -> addButton.fire());
 
-        portsComboBox.prefWidthProperty().bind(settingsGrid.widthProperty().divide(8).multiply(5));
-        portsComboBox.getSelectionModel().select(0);
+        HBox otherPortBox = new HBox(5, otherPort, addButton);
+        settingsGrid.addRow(1, otherPortLabel, otherPortBox);
+
+        otherPortBox.prefWidthProperty().bind(settingsGrid.widthProperty().divide(8).multiply(5));
+        HBox.setHgrow(otherPort, Priority.ALWAYS);
     }
 
     private void addBautRatesRow(GridPane settingsGrid) {
@@ -89,7 +158,7 @@ public class SettingsView extends Stage {
         Label baudRatesLabel = new Label("BaudRate");
         baudRatesComboBox = new ComboBox<>(new ImmutableObservableList<>(baudRates));
 
-        settingsGrid.addRow(1, baudRatesLabel, baudRatesComboBox);
+        settingsGrid.addRow(2, baudRatesLabel, baudRatesComboBox);
 
         baudRatesComboBox.prefWidthProperty().bind(settingsGrid.widthProperty().divide(8).multiply(5));
         baudRatesComboBox.getSelectionModel().select(8);
@@ -105,7 +174,7 @@ public class SettingsView extends Stage {
         Label dataBitsLabel = new Label("DataBits");
         dataBitsComboBox = new ComboBox<>(new ImmutableObservableList<>(dataBits));
 
-        settingsGrid.addRow(2, dataBitsLabel, dataBitsComboBox);
+        settingsGrid.addRow(3, dataBitsLabel, dataBitsComboBox);
 
         dataBitsComboBox.prefWidthProperty().bind(settingsGrid.widthProperty().divide(8).multiply(5));
         dataBitsComboBox.getSelectionModel().select(3);
@@ -120,23 +189,29 @@ public class SettingsView extends Stage {
 
         stopBitsComboBox = new ComboBox<>(new ImmutableObservableList<>(stopBits.keySet().toArray(new String[0])));
 
-        settingsGrid.addRow(3, stopBitsLabel, stopBitsComboBox);
+        settingsGrid.addRow(4, stopBitsLabel, stopBitsComboBox);
 
         stopBitsComboBox.prefWidthProperty().bind(settingsGrid.widthProperty().divide(8).multiply(5));
         stopBitsComboBox.getSelectionModel().select(0);
+        // The last row built, so every combo box is there to take the first port's settings
+        applyRemembered(portWatcher.getSettings(portsListView.getSelectionModel().getSelectedItem()));
     }
 
-    private void addContinueButton(GridPane settingsGrid, Consumer<Settings> onContinueCallback) {
+    private void addContinueButton(GridPane settingsGrid, Consumer<List<Settings>> onContinueCallback) {
         Button continueButton = new Button("Continue");
-        settingsGrid.addRow(4, continueButton);
+        settingsGrid.addRow(5, continueButton);
+        continueButton.disableProperty().bind(portsListView.getSelectionModel().selectedItemProperty().isNull());
         continueButton.setOnAction(event -> {
             this.close();
-            onContinueCallback.accept(
-                    new Settings(
-                            portsComboBox.getSelectionModel().getSelectedItem(),
-                            baudRatesComboBox.getSelectionModel().getSelectedItem(),
-                            dataBitsComboBox.getSelectionModel().getSelectedItem(),
-                            stopBits.get(stopBitsComboBox.getSelectionModel().getSelectedItem())));
+
+            List<Settings> settings = new ArrayList<>();
+            for (String portName : portsListView.getSelectionModel().getSelectedItems())
+                settings.add(new Settings(
+                        portName,
+                        baudRatesComboBox.getSelectionModel().getSelectedItem(),
+                        dataBitsComboBox.getSelectionModel().getSelectedItem(),
+                        stopBits.get(stopBitsComboBox.getSelectionModel().getSelectedItem())));
+            onContinueCallback.accept(settings);
         });
     }
 }
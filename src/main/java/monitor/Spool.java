@@ -0,0 +1,422 @@
+package monitor;
+
+import com.moandjiezana.toml.Toml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+public class Spool implements AutoCloseable {
+
+    private static final int ENTRY_HEADER_SIZE = Integer.BYTES * 2;
+    private static final int MAX_ENTRY_SIZE = 64 * 1024;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte SAMPLE = 0;
+    private static final byte AGGREGATE = 1;
+
+    private static final byte NULL_VALUE = 0;
+    private static final byte DOUBLE_VALUE = 1;
+    private static final byte INTEGER_VALUE = 2;
+    private static final byte BOOLEAN_VALUE = 3;
+    private static final byte LONG_VALUE = 4;
+
+    private final File directory;
+    private final long segmentSize;
+    private final long maxSize;
+    private final File checkpointFile;
+
+    // Sealed segments and their sizes; the active segment is tracked separately until it is rolled
+    private final TreeMap<Long, Long> sealedSegments = new TreeMap<>();
+    private long activeId;
+    private long activeSize;
+    private FileOutputStream activeFile;
+    private DataOutputStream activeStream;
+    private long totalSize;
+
+    // Replay position: everything before (headId, headOffset) has been committed to the database
+    private long headId;
+    private long headOffset;
+    private long readId;
+    private long readOffset;
+    private int readRows;
+
+    private final ByteArrayOutputStream entryBuffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream entryStream = new DataOutputStream(entryBuffer);
+    private final CRC32 checksum = new CRC32();
+
+    private final Counter rowsSpooled = Metrics.counter("spool.rows.written");
+    private final Counter rowsReplayed = Metrics.counter("spool.rows.replayed");
+    private final Counter segmentsDropped = Metrics.counter("spool.segments.dropped");
+    private final Counter corruptEntries = Metrics.counter("spool.entries.corrupt");
+
+    private boolean closed;
+    private final LongSupplier pendingBytesGauge = this::getPendingBytes;
+
+    public Spool(File directory, long segmentSize, long maxSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSize = maxSize;
+        this.checkpointFile = new File(directory, "spool.checkpoint");
+
+        Files.createDirectories(directory.toPath());
+        File[] segmentFiles = directory.listFiles((dir, name) -> name.startsWith("spool-") && name.endsWith(".dat"));
+        if (segmentFiles != null) {
+            for (File segmentFile : segmentFiles) {
+                String name = segmentFile.getName();
+                long id = Long.parseLong(name.substring("spool-".length(), name.length() - ".dat".length()));
+                sealedSegments.put(id, segmentFile.length());
+                totalSize += segmentFile.length();
+            }
+        }
+
+        // Appends after a restart always go to a fresh segment; whatever the previous run left behind is replayed as-is
+        activeId = sealedSegments.isEmpty() ? 0 : sealedSegments.lastKey() + 1;
+        openActiveSegment();
+        readCheckpoint();
+
+        Metrics.gauge("spool.bytes", pendingBytesGauge);
+    }
+
+    public static Spool fromConfig() {
+        Toml toml = Config.get();
+        File directory = new File(toml.getString("spool.directory", "spool"));
+        long segmentSize = toml.getLong("spool.segment_size_mb", 16L) * 1024 * 1024;
+        long maxSize = toml.getLong("spool.max_size_mb", 1024L) * 1024 * 1024;
+
+        try {
+            return new Spool(directory, segmentSize, maxSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Entry: [int payload length][int CRC32 of payload][payload]
+    public synchronized boolean append(Row row) {
+        if (closed)
+            return false;
+
+        try {
+            entryBuffer.reset();
+            encode(row, entryStream);
+
+            checksum.reset();
+            checksum.update(entryBuffer.toByteArray(), 0, entryBuffer.size());
+
+            activeStream.writeInt(entryBuffer.size());
+            activeStream.writeInt((int) checksum.getValue());
+            entryBuffer.writeTo(activeStream);
+
+            int entrySize = ENTRY_HEADER_SIZE + entryBuffer.size();
+            activeSize += entrySize;
+            totalSize += entrySize;
+            rowsSpooled.increment();
+
+            if (activeSize >= segmentSize)
+                rollSegment();
+            enforceMaxSize();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    public synchronized void sync() {
+        if (closed)
+            return;
+
+        try {
+            activeStream.flush();
+            activeFile.getChannel().force(false);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized boolean hasBacklog() {
+        return headId < activeId || headOffset < activeSize;
+    }
+
+    public synchronized long getPendingBytes() {
+        return totalSize - headOffset;
+    }
+
+    // Reads up to maxRows from the replay head without consuming them; commit() consumes them once they are in the database
+    public int poll(List<Row> rows, int maxRows) throws IOException {
+        if (maxRows <= 0)
+            return 0;
+
+        while (true) {
+            long id;
+            long offset;
+            synchronized (this) {
+                if (!hasBacklog())
+                    return 0;
+                if (headId == activeId)
+                    rollSegment();
+                id = headId;
+                offset = headOffset;
+            }
+
+            int before = rows.size();
+            long position = readSegment(segmentFile(id), offset, rows, maxRows);
+
+            synchronized (this) {
+                readId = id;
+                readOffset = position;
+                readRows = rows.size() - before;
+            }
+            if (!rows.isEmpty())
+                return rows.size();
+
+            // Nothing readable left in this segment, only a torn or corrupt tail: skip past it
+            commit();
+        }
+    }
+
+    public synchronized void commit() {
+        if (readId != headId)
+            return;
+
+        rowsReplayed.add(readRows);
+        readRows = 0;
+        headOffset = readOffset;
+
+        Long size = sealedSegments.get(headId);
+        if (size != null && headOffset >= size) {
+            deleteSegment(headId);
+            Long next = sealedSegments.higherKey(headId);
+            headId = next != null ? next : activeId;
+            headOffset = 0;
+            readId = headId;
+            readOffset = 0;
+        }
+        writeCheckpoint();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+
+        sync();
+        closed = true;
+        Metrics.release("spool.bytes", pendingBytesGauge);
+        try {
+            activeStream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (activeSize == 0)
+            segmentFile(activeId).delete();
+    }
+
+    private long readSegment(File file, long offset, List<Row> rows, int maxRows) throws IOException {
+        long length = file.length();
+        long position = offset;
+        byte[] payload = new byte[MAX_ENTRY_SIZE];
+        CRC32 checksum = new CRC32();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), READ_BUFFER_SIZE))) {
+            skipFully(in, offset);
+
+            while (rows.size() < maxRows && position < length) {
+                int entryLength;
+                int entryChecksum;
+                try {
+                    entryLength = in.readInt();
+                    entryChecksum = in.readInt();
+                    if (entryLength <= 0 || entryLength > MAX_ENTRY_SIZE)
+                        throw new EOFException();
+                    in.readFully(payload, 0, entryLength);
+                } catch (EOFException e) {
+                    // A write torn by a crash or a garbled length: the rest of the segment cannot be framed
+                    corruptEntries.increment();
+                    return length;
+                }
+                position += ENTRY_HEADER_SIZE + entryLength;
+
+                checksum.reset();
+                checksum.update(payload, 0, entryLength);
+                if ((int) checksum.getValue() != entryChecksum) {
+                    corruptEntries.increment();
+                    continue;
+                }
+                rows.add(decode(new DataInputStream(new ByteArrayInputStream(payload, 0, entryLength))));
+            }
+        }
+        return position;
+    }
+
+    private void openActiveSegment() throws IOException {
+        activeFile = new FileOutputStream(segmentFile(activeId), true);
+        activeStream = new DataOutputStream(new BufferedOutputStream(activeFile, READ_BUFFER_SIZE));
+        activeSize = 0;
+    }
+
+    private void rollSegment() {
+        if (activeSize == 0)
+            return;
+
+        try {
+            activeStream.close();
+            sealedSegments.put(activeId, activeSize);
+            activeId++;
+            openActiveSegment();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Past the limit the oldest sealed segments are given up so an outage cannot fill the disk
+    private void enforceMaxSize() {
+        while (totalSize > maxSize && !sealedSegments.isEmpty()) {
+            long oldest = sealedSegments.firstKey();
+            deleteSegment(oldest);
+            segmentsDropped.increment();
+            if (oldest == headId) {
+                Long next = sealedSegments.higherKey(oldest);
+                headId = next != null ? next : activeId;
+                headOffset = 0;
+            }
+        }
+    }
+
+    private void deleteSegment(long id) {
+        Long size = sealedSegments.remove(id);
+        if (size != null)
+            totalSize -= size;
+        if (!segmentFile(id).delete())
+            System.err.println("Could not delete spool segment " + segmentFile(id));
+    }
+
+    private void readCheckpoint() throws IOException {
+        headId = sealedSegments.isEmpty() ? activeId : sealedSegments.firstKey();
+        headOffset = 0;
+        if (checkpointFile.exists()) {
+            String[] checkpoint = new String(Files.readAllBytes(checkpointFile.toPath()), StandardCharsets.US_ASCII).trim().split(" ");
+            long id = Long.parseLong(checkpoint[0]);
+            if (sealedSegments.containsKey(id)) {
+                headId = id;
+                headOffset = Long.parseLong(checkpoint[1]);
+            }
+        }
+        readId = headId;
+        readOffset = headOffset;
+    }
+
+    private void writeCheckpoint() {
+        File temporary = new File(directory, "spool.checkpoint.tmp");
+        try {
+            Files.write(temporary.toPath(), (headId + " " + headOffset).getBytes(StandardCharsets.US_ASCII));
+            Files.move(temporary.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private File segmentFile(long id) {
+        return new File(directory, String.format("spool-%010d.dat", id));
+    }
+
+    private static void skipFully(DataInputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0)
+                throw new EOFException();
+            count -= skipped;
+        }
+    }
+
+    static void encode(Row row, DataOutputStream out) throws IOException {
+        if (row instanceof Sample) {
+            Sample sample = (Sample) row;
+            out.writeByte(SAMPLE);
+            out.writeUTF(sample.getTable());
+            out.writeLong(sample.getTime());
+            writeValue(sample.getValue(), out);
+        } else if (row instanceof AggregateRow) {
+            AggregateRow aggregate = (AggregateRow) row;
+            out.writeByte(AGGREGATE);
+            out.writeUTF(aggregate.getTable());
+            out.writeLong(aggregate.getTime());
+            out.writeUTF(aggregate.getDevice());
+            out.writeUTF(aggregate.getField());
+            out.writeInt(aggregate.getCount());
+            out.writeDouble(aggregate.getMin());
+            out.writeDouble(aggregate.getMax());
+            out.writeDouble(aggregate.getAvg());
+            out.writeDouble(aggregate.getLast());
+        } else {
+            throw new IllegalArgumentException("Cannot spool " + row.getClass().getName());
+        }
+    }
+
+    static Row decode(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case SAMPLE:
+                return new Sample(in.readUTF(), in.readLong(), readValue(in));
+            case AGGREGATE:
+                return new AggregateRow(in.readUTF(), in.readLong(), in.readUTF(), in.readUTF(),
+                        in.readInt(), in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+            default:
+                throw new IOException("Unknown spool entry type " + type);
+        }
+    }
+
+    private static void writeValue(Object value, DataOutputStream out) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL_VALUE);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE_VALUE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER_VALUE);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN_VALUE);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG_VALUE);
+            out.writeLong((Long) value);
+        } else {
+            throw new IllegalArgumentException("Cannot spool value of type " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL_VALUE:
+                return null;
+            case DOUBLE_VALUE:
+                return in.readDouble();
+            case INTEGER_VALUE:
+                return in.readInt();
+            case BOOLEAN_VALUE:
+                return in.readBoolean();
+            case LONG_VALUE:
+                return in.readLong();
+            default:
+                throw new IOException("Unknown spool value type " + type);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package monitor;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.scene.control.Label;
+import javafx.scene.layout.HBox;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class StatusPane extends HBox {
+
+    private final Label status = new Label();
+    private final Timeline refresh = new Timeline(new KeyFrame(Duration.seconds(1), event -> refresh()));
+
+    private final List<Counter> bytes = new ArrayList<>();
+    private final List<Counter> lines = new ArrayList<>();
+    private final List<Counter> malformedFrames = new ArrayList<>();
+    private final Gauge uiBacklog;
+    private final Gauge queueDepth;
+    private final Counter rowsFailed;
+    private final Counter rowsDropped;
+    private final List<LatencyHistogram> decodeLatencies = new ArrayList<>();
+    private final List<String> portNames;
+    private final List<Gauge> connected = new ArrayList<>();
+    private final LatencyHistogram flushLatency;
+    private final LatencyHistogram sendDataLatency;
+
+    public StatusPane(List<String> portNames) {
+        this.portNames = portNames;
+        for (String portName : portNames) {
+            String metricPrefix = "monitor." + portName + ".";
+            bytes.add(Metrics.counter(metricPrefix + "bytes"));
+            lines.add(Metrics.counter(metricPrefix + "lines"));
+            malformedFrames.add(Metrics.counter(metricPrefix + "frames.malformed"));
+            decodeLatencies.add(Metrics.histogram(metricPrefix + "decode"));
+            connected.add(Metrics.gauge(metricPrefix + "connected"));
+        }
+        uiBacklog = Metrics.gauge("ui.backlog");
+        queueDepth = Metrics.gauge("writer.queue.depth");
+        rowsFailed = Metrics.counter("writer.rows.failed");
+        rowsDropped = Metrics.counter("writer.rows.dropped");
+        flushLatency = Metrics.histogram("writer.flush");
+        sendDataLatency = Metrics.histogram("monitor.sendData");
+
+        getChildren().add(status);
+        refresh.setCycleCount(Timeline.INDEFINITE);
+    }
+
+    public void start() {
+        refresh();
+        refresh.play();
+    }
+
+    public void stop() {
+        refresh.stop();
+    }
+
+    private void refresh() {
+        double bytesPerSecond = 0;
+        double linesPerSecond = 0;
+        long malformed = 0;
+        double decodeP99 = 0;
+        StringBuilder offline = new StringBuilder();
+        for (int i = 0; i < bytes.size(); i++) {
+            if (connected.get(i).getValue() == 0)
+                offline.append(offline.length() == 0 ? " | offline " : ", ").append(portNames.get(i));
+            bytesPerSecond += bytes.get(i).getRatePerSecond();
+            linesPerSecond += lines.get(i).getRatePerSecond();
+            malformed += malformedFrames.get(i).getCount();
+            decodeP99 = Math.max(decodeP99, decodeLatencies.get(i).getP99Micros());
+        }
+
+        status.setText(String.format(
+                "%.1f kB/s  %.0f lines/s  malformed %d  decode p99 %.0f \u00b5s | UI backlog %d | " +
+                        "sendData p99 %.0f \u00b5s  DB queue %d  flush p99 %.1f ms  failed %d  dropped %d",
+                bytesPerSecond / 1024,
+                linesPerSecond,
+                malformed,
+                decodeP99,
+                uiBacklog.getValue(),
+                sendDataLatency.getP99Micros(),
+                queueDepth.getValue(),
+                flushLatency.getP99Micros() / 1000,
+                rowsFailed.getCount(),
+                rowsDropped.getCount()) + offline);
+    }
+}
@@ -0,0 +1,204 @@
+package monitor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+public class TcpTransport implements Transport {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long WRITE_TIMEOUT_MILLIS = 5000;
+
+    private final String name;
+    private final String host;
+    private final int port;
+    private final boolean listen;
+
+    // Direct buffers so reads and writes go straight between the socket and native memory
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+    private Selector selector;
+    private Selector writeSelector;
+    private ServerSocketChannel server;
+    private volatile SocketChannel channel;
+    private volatile boolean closed;
+
+    // With listen the host is the bind address (null for all interfaces), otherwise the host to connect to
+    public TcpTransport(String name, String host, int port, boolean listen) {
+        this.name = name;
+        this.host = host;
+        this.port = port;
+        this.listen = listen;
+    }
+
+    public int getLocalPort() throws IOException {
+        InetSocketAddress address = (InetSocketAddress) (listen ? server.getLocalAddress() : channel.getLocalAddress());
+        return address.getPort();
+    }
+
+    public boolean isConnected() {
+        SocketChannel current = channel;
+        return current != null && current.isConnected();
+    }
+
+    @Override
+    public void open(Receiver receiver) throws IOException {
+        selector = Selector.open();
+        writeSelector = Selector.open();
+
+        if (listen) {
+            server = ServerSocketChannel.open();
+            server.bind(host == null ? new InetSocketAddress(port) : new InetSocketAddress(host, port));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } else {
+            SocketChannel connected = SocketChannel.open();
+            connected.socket().connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            register(connected);
+        }
+
+        Thread reader = new Thread(() -> selectLoop(receiver), "monitor-tcp-" + name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // Serialized so concurrent senders cannot interleave their bytes on the stream
+    @Override
+    public synchronized void write(byte[] bytes) throws IOException {
+        SocketChannel current = channel;
+        if (current == null)
+            throw new IOException(name + " is not connected");
+
+        int offset = 0;
+        while (offset < bytes.length) {
+            writeBuffer.clear();
+            int length = Math.min(writeBuffer.capacity(), bytes.length - offset);
+            writeBuffer.put(bytes, offset, length).flip();
+            offset += length;
+
+            while (writeBuffer.hasRemaining()) {
+                if (current.write(writeBuffer) == 0)
+                    awaitWritable(current);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        closeQuietly(channel);
+        channel = null;
+        if (server != null)
+            closeQuietly(server);
+        if (selector != null)
+            selector.wakeup();
+        if (writeSelector != null)
+            writeSelector.wakeup();
+    }
+
+    private void selectLoop(Receiver receiver) {
+        try {
+            while (!closed) {
+                selector.select();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        read(key, receiver);
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (!closed)
+                e.printStackTrace();
+        } finally {
+            closeQuietly(selector);
+            closeQuietly(writeSelector);
+        }
+    }
+
+    // One connection at a time: a gateway that reconnects after a half-open drop replaces the stale socket
+    private void accept() throws IOException {
+        SocketChannel accepted = server.accept();
+        if (accepted == null)
+            return;
+
+        SocketChannel previous = channel;
+        if (previous != null) {
+            System.out.println(name + ": replacing connection from " + previous.getRemoteAddress());
+            closeQuietly(previous);
+        }
+        register(accepted);
+        System.out.println(name + ": accepted connection from " + accepted.getRemoteAddress());
+    }
+
+    private void register(SocketChannel connected) throws IOException {
+        connected.configureBlocking(false);
+        connected.socket().setTcpNoDelay(true);
+        connected.register(selector, SelectionKey.OP_READ);
+        channel = connected;
+    }
+
+    private void read(SelectionKey key, Receiver receiver) {
+        SocketChannel source = (SocketChannel) key.channel();
+        readBuffer.clear();
+        int count;
+        try {
+            count = source.read(readBuffer);
+        } catch (IOException e) {
+            if (!closed)
+                System.err.println(name + ": " + e);
+            count = -1;
+        }
+
+        if (count < 0) {
+            key.cancel();
+            closeQuietly(source);
+            if (channel == source && !closed) {
+                channel = null;
+                System.out.println(name + ": connection closed by peer");
+            }
+            return;
+        }
+        if (count == 0)
+            return;
+
+        readBuffer.flip();
+        byte[] bytes = new byte[count];
+        readBuffer.get(bytes);
+        receiver.received(bytes, LIVE);
+    }
+
+    private void awaitWritable(SocketChannel current) throws IOException {
+        SelectionKey key = current.keyFor(writeSelector);
+        if (key == null)
+            key = current.register(writeSelector, SelectionKey.OP_WRITE);
+        if (writeSelector.select(WRITE_TIMEOUT_MILLIS) == 0 && !closed)
+            throw new IOException(name + ": write timed out after " + WRITE_TIMEOUT_MILLIS + " ms");
+        writeSelector.selectedKeys().remove(key);
+        if (closed || !current.isOpen())
+            throw new IOException(name + " was closed");
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
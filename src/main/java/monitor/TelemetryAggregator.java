@@ -0,0 +1,202 @@
+package monitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Windows close when a frame of a later window arrives and, after start(), once their end has passed on the wall clock,
+// so the last window before the devices go quiet is written too
+public class TelemetryAggregator implements AutoCloseable {
+
+    private static final int INITIAL_DEVICE_CAPACITY = 4;
+
+    private final long windowMillis;
+    private final String table;
+    private final Consumer<Row> sink;
+    private final TelemetryField[] fields = TelemetryField.values();
+    private final Thread closer;
+
+    // Slot device * fields.length + field holds the running state of one field of one device
+    private byte[][] deviceKeys = new byte[INITIAL_DEVICE_CAPACITY][];
+    private String[] deviceNames = new String[INITIAL_DEVICE_CAPACITY];
+    private int deviceCount;
+    private int[] counts = new int[INITIAL_DEVICE_CAPACITY * fields.length];
+    private double[] mins = new double[counts.length];
+    private double[] maxs = new double[counts.length];
+    private double[] sums = new double[counts.length];
+    private double[] lasts = new double[counts.length];
+
+    private long windowStart = Long.MIN_VALUE;
+    // System.nanoTime() at which the open window ends
+    private long windowEndNanos;
+
+    public TelemetryAggregator(long windowMillis, String table, Consumer<Row> sink) {
+        if (windowMillis <= 0)
+            throw new IllegalArgumentException("Window must be positive: " + windowMillis);
+
+        this.windowMillis = windowMillis;
+        this.table = table;
+        this.sink = sink;
+
+        this.closer = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(Math.max(10, Math.min(1000, windowMillis / 10)));
+                    closeAged(System.nanoTime());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "aggregate-close");
+        closer.setDaemon(true);
+    }
+
+    // 1000 -> telemetry_1s, 60000 -> telemetry_1m, 250 -> telemetry_250ms
+    public static String tableName(String prefix, long windowMillis) {
+        if (windowMillis % 60000 == 0)
+            return prefix + windowMillis / 60000 + "m";
+        if (windowMillis % 1000 == 0)
+            return prefix + windowMillis / 1000 + "s";
+        return prefix + windowMillis + "ms";
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public TelemetryAggregator start() {
+        closer.start();
+        return this;
+    }
+
+    // Called from every port's drain, so windows are shared and guarded by the aggregator's monitor. Closed rows go to the
+    // sink after it is released: with BLOCK backpressure the sink can wait on a full queue, which would stall every port
+    public void accept(LogFrame frame) {
+        List<Row> closed = null;
+        synchronized (this) {
+            long time = frame.getTime();
+            if (windowStart == Long.MIN_VALUE) {
+                open(time);
+            } else if (time >= windowStart + windowMillis) {
+                closed = emit();
+                open(time);
+            }
+            // A frame stamped before the current window (a lagging port) is folded into the current window rather than reopening a closed one
+
+            int base = deviceSlot(frame) * fields.length;
+            for (int i = 0; i < fields.length; i++) {
+                double value = fields[i].extract(frame);
+                if (Double.isNaN(value))
+                    continue;
+
+                int slot = base + i;
+                if (counts[slot] == 0) {
+                    mins[slot] = value;
+                    maxs[slot] = value;
+                    sums[slot] = value;
+                } else {
+                    if (value < mins[slot])
+                        mins[slot] = value;
+                    if (value > maxs[slot])
+                        maxs[slot] = value;
+                    sums[slot] += value;
+                }
+                lasts[slot] = value;
+                counts[slot]++;
+            }
+        }
+        if (closed != null)
+            closed.forEach(sink);
+    }
+
+    // Emits the open window once its end has passed; now is a System.nanoTime() value. The next window is opened in its
+    // place, so a frame from a lagging port is folded into it rather than reopening the one just written
+    void closeAged(long now) {
+        List<Row> closed;
+        synchronized (this) {
+            if (windowStart == Long.MIN_VALUE || now - windowEndNanos < 0)
+                return;
+
+            closed = emit();
+            if (closed.isEmpty()) {
+                windowStart = Long.MIN_VALUE;
+            } else {
+                windowStart += windowMillis;
+                windowEndNanos += TimeUnit.MILLISECONDS.toNanos(windowMillis);
+            }
+        }
+        closed.forEach(sink);
+    }
+
+    @Override
+    public void close() {
+        closer.interrupt();
+        flush();
+    }
+
+    // Emits the open window; used on shutdown so the last partial window is not lost
+    public void flush() {
+        List<Row> closed;
+        synchronized (this) {
+            closed = windowStart == Long.MIN_VALUE ? new ArrayList<>() : emit();
+            windowStart = Long.MIN_VALUE;
+        }
+        closed.forEach(sink);
+    }
+
+    private void open(long time) {
+        windowStart = time - Math.floorMod(time, windowMillis);
+        windowEndNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowStart + windowMillis - time);
+    }
+
+    private List<Row> emit() {
+        List<Row> closed = new ArrayList<>();
+        for (int device = 0; device < deviceCount; device++) {
+            int base = device * fields.length;
+            for (int i = 0; i < fields.length; i++) {
+                int slot = base + i;
+                int count = counts[slot];
+                if (count == 0)
+                    continue;
+
+                closed.add(new AggregateRow(table, windowStart, deviceNames[device], fields[i].getTable(),
+                        count, mins[slot], maxs[slot], sums[slot] / count, lasts[slot]));
+                counts[slot] = 0;
+            }
+        }
+        return closed;
+    }
+
+    // Few devices share a port, so a linear scan over the serial numbers beats hashing a decoded String per frame
+    private int deviceSlot(LogFrame frame) {
+        for (int device = 0; device < deviceCount; device++) {
+            byte[] key = deviceKeys[device];
+            if (frame.serialNumberEquals(key, 0, key.length))
+                return device;
+        }
+
+        if (deviceCount == deviceKeys.length)
+            grow();
+
+        deviceKeys[deviceCount] = frame.copySerialNumber();
+        deviceNames[deviceCount] = frame.getSerialNumber();
+        return deviceCount++;
+    }
+
+    private void grow() {
+        int capacity = deviceKeys.length * 2;
+        deviceKeys = Arrays.copyOf(deviceKeys, capacity);
+        deviceNames = Arrays.copyOf(deviceNames, capacity);
+        counts = Arrays.copyOf(counts, capacity * fields.length);
+        mins = Arrays.copyOf(mins, counts.length);
+        maxs = Arrays.copyOf(maxs, counts.length);
+        sums = Arrays.copyOf(sums, counts.length);
+        lasts = Arrays.copyOf(lasts, counts.length);
+    }
+}
@@ -0,0 +1,121 @@
+package monitor;
+
+public enum TelemetryField {
+
+    TEMPERATURE("temperature", Type.DOUBLE) {
+        @Override
+        public double extract(LogFrame frame) {
+            return frame.getTemperature();
+        }
+    },
+    LED("led", Type.INTEGER) {
+        @Override
+        public double extract(LogFrame frame) {
+            return frame.getLedStatus();
+        }
+    },
+    LOCKED("locked", Type.BOOLEAN) {
+        @Override
+        public double extract(LogFrame frame) {
+            return frame.getLocked();
+        }
+    },
+    PP("pp", Type.DOUBLE) {
+        @Override
+        public double extract(LogFrame frame) {
+            return frame.getPp();
+        }
+    },
+    CP("cp", Type.DOUBLE) {
+        @Override
+        public double extract(LogFrame frame) {
+            return frame.getCp();
+        }
+    },
+    CURRENT_L1("current_l1", Type.DOUBLE) {
+        @Override
+        public double extract(LogFrame frame) {
+            return frame.getCurrentL1();
+        }
+    },
+    // Parsed meter values that only feed the aggregates; they have no raw table
+    CURRENT_L2("current_l2", LogFrame.CURRENT_L2),
+    CURRENT_L3("current_l3", LogFrame.CURRENT_L3),
+    VOLTAGE_L1("voltage_l1", LogFrame.VOLTAGE_L1),
+    VOLTAGE_L2("voltage_l2", LogFrame.VOLTAGE_L2),
+    VOLTAGE_L3("voltage_l3", LogFrame.VOLTAGE_L3),
+    POWER_L1("power_l1", LogFrame.POWER_L1),
+    POWER_L2("power_l2", LogFrame.POWER_L2),
+    POWER_L3("power_l3", LogFrame.POWER_L3),
+    ACTIVE_POWER("active_power", LogFrame.ACTIVE_POWER),
+    REACTIVE_POWER("reactive_power", LogFrame.REACTIVE_POWER),
+    ENERGY_WH("energy_wh", LogFrame.ENERGY_WH),
+    FREQUENCY("frequency", LogFrame.FREQUENCY),
+    POWER_FACTOR("power_factor", LogFrame.POWER_FACTOR);
+
+    public enum Type {
+        DOUBLE,
+        INTEGER,
+        BOOLEAN
+    }
+
+    private static final TelemetryField[] RAW_FIELDS = {TEMPERATURE, LED, LOCKED, PP, CP, CURRENT_L1};
+
+    private final String table;
+    private final Type type;
+    private final int meterIndex;
+
+    TelemetryField(String table, Type type) {
+        this.table = table;
+        this.type = type;
+        this.meterIndex = -1;
+    }
+
+    TelemetryField(String table, int meterIndex) {
+        this.table = table;
+        this.type = Type.DOUBLE;
+        this.meterIndex = meterIndex;
+    }
+
+    // The fields that have always been written one row per sample, each to its own table
+    public static TelemetryField[] rawFields() {
+        return RAW_FIELDS.clone();
+    }
+
+    public double extract(LogFrame frame) {
+        return frame.getMeterValue(meterIndex);
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Object toValue(double value) {
+        switch (type) {
+            case INTEGER:
+                return (int) value;
+            case BOOLEAN:
+                return value != 0;
+            default:
+                return value;
+        }
+    }
+
+    public void appendText(StringBuilder builder, double value) {
+        switch (type) {
+            case INTEGER:
+                builder.append((long) value);
+                break;
+            case BOOLEAN:
+                builder.append(value != 0 ? 't' : 'f');
+                break;
+            default:
+                builder.append(value);
+                break;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package monitor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TelemetrySeries {
+
+    private final int capacity;
+    private final int mask;
+    private final TelemetryField[] fields = TelemetryField.values();
+    private final List<Device> devices = new ArrayList<>();
+
+    // One ring per device: a time column shared by all fields and a float column per field
+    private final class Device {
+        final byte[] key;
+        final String name;
+        final long[] times = new long[capacity];
+        final float[][] values = new float[fields.length][capacity];
+        long written;
+
+        Device(byte[] key, String name) {
+            this.key = key;
+            this.name = name;
+        }
+    }
+
+    public TelemetrySeries(int capacity) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+    }
+
+    public static TelemetrySeries fromConfig() {
+        return new TelemetrySeries(Config.get().getLong("chart.history_points", 262144L).intValue());
+    }
+
+    public synchronized void accept(LogFrame frame) {
+        Device device = device(frame);
+        int slot = (int) (device.written & mask);
+        device.times[slot] = frame.getTime();
+        for (int i = 0; i < fields.length; i++)
+            device.values[i][slot] = (float) fields[i].extract(frame);
+        device.written++;
+    }
+
+    public synchronized int getDeviceCount() {
+        return devices.size();
+    }
+
+    public synchronized String getDeviceName(int device) {
+        return devices.get(device).name;
+    }
+
+    // Copies the device's points for one field from fromTime on, skipping missing values; the output arrays must hold capacity points
+    public synchronized int snapshot(int device, TelemetryField field, long fromTime, long[] times, double[] values) {
+        Device series = devices.get(device);
+        long end = series.written;
+        long first = Math.max(0, end - capacity);
+
+        // Frames arrive in time order, so the start of the range can be found by bisection
+        long low = first;
+        long high = end;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (series.times[(int) (middle & mask)] < fromTime) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        float[] column = series.values[field.ordinal()];
+        int count = 0;
+        for (long position = low; position < end; position++) {
+            int slot = (int) (position & mask);
+            float value = column[slot];
+            if (Float.isNaN(value))
+                continue;
+            times[count] = series.times[slot];
+            values[count++] = value;
+        }
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private Device device(LogFrame frame) {
+        for (Device device : devices) {
+            if (frame.serialNumberEquals(device.key, 0, device.key.length))
+                return device;
+        }
+
+        Device device = new Device(frame.copySerialNumber(), frame.getSerialNumber());
+        devices.add(device);
+        return device;
+    }
+}
@@ -0,0 +1,444 @@
+package monitor;
+
+import com.moandjiezana.toml.Toml;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+public class TelemetryWriter implements AutoCloseable {
+
+    public enum Backpressure {
+        BLOCK,
+        DROP_NEWEST,
+        DROP_OLDEST,
+        // Rows that do not fit in the queue go to the local spool and are replayed later
+        SPOOL
+    }
+
+    private enum Outcome {
+        WRITTEN,
+        UNAVAILABLE,
+        REJECTED
+    }
+
+    private final ConnectionPool connectionPool;
+    private final BlockingQueue<Row> queue;
+    private final LongSupplier queueDepthGauge;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final Backpressure backpressure;
+    private final Thread[] workers;
+    private final TelemetryField[] rawFields = TelemetryField.rawFields();
+    private final List<TelemetryAggregator> aggregators = new ArrayList<>();
+    private final Set<String> createdTables = ConcurrentHashMap.newKeySet();
+    private boolean rawSamples = true;
+
+    private Spool spool;
+    private Thread replayer;
+    private int replayBatchSize;
+    private long retryDelayNanos;
+    private volatile long retryAt = System.nanoTime();
+
+    private final Counter rowsWritten = Metrics.counter("writer.rows.written");
+    private final Counter rowsFailed = Metrics.counter("writer.rows.failed");
+    private final Counter rowsDropped = Metrics.counter("writer.rows.dropped");
+    private final LatencyHistogram flushLatency = Metrics.histogram("writer.flush");
+
+    private volatile boolean running = true;
+
+    public TelemetryWriter(ConnectionPool connectionPool, int workerCount, int queueCapacity, int batchSize,
+                           long flushIntervalMillis, Backpressure backpressure) {
+        this.connectionPool = connectionPool;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.backpressure = backpressure;
+
+        this.workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread(this::writeLoop, "telemetry-writer-" + i);
+            workers[i].setDaemon(true);
+        }
+
+        this.queueDepthGauge = queue::size;
+        Metrics.gauge("writer.queue.depth", queueDepthGauge);
+    }
+
+    public static TelemetryWriter fromConfig() {
+        Toml toml = Config.get();
+        int poolSize = toml.getLong("writer.pool_size", 2L).intValue();
+
+        TelemetryWriter writer = new TelemetryWriter(
+                ConnectionPool.fromConfig(poolSize),
+                poolSize,
+                toml.getLong("writer.queue_capacity", 65536L).intValue(),
+                toml.getLong("writer.batch_size", 1000L).intValue(),
+                toml.getLong("writer.flush_interval_ms", 250L),
+                Backpressure.valueOf(toml.getString("writer.backpressure", "DROP_OLDEST").toUpperCase()));
+
+        writer.setRawSamples(toml.getBoolean("aggregate.raw_samples", true));
+        String tablePrefix = toml.getString("aggregate.table_prefix", "telemetry_");
+        for (Long windowMillis : toml.<Long>getList("aggregate.windows_ms", new ArrayList<>()))
+            writer.addAggregator(windowMillis, TelemetryAggregator.tableName(tablePrefix, windowMillis));
+
+        if (toml.getBoolean("spool.enabled", true)) {
+            writer.setSpool(Spool.fromConfig(),
+                    toml.getLong("spool.replay_batch_size", 10000L).intValue(),
+                    toml.getLong("spool.retry_interval_ms", 1000L));
+        }
+        return writer;
+    }
+
+    // While the database is unreachable, batches go to the spool instead of failing; a replayer feeds them back once it answers again
+    public void setSpool(Spool spool, int replayBatchSize, long retryIntervalMillis) {
+        this.spool = spool;
+        this.replayBatchSize = replayBatchSize;
+        this.retryDelayNanos = TimeUnit.MILLISECONDS.toNanos(retryIntervalMillis);
+        this.replayer = new Thread(this::replayLoop, "telemetry-spool-replay");
+        replayer.setDaemon(true);
+    }
+
+    public void setRawSamples(boolean rawSamples) {
+        this.rawSamples = rawSamples;
+    }
+
+    public TelemetryAggregator addAggregator(long windowMillis, String table) {
+        TelemetryAggregator aggregator = new TelemetryAggregator(windowMillis, table, this::submit);
+        aggregators.add(aggregator);
+        return aggregator;
+    }
+
+    public TelemetryWriter start() {
+        for (Thread worker : workers)
+            worker.start();
+        if (replayer != null)
+            replayer.start();
+        for (TelemetryAggregator aggregator : aggregators)
+            aggregator.start();
+        return this;
+    }
+
+    public void submit(Row row) {
+        switch (backpressure) {
+            case BLOCK:
+                try {
+                    queue.put(row);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    rowsDropped.increment();
+                }
+                break;
+            case DROP_NEWEST:
+                if (!queue.offer(row))
+                    rowsDropped.increment();
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(row)) {
+                    if (queue.poll() != null)
+                        rowsDropped.increment();
+                }
+                break;
+            case SPOOL:
+                if (!queue.offer(row) && (spool == null || !spool.append(row)))
+                    rowsDropped.increment();
+                break;
+        }
+    }
+
+    public void submit(LogFrame frame) {
+        // Stamped before the rows are queued, so a worker that commits them right away never sees it unset
+        Trace trace = frame.getTrace();
+        if (trace != null)
+            trace.mark(Trace.Stage.ENQUEUED);
+
+        if (rawSamples) {
+            for (TelemetryField field : rawFields) {
+                submit(new Sample(field.getTable(), frame.getTime(), field.toValue(field.extract(frame)), trace));
+                trace = null;
+            }
+        }
+        for (TelemetryAggregator aggregator : aggregators)
+            aggregator.accept(frame);
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.getCount();
+    }
+
+    public long getRowsFailed() {
+        return rowsFailed.getCount();
+    }
+
+    public long getRowsDropped() {
+        return rowsDropped.getCount();
+    }
+
+    @Override
+    public void close() {
+        for (TelemetryAggregator aggregator : aggregators)
+            aggregator.close();
+
+        // Without a timeout: a worker still draining the queue spools what the database does not take, and the replayer may
+        // be writing a batch, so neither the spool nor the pool can be closed under them. Each write is bounded by the
+        // pool's connection timeout, so the threads do finish.
+        running = false;
+        boolean stopped = true;
+        for (Thread worker : workers)
+            stopped &= join(worker);
+        if (replayer != null)
+            stopped &= join(replayer);
+        Metrics.release("writer.queue.depth", queueDepthGauge);
+        // Interrupted while waiting: leave the spool open rather than lose the rows a thread is still writing to it
+        if (!stopped)
+            return;
+
+        if (spool != null)
+            spool.close();
+        connectionPool.close();
+    }
+
+    private static boolean join(Thread thread) {
+        try {
+            thread.join();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void writeLoop() {
+        List<Row> batch = new ArrayList<>(batchSize);
+        Map<String, List<Row>> rowsBySql = new LinkedHashMap<>();
+
+        try {
+            while (running || !queue.isEmpty()) {
+                if (fillBatch(batch))
+                    flush(batch, rowsBySql);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean fillBatch(List<Row> batch) throws InterruptedException {
+        Row first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+        if (first == null)
+            return false;
+        batch.add(first);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            if (batch.size() >= batchSize)
+                break;
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !running)
+                break;
+
+            Row next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null)
+                break;
+            batch.add(next);
+        }
+        return true;
+    }
+
+    private void flush(List<Row> batch, Map<String, List<Row>> rowsBySql) throws InterruptedException {
+        // Within the retry interval after an outage, go straight to the spool rather than waiting on another connect timeout
+        if (spool != null && System.nanoTime() - retryAt < 0) {
+            spool(batch);
+            return;
+        }
+
+        List<Row> unwritten = new ArrayList<>();
+        writeIsolating(batch, rowsBySql, unwritten);
+        if (spool != null) {
+            spool(unwritten);
+        } else {
+            rowsFailed.add(unwritten.size());
+        }
+    }
+
+    // Writes the rows, and when the database rejects them writes each half again, down to single rows, so only the rows
+    // it refuses are dropped and counted as failed. Rows not written because the database became unavailable on the way
+    // are added to unwritten, and no further writes are tried.
+    private void writeIsolating(List<Row> rows, Map<String, List<Row>> rowsBySql, List<Row> unwritten) throws InterruptedException {
+        if (!unwritten.isEmpty()) {
+            unwritten.addAll(rows);
+            return;
+        }
+
+        Outcome outcome = write(rows, rowsBySql);
+        if (outcome == Outcome.UNAVAILABLE) {
+            unwritten.addAll(rows);
+        } else if (outcome == Outcome.REJECTED) {
+            if (rows.size() == 1) {
+                rowsFailed.increment();
+                return;
+            }
+            int half = rows.size() / 2;
+            writeIsolating(new ArrayList<>(rows.subList(0, half)), rowsBySql, unwritten);
+            writeIsolating(new ArrayList<>(rows.subList(half, rows.size())), rowsBySql, unwritten);
+        }
+    }
+
+    private void spool(List<Row> batch) {
+        for (Row row : batch) {
+            if (!spool.append(row))
+                rowsFailed.increment();
+        }
+    }
+
+    private Outcome write(List<Row> batch, Map<String, List<Row>> rowsBySql) throws InterruptedException {
+        for (List<Row> rows : rowsBySql.values())
+            rows.clear();
+        for (Row row : batch)
+            rowsBySql.computeIfAbsent(row.getInsertSql(), sql -> new ArrayList<>()).add(row);
+
+        long flushStart = System.nanoTime();
+        Connection connection;
+        try {
+            connection = connectionPool.borrow();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            retryAt = System.nanoTime() + retryDelayNanos;
+            return Outcome.UNAVAILABLE;
+        }
+
+        boolean broken = false;
+        try {
+            createTables(connection, rowsBySql);
+            connection.setAutoCommit(false);
+            for (Map.Entry<String, List<Row>> entry : rowsBySql.entrySet()) {
+                if (entry.getValue().isEmpty())
+                    continue;
+                try (PreparedStatement statement = connection.prepareStatement(entry.getKey())) {
+                    for (Row row : entry.getValue()) {
+                        row.bind(statement);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            }
+            connection.commit();
+            for (Row row : batch) {
+                Trace trace = row.getTrace();
+                if (trace != null)
+                    trace.mark(Trace.Stage.COMMITTED);
+            }
+            rowsWritten.add(batch.size());
+            flushLatency.recordSince(flushStart);
+            return Outcome.WRITTEN;
+        } catch (SQLException e) {
+            broken = rollback(connection);
+            // Reported once writeIsolating has narrowed it down to the row being dropped
+            if (isRejection(e)) {
+                if (batch.size() == 1)
+                    System.err.println("Dropped a row the database rejected: " + e.getMessage());
+                return Outcome.REJECTED;
+            }
+
+            e.printStackTrace();
+            retryAt = System.nanoTime() + retryDelayNanos;
+            return Outcome.UNAVAILABLE;
+        } finally {
+            connectionPool.release(connection, broken);
+        }
+    }
+
+    // Committed on their own, so a batch that is rolled back does not take a table created for it along
+    private void createTables(Connection connection, Map<String, List<Row>> rowsBySql) throws SQLException {
+        for (List<Row> rows : rowsBySql.values()) {
+            String createSql = rows.isEmpty() ? null : rows.get(0).getCreateSql();
+            if (createSql == null || createdTables.contains(createSql))
+                continue;
+            connection.setAutoCommit(true);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(createSql);
+            }
+            createdTables.add(createSql);
+        }
+    }
+
+    // Replays the spool oldest first, only while live rows are not backing up, and syncs it to disk every pass
+    private void replayLoop() {
+        List<Row> batch = new ArrayList<>(replayBatchSize);
+        Map<String, List<Row>> rowsBySql = new LinkedHashMap<>();
+        List<Row> replayUnwritten = new ArrayList<>();
+
+        try {
+            while (running) {
+                spool.sync();
+
+                Outcome outcome = Outcome.UNAVAILABLE;
+                if (System.nanoTime() - retryAt >= 0 && queue.size() < batchSize) {
+                    try {
+                        if (spool.poll(batch, replayBatchSize) > 0) {
+                            replayUnwritten.clear();
+                            writeIsolating(batch, rowsBySql, replayUnwritten);
+                            if (replayUnwritten.size() < batch.size())
+                                outcome = Outcome.WRITTEN;
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+
+                // Rejected rows would be rejected on every retry, so once they are dropped the batch is consumed; rows
+                // an outage cut off after part of it was written go back to the end of the spool
+                if (outcome != Outcome.UNAVAILABLE) {
+                    spool(replayUnwritten);
+                    spool.commit();
+                }
+                batch.clear();
+
+                if (outcome == Outcome.UNAVAILABLE)
+                    Thread.sleep(flushIntervalMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Only data (22), integrity constraint (23) and syntax or access (42) errors are about the rows themselves and would
+    // fail the same on every retry. Everything else, from a lost connection (08) or a server shutting down (57P01, 57P03)
+    // to running out of resources (53) or a serialization failure or deadlock (40001, 40P01), is worth retrying.
+    // A batch failure carries the statement's own error further down the chain.
+    static boolean isRejection(SQLException e) {
+        for (SQLException next = e; next != null; next = next.getNextException()) {
+            String sqlState = next.getSQLState();
+            if (sqlState != null && (sqlState.startsWith("22") || sqlState.startsWith("23") || sqlState.startsWith("42")))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean rollback(Connection connection) {
+        try {
+            connection.rollback();
+            return false;
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+}
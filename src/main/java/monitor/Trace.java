@@ -0,0 +1,78 @@
+package monitor;
+
+// Monotonic stamps for one traced line on its way from the port to the table and the database. Every mark records the
+// step from the stage before it and the total since the first byte into trace.* histograms, so nothing has to wait for
+// the slowest branch to finish. A line that is not a frame simply never reaches the decode and database stages.
+public final class Trace {
+
+    public enum Stage {
+        // Arrival of the read that carried the line's first byte
+        FIRST_BYTE(null),
+        LINE_COMPLETE(FIRST_BYTE),
+        DECODED(LINE_COMPLETE),
+        ENQUEUED(DECODED),
+        // The table path branches off before decoding. Stamped when the FX pulse hands the record to the table; JavaFX 8
+        // has no hook after the pulse lays out and draws it, so the drawing itself is not in the trace.
+        APPENDED(LINE_COMPLETE),
+        COMMITTED(ENQUEUED);
+
+        private final Stage previous;
+
+        Stage(Stage previous) {
+            this.previous = previous;
+        }
+
+        public Stage getPrevious() {
+            return previous;
+        }
+
+        public String metricName() {
+            return "trace." + name().toLowerCase();
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final LatencyHistogram[] STEPS = new LatencyHistogram[STAGES.length];
+    private static final LatencyHistogram[] TOTALS = new LatencyHistogram[STAGES.length];
+
+    static {
+        for (Stage stage : STAGES) {
+            if (stage.previous == null)
+                continue;
+            STEPS[stage.ordinal()] = Metrics.histogram(stage.metricName());
+            TOTALS[stage.ordinal()] = Metrics.histogram(stage.metricName() + ".total");
+        }
+    }
+
+    // Each slot is written by the one thread that owns the line at that stage; the queues between stages publish them
+    private final long[] stamps = new long[STAGES.length];
+
+    public Trace(long firstByteNanos) {
+        stamps[Stage.FIRST_BYTE.ordinal()] = firstByteNanos;
+    }
+
+    public void mark(Stage stage) {
+        long now = System.nanoTime();
+        stamps[stage.ordinal()] = now;
+        if (stage.previous == null)
+            return;
+
+        long previous = stamps[stage.previous.ordinal()];
+        if (previous != 0)
+            STEPS[stage.ordinal()].record(now - previous);
+        TOTALS[stage.ordinal()].record(now - stamps[Stage.FIRST_BYTE.ordinal()]);
+    }
+
+    // 0 until the stage is reached
+    public long getNanos(Stage stage) {
+        return stamps[stage.ordinal()];
+    }
+
+    static LatencyHistogram stepHistogram(Stage stage) {
+        return STEPS[stage.ordinal()];
+    }
+
+    static LatencyHistogram totalHistogram(Stage stage) {
+        return TOTALS[stage.ordinal()];
+    }
+}
@@ -0,0 +1,97 @@
+package monitor;
+
+import com.moandjiezana.toml.Toml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// Writes the trace histograms to a TSV file every interval and once more on close, replacing it each time. One row per
+// stage for the step from the stage before it and one for the total since the first byte, times in microseconds.
+public class TraceReport implements AutoCloseable {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final File file;
+    private final Thread thread;
+
+    public TraceReport(File file, long intervalMillis) {
+        this.file = file;
+        this.thread = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(intervalMillis);
+                    write();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "trace-report");
+        thread.setDaemon(true);
+    }
+
+    // Null when tracing is off
+    public static TraceReport fromConfig() {
+        Toml toml = Config.get();
+        if (!Tracer.fromConfig().isEnabled())
+            return null;
+        return new TraceReport(
+                new File(toml.getString("tracing.file", "latency.tsv")),
+                TimeUnit.SECONDS.toMillis(toml.getLong("tracing.dump_interval_s", 60L)));
+    }
+
+    public TraceReport start() {
+        thread.start();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+        write();
+    }
+
+    public synchronized void write() {
+        File temporary = new File(file.getPath() + ".tmp");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(temporary.toPath(), StandardCharsets.UTF_8))) {
+            out.print("stage\tfrom\tcount\tmean_us");
+            for (double percentile : PERCENTILES)
+                out.print("\tp" + format(percentile) + "_us");
+            out.println("\tmax_us");
+
+            for (Trace.Stage stage : Trace.Stage.values()) {
+                if (stage.getPrevious() == null)
+                    continue;
+                row(out, stage, stage.getPrevious(), Trace.stepHistogram(stage));
+                if (stage.getPrevious() != Trace.Stage.FIRST_BYTE)
+                    row(out, stage, Trace.Stage.FIRST_BYTE, Trace.totalHistogram(stage));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        try {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void row(PrintWriter out, Trace.Stage stage, Trace.Stage from, LatencyHistogram histogram) {
+        out.print(stage.name().toLowerCase() + "\t" + from.name().toLowerCase() + "\t" + histogram.getCount()
+                + "\t" + format(histogram.getMeanMicros()));
+        for (double percentile : PERCENTILES)
+            out.print("\t" + format(histogram.getValueAtPercentile(percentile) / 1e3));
+        out.println("\t" + format(histogram.getMaxMicros()));
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? Long.toString((long) value) : String.format(Locale.ROOT, "%.1f", value);
+    }
+}
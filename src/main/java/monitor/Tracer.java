@@ -0,0 +1,52 @@
+package monitor;
+
+import com.moandjiezana.toml.Toml;
+
+// Decides which lines of a port carry a Trace. Untraced lines cost a counter increment and a null check per stage.
+public class Tracer {
+
+    public enum Mode {
+        OFF,
+        // One line in sampleEvery
+        SAMPLED,
+        ALWAYS
+    }
+
+    private final Mode mode;
+    private final int sampleEvery;
+    private long lines;
+
+    public Tracer(Mode mode, int sampleEvery) {
+        this.mode = mode;
+        this.sampleEvery = Math.max(1, sampleEvery);
+    }
+
+    private static final Tracer OFF = new Tracer(Mode.OFF, 1);
+
+    public static Tracer off() {
+        return OFF;
+    }
+
+    public static Tracer fromConfig() {
+        Toml toml = Config.get();
+        return new Tracer(
+                Mode.valueOf(toml.getString("tracing.mode", "sampled").toUpperCase()),
+                toml.getLong("tracing.sample_every", 100L).intValue());
+    }
+
+    public boolean isEnabled() {
+        return mode != Mode.OFF;
+    }
+
+    // Called once per line on the port's drain; null when this line is not traced
+    public Trace begin(long firstByteNanos) {
+        switch (mode) {
+            case ALWAYS:
+                return new Trace(firstByteNanos);
+            case SAMPLED:
+                return lines++ % sampleEvery == 0 ? new Trace(firstByteNanos) : null;
+            default:
+                return null;
+        }
+    }
+}
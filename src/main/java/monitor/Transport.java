@@ -0,0 +1,60 @@
+package monitor;
+
+import java.io.File;
+import java.io.IOException;
+
+public interface Transport {
+
+    interface Receiver {
+        void received(byte[] bytes, long time);
+
+        // The device or connection went away under the transport, which stays closed until opened again
+        default void disconnected(String reason) {
+        }
+    }
+
+    // Time passed with live bytes; lines completed by them are stamped on arrival
+    long LIVE = Long.MIN_VALUE;
+
+    String TCP_PREFIX = "tcp:";
+    String TCP_LISTEN_PREFIX = "tcp-listen:";
+    String REPLAY_PREFIX = "replay:";
+
+    // Bytes are handed to the receiver from the transport's own thread until close; a closed transport can be opened again
+    void open(Receiver receiver) throws IOException;
+
+    void write(byte[] bytes) throws IOException;
+
+    void close();
+
+    // Port names other than a serial device:
+    //   tcp:<host>:<port>                 connects to a serial-over-Ethernet gateway
+    //   tcp-listen:[<bind address>:]<port> waits for the device or gateway to connect
+    //   replay:<capture directory or file> plays back a capture log at replay.speed, or any file as fast as possible
+    static Transport forName(String name, int baudRate, int dataBits, int stopBits) {
+        if (name.startsWith(TCP_PREFIX)) {
+            String address = name.substring(TCP_PREFIX.length());
+            int colon = address.lastIndexOf(':');
+            if (colon <= 0)
+                throw new IllegalArgumentException("Expected tcp:<host>:<port> but got " + name);
+            return new TcpTransport(name, stripBrackets(address.substring(0, colon)), Integer.parseInt(address.substring(colon + 1)), false);
+        }
+        if (name.startsWith(TCP_LISTEN_PREFIX)) {
+            String address = name.substring(TCP_LISTEN_PREFIX.length());
+            int colon = address.lastIndexOf(':');
+            String host = colon < 0 ? null : stripBrackets(address.substring(0, colon));
+            return new TcpTransport(name, host, Integer.parseInt(address.substring(colon + 1)), true);
+        }
+        if (name.startsWith(REPLAY_PREFIX))
+            return new ReplayTransport(name, new File(name.substring(REPLAY_PREFIX.length())), Config.get().getDouble("replay.speed", 1.0));
+        return new SerialTransport(name, baudRate, dataBits, stopBits);
+    }
+
+    static boolean isSerial(String name) {
+        return !name.startsWith(TCP_PREFIX) && !name.startsWith(TCP_LISTEN_PREFIX) && !name.startsWith(REPLAY_PREFIX);
+    }
+
+    static String stripBrackets(String host) {
+        return host.startsWith("[") && host.endsWith("]") ? host.substring(1, host.length() - 1) : host;
+    }
+}
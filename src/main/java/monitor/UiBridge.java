@@ -0,0 +1,137 @@
+package monitor;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.control.TextField;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+public class UiBridge extends AnimationTimer {
+
+    private static final Comparator<Record> BY_TIME = Comparator.comparingLong(Record::getTime);
+
+    private final Queue<Object> staged = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger stagedRecords = new AtomicInteger();
+
+    private final int maxRecordsPerFrame;
+    private final long reorderWindowMillis;
+    private final Consumer<List<Record>> recordSink;
+    private final TextField interactiveOutput;
+    private Consumer<Alert> alertSink;
+
+    // Records from several ports are held back for the reorder window so the merged view stays in time order
+    private final List<Record> pending;
+    private final StringBuilder frameText = new StringBuilder();
+
+    private volatile int lastFrameRecords;
+    private volatile long lastFrameNanos;
+
+    private final LatencyHistogram frameLatency = Metrics.histogram("ui.frame");
+    private final LongSupplier backlogGauge = this::getBacklog;
+    private final LongSupplier frameRecordsGauge = this::getLastFrameRecords;
+
+    public UiBridge(int maxRecordsPerFrame, long reorderWindowMillis, Consumer<List<Record>> recordSink, TextField interactiveOutput) {
+        this.maxRecordsPerFrame = maxRecordsPerFrame;
+        this.reorderWindowMillis = reorderWindowMillis;
+        this.recordSink = recordSink;
+        this.interactiveOutput = interactiveOutput;
+        this.pending = new ArrayList<>(maxRecordsPerFrame);
+
+        Metrics.gauge("ui.backlog", backlogGauge);
+        Metrics.gauge("ui.frame.records", frameRecordsGauge);
+    }
+
+    // Only stopped when its window closes
+    @Override
+    public void stop() {
+        super.stop();
+        Metrics.release("ui.backlog", backlogGauge);
+        Metrics.release("ui.frame.records", frameRecordsGauge);
+    }
+
+    public void offerRecord(Record record) {
+        staged.offer(record);
+        stagedRecords.incrementAndGet();
+    }
+
+    public void offerInteractive(String text) {
+        staged.offer(text);
+    }
+
+    public void setAlertSink(Consumer<Alert> alertSink) {
+        this.alertSink = alertSink;
+    }
+
+    public void offerAlert(Alert alert) {
+        staged.offer(alert);
+    }
+
+    public int getBacklog() {
+        return stagedRecords.get();
+    }
+
+    public int getLastFrameRecords() {
+        return lastFrameRecords;
+    }
+
+    public long getLastFrameNanos() {
+        return lastFrameNanos;
+    }
+
+    @Override
+    public void handle(long now) {
+        long start = System.nanoTime();
+        boolean clearText = false;
+
+        Object next;
+        while (pending.size() < maxRecordsPerFrame && (next = staged.poll()) != null) {
+            if (next instanceof Record) {
+                pending.add((Record) next);
+                stagedRecords.decrementAndGet();
+                frameText.setLength(0);
+                clearText = true;
+            } else if (next instanceof Alert) {
+                if (alertSink != null)
+                    alertSink.accept((Alert) next);
+            } else {
+                frameText.append((String) next);
+            }
+        }
+
+        int ready = pending.size();
+        if (reorderWindowMillis > 0 && ready > 0) {
+            pending.sort(BY_TIME);
+            long watermark = System.currentTimeMillis() - reorderWindowMillis;
+            while (ready > 0 && pending.get(ready - 1).getTime() > watermark)
+                ready--;
+        }
+
+        if (ready > 0) {
+            List<Record> frameRecords = pending.subList(0, ready);
+            recordSink.accept(frameRecords);
+            for (Record record : frameRecords) {
+                Trace trace = record.getTrace();
+                if (trace != null)
+                    trace.mark(Trace.Stage.APPENDED);
+            }
+            frameRecords.clear();
+        }
+        if (clearText) {
+            interactiveOutput.setText(frameText.toString());
+        } else if (frameText.length() > 0) {
+            interactiveOutput.appendText(frameText.toString());
+        }
+
+        lastFrameRecords = ready;
+        lastFrameNanos = System.nanoTime() - start;
+        if (ready > 0)
+            frameLatency.record(lastFrameNanos);
+        frameText.setLength(0);
+    }
+}
@@ -0,0 +1,162 @@
+package monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ArchiveTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void codecsRoundTripEdgeCases() {
+        long[] times = {0, 100, 200, 301, 399, 5000, 5001, Integer.MAX_VALUE * 3L, Integer.MAX_VALUE * 3L - 7, Long.MAX_VALUE / 2};
+        double[] doubles = {0, -0.0, 1.5, 1.5, Double.NaN, Double.POSITIVE_INFINITY, -1e300, Double.MIN_VALUE, 230.01, 229.99};
+        long[] packed = {Long.MIN_VALUE, Long.MAX_VALUE, 0, -1, 1, 0, 0, 0, 42, 7};
+        long[] bits = new long[doubles.length];
+        for (int i = 0; i < doubles.length; i++)
+            bits[i] = Double.doubleToRawLongBits(doubles[i]);
+
+        double[] decimals = {230.01, 229.99, 230.5, -12.25, 0, 1e9, 1e9 + 0.125};
+        long[] decimalBits = new long[decimals.length];
+        for (int i = 0; i < decimals.length; i++)
+            decimalBits[i] = Double.doubleToRawLongBits(decimals[i]);
+
+        BitWriter out = new BitWriter(16);
+        long[] scratch = new long[10];
+        ArchiveCodec.encodeTimes(times, times.length, out);
+        ArchiveCodec.encodeDoubles(bits, bits.length, out, scratch);
+        ArchiveCodec.encodeDoubles(decimalBits, decimalBits.length, out, scratch);
+        ArchiveCodec.encodePacked(packed, packed.length, out);
+
+        BitReader in = new BitReader(out.array(), 0, out.byteLength());
+        long[] decoded = new long[10];
+        ArchiveCodec.decodeTimes(in, times.length, decoded);
+        assertArrayEquals(times, decoded);
+        ArchiveCodec.decodeDoubles(in, bits.length, decoded);
+        assertArrayEquals(bits, decoded);
+        ArchiveCodec.decodeDoubles(in, decimalBits.length, decoded);
+        assertArrayEquals(decimalBits, Arrays.copyOf(decoded, decimalBits.length));
+        ArchiveCodec.decodePacked(in, packed.length, decoded);
+        assertArrayEquals(packed, decoded);
+    }
+
+    @Test
+    void scansOneColumnOverATimeRange() throws Exception {
+        LogFrameDecoder decoder = new LogFrameDecoder();
+        DeviceEmulator first = new DeviceEmulator(bytes -> { }, "DEV1", 1);
+        DeviceEmulator second = new DeviceEmulator(bytes -> { }, "DEV/2", 2);
+        Random jitter = new Random(3);
+
+        List<Long> expectedTimes = new ArrayList<>();
+        List<Double> expectedTemperatures = new ArrayList<>();
+        List<Double> expectedSequence = new ArrayList<>();
+        long rawBytes = 0;
+
+        // Ten frames a second with a few milliseconds of jitter, over five one-minute partitions and two devices
+        ArchiveWriter writer = new ArchiveWriter(directory, 256, 60_000, 30_000);
+        LogFrame frame = new LogFrame();
+        for (int i = 0; i < 3000; i++) {
+            long time = 1_600_000_000_000L + i * 100L + jitter.nextInt(5);
+            for (DeviceEmulator emulator : new DeviceEmulator[]{first, second}) {
+                byte[] line = emulator.nextFrame();
+                rawBytes += line.length;
+                decoder.decode(line, 0, line.length, frame);
+                frame.setTime(time);
+                writer.accept(frame);
+
+                if (emulator == first && time >= 1_600_000_090_000L && time <= 1_600_000_200_000L) {
+                    expectedTimes.add(time);
+                    expectedTemperatures.add(frame.getTemperature());
+                    expectedSequence.add((double) frame.getLastIterations());
+                }
+            }
+        }
+        writer.close();
+
+        ArchiveReader reader = new ArchiveReader(directory);
+        assertEquals(2, reader.getDevices().size());
+
+        List<Long> times = new ArrayList<>();
+        List<Double> temperatures = new ArrayList<>();
+        reader.scan("DEV1", ArchiveColumn.forField(TelemetryField.TEMPERATURE), 1_600_000_090_000L, 1_600_000_200_000L, (time, value) -> {
+            times.add(time);
+            temperatures.add(value);
+        });
+        assertEquals(expectedTimes, times);
+        assertEquals(expectedTemperatures, temperatures);
+
+        List<Double> sequence = new ArrayList<>();
+        reader.scan("DEV1", ArchiveColumn.LAST_ITERATIONS, 1_600_000_090_000L, 1_600_000_200_000L, (time, value) -> sequence.add(value));
+        assertEquals(expectedSequence, sequence);
+
+        long archivedBytes = 0;
+        for (String device : reader.getDevices()) {
+            for (File chunk : new File(directory, device).listFiles())
+                archivedBytes += chunk.length();
+        }
+        assertTrue(archivedBytes * 4 < rawBytes, archivedBytes + " archived bytes for " + rawBytes + " bytes of log frames");
+    }
+
+    @Test
+    void skipsATruncatedLastBlock() throws IOException {
+        ArchiveWriter writer = new ArchiveWriter(directory, 10, 3_600_000, 60_000);
+        LogFrame frame = new LogFrame();
+        byte[] serial = "DEV1".getBytes();
+        frame.setSerialNumber(serial, 0, serial.length);
+        for (int i = 0; i < 25; i++) {
+            frame.setTime(i * 1000L);
+            frame.setMeterValue(LogFrame.TEMPERATURE, i);
+            writer.accept(frame);
+        }
+        writer.close();
+
+        File chunk = new File(new File(directory, "DEV1"), ArchiveWriter.partitionFileName(0));
+        try (RandomAccessFile file = new RandomAccessFile(chunk, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        List<Double> values = new ArrayList<>();
+        new ArchiveReader(directory).scan("DEV1", ArchiveColumn.TEMPERATURE, Long.MIN_VALUE, Long.MAX_VALUE, (time, value) -> values.add(value));
+        assertEquals(20, values.size());
+        assertEquals(19.0, values.get(19));
+    }
+
+    @Test
+    void writesABlockOnceItIsOldEvenWithoutAnotherFrame() throws IOException {
+        ArchiveWriter writer = new ArchiveWriter(directory, 1024, 3_600_000, 60_000);
+        LogFrame frame = new LogFrame();
+        byte[] serial = "DEV1".getBytes();
+        frame.setSerialNumber(serial, 0, serial.length);
+        for (int i = 0; i < 3; i++) {
+            frame.setTime(i * 1000L);
+            frame.setMeterValue(LogFrame.TEMPERATURE, i);
+            writer.accept(frame);
+        }
+
+        File chunk = new File(new File(directory, "DEV1"), ArchiveWriter.partitionFileName(0));
+        long start = System.nanoTime();
+        writer.flushAged(start);
+        assertFalse(chunk.exists());
+
+        writer.flushAged(start + TimeUnit.SECONDS.toNanos(61));
+        List<Double> values = new ArrayList<>();
+        new ArchiveReader(directory).scan("DEV1", ArchiveColumn.TEMPERATURE, Long.MIN_VALUE, Long.MAX_VALUE, (time, value) -> values.add(value));
+        assertEquals(Arrays.asList(0.0, 1.0, 2.0), values);
+        writer.close();
+    }
+}
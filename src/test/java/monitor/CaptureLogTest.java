@@ -0,0 +1,110 @@
+package monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CaptureLogTest {
+
+    @TempDir
+    File directory;
+
+    private static void append(CaptureLog captureLog, long time) {
+        byte[] line = ("line " + time + "\n").getBytes(StandardCharsets.US_ASCII);
+        captureLog.append(time, line, 0, line.length);
+    }
+
+    private static List<String> read(CaptureLog captureLog, long from, long to) {
+        List<String> lines = new ArrayList<>();
+        captureLog.read(from, to, (time, content) -> {
+            byte[] bytes = new byte[content.remaining()];
+            content.get(bytes);
+            lines.add(new String(bytes, StandardCharsets.US_ASCII));
+            return true;
+        });
+        return lines;
+    }
+
+    @Test
+    void readsTimeRangesAcrossSegments() throws IOException {
+        try (CaptureLog captureLog = new CaptureLog(directory, 64 * 1024)) {
+            for (long time = 0; time < 20000; time++)
+                append(captureLog, time);
+
+            List<String> lines = read(captureLog, 12345, 12400);
+            assertEquals(56, lines.size());
+            assertEquals("line 12345\n", lines.get(0));
+            assertEquals("line 12400\n", lines.get(55));
+        }
+    }
+
+    @Test
+    void reopensExistingSegments() throws IOException {
+        try (CaptureLog captureLog = new CaptureLog(directory, 64 * 1024)) {
+            for (long time = 0; time < 5000; time++)
+                append(captureLog, time);
+        }
+
+        int segments = segmentCount();
+
+        // Appends go on in the last segment instead of a fresh one per start
+        try (CaptureLog captureLog = new CaptureLog(directory, 64 * 1024)) {
+            append(captureLog, 5000);
+            assertEquals(11, read(captureLog, 4990, 6000).size());
+        }
+        assertEquals(segments, segmentCount());
+
+        try (CaptureLog captureLog = new CaptureLog(directory, 64 * 1024)) {
+            append(captureLog, 5001);
+            assertEquals(12, read(captureLog, 4990, 6000).size());
+            assertEquals(5002, read(captureLog, Long.MIN_VALUE, Long.MAX_VALUE).size());
+        }
+    }
+
+    @Test
+    void dropsTheOldestSegmentsPastItsLimit() throws IOException {
+        try (CaptureLog captureLog = new CaptureLog(directory, 64 * 1024, 256 * 1024)) {
+            for (long time = 0; time < 20000; time++)
+                append(captureLog, time);
+
+            assertEquals(4, segmentCount());
+            long firstTime = captureLog.getFirstTime();
+            assertTrue(firstTime > 0);
+            List<String> lines = read(captureLog, Long.MIN_VALUE, Long.MAX_VALUE);
+            assertEquals("line " + firstTime + "\n", lines.get(0));
+            assertEquals(20000 - firstTime, lines.size());
+        }
+    }
+
+    @Test
+    void holdsTheTimeWhenTheClockStepsBack() throws IOException {
+        try (CaptureLog captureLog = new CaptureLog(directory, 64 * 1024)) {
+            for (long time = 0; time < 5000; time++)
+                append(captureLog, time);
+            for (long time = 1000; time < 6000; time++)
+                append(captureLog, time);
+
+            List<Long> times = new ArrayList<>();
+            captureLog.read(Long.MIN_VALUE, Long.MAX_VALUE, (time, content) -> times.add(time));
+            assertEquals(10000, times.size());
+            for (int i = 1; i < times.size(); i++)
+                assertTrue(times.get(i) >= times.get(i - 1));
+
+            List<String> lines = read(captureLog, 5000, 5999);
+            assertEquals(1000, lines.size());
+            assertEquals("line 5000\n", lines.get(0));
+        }
+    }
+
+    private int segmentCount() {
+        return directory.listFiles((dir, name) -> name.endsWith(".log")).length;
+    }
+}
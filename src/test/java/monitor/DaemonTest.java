@@ -0,0 +1,53 @@
+package monitor;
+
+import jssc.SerialPort;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DaemonTest {
+
+    // As read from [daemon] in config.toml
+    private static final Settings DEFAULTS = new Settings(null, SerialPort.BAUDRATE_9600, SerialPort.DATABITS_7, SerialPort.STOPBITS_2);
+
+    @Test
+    void parsesPortOnlyWithDefaults() {
+        Settings settings = Daemon.parseSettings("/dev/ttyUSB0", DEFAULTS);
+
+        assertEquals("/dev/ttyUSB0", settings.getPortName());
+        assertEquals(SerialPort.BAUDRATE_9600, settings.getBaudRate());
+        assertEquals(SerialPort.DATABITS_7, settings.getDataBits());
+        assertEquals(SerialPort.STOPBITS_2, settings.getStopBits());
+    }
+
+    @Test
+    void fillsWhatAPartialSpecLeavesOutFromTheDefaults() {
+        Settings settings = Daemon.parseSettings("COM3:115200", DEFAULTS);
+
+        assertEquals(115200, settings.getBaudRate());
+        assertEquals(SerialPort.DATABITS_7, settings.getDataBits());
+        assertEquals(SerialPort.STOPBITS_2, settings.getStopBits());
+    }
+
+    @Test
+    void parsesFullSpec() {
+        Settings settings = Daemon.parseSettings("COM3:115200:7:1.5", DEFAULTS);
+
+        assertEquals("COM3", settings.getPortName());
+        assertEquals(115200, settings.getBaudRate());
+        assertEquals(7, settings.getDataBits());
+        assertEquals(SerialPort.STOPBITS_1_5, settings.getStopBits());
+    }
+
+    @Test
+    void keepsTransportNamesWhole() {
+        assertEquals("tcp:gateway.local:4001", Daemon.parseSettings("tcp:gateway.local:4001", DEFAULTS).getPortName());
+        assertEquals("replay:captures/COM3", Daemon.parseSettings("replay:captures/COM3", DEFAULTS).getPortName());
+    }
+
+    @Test
+    void rejectsUnknownStopBits() {
+        assertThrows(IllegalArgumentException.class, () -> Daemon.parseSettings("COM3:9600:8:3", DEFAULTS));
+    }
+}
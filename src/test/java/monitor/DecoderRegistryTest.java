@@ -0,0 +1,136 @@
+package monitor;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DecoderRegistryTest {
+
+    // A binary telemetry packet: type byte 0x81, a temperature in hundredths of a degree as a big-endian short
+    private static class TemperaturePacketDecoder implements FrameDecoder {
+        @Override
+        public void register(DecoderRegistry registry) {
+            registry.register(Framing.Mode.COBS, "\u0081", this);
+        }
+
+        @Override
+        public LogFrame decode(byte[] buffer, int offset, int length, LogFrame frame) throws FrameFormatException {
+            if (length != 3)
+                throw new FrameFormatException("Expected 3 bytes, got " + length, 0);
+            byte[] serial = "BIN1".getBytes(StandardCharsets.US_ASCII);
+            frame.setSerialNumber(serial, 0, serial.length);
+            frame.setMeterValue(LogFrame.TEMPERATURE, (short) ((buffer[offset + 1] & 0xFF) << 8 | buffer[offset + 2] & 0xFF) / 100.0);
+            return frame;
+        }
+    }
+
+    private static FrameDecoder named(String name) {
+        return new FrameDecoder() {
+            @Override
+            public void register(DecoderRegistry registry) {
+            }
+
+            @Override
+            public LogFrame decode(byte[] buffer, int offset, int length, LogFrame frame) {
+                return frame;
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        };
+    }
+
+    private static FrameDecoder find(DecoderRegistry.Trie trie, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.ISO_8859_1);
+        return trie.find(bytes, 0, bytes.length);
+    }
+
+    @Test
+    void dispatchesOnTheLongestPrefix() {
+        FrameDecoder log = named("log");
+        FrameDecoder logv2 = named("logv2");
+        FrameDecoder fallback = named("fallback");
+
+        DecoderRegistry registry = new DecoderRegistry();
+        registry.register(Framing.Mode.LINES, "log[", log);
+        registry.register(Framing.Mode.LINES, "log[v2:", logv2);
+        registry.register(Framing.Mode.SLIP, "", fallback);
+
+        DecoderRegistry.Trie lines = registry.compile(Framing.Mode.LINES);
+        assertSame(log, find(lines, "log[SN1]:A;1"));
+        assertSame(logv2, find(lines, "log[v2:SN1]"));
+        assertSame(log, find(lines, "log[v2"));
+        assertNull(find(lines, "lo"));
+        assertNull(find(lines, "state machine tick"));
+
+        assertSame(fallback, find(registry.compile(Framing.Mode.SLIP), "anything"));
+        assertTrue(registry.compile(Framing.Mode.COBS).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> registry.register(Framing.Mode.LINES, "log[", fallback));
+    }
+
+    @Test
+    void decodesPacketsAndLinesOnOneMixedPort() throws IOException {
+        List<Transport.Receiver> receivers = new ArrayList<>();
+        Transport transport = new Transport() {
+            @Override
+            public void open(Receiver receiver) {
+                receivers.add(receiver);
+            }
+
+            @Override
+            public void write(byte[] bytes) {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        DecoderRegistry registry = DecoderRegistry.load();
+        new TemperaturePacketDecoder().register(registry);
+        Framing framing = Framing.cobs(true);
+        Monitor monitor = new Monitor("mixed", transport, framing, registry,
+                new OutboundWriter("mixed", transport::write, 16, 4096, 0));
+
+        List<String> frames = new ArrayList<>();
+        List<String> records = new ArrayList<>();
+        monitor.setFrameCallback(frame -> frames.add(frame.getSerialNumber() + " " + frame.getTemperature()));
+        monitor.setRecordCallback(record -> records.add(record.getContent()));
+        monitor.start(Runnable::run);
+
+        byte[] textFrame = new DeviceEmulator(bytes -> { }, "TXT1", 1).nextFrame();
+        byte[] wrappedFrame = new DeviceEmulator(bytes -> { }, "WRAP1", 1).nextFrame();
+        byte[][] chunks = {
+                "boot\r\n".getBytes(StandardCharsets.US_ASCII),
+                framing.encode(new byte[]{(byte) 0x81, 0x09, (byte) 0xC4}),
+                textFrame,
+                framing.encode(Arrays.copyOf(wrappedFrame, wrappedFrame.length - 2)),
+                framing.encode(new byte[]{0x01, 0x00, 0x02})
+        };
+        for (byte[] chunk : chunks)
+            receivers.get(0).received(chunk, 1000);
+        monitor.stop();
+
+        assertEquals(3, frames.size());
+        assertEquals("BIN1 25.0", frames.get(0));
+        assertTrue(frames.get(1).startsWith("TXT1 "));
+        assertTrue(frames.get(2).startsWith("WRAP1 "));
+        assertEquals(5, records.size());
+        assertEquals("boot\r\n", records.get(0));
+        assertEquals("[cobs] 81 09 c4", records.get(1));
+        assertTrue(records.get(3).startsWith("[cobs] log[WRAP1]"));
+        assertEquals("[cobs] 01 00 02", records.get(4));
+    }
+}
@@ -0,0 +1,51 @@
+package monitor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DeviceEmulatorTest {
+
+    @Test
+    void framesDecodeWithTheFullPayloadAndCarryTheirSequence() throws FrameFormatException {
+        DeviceEmulator emulator = new DeviceEmulator(bytes -> {
+        }, "EMU42", 7);
+        LogFrameDecoder decoder = new LogFrameDecoder();
+        LogFrame frame = new LogFrame();
+
+        for (int i = 0; i < 1000; i++) {
+            byte[] bytes = emulator.nextFrame();
+            assertTrue(LogFrameDecoder.isLogFrame(bytes, 0, bytes.length));
+            decoder.decode(bytes, 0, bytes.length, frame);
+
+            assertEquals("EMU42", frame.getSerialNumber());
+            assertEquals(i, frame.getLastIterations());
+            assertEquals(50, frame.getMeterValue(LogFrame.FREQUENCY), 0.5);
+            assertEquals(230, frame.getMeterValue(LogFrame.VOLTAGE_L2), 20);
+            assertTrue(frame.getMeterValue(LogFrame.POWER_FACTOR) <= 1);
+        }
+    }
+
+    @Test
+    void respectsTheBaudRateLimit() throws Exception {
+        List<byte[]> writes = new ArrayList<>();
+        DeviceEmulator emulator = new DeviceEmulator(writes::add, "EMU1", 1);
+        // A console line before every frame, which costs the line almost a tenth of its bandwidth
+        emulator.setConsoleEvery(1);
+
+        long start = System.nanoTime();
+        emulator.run(0, 115200, 500_000_000L, null);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        // The last console line and frame went out at the start of a slot that had not run out yet
+        long bytes = 0;
+        for (byte[] write : writes.subList(0, writes.size() - 2))
+            bytes += write.length;
+        assertTrue(bytes / seconds <= 11520 * 1.001, "Sent " + bytes / seconds + " bytes/s");
+        assertTrue(bytes / seconds >= 11520 * 0.5, "Sent " + bytes / seconds + " bytes/s");
+    }
+}
@@ -0,0 +1,211 @@
+package monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExporterTest {
+
+    @TempDir
+    File directory;
+
+    private static void append(CaptureLog captureLog, long time, String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        captureLog.append(time, bytes, 0, bytes.length);
+    }
+
+    private static long export(Map<String, CaptureLog> captureLogs, RecordQuery query, Exporter.Format format, File file,
+                               int batchRows) throws InterruptedException {
+        AtomicLong exported = new AtomicLong(-1);
+        List<Exception> errors = new ArrayList<>();
+        Exporter exporter = new Exporter(captureLogs, query, format, file, 2, batchRows, new Exporter.ProgressListener() {
+            @Override
+            public void progress(double fraction, long rows) {
+                assertTrue(fraction >= 0 && fraction <= 1);
+            }
+
+            @Override
+            public void finished(long rows, boolean cancelled, Exception error) {
+                assertFalse(cancelled);
+                if (error != null)
+                    errors.add(error);
+                exported.set(rows);
+            }
+        }).start();
+        exporter.join();
+        assertTrue(errors.isEmpty(), errors.toString());
+        return exported.get();
+    }
+
+    @Test
+    void exportsFilteredLinesOfEveryPortAsCsv() throws Exception {
+        Map<String, CaptureLog> captureLogs = new LinkedHashMap<>();
+        try (CaptureLog first = new CaptureLog(new File(directory, "a"), 64 * 1024);
+             CaptureLog second = new CaptureLog(new File(directory, "b"), 64 * 1024)) {
+            captureLogs.put("COM1", first);
+            captureLogs.put("COM2", second);
+            for (long time = 0; time < 10000; time++) {
+                append(first, time, "tick " + time + "\r\n");
+                if (time % 1000 == 0)
+                    append(second, time, "said \"hello\" at " + time + "\n");
+            }
+
+            File file = new File(directory, "lines.csv");
+            // Batches of 7 rows, so the export cycles the two batches many times over
+            long rows = export(captureLogs, RecordQuery.substring("", 2000, 5999), Exporter.Format.LINES_CSV, file, 7);
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            assertEquals(4004, rows);
+            assertEquals(4005, lines.size());
+            assertEquals("time,port,content", lines.get(0));
+            assertEquals("1970-01-01T00:00:02Z,\"COM1\",\"tick 2000\"", lines.get(1));
+            assertEquals("1970-01-01T00:00:05.999Z,\"COM1\",\"tick 5999\"", lines.get(4000));
+            assertEquals("1970-01-01T00:00:02Z,\"COM2\",\"said \"\"hello\"\" at 2000\"", lines.get(4001));
+
+            rows = export(captureLogs, RecordQuery.regex("tick 9\\d{3}$", Long.MIN_VALUE, Long.MAX_VALUE),
+                    Exporter.Format.LINES_CSV, file, 64);
+            assertEquals(1000, rows);
+        }
+    }
+
+    @Test
+    void exportsDecodedFramesAsCsvAndArchive() throws Exception {
+        DeviceEmulator emulator = new DeviceEmulator(bytes -> { }, "EXP1", 7);
+        emulator.setConsoleEvery(5);
+        Map<String, CaptureLog> captureLogs = new LinkedHashMap<>();
+        try (CaptureLog captureLog = new CaptureLog(new File(directory, "capture"), 1024 * 1024)) {
+            captureLogs.put("COM1", captureLog);
+            List<Double> temperatures = new ArrayList<>();
+            LogFrameDecoder decoder = new LogFrameDecoder();
+            for (long time = 0; time < 2000; time++) {
+                byte[] frame = emulator.nextFrame();
+                captureLog.append(time * 100, frame, 0, frame.length);
+                temperatures.add(decoder.decode(frame, 0, frame.length, new LogFrame()).getTemperature());
+                append(captureLog, time * 100 + 50, "state machine tick\r\n");
+            }
+
+            File csv = new File(directory, "frames.csv");
+            assertEquals(2000, export(captureLogs, RecordQuery.substring("", Long.MIN_VALUE, Long.MAX_VALUE),
+                    Exporter.Format.FRAMES_CSV, csv, 100));
+            List<String> lines = Files.readAllLines(csv.toPath(), StandardCharsets.UTF_8);
+            assertEquals(2001, lines.size());
+            String[] header = lines.get(0).split(",");
+            assertEquals(3 + ArchiveColumn.values().length, header.length);
+            int temperatureColumn = 3 + ArchiveColumn.TEMPERATURE.ordinal();
+            assertEquals("temperature", header[temperatureColumn]);
+            String[] row = lines.get(1234).split(",");
+            assertEquals("\"EXP1\"", row[2]);
+            assertEquals(temperatures.get(1233), Double.parseDouble(row[temperatureColumn]));
+
+            File archiveDirectory = new File(directory, "archive");
+            assertEquals(1000, export(captureLogs, RecordQuery.substring("", 100_000, 199_999),
+                    Exporter.Format.FRAMES_ARCHIVE, archiveDirectory, 100));
+            List<Double> archived = new ArrayList<>();
+            new ArchiveReader(archiveDirectory).scan("EXP1", ArchiveColumn.TEMPERATURE, Long.MIN_VALUE, Long.MAX_VALUE,
+                    (time, value) -> archived.add(value));
+            assertEquals(temperatures.subList(1000, 2000), archived);
+        }
+    }
+
+    @Test
+    void cancelStopsBothThreads() throws Exception {
+        Map<String, CaptureLog> captureLogs = new LinkedHashMap<>();
+        try (CaptureLog captureLog = new CaptureLog(new File(directory, "capture"), 4 * 1024 * 1024)) {
+            captureLogs.put("COM1", captureLog);
+            for (long time = 0; time < 100000; time++)
+                append(captureLog, time, "line " + time + "\n");
+
+            boolean[] cancelled = new boolean[1];
+            Exception[] error = new Exception[1];
+            Exporter exporter = new Exporter(captureLogs, RecordQuery.substring("", Long.MIN_VALUE, Long.MAX_VALUE),
+                    Exporter.Format.LINES_CSV, new File(directory, "lines.csv"), 2, 16, new Exporter.ProgressListener() {
+                @Override
+                public void progress(double fraction, long rows) {
+                }
+
+                @Override
+                public void finished(long rows, boolean wasCancelled, Exception exception) {
+                    cancelled[0] = wasCancelled;
+                    error[0] = exception;
+                }
+            });
+            exporter.cancel();
+            exporter.start().join();
+            assertTrue(cancelled[0]);
+            assertNull(error[0]);
+        }
+    }
+
+    @Test
+    void unwritableTargetReportsTheError() throws IOException, InterruptedException {
+        Map<String, CaptureLog> captureLogs = new LinkedHashMap<>();
+        try (CaptureLog captureLog = new CaptureLog(new File(directory, "capture"), 64 * 1024)) {
+            captureLogs.put("COM1", captureLog);
+            append(captureLog, 1, "line\n");
+
+            Exception[] error = new Exception[1];
+            new Exporter(captureLogs, RecordQuery.substring("", Long.MIN_VALUE, Long.MAX_VALUE), Exporter.Format.LINES_CSV,
+                    new File(directory, "missing/lines.csv"), 2, 16, new Exporter.ProgressListener() {
+                @Override
+                public void progress(double fraction, long rows) {
+                }
+
+                @Override
+                public void finished(long rows, boolean cancelled, Exception exception) {
+                    error[0] = exception;
+                }
+            }).start().join();
+            assertTrue(error[0] instanceof IOException);
+        }
+    }
+
+    @Test
+    void failingCaptureLogReportsTheError() throws IOException, InterruptedException {
+        Map<String, CaptureLog> captureLogs = new LinkedHashMap<>();
+        try (CaptureLog captureLog = new CaptureLog(new File(directory, "capture"), 64 * 1024) {
+            @Override
+            public void read(long fromTime, long toTime, EntryHandler handler) {
+                super.read(fromTime, toTime, (time, content) -> {
+                    if (time == 500)
+                        throw new UncheckedIOException(new IOException("Input/output error"));
+                    return handler.onEntry(time, content);
+                });
+            }
+        }) {
+            captureLogs.put("COM1", captureLog);
+            for (long time = 0; time < 1000; time++)
+                append(captureLog, time, "line " + time + "\n");
+
+            Exception[] error = new Exception[1];
+            boolean[] cancelled = new boolean[1];
+            new Exporter(captureLogs, RecordQuery.substring("", Long.MIN_VALUE, Long.MAX_VALUE), Exporter.Format.LINES_CSV,
+                    new File(directory, "lines.csv"), 2, 16, new Exporter.ProgressListener() {
+                @Override
+                public void progress(double fraction, long rows) {
+                }
+
+                @Override
+                public void finished(long rows, boolean wasCancelled, Exception exception) {
+                    cancelled[0] = wasCancelled;
+                    error[0] = exception;
+                }
+            }).start().join();
+            assertTrue(error[0] instanceof UncheckedIOException);
+            assertFalse(cancelled[0]);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ImporterTest {
+
+    private static final String URL = "jdbc:h2:mem:import;DB_CLOSE_DELAY=-1";
+    private static final String FAILING_URL = "jdbc:h2:mem:import-failing;DB_CLOSE_DELAY=-1";
+    private static final String LONG_LINE_URL = "jdbc:h2:mem:import-long-line;DB_CLOSE_DELAY=-1";
+
+    @TempDir
+    File directory;
+
+    @Test
+    void importsFramesFromAllChunks() throws IOException, SQLException {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            for (TelemetryField field : TelemetryField.rawFields())
+                statement.execute("CREATE TABLE " + field.getTable() + "(time BIGINT, value DOUBLE PRECISION)");
+        }
+
+        File dump = new File(directory, "dump.txt");
+        try (PrintWriter writer = new PrintWriter(dump, "US-ASCII")) {
+            for (int i = 0; i < 50000; i++) {
+                writer.print("boot message " + i + "\r\n");
+                writer.print("log[SN" + i % 7 + "]:A;" + i % 2 + ";1.5;2.5;0;x;"
+                        + "1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20,21,22,23,24,25,26," + i
+                        + ";p7;p8;0|0|1|0|0,0,0\r\n");
+            }
+            writer.print("log[SN1]:broken\r\n");
+        }
+
+        Importer importer = new Importer(dump, new ConnectionPool(URL, "sa", "", 4), 4, 10);
+        importer.setStartMillis(0);
+        Importer.Result result = importer.run();
+
+        assertEquals(100001, result.getLines());
+        assertEquals(50000, result.getFrames());
+        assertEquals(1, result.getMalformed());
+
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*), MAX(value), MAX(time) FROM temperature")) {
+            resultSet.next();
+            assertEquals(50000, resultSet.getLong(1));
+            assertEquals(49999, resultSet.getDouble(2));
+            assertEquals(99999 * 10, resultSet.getLong(3));
+        }
+    }
+
+    @Test
+    void keepsLinesLongerThanTheLimitWhole() throws IOException, SQLException {
+        createTables(LONG_LINE_URL, "");
+
+        // Chunks are about 1/16 of the file, so the 200 KB line runs over several chunk boundaries
+        File dump = new File(directory, "dump.txt");
+        try (PrintWriter writer = new PrintWriter(dump, "US-ASCII")) {
+            for (int i = 0; i < 1000; i++) {
+                if (i == 500)
+                    writer.print(new String(new char[200 * 1024]).replace('\0', 'x') + "\r\n");
+                writer.print(logLine(i));
+            }
+        }
+
+        Importer importer = new Importer(dump, new ConnectionPool(LONG_LINE_URL, "sa", "", 4), 4, 10);
+        importer.setStartMillis(0);
+        Importer.Result result = importer.run();
+
+        assertEquals(1001, result.getLines());
+        assertEquals(1000, result.getFrames());
+        try (Connection connection = DriverManager.getConnection(LONG_LINE_URL, "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT MAX(time) FROM temperature")) {
+            resultSet.next();
+            assertEquals(1000 * 10, resultSet.getLong(1));
+        }
+    }
+
+    @Test
+    void reportsTheLinesCommittedBeforeAFailure() throws IOException, SQLException {
+        // Temperature is the frame number, so every chunk from the one holding frame 40000 on is rejected
+        createTables(FAILING_URL, " CHECK (value < 40000)");
+
+        File dump = new File(directory, "dump.txt");
+        try (PrintWriter writer = new PrintWriter(dump, "US-ASCII")) {
+            for (int i = 0; i < 50000; i++) {
+                writer.print("boot message " + i + "\r\n");
+                writer.print(logLine(i));
+            }
+        }
+
+        Importer importer = new Importer(dump, new ConnectionPool(FAILING_URL, "sa", "", 4), 4, 10);
+        IOException e = assertThrows(IOException.class, importer::run);
+
+        Matcher committed = Pattern.compile("committed lines 1-(\\d+)$").matcher(e.getMessage());
+        assertTrue(committed.find(), e.getMessage());
+        long lines = Long.parseLong(committed.group(1));
+        try (Connection connection = DriverManager.getConnection(FAILING_URL, "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM temperature")) {
+            resultSet.next();
+            assertEquals(lines / 2, resultSet.getLong(1));
+        }
+    }
+
+    private static void createTables(String url, String temperatureCheck) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            for (TelemetryField field : TelemetryField.rawFields()) {
+                String check = field == TelemetryField.TEMPERATURE ? temperatureCheck : "";
+                statement.execute("CREATE TABLE " + field.getTable() + "(time BIGINT, value DOUBLE PRECISION" + check + ")");
+            }
+        }
+    }
+
+    private static String logLine(int i) {
+        return "log[SN" + i % 7 + "]:A;" + i % 2 + ";1.5;2.5;0;x;"
+                + "1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20,21,22,23,24,25,26," + i
+                + ";p7;p8;0|0|1|0|0,0,0\r\n";
+    }
+}
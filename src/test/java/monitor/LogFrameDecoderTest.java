@@ -0,0 +1,86 @@
+package monitor;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LogFrameDecoderTest {
+
+    private static final String METER_VALUES =
+            "1234.5,16.2,0,0,3712,0,0,229.8,0,0,50.01,0.98,3712,120,1,0,0,0,0,0,0,0,0,0,0,0,41.5";
+
+    private final LogFrameDecoder decoder = new LogFrameDecoder();
+
+    private LogFrame decode(String line) throws FrameFormatException {
+        byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+        return decoder.decode(bytes, 0, bytes.length, new LogFrame());
+    }
+
+    @Test
+    void decodesAllFields() throws FrameFormatException {
+        LogFrame frame = decode("log[SN0042]:A;1;12.5;-9.25;-12;x;" + METER_VALUES + ";p7;p8;0.5|3|2|123.4|10,11,99\r\n");
+
+        assertEquals("SN0042", frame.getSerialNumber());
+        assertTrue(frame.isLocked());
+        assertEquals(12.5, frame.getPp());
+        assertEquals(-9.25, frame.getCp());
+        assertEquals(-12, frame.getCpn());
+        assertEquals(1234.5, frame.getMeterValue(LogFrame.ENERGY_WH));
+        assertEquals(16.2, frame.getCurrentL1());
+        assertEquals(229.8, frame.getMeterValue(LogFrame.VOLTAGE_L1));
+        assertEquals(50.01, frame.getMeterValue(LogFrame.FREQUENCY));
+        assertEquals(41.5, frame.getTemperature());
+        assertEquals(0.5, frame.getDFixValue());
+        assertEquals(3, frame.getDoStatus());
+        assertEquals(2, frame.getLedStatus());
+        assertEquals(123.4, frame.getMeterKwh());
+        assertEquals(10, frame.getCp100());
+        assertEquals(11, frame.getCpn100());
+        assertEquals(99, frame.getLastIterations());
+    }
+
+    @Test
+    void leavesAbsentOptionalFieldsUnset() throws FrameFormatException {
+        LogFrame frame = decode("log[SN0042]:A;1;12.5;-9.25;;x;" + METER_VALUES + ";p7;p8;||2|-|\n");
+
+        assertEquals(12.5, frame.getPp());
+        assertTrue(Double.isNaN(frame.getCpn()));
+        assertTrue(Double.isNaN(frame.getDFixValue()));
+        assertEquals(-1, frame.getDoStatus());
+        assertEquals(2, frame.getLedStatus());
+        assertTrue(Double.isNaN(frame.getMeterKwh()));
+        assertTrue(Double.isNaN(frame.getCp100()));
+        assertEquals(-1, frame.getLastIterations());
+
+        frame = decode("log[SN0042]:A;1;12.5;-9.25;1e3;x;" + METER_VALUES + ";p7;p8;2.5E-1|x|2|1e|0,0,0\n");
+        assertEquals(1000, frame.getCpn());
+        assertEquals(0.25, frame.getDFixValue());
+        assertEquals(-1, frame.getDoStatus());
+        assertTrue(Double.isNaN(frame.getMeterKwh()));
+    }
+
+    @Test
+    void reportsMissingMeterValues() {
+        FrameFormatException e = assertThrows(FrameFormatException.class,
+                () -> decode("log[SN0042]:A;0;1;2;3;x;1,2,3;p7;p8;0|0|0|0|0,0,0\n"));
+        assertTrue(e.getMessage().contains("meter values"));
+    }
+
+    @Test
+    void reportsInvalidNumbers() {
+        FrameFormatException e = assertThrows(FrameFormatException.class,
+                () -> decode("log[SN0042]:A;yes;1;2;3;x;" + METER_VALUES + ";p7;p8;0|0|0|0|0,0,0\n"));
+        assertTrue(e.getMessage().contains("locked"));
+    }
+
+    @Test
+    void recognisesPrefix() {
+        byte[] bytes = "login: ".getBytes(StandardCharsets.US_ASCII);
+        assertFalse(LogFrameDecoder.isLogFrame(bytes, 0, bytes.length));
+    }
+}
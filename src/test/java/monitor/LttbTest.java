@@ -0,0 +1,54 @@
+package monitor;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LttbTest {
+
+    @Test
+    void keepsEndpointsAndSpikes() {
+        int count = 100000;
+        long[] times = new long[count];
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = 1_600_000_000_000L + i * 100L;
+            values[i] = Math.sin(i / 1000.0);
+        }
+        values[54321] = 25;
+        values[77777] = -25;
+
+        long[] sampledTimes = new long[800];
+        double[] sampledValues = new double[800];
+        int sampled = Lttb.downsample(times, values, count, 800, sampledTimes, sampledValues);
+
+        assertEquals(800, sampled);
+        assertEquals(times[0], sampledTimes[0]);
+        assertEquals(times[count - 1], sampledTimes[sampled - 1]);
+        assertTrue(contains(sampledValues, 25));
+        assertTrue(contains(sampledValues, -25));
+        for (int i = 1; i < sampled; i++)
+            assertTrue(sampledTimes[i] > sampledTimes[i - 1]);
+    }
+
+    @Test
+    void copiesShortSeriesUnchanged() {
+        long[] times = {1, 2, 3};
+        double[] values = {5, 6, 7};
+        long[] sampledTimes = new long[10];
+        double[] sampledValues = new double[10];
+
+        assertEquals(3, Lttb.downsample(times, values, 3, 10, sampledTimes, sampledValues));
+        assertArrayEquals(values, java.util.Arrays.copyOf(sampledValues, 3));
+    }
+
+    private static boolean contains(double[] values, double value) {
+        for (double v : values) {
+            if (v == value)
+                return true;
+        }
+        return false;
+    }
+}
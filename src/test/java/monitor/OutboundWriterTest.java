@@ -0,0 +1,84 @@
+package monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OutboundWriterTest {
+
+    @TempDir
+    File directory;
+
+    private static String take(BlockingQueue<byte[]> writes) throws InterruptedException {
+        byte[] bytes = writes.poll(5, TimeUnit.SECONDS);
+        return bytes == null ? null : new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    void coalescesWritesQueuedWhileThePortIsBusy() throws InterruptedException {
+        CountDownLatch portStalled = new CountDownLatch(1);
+        BlockingQueue<byte[]> writes = new LinkedBlockingQueue<>();
+        OutboundWriter writer = new OutboundWriter("test-coalesce", bytes -> {
+            portStalled.await();
+            writes.add(bytes);
+        }, 16, 4096, 0);
+        writer.start();
+
+        assertTrue(writer.offer("a".getBytes(StandardCharsets.US_ASCII)));
+        Thread.sleep(100);
+        for (char c = 'b'; c <= 'e'; c++)
+            assertTrue(writer.offer(new byte[]{(byte) c}));
+        portStalled.countDown();
+
+        assertEquals("a", take(writes));
+        assertEquals("bcde", take(writes));
+        writer.stop();
+    }
+
+    @Test
+    void dropsInsteadOfBlockingWhenTheQueueIsFull() {
+        OutboundWriter writer = new OutboundWriter("test-full", bytes -> {
+        }, 2, 4096, 0);
+
+        assertTrue(writer.offer(new byte[]{1}));
+        assertTrue(writer.offer(new byte[]{2}));
+        assertFalse(writer.offer(new byte[]{3}));
+    }
+
+    @Test
+    void pacesLinesAndRunsScripts() throws IOException, InterruptedException {
+        BlockingQueue<byte[]> writes = new LinkedBlockingQueue<>();
+        OutboundWriter writer = new OutboundWriter("test-script", writes::add, 16, 4096, 20);
+        writer.start();
+
+        File script = new File(directory, "boot.txt");
+        List<String> lines = Arrays.asList("# reset the board", "reset", "@expect READY 2000", "status", "@sleep 10", "version");
+        Files.write(script.toPath(), lines, StandardCharsets.UTF_8);
+        writer.runScript(script);
+
+        assertEquals("reset\r", take(writes));
+        assertNull(writes.poll(200, TimeUnit.MILLISECONDS));
+
+        byte[] ready = "boot READY\r\n".getBytes(StandardCharsets.US_ASCII);
+        writer.lineReceived(ready, 0, ready.length);
+
+        assertEquals("status\r", take(writes));
+        assertEquals("version\r", take(writes));
+        writer.stop();
+    }
+}
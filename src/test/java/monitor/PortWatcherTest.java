@@ -0,0 +1,171 @@
+package monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PortWatcherTest {
+
+    @TempDir
+    File directory;
+
+    // Stands in for a USB adapter: opening fails while it is unplugged
+    private static class PluggableTransport implements Transport {
+        final List<Receiver> receivers = new ArrayList<>();
+        boolean plugged = true;
+        int opens;
+        int closes;
+
+        @Override
+        public void open(Receiver receiver) throws IOException {
+            if (!plugged)
+                throw new IOException("No such file or directory");
+            opens++;
+            receivers.add(receiver);
+        }
+
+        @Override
+        public void write(byte[] bytes) {
+        }
+
+        @Override
+        public void close() {
+            closes++;
+        }
+
+        void send(String text) {
+            receivers.get(receivers.size() - 1).received(text.getBytes(StandardCharsets.US_ASCII), Transport.LIVE);
+        }
+    }
+
+    private static Monitor monitor(String portName, Transport transport) {
+        return new Monitor(portName, transport, Framing.lines(), DecoderRegistry.load(),
+                new OutboundWriter(portName, transport::write, 16, 4096, 0));
+    }
+
+    @Test
+    void reopensAMonitorWhenItsPortComesBack() throws IOException {
+        File device = new File(directory, "ttyUSB0");
+        assertTrue(device.createNewFile());
+        PluggableTransport transport = new PluggableTransport();
+        Monitor monitor = monitor(device.getPath(), transport);
+        List<String> records = new ArrayList<>();
+        monitor.setRecordCallback(record -> records.add(record.getContent()));
+        monitor.start(Runnable::run);
+
+        PortWatcher watcher = new PortWatcher(10, 60_000, 60_000, null, () -> new String[0]);
+        watcher.watch(monitor, new Settings(device.getPath(), 115200, 8, 1));
+        watcher.scan();
+        assertTrue(monitor.isConnected());
+
+        // Unplugged halfway through a line
+        transport.send("first\nsec");
+        assertTrue(device.delete());
+        transport.plugged = false;
+        watcher.scan();
+        assertFalse(monitor.isConnected());
+        assertEquals(1, transport.closes);
+        watcher.scan();
+        assertEquals(1, transport.opens);
+
+        assertTrue(device.createNewFile());
+        transport.plugged = true;
+        watcher.scan();
+        assertTrue(monitor.isConnected());
+        assertEquals(2, transport.opens);
+
+        // The buffered half line is completed by the first bytes after the reconnect
+        transport.send("ond\nthird\n");
+        assertEquals(Arrays.asList("first\n", "second\n", "third\n"), records);
+
+        watcher.unwatch(monitor);
+        monitor.stop();
+        assertTrue(device.delete());
+        watcher.scan();
+        assertFalse(monitor.connect());
+    }
+
+    @Test
+    void retriesAMissingComPortWithoutListingEveryPort() {
+        PluggableTransport transport = new PluggableTransport();
+        transport.plugged = false;
+        Monitor monitor = monitor("COM7", transport);
+        monitor.start(Runnable::run);
+        assertFalse(monitor.isConnected());
+
+        int[] lists = new int[1];
+        PortWatcher watcher = new PortWatcher(10, 60_000, 0, null, () -> {
+            lists[0]++;
+            return new String[]{"COM1"};
+        });
+        watcher.watch(monitor, new Settings("COM7", 9600, 8, 1));
+        watcher.scan();
+        watcher.scan();
+        assertFalse(monitor.isConnected());
+
+        // Opening COM7 itself finds it back; the other ports are not touched again
+        transport.plugged = true;
+        watcher.scan();
+        assertTrue(monitor.isConnected());
+        assertEquals(1, lists[0]);
+        assertEquals(Collections.singletonList("COM1"), watcher.getPortNames());
+        monitor.stop();
+    }
+
+    @Test
+    void reportsListChangesAndDisconnectsComPortsMissingFromIt() {
+        PluggableTransport transport = new PluggableTransport();
+        Monitor monitor = monitor("COM7", transport);
+        monitor.start(Runnable::run);
+
+        String[][] listed = {{"COM7", "COM1"}};
+        List<List<String>> changes = new ArrayList<>();
+        PortWatcher watcher = new PortWatcher(10, 0, 60_000, null, () -> listed[0]);
+        watcher.addListener(changes::add);
+        watcher.watch(monitor, new Settings("COM7", 9600, 8, 1));
+        watcher.scan();
+        assertTrue(monitor.isConnected());
+        assertEquals(Arrays.asList("COM1", "COM7"), watcher.getPortNames());
+        watcher.scan();
+        assertEquals(1, changes.size());
+
+        listed[0] = new String[]{"COM1"};
+        watcher.scan();
+        assertFalse(monitor.isConnected());
+        assertEquals(2, changes.size());
+
+        // Back in the list, it is opened with that scan rather than waiting for the retry interval
+        listed[0] = new String[]{"COM1", "COM7"};
+        watcher.scan();
+        assertTrue(monitor.isConnected());
+        monitor.stop();
+    }
+
+    @Test
+    void remembersTheLastSettingsOfEachPort() {
+        File settingsFile = new File(directory, "ports.tsv");
+        PortWatcher watcher = new PortWatcher(10, 10, 10, settingsFile, () -> new String[0]);
+        watcher.remember(new Settings("/dev/ttyUSB0", 9600, 8, 1));
+        watcher.remember(new Settings("COM3", 115200, 7, 2));
+        watcher.remember(new Settings("/dev/ttyUSB0", 38400, 8, 1));
+
+        PortWatcher reloaded = new PortWatcher(10, 10, 10, settingsFile, () -> new String[0]);
+        assertEquals(38400, reloaded.getSettings("/dev/ttyUSB0").getBaudRate());
+        assertEquals(7, reloaded.getSettings("COM3").getDataBits());
+        assertEquals(2, reloaded.getSettings("COM3").getStopBits());
+        assertNull(reloaded.getSettings("COM4"));
+        assertNull(reloaded.getSettings(null));
+    }
+}
@@ -0,0 +1,137 @@
+package monitor;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReceiveBufferTest {
+
+    private final List<String> lines = new ArrayList<>();
+    private final ReceiveBuffer receiveBuffer = new ReceiveBuffer(16, (buffer, offset, length) ->
+            lines.add(new String(buffer, offset, length, StandardCharsets.US_ASCII)));
+
+    private void receive(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+        receiveBuffer.receive(bytes, 0, bytes.length);
+    }
+
+    @Test
+    void splitsLinesAcrossReads() {
+        receive("hel");
+        receive("lo\nwor");
+        receive("ld\n\n");
+
+        assertEquals(3, lines.size());
+        assertEquals("hello\n", lines.get(0));
+        assertEquals("world\n", lines.get(1));
+        assertEquals("\n", lines.get(2));
+        assertEquals(0, receiveBuffer.pending());
+    }
+
+    @Test
+    void handlesLinesThatWrapAroundTheRing() {
+        for (int i = 0; i < 10; i++)
+            receive("line " + i + "\n");
+
+        assertEquals(10, lines.size());
+        assertEquals("line 9\n", lines.get(9));
+    }
+
+    @Test
+    void splitsLinesLongerThanTheRing() {
+        receive("0123456789abcdefXYZ\n");
+
+        assertEquals(2, lines.size());
+        assertEquals("0123456789abcdef", lines.get(0));
+        assertEquals("XYZ\n", lines.get(1));
+    }
+
+    private static List<String> frame(Framing framing, int capacity, int readSize, byte[]... parts) {
+        List<String> units = new ArrayList<>();
+        ReceiveBuffer buffer = new ReceiveBuffer(capacity, framing,
+                (bytes, offset, length) -> units.add("text:" + new String(bytes, offset, length, StandardCharsets.ISO_8859_1)),
+                (payload, payloadLength, raw, rawLength) -> units.add(new String(payload, 0, payloadLength, StandardCharsets.ISO_8859_1)));
+
+        int total = 0;
+        for (byte[] part : parts)
+            total += part.length;
+        byte[] stream = new byte[total];
+        int position = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, stream, position, part.length);
+            position += part.length;
+        }
+        for (int offset = 0; offset < stream.length; offset += readSize)
+            buffer.receive(stream, offset, Math.min(readSize, stream.length - offset));
+        return units;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    void decodesBinaryFramingsSplitAcrossReads() {
+        String awkward = "a\u00C0b\u00DBc\u0000\u0000d";
+        StringBuilder long300 = new StringBuilder();
+        for (int i = 0; i < 300; i++)
+            long300.append((char) ('A' + i % 26));
+
+        for (Framing framing : new Framing[]{Framing.slip(false), Framing.cobs(false), Framing.lengthPrefixed(false, 0xC1)}) {
+            for (int readSize : new int[]{1, 3, 1000}) {
+                List<String> units = frame(framing, 1024, readSize,
+                        framing.encode(bytes(awkward)), framing.encode(bytes("")), framing.encode(bytes(long300.toString())),
+                        framing.encode(bytes("\u0000")));
+                List<String> expected = new ArrayList<>();
+                expected.add(awkward);
+                // An empty SLIP packet is indistinguishable from the double END some senders use
+                if (framing.getMode() != Framing.Mode.SLIP)
+                    expected.add("");
+                expected.add(long300.toString());
+                expected.add("\u0000");
+                assertEquals(expected, units, framing + " in reads of " + readSize);
+            }
+        }
+    }
+
+    @Test
+    void passesTextThroughBetweenPackets() {
+        for (Framing framing : new Framing[]{Framing.slip(true), Framing.cobs(true), Framing.lengthPrefixed(true, 0xC1)}) {
+            List<String> units = frame(framing, 64, 5,
+                    bytes("boot ok\r\n"), framing.encode(bytes("p\n1")), bytes("tick\n"), bytes("half"),
+                    framing.encode(bytes("p2")), bytes("\n"));
+            assertEquals(6, units.size(), framing.toString());
+            assertEquals("text:boot ok\r\n", units.get(0));
+            assertEquals("p\n1", units.get(1));
+            assertEquals("text:tick\n", units.get(2));
+            assertEquals("text:half", units.get(3));
+            assertEquals("p2", units.get(4));
+            assertEquals("text:\n", units.get(5));
+        }
+    }
+
+    @Test
+    void dropsPacketsLargerThanTheRing() {
+        StringBuilder huge = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            huge.append('x');
+
+        for (Framing framing : new Framing[]{Framing.slip(false), Framing.cobs(false), Framing.lengthPrefixed(false, 0xC1)}) {
+            List<String> units = new ArrayList<>();
+            ReceiveBuffer buffer = new ReceiveBuffer(32, framing, (bytes, offset, length) -> units.add("text"),
+                    (payload, payloadLength, raw, rawLength) -> units.add(new String(payload, 0, payloadLength, StandardCharsets.ISO_8859_1)));
+            for (byte[] packet : new byte[][]{framing.encode(bytes("before")), framing.encode(bytes(huge.toString())), framing.encode(bytes("after"))})
+                buffer.receive(packet, 0, packet.length);
+
+            assertEquals(2, units.size(), framing.toString());
+            assertEquals("before", units.get(0));
+            assertEquals("after", units.get(1));
+            assertTrue(buffer.getDiscardedBytes() >= 100 - 32, framing.toString());
+        }
+    }
+}
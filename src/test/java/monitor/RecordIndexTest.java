@@ -0,0 +1,113 @@
+package monitor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RecordIndexTest {
+
+    private static List<Record> records(int count) {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String content = i % 997 == 0
+                    ? "ERROR watchdog reset " + i + "\r\n"
+                    : "log[SN" + i % 5 + "]:A;0;1.5;2.5;0;x;" + i + ";p7;p8;0|0|1|0|0,0,0\r\n";
+            records.add(new Record("COM1", 1000L * i, content));
+        }
+        return records;
+    }
+
+    private static List<Integer> search(RecordIndex index, List<Record> records, RecordQuery query) {
+        List<Integer> matches = new ArrayList<>();
+        index.search(query, records::get, matches::add);
+        return matches;
+    }
+
+    private static List<Integer> scan(List<Record> records, RecordQuery query) {
+        List<Integer> matches = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            if (query.matches(records.get(i)))
+                matches.add(i);
+        }
+        return matches;
+    }
+
+    @Test
+    void agreesWithAFullScan() {
+        List<Record> records = records(20000);
+        RecordIndex index = new RecordIndex();
+        records.forEach(index::add);
+
+        RecordQuery[] queries = {
+                RecordQuery.substring("error", Long.MIN_VALUE, Long.MAX_VALUE),
+                RecordQuery.substring("SN3]", Long.MIN_VALUE, Long.MAX_VALUE),
+                RecordQuery.substring("12345;", Long.MIN_VALUE, Long.MAX_VALUE),
+                RecordQuery.substring("no such line", Long.MIN_VALUE, Long.MAX_VALUE),
+                RecordQuery.substring("", 5_000_000, 6_000_000),
+                RecordQuery.substring("watchdog", 0, 10_000_000),
+                RecordQuery.regex("watchdog reset \\d+7\\r", Long.MIN_VALUE, Long.MAX_VALUE),
+                RecordQuery.regex("SN[12]\\]:A;0;1\\.5", Long.MIN_VALUE, Long.MAX_VALUE),
+                RecordQuery.regex("ERROR|;19999;", Long.MIN_VALUE, Long.MAX_VALUE),
+                RecordQuery.regex("\\x45RROR watchdog", Long.MIN_VALUE, Long.MAX_VALUE),
+                RecordQuery.regex("\\QERROR\\E watchdog", Long.MIN_VALUE, Long.MAX_VALUE),
+                RecordQuery.regex("(?x) watchdog \\ reset", Long.MIN_VALUE, Long.MAX_VALUE),
+        };
+        for (RecordQuery query : queries)
+            assertEquals(scan(records, query), search(index, records, query), query.getText());
+    }
+
+    @Test
+    void narrowsARareTermToFewBlocks() {
+        List<Record> records = records(20000);
+        RecordIndex index = new RecordIndex();
+        records.forEach(index::add);
+
+        int[] blocks = index.candidateBlocks(RecordQuery.substring("watchdog", Long.MIN_VALUE, Long.MAX_VALUE).getIndexLiteral());
+        assertEquals(21, blocks.length);
+    }
+
+    @Test
+    void dropsTheOldestPostingsPastItsCap() {
+        List<Record> records = records(20000);
+        RecordIndex index = new RecordIndex(64 * 1024);
+        records.forEach(index::add);
+
+        assertTrue(index.getFirstIndexedBlock() > 0);
+        assertTrue(index.getPostingBytes() <= 64 * 1024 + 16 * 1024);
+        RecordQuery[] queries = {
+                RecordQuery.substring("error", Long.MIN_VALUE, Long.MAX_VALUE),
+                RecordQuery.substring("12345;", Long.MIN_VALUE, Long.MAX_VALUE),
+                RecordQuery.substring("no such line", Long.MIN_VALUE, Long.MAX_VALUE),
+                RecordQuery.regex("watchdog reset \\d+7\\r", Long.MIN_VALUE, Long.MAX_VALUE),
+        };
+        for (RecordQuery query : queries)
+            assertEquals(scan(records, query), search(index, records, query), query.getText());
+    }
+
+    @Test
+    void extractsTheLiteralARegexRequires() {
+        assertEquals("watchdog reset ", RecordQuery.requiredLiteral("watchdog reset \\d+"));
+        assertEquals("]:A;0;1.5", RecordQuery.requiredLiteral("SN[12]\\]:A;0;1\\.5"));
+        assertEquals("temperatur", RecordQuery.requiredLiteral("temperature?=\\d"));
+        assertEquals("log[SN", RecordQuery.requiredLiteral("(?i)log\\[SN(12)?"));
+        assertNull(RecordQuery.requiredLiteral("ERROR|WARN"));
+        assertEquals(".", RecordQuery.requiredLiteral("\\d+\\.\\d+"));
+        assertNull(RecordQuery.requiredLiteral("\\d+"));
+
+        // Escapes longer than two characters must not leak their tail into the literal
+        assertNull(RecordQuery.requiredLiteral("\\x41BCD"));
+        assertNull(RecordQuery.requiredLiteral("\\u0041BCD"));
+        assertNull(RecordQuery.requiredLiteral("\\0101BCD"));
+        assertNull(RecordQuery.requiredLiteral("\\p{L}BCD"));
+        assertNull(RecordQuery.requiredLiteral("\\Qa.b\\Ec"));
+        assertNull(RecordQuery.requiredLiteral("(?<n>ab)\\k<n>cd"));
+        assertNull(RecordQuery.requiredLiteral("(?x) watchdog \\ reset"));
+        assertEquals("\\Qabc", RecordQuery.requiredLiteral("\\\\Qabc"));
+        assertEquals("reset", RecordQuery.requiredLiteral("\\breset\\b"));
+    }
+}
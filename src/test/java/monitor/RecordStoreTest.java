@@ -0,0 +1,119 @@
+package monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.FutureTask;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RecordStoreTest {
+
+    @TempDir
+    File spillDirectory;
+
+    @Test
+    void pagesSpilledRecordsBackIn() throws IOException {
+        try (RecordStore store = new RecordStore(100, 1024 * 1024, spillDirectory)) {
+            for (int batch = 0; batch < 10; batch++) {
+                List<Record> records = new ArrayList<>();
+                for (int i = 0; i < 100; i++)
+                    records.add(new Record("COM" + (batch * 100 + i) % 3, batch * 100 + i, "line " + (batch * 100 + i) + "\n"));
+                store.appendAll(records);
+            }
+
+            assertEquals(1000, store.size());
+            assertEquals(900, store.getSpilledCount());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(i, store.get(i).getTime());
+                assertEquals("COM" + i % 3, store.get(i).getPort());
+                assertEquals("line " + i + "\n", store.get(i).getContent());
+            }
+        }
+    }
+
+    @Test
+    void readsAPartlySpilledPageAgainAfterMoreRecordsSpill() throws IOException {
+        try (RecordStore store = new RecordStore(100, 1024 * 1024, spillDirectory)) {
+            int time = 0;
+            for (int batch = 0; batch < 4; batch++) {
+                List<Record> records = new ArrayList<>();
+                for (int i = 0; i < 50; i++, time++)
+                    records.add(new Record("COM1", time, "line " + time + "\n"));
+                store.appendAll(records);
+
+                // The last spilled page is read while it is still short
+                for (int i = 0; i < store.size(); i++)
+                    assertEquals("line " + i + "\n", store.get(i).getContent());
+            }
+            assertEquals(100, store.getSpilledCount());
+        }
+    }
+
+    @Test
+    void spillsWhenTheByteWindowIsFull() throws IOException {
+        try (RecordStore store = new RecordStore(1000000, 128 * 1024, spillDirectory)) {
+            List<Record> records = new ArrayList<>();
+            for (int i = 0; i < 20000; i++)
+                records.add(new Record("COM1", i, String.format("line %08d\n", i)));
+            store.appendAll(records);
+
+            assertEquals(20000, store.size());
+            assertEquals(20000 - 128 * 1024 / 14, store.getSpilledCount());
+            assertEquals("line 00000000\n", store.get(0).getContent());
+            assertEquals("line 00019999\n", store.get(19999).getContent());
+        }
+    }
+
+    @Test
+    void filtersOnAnotherThreadWhileRecordsAreAppended() throws Exception {
+        try (RecordStore store = new RecordStore(500, 1024 * 1024, spillDirectory)) {
+            RecordQuery query = RecordQuery.substring("error", Long.MIN_VALUE, Long.MAX_VALUE);
+            int total = 0;
+            for (int round = 0; round < 20; round++) {
+                FutureTask<FilteredRecords.Matches> search = new FutureTask<>(() -> FilteredRecords.search(store, query));
+                new Thread(search).start();
+                for (int batch = 0; batch < 10; batch++) {
+                    List<Record> records = new ArrayList<>();
+                    for (int i = 0; i < 50; i++, total++)
+                        records.add(new Record("COM1", total, (total % 7 == 0 ? "ERROR " : "ok ") + total + "\n"));
+                    store.appendAll(records);
+                }
+
+                // Whatever the search had not reached yet is picked up by the constructor and the listener
+                FilteredRecords filtered = new FilteredRecords(store, query, search.get());
+                store.appendAll(Collections.singletonList(new Record("COM1", total, "error " + total++ + "\n")));
+                List<Long> expected = new ArrayList<>();
+                for (int i = 0; i < store.size(); i++) {
+                    if (query.matches(store.get(i)))
+                        expected.add(store.get(i).getTime());
+                }
+                List<Long> actual = new ArrayList<>();
+                for (Record record : filtered)
+                    actual.add(record.getTime());
+                assertEquals(expected, actual);
+                filtered.dispose();
+            }
+        }
+    }
+
+    @Test
+    void releasesItsGaugesWhenClosed() throws IOException {
+        RecordStore store = new RecordStore(100, 1024 * 1024, spillDirectory);
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 150; i++)
+            records.add(new Record("COM1", i, "line " + i + "\n"));
+        store.appendAll(records);
+        assertEquals(100, Metrics.gauge("store.retained").getValue());
+        assertEquals(50, Metrics.gauge("store.spilled").getValue());
+
+        store.close();
+        assertEquals(0, Metrics.gauge("store.retained").getValue());
+        assertEquals(0, Metrics.gauge("store.spilled").getValue());
+    }
+}
@@ -0,0 +1,159 @@
+package monitor;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RuleEngineTest {
+
+    private final List<Alert> alerts = new ArrayList<>();
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void line(RuleEngine engine, long time, String text) {
+        byte[] bytes = ascii("xx" + text + "\r\n");
+        engine.evaluateLine(time, bytes, 2, bytes.length - 2);
+    }
+
+    private static LogFrame frame(String serialNumber, long time, double temperature) {
+        LogFrame frame = new LogFrame();
+        byte[] serial = ascii(serialNumber);
+        frame.setSerialNumber(serial, 0, serial.length);
+        frame.setTime(time);
+        frame.setMeterValue(LogFrame.TEMPERATURE, temperature);
+        return frame;
+    }
+
+    @Test
+    void automatonFindsEveryOccurrenceLikeANaiveScan() {
+        Random random = new Random(7);
+        List<byte[]> patterns = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            byte[] pattern = new byte[1 + random.nextInt(4)];
+            for (int j = 0; j < pattern.length; j++)
+                pattern[j] = (byte) ('a' + random.nextInt(3));
+            patterns.add(pattern);
+        }
+        AhoCorasick automaton = new AhoCorasick(patterns);
+
+        byte[] text = new byte[2000];
+        for (int i = 0; i < text.length; i++)
+            text[i] = (byte) ((random.nextBoolean() ? 'a' : 'A') + random.nextInt(4));
+
+        long[] found = new long[1];
+        automaton.search(text, 0, text.length, (pattern, end) -> found[0] += pattern * 31L + end);
+
+        long expected = 0;
+        for (int p = 0; p < patterns.size(); p++) {
+            byte[] pattern = patterns.get(p);
+            for (int end = pattern.length; end <= text.length; end++) {
+                int j = 0;
+                while (j < pattern.length && Record.foldCase(text[end - pattern.length + j]) == pattern[j])
+                    j++;
+                if (j == pattern.length)
+                    expected += p * 31L + end;
+            }
+        }
+        assertEquals(expected, found[0]);
+    }
+
+    @Test
+    void matchesLiteralsAndRegexesOncePerLine() {
+        RuleEngine engine = new RuleEngine("COM1", Arrays.asList(
+                AlertRule.contains("reset", "WDT reset", false, 0),
+                AlertRule.contains("any case", "error", true, 0),
+                AlertRule.regex("timeout", "sensor \\d+ timeout", false, 0),
+                AlertRule.regex("unfiltered", "^\\d{3}$", false, 0)), alerts::add);
+
+        line(engine, 1, "WDT reset WDT reset");
+        line(engine, 2, "wdt reset");
+        line(engine, 3, "ERROR: sensor 12 timeout, error again");
+        line(engine, 4, "sensor x timeout");
+        line(engine, 5, "123");
+
+        assertEquals(Arrays.asList("reset", "any case", "timeout", "unfiltered"), rules());
+        assertEquals("WDT reset WDT reset", alerts.get(0).getMessage());
+        assertEquals("COM1", alerts.get(0).getPort());
+    }
+
+    @Test
+    void regexRulesWithLongEscapesStillFire() {
+        RuleEngine engine = new RuleEngine("COM1", Arrays.asList(
+                AlertRule.regex("colon", "ERR\\x3A", false, 0),
+                AlertRule.regex("hex", "E\\x52ROR", false, 0),
+                AlertRule.regex("unicode", "\\u0041BCD", false, 0),
+                AlertRule.regex("octal", "\\0101LARM", false, 0)), alerts::add);
+
+        line(engine, 1, "ERR:");
+        line(engine, 2, "ERROR");
+        line(engine, 3, "ABCD");
+        line(engine, 4, "ALARM");
+
+        assertEquals(Arrays.asList("colon", "hex", "unicode", "octal"), rules());
+    }
+
+    @Test
+    void cooldownSuppressesRepeats() {
+        RuleEngine engine = new RuleEngine("COM1", Arrays.asList(AlertRule.contains("boot", "boot", true, 1000)), alerts::add);
+
+        for (long time = 0; time < 2500; time += 100)
+            line(engine, time, "boot");
+
+        assertEquals(3, alerts.size());
+    }
+
+    @Test
+    void fieldRulesDebounceAndRearmPerDevice() {
+        RuleEngine engine = new RuleEngine("COM1", Arrays.asList(
+                AlertRule.field("hot", TelemetryField.TEMPERATURE, 70, Double.NaN, Double.NaN, 300, 0),
+                AlertRule.field("jump", TelemetryField.TEMPERATURE, Double.NaN, Double.NaN, 10, 0, 0)), alerts::add);
+
+        // A 200 ms spike stays below the debounce, a sustained rise fires once, clearing re-arms it
+        double[] temperatures = {60, 71, 71, 60, 71, 71, 71, 71, 71, 60, 71, 71, 71, 71};
+        for (int i = 0; i < temperatures.length; i++) {
+            engine.evaluateFrame(frame("A", i * 100L, temperatures[i]));
+            engine.evaluateFrame(frame("B", i * 100L, 60));
+        }
+
+        List<String> hot = new ArrayList<>();
+        for (Alert alert : alerts) {
+            if (alert.getRule().equals("hot"))
+                hot.add(alert.getMessage().substring(0, 1) + alert.getTime());
+        }
+        assertEquals(Arrays.asList("A700", "A1300"), hot);
+        // 11 degrees in 100 ms is a jump at every transition, but back-to-back jumps count as one until the rate settles
+        assertEquals(3, alerts.size() - hot.size());
+    }
+
+    @Test
+    void rateRulesHoldThroughSamplesInTheSameMillisecond() {
+        RuleEngine engine = new RuleEngine("COM1", Arrays.asList(
+                AlertRule.field("climb", TelemetryField.TEMPERATURE, Double.NaN, Double.NaN, 10, 250, 0)), alerts::add);
+
+        // 20 degrees a second throughout, with a second sample stamped in the same millisecond as the one before it
+        double temperature = 20;
+        for (long time = 0; time <= 400; time += 100) {
+            engine.evaluateFrame(frame("A", time, temperature));
+            engine.evaluateFrame(frame("A", time, temperature));
+            temperature += 2;
+        }
+
+        assertEquals(Arrays.asList("climb"), rules());
+        assertEquals(400, alerts.get(0).getTime());
+    }
+
+    private List<String> rules() {
+        List<String> rules = new ArrayList<>();
+        for (Alert alert : alerts)
+            rules.add(alert.getRule());
+        return rules;
+    }
+}
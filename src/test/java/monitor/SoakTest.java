@@ -0,0 +1,112 @@
+package monitor;
+
+import jssc.SerialPort;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Opt-in soak run over a socat pseudo-terminal pair, e.g.
+//   mvn test -Dtest=SoakTest -Dsoak.minutes=60 [-Dsoak.rate=200] [-Dsoak.baud=921600] [-Dsoak.p99.ms=50] [-Dsoak.heap.mb=32]
+public class SoakTest {
+
+    private static final int SENT_TIMES = 1 << 16;
+
+    @Test
+    void receivesEveryLineWithBoundedHeapAndLatency() throws Exception {
+        String minutes = System.getProperty("soak.minutes");
+        assumeTrue(minutes != null, "Set soak.minutes to run the soak test");
+
+        long durationNanos = (long) (Double.parseDouble(minutes) * 60e9);
+        double rate = Double.parseDouble(System.getProperty("soak.rate", "200"));
+        int baudRate = Integer.parseInt(System.getProperty("soak.baud", "921600"));
+        double p99Limit = Double.parseDouble(System.getProperty("soak.p99.ms", "50"));
+        long heapLimit = Long.parseLong(System.getProperty("soak.heap.mb", "32")) * 1024 * 1024;
+
+        File directory = Files.createTempDirectory("jaspm-soak").toFile();
+        File deviceEnd = new File(directory, "device");
+        File hostEnd = new File(directory, "host");
+        Process socat = new ProcessBuilder(System.getProperty("soak.socat", "socat"), "-d", "-d",
+                "pty,raw,echo=0,link=" + deviceEnd, "pty,raw,echo=0,link=" + hostEnd)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(directory, "socat.log"))
+                .start();
+
+        ExecutorService executor = MonitorExecutor.create(1);
+        SerialPort devicePort = null;
+        Monitor monitor = null;
+        try {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!(deviceEnd.exists() && hostEnd.exists()) && System.nanoTime() < deadline)
+                Thread.sleep(20);
+            assertTrue(deviceEnd.exists() && hostEnd.exists(), "socat did not create the pty pair");
+
+            AtomicLongArray sentAt = new AtomicLongArray(SENT_TIMES);
+            AtomicLong expected = new AtomicLong();
+            AtomicLong lost = new AtomicLong();
+            AtomicLong lines = new AtomicLong();
+            LatencyHistogram latency = new LatencyHistogram();
+
+            monitor = new Monitor(hostEnd.getPath(), baudRate, SerialPort.DATABITS_8, SerialPort.STOPBITS_1);
+            monitor.setRecordCallback(record -> lines.incrementAndGet());
+            monitor.setFrameCallback(frame -> {
+                long sequence = frame.getLastIterations();
+                long gap = sequence - expected.get();
+                if (gap > 0)
+                    lost.addAndGet(gap);
+                expected.set(sequence + 1);
+                latency.record(System.nanoTime() - sentAt.get((int) (sequence & (SENT_TIMES - 1))));
+            });
+            monitor.start(executor);
+
+            devicePort = new SerialPort(deviceEnd.getPath());
+            devicePort.openPort();
+            devicePort.setParams(baudRate, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+
+            // Heap is compared after a forced GC once warmed up and again at the end, so only retained growth counts
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            DeviceEmulator emulator = new DeviceEmulator(devicePort::writeBytes, "SOAK0001", 1);
+            emulator.setConsoleEvery(10);
+            long warmupNanos = Math.min(durationNanos / 10, TimeUnit.MINUTES.toNanos(1));
+            long sent = emulator.run(rate, baudRate, warmupNanos, (sequence, nanos) -> sentAt.set((int) (sequence & (SENT_TIMES - 1)), nanos));
+            System.gc();
+            long warmHeap = memory.getHeapMemoryUsage().getUsed();
+            latency.reset();
+
+            sent += emulator.run(rate, baudRate, durationNanos - warmupNanos, (sequence, nanos) -> sentAt.set((int) (sequence & (SENT_TIMES - 1)), nanos));
+
+            deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (expected.get() < sent && System.nanoTime() < deadline)
+                Thread.sleep(20);
+            System.gc();
+            long finalHeap = memory.getHeapMemoryUsage().getUsed();
+
+            System.out.printf("Soak: %d frames, %d lines, %d lost, latency p50 %.0f us p99 %.0f us max %.0f us, heap %d -> %d kB%n",
+                    sent, lines.get(), lost.get(), latency.getP50Micros(), latency.getP99Micros(), latency.getMaxMicros(),
+                    warmHeap / 1024, finalHeap / 1024);
+
+            assertEquals(0, lost.get());
+            assertEquals(sent, expected.get());
+            assertEquals(sent + sent / 10, lines.get(), 1);
+            assertTrue(latency.getP99Micros() <= p99Limit * 1000, "p99 " + latency.getP99Micros() + " us");
+            assertTrue(finalHeap - warmHeap <= heapLimit, "Heap grew by " + (finalHeap - warmHeap) / 1024 + " kB");
+        } finally {
+            if (devicePort != null && devicePort.isOpened())
+                devicePort.closePort();
+            if (monitor != null)
+                monitor.stop();
+            executor.shutdown();
+            socat.destroy();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package monitor;
+
+import org.h2.tools.Server;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.ServerSocket;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SpoolTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void replaysAcrossRestartsFromTheLastCheckpoint() throws IOException {
+        try (Spool spool = new Spool(directory, 1024, 1024 * 1024)) {
+            for (int i = 0; i < 100; i++)
+                spool.append(new Sample("temperature", i, (double) i));
+            spool.append(new AggregateRow("telemetry_1s", 1000, "SN1", "voltage_l1", 4, 229, 231, 230, 230.5));
+            spool.append(new Sample("locked", 5, true));
+
+            List<Row> rows = new ArrayList<>();
+            assertTrue(spool.poll(rows, 30) > 0);
+            spool.commit();
+        }
+
+        List<Row> replayed = new ArrayList<>();
+        try (Spool spool = new Spool(directory, 1024, 1024 * 1024)) {
+            List<Row> rows = new ArrayList<>();
+            while (spool.poll(rows, 30) > 0) {
+                replayed.addAll(rows);
+                rows.clear();
+                spool.commit();
+            }
+            assertFalse(spool.hasBacklog());
+        }
+
+        assertTrue(replayed.size() < 102);
+        assertEquals(99.0, ((Sample) replayed.get(replayed.size() - 3)).getValue());
+        AggregateRow aggregate = (AggregateRow) replayed.get(replayed.size() - 2);
+        assertEquals("voltage_l1", aggregate.getField());
+        assertEquals(230.5, aggregate.getLast());
+        assertEquals(true, ((Sample) replayed.get(replayed.size() - 1)).getValue());
+    }
+
+    @Test
+    void skipsATornTail() throws IOException {
+        try (Spool spool = new Spool(directory, 1024 * 1024, 1024 * 1024)) {
+            for (int i = 0; i < 10; i++)
+                spool.append(new Sample("temperature", i, (double) i));
+        }
+
+        File segment = directory.listFiles((dir, name) -> name.endsWith(".dat"))[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        try (Spool spool = new Spool(directory, 1024 * 1024, 1024 * 1024)) {
+            List<Row> rows = new ArrayList<>();
+            assertEquals(9, spool.poll(rows, 100));
+            spool.commit();
+            assertFalse(spool.hasBacklog());
+        }
+    }
+
+    @Test
+    void dropsTheOldestSegmentsPastTheSizeLimit() throws IOException {
+        try (Spool spool = new Spool(directory, 1024, 4096)) {
+            for (int i = 0; i < 1000; i++)
+                spool.append(new Sample("temperature", i, (double) i));
+
+            assertTrue(spool.getPendingBytes() <= 4096 + 1024);
+            List<Row> rows = new ArrayList<>();
+            spool.poll(rows, 1);
+            assertTrue(((Sample) rows.get(0)).getTime() > 0);
+        }
+    }
+
+    @Test
+    void writerSpoolsDuringAnOutageAndReplaysWhenTheDatabaseReturns() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        String url = "jdbc:h2:tcp://localhost:" + port + "/mem:spool;DB_CLOSE_DELAY=-1";
+
+        TelemetryWriter writer = new TelemetryWriter(new ConnectionPool(url, "sa", "", 1), 1,
+                16, 8, 20, TelemetryWriter.Backpressure.SPOOL);
+        writer.setSpool(new Spool(directory, 4096, 1024 * 1024), 100, 50);
+        writer.start();
+
+        for (int i = 0; i < 500; i++)
+            writer.submit(new Sample("temperature", i, (double) i));
+        assertEquals(0, writer.getRowsDropped());
+
+        // The in-memory database is shared with the TCP server, so the table exists before the writer can reach it
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:spool;DB_CLOSE_DELAY=-1", "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE temperature(time BIGINT, value DOUBLE PRECISION)");
+        }
+
+        Server server = Server.createTcpServer("-tcpPort", Integer.toString(port), "-ifNotExists").start();
+        try {
+            long deadline = System.currentTimeMillis() + 20000;
+            while (count(url) < 500 && System.currentTimeMillis() < deadline)
+                Thread.sleep(50);
+            writer.close();
+
+            assertEquals(500, count(url));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void dropsOnlyTheRejectedRowsOfALiveOrReplayedBatch() throws Exception {
+        String url = "jdbc:h2:mem:rejected;DB_CLOSE_DELAY=-1";
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE temperature(time BIGINT, value DOUBLE PRECISION CHECK (value >= 0))");
+        }
+
+        // A negative value every 97 rows, both in the spool left by an earlier run and in the live rows
+        try (Spool spool = new Spool(directory, 64 * 1024, 1024 * 1024)) {
+            for (int i = 0; i < 1000; i++)
+                spool.append(new Sample("temperature", i, i % 97 == 0 ? -1.0 : i));
+        }
+
+        TelemetryWriter writer = new TelemetryWriter(new ConnectionPool(url, "sa", "", 1), 1,
+                4096, 100, 20, TelemetryWriter.Backpressure.SPOOL);
+        writer.setSpool(new Spool(directory, 64 * 1024, 1024 * 1024), 500, 50);
+        long failedBefore = writer.getRowsFailed();
+        writer.start();
+        for (int i = 1000; i < 2000; i++)
+            writer.submit(new Sample("temperature", i, i % 97 == 0 ? -1.0 : i));
+
+        long deadline = System.currentTimeMillis() + 20000;
+        while (count(url) < 2000 - 21 && System.currentTimeMillis() < deadline)
+            Thread.sleep(50);
+        writer.close();
+
+        assertEquals(2000 - 21, count(url));
+        assertEquals(21, writer.getRowsFailed() - failedBefore);
+    }
+
+    @Test
+    void createsTheAggregateTablesItWritesTo() throws Exception {
+        String url = "jdbc:h2:mem:aggregates;DB_CLOSE_DELAY=-1";
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE temperature(time BIGINT, value DOUBLE PRECISION)");
+        }
+
+        TelemetryWriter writer = new TelemetryWriter(new ConnectionPool(url, "sa", "", 1), 1,
+                4096, 100, 20, TelemetryWriter.Backpressure.BLOCK);
+        long failedBefore = writer.getRowsFailed();
+        writer.start();
+        for (int i = 0; i < 100; i++) {
+            writer.submit(new Sample("temperature", i * 100L, (double) i));
+            writer.submit(new AggregateRow("telemetry_1s", i / 10 * 1000L, "SN1", "temperature", 10, 0, 9, 4.5, 9));
+        }
+        writer.close();
+
+        assertEquals(100, count(url));
+        assertEquals(0, writer.getRowsFailed() - failedBefore);
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM telemetry_1s")) {
+            resultSet.next();
+            assertEquals(100, resultSet.getLong(1));
+        }
+    }
+
+    @Test
+    void onlyRowErrorsRejectABatch() {
+        assertTrue(TelemetryWriter.isRejection(new SQLException("value too long", "22001")));
+        assertTrue(TelemetryWriter.isRejection(new SQLException("duplicate key", "23505")));
+        assertFalse(TelemetryWriter.isRejection(new SQLException("connection refused", "08001")));
+        assertFalse(TelemetryWriter.isRejection(new SQLException("terminating connection", "57P01")));
+        assertFalse(TelemetryWriter.isRejection(new SQLException("starting up", "57P03")));
+        assertFalse(TelemetryWriter.isRejection(new SQLException("too many connections", "53300")));
+        assertFalse(TelemetryWriter.isRejection(new SQLException("deadlock detected", "40P01")));
+        assertFalse(TelemetryWriter.isRejection(new SQLException("no state")));
+
+        SQLException batch = new SQLException("batch entry 3 was aborted", "25P02");
+        batch.setNextException(new SQLException("relation does not exist", "42P01"));
+        assertTrue(TelemetryWriter.isRejection(batch));
+    }
+
+    private static long count(String url) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(DISTINCT time) FROM temperature")) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package monitor;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TelemetryAggregatorTest {
+
+    @Test
+    void emitsOneRowPerDeviceAndFieldWhenTheWindowCloses() {
+        List<Row> rows = new ArrayList<>();
+        TelemetryAggregator aggregator = new TelemetryAggregator(1000, "telemetry_1s", rows::add);
+
+        aggregator.accept(frame("SN1", 10_100, 20.0, 230.0));
+        aggregator.accept(frame("SN2", 10_200, 30.0, 231.0));
+        aggregator.accept(frame("SN1", 10_900, 24.0, 229.0));
+        assertTrue(rows.isEmpty());
+
+        aggregator.accept(frame("SN1", 11_000, 50.0, 228.0));
+        assertEquals(2 * TelemetryField.values().length, rows.size());
+
+        AggregateRow temperature = find(rows, "SN1", "temperature");
+        assertEquals(10_000, temperature.getTime());
+        assertEquals(2, temperature.getCount());
+        assertEquals(20.0, temperature.getMin());
+        assertEquals(24.0, temperature.getMax());
+        assertEquals(22.0, temperature.getAvg());
+        assertEquals(24.0, temperature.getLast());
+
+        AggregateRow voltage = find(rows, "SN2", "voltage_l1");
+        assertEquals(1, voltage.getCount());
+        assertEquals(231.0, voltage.getLast());
+
+        rows.clear();
+        aggregator.flush();
+        assertEquals(TelemetryField.values().length, rows.size());
+        assertEquals(11_000, find(rows, "SN1", "temperature").getTime());
+        assertEquals(50.0, find(rows, "SN1", "temperature").getAvg());
+    }
+
+    @Test
+    void skipsMissingValues() {
+        List<Row> rows = new ArrayList<>();
+        TelemetryAggregator aggregator = new TelemetryAggregator(60000, "telemetry_1m", rows::add);
+
+        aggregator.accept(frame("SN1", 0, Double.NaN, 230.0));
+        aggregator.accept(frame("SN1", 1, 21.0, 230.0));
+        aggregator.flush();
+
+        assertEquals(1, find(rows, "SN1", "temperature").getCount());
+        assertEquals(2, find(rows, "SN1", "voltage_l1").getCount());
+    }
+
+    @Test
+    void closesAWindowOnceItsEndHasPassed() {
+        List<Row> rows = new ArrayList<>();
+        TelemetryAggregator aggregator = new TelemetryAggregator(1000, "telemetry_1s", rows::add);
+
+        aggregator.accept(frame("SN1", 10_100, 20.0, 230.0));
+        long opened = System.nanoTime();
+        aggregator.closeAged(opened);
+        assertTrue(rows.isEmpty());
+
+        aggregator.closeAged(opened + TimeUnit.SECONDS.toNanos(1));
+        assertEquals(TelemetryField.values().length, rows.size());
+        assertEquals(10_000, find(rows, "SN1", "temperature").getTime());
+
+        // A lagging frame lands in the next window instead of writing 10_000 a second time
+        rows.clear();
+        aggregator.accept(frame("SN1", 10_950, 21.0, 230.0));
+        aggregator.closeAged(opened + TimeUnit.SECONDS.toNanos(2));
+        assertEquals(11_000, find(rows, "SN1", "temperature").getTime());
+
+        rows.clear();
+        aggregator.closeAged(opened + TimeUnit.SECONDS.toNanos(3));
+        aggregator.flush();
+        assertTrue(rows.isEmpty());
+    }
+
+    @Test
+    void otherPortsKeepAggregatingWhileTheSinkBlocks() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TelemetryAggregator aggregator = new TelemetryAggregator(1000, "telemetry_1s", row -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        aggregator.accept(frame("SN1", 10_100, 20.0, 230.0));
+        Thread closer = new Thread(() -> aggregator.accept(frame("SN1", 11_000, 21.0, 230.0)));
+        closer.start();
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        Thread other = new Thread(() -> aggregator.accept(frame("SN2", 11_100, 22.0, 231.0)));
+        other.start();
+        other.join(5000);
+        assertFalse(other.isAlive());
+
+        release.countDown();
+        closer.join(5000);
+    }
+
+    @Test
+    void namesTablesAfterTheWindow() {
+        assertEquals("telemetry_1s", TelemetryAggregator.tableName("telemetry_", 1000));
+        assertEquals("telemetry_5m", TelemetryAggregator.tableName("telemetry_", 300000));
+        assertEquals("telemetry_250ms", TelemetryAggregator.tableName("telemetry_", 250));
+    }
+
+    private static LogFrame frame(String serialNumber, long time, double temperature, double voltage) {
+        LogFrame frame = new LogFrame();
+        byte[] bytes = serialNumber.getBytes(StandardCharsets.US_ASCII);
+        frame.setSerialNumber(bytes, 0, bytes.length);
+        frame.setTime(time);
+        frame.setMeterValue(LogFrame.TEMPERATURE, temperature);
+        frame.setMeterValue(LogFrame.VOLTAGE_L1, voltage);
+        return frame;
+    }
+
+    private static AggregateRow find(List<Row> rows, String device, String field) {
+        for (Row row : rows) {
+            AggregateRow aggregate = (AggregateRow) row;
+            if (aggregate.getDevice().equals(device) && aggregate.getField().equals(field))
+                return aggregate;
+        }
+        throw new AssertionError("No row for " + device + " " + field);
+    }
+}
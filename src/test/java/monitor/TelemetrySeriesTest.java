@@ -0,0 +1,41 @@
+package monitor;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TelemetrySeriesTest {
+
+    private static LogFrame frame(String serialNumber, long time, double temperature) {
+        LogFrame frame = new LogFrame();
+        byte[] bytes = serialNumber.getBytes(StandardCharsets.US_ASCII);
+        frame.setSerialNumber(bytes, 0, bytes.length);
+        frame.setTime(time);
+        frame.setMeterValue(LogFrame.TEMPERATURE, temperature);
+        return frame;
+    }
+
+    @Test
+    void keepsTheNewestPointsPerDeviceAndSkipsMissingValues() {
+        TelemetrySeries series = new TelemetrySeries(8);
+        for (int i = 0; i < 20; i++)
+            series.accept(frame("SN" + i % 2, i, i % 5 == 0 ? Double.NaN : i));
+
+        assertEquals(2, series.getDeviceCount());
+        assertEquals("SN0", series.getDeviceName(0));
+
+        long[] times = new long[8];
+        double[] values = new double[8];
+        int count = series.snapshot(0, TelemetryField.TEMPERATURE, Long.MIN_VALUE, times, values);
+        assertEquals(7, count);
+        assertEquals(4, times[0]);
+        assertEquals(18, values[count - 1]);
+
+        count = series.snapshot(1, TelemetryField.TEMPERATURE, 13, times, values);
+        assertEquals(3, count);
+        assertEquals(13, times[0]);
+        assertEquals(17, times[1]);
+    }
+}
@@ -0,0 +1,93 @@
+package monitor;
+
+import org.h2.tools.Server;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class TelemetryWriterBenchmark {
+
+    private static final String[] TABLES = {"temperature", "led", "locked", "pp", "cp", "current_l1"};
+
+    private final String url;
+    private final String user;
+    private final String password;
+
+    private TelemetryWriterBenchmark(String url, String user, String password) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+    }
+
+    // Usage: TelemetryWriterBenchmark [lines] [jdbc-url user password]
+    // Without a JDBC URL an H2 TCP server is started as a local stand-in for Postgres.
+    public static void main(String[] args) throws Exception {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        Server server = null;
+        TelemetryWriterBenchmark benchmark;
+        if (args.length > 3) {
+            benchmark = new TelemetryWriterBenchmark(args[1], args[2], args[3]);
+        } else {
+            server = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+            benchmark = new TelemetryWriterBenchmark(
+                    "jdbc:h2:tcp://localhost:" + server.getPort() + "/mem:telemetry;DB_CLOSE_DELAY=-1", "sa", "");
+        }
+
+        try {
+            benchmark.createTables();
+            benchmark.report("connection per row", lines, benchmark.connectionPerRow(lines));
+            benchmark.report("TelemetryWriter", lines, benchmark.telemetryWriter(lines));
+        } finally {
+            if (server != null)
+                server.stop();
+        }
+    }
+
+    private void createTables() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             Statement statement = connection.createStatement()) {
+            for (String table : TABLES)
+                statement.execute("CREATE TABLE IF NOT EXISTS " + table + "(time BIGINT, value DOUBLE PRECISION)");
+        }
+    }
+
+    private long connectionPerRow(int lines) throws SQLException {
+        long start = System.nanoTime();
+        for (int i = 0; i < lines; i++) {
+            for (String table : TABLES) {
+                try (Connection connection = DriverManager.getConnection(url, user, password);
+                     PreparedStatement statement = connection.prepareStatement(
+                             String.format("INSERT INTO %s(time, value) VALUES(?, ?)", table))) {
+                    statement.setLong(1, i);
+                    statement.setObject(2, (double) i);
+                    statement.executeUpdate();
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long telemetryWriter(int lines) {
+        long start = System.nanoTime();
+        TelemetryWriter writer = new TelemetryWriter(new ConnectionPool(url, user, password, 2), 2,
+                65536, 1000, 50, TelemetryWriter.Backpressure.BLOCK).start();
+        for (int i = 0; i < lines; i++) {
+            for (String table : TABLES)
+                writer.submit(new Sample(table, i, (double) i));
+        }
+        writer.close();
+        if (writer.getRowsWritten() != (long) lines * TABLES.length)
+            throw new IllegalStateException("Expected " + lines * TABLES.length + " rows, wrote " + writer.getRowsWritten());
+        return System.nanoTime() - start;
+    }
+
+    private void report(String name, int lines, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%-20s %8d rows in %7.3f s = %,12.0f rows/s%n",
+                name, lines * TABLES.length, seconds, lines * TABLES.length / seconds);
+    }
+}
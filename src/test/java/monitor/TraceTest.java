@@ -0,0 +1,109 @@
+package monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TraceTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void samplesOneLineInEvery() {
+        Tracer tracer = new Tracer(Tracer.Mode.SAMPLED, 3);
+        int traced = 0;
+        for (int i = 0; i < 30; i++) {
+            if (tracer.begin(System.nanoTime()) != null)
+                traced++;
+        }
+        assertEquals(10, traced);
+        assertNull(new Tracer(Tracer.Mode.OFF, 1).begin(System.nanoTime()));
+    }
+
+    @Test
+    void stampsEveryStageInOrder() throws Exception {
+        List<Transport.Receiver> receivers = new ArrayList<>();
+        Transport transport = new Transport() {
+            @Override
+            public void open(Receiver receiver) {
+                receivers.add(receiver);
+            }
+
+            @Override
+            public void write(byte[] bytes) {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        Monitor monitor = new Monitor("traced", transport, Framing.lines(), DecoderRegistry.load(),
+                new OutboundWriter("traced", transport::write, 16, 4096, 0));
+        monitor.setTracer(new Tracer(Tracer.Mode.ALWAYS, 1));
+        List<Record> records = new ArrayList<>();
+        List<Trace> traces = new ArrayList<>();
+        monitor.setRecordCallback(records::add);
+        monitor.setFrameCallback(frame -> traces.add(frame.getTrace()));
+        monitor.start(Runnable::run);
+
+        // A frame split over two reads starts at the first of them
+        byte[] frame = new DeviceEmulator(bytes -> { }, "TRC1", 1).nextFrame();
+        int half = frame.length / 2;
+        long before = System.nanoTime();
+        receivers.get(0).received(Arrays.copyOf(frame, half), 1000);
+        Thread.sleep(2);
+        receivers.get(0).received(Arrays.copyOfRange(frame, half, frame.length), 1000);
+        receivers.get(0).received("plain text\n".getBytes(StandardCharsets.US_ASCII), 1000);
+        monitor.stop();
+
+        assertEquals(2, records.size());
+        assertEquals(1, traces.size());
+        Trace trace = traces.get(0);
+        assertSame(trace, records.get(0).getTrace());
+        assertNotNull(records.get(1).getTrace());
+        assertEquals(0, records.get(1).getTrace().getNanos(Trace.Stage.DECODED));
+
+        long firstByte = trace.getNanos(Trace.Stage.FIRST_BYTE);
+        assertTrue(firstByte >= before);
+        assertTrue(trace.getNanos(Trace.Stage.LINE_COMPLETE) - firstByte >= 2_000_000);
+        assertTrue(trace.getNanos(Trace.Stage.DECODED) >= trace.getNanos(Trace.Stage.LINE_COMPLETE));
+
+        trace.mark(Trace.Stage.ENQUEUED);
+        trace.mark(Trace.Stage.COMMITTED);
+        assertTrue(trace.getNanos(Trace.Stage.COMMITTED) >= trace.getNanos(Trace.Stage.ENQUEUED));
+        assertTrue(trace.getNanos(Trace.Stage.ENQUEUED) >= trace.getNanos(Trace.Stage.DECODED));
+    }
+
+    @Test
+    void reportHasAStepAndTotalRowPerStage() throws Exception {
+        Trace trace = new Trace(System.nanoTime());
+        for (Trace.Stage stage : Trace.Stage.values()) {
+            if (stage.getPrevious() != null)
+                trace.mark(stage);
+        }
+
+        File file = new File(directory, "latency.tsv");
+        new TraceReport(file, 60_000).write();
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals("stage\tfrom\tcount\tmean_us\tp50_us\tp90_us\tp99_us\tp99.9_us\tmax_us", lines.get(0));
+        // LINE_COMPLETE has no total separate from its step
+        assertEquals(1 + 5 + 4, lines.size());
+        assertTrue(lines.get(1).startsWith("line_complete\tfirst_byte\t"));
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("committed\tfirst_byte\t")));
+        assertTrue(Long.parseLong(lines.get(1).split("\t")[2]) >= 1);
+    }
+}
@@ -0,0 +1,102 @@
+package monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TransportTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void picksTransportFromName() {
+        assertTrue(Transport.forName("COM3", 9600, 8, 1) instanceof SerialTransport);
+        assertTrue(Transport.forName("tcp:gateway.local:4001", 9600, 8, 1) instanceof TcpTransport);
+        assertTrue(Transport.forName("tcp-listen:4001", 9600, 8, 1) instanceof TcpTransport);
+        assertTrue(Transport.forName("tcp-listen:[::1]:4001", 9600, 8, 1) instanceof TcpTransport);
+    }
+
+    @Test
+    void carriesBytesBothWaysOverTcp() throws Exception {
+        BlockingQueue<byte[]> serverReceived = new LinkedBlockingQueue<>();
+        BlockingQueue<byte[]> clientReceived = new LinkedBlockingQueue<>();
+
+        TcpTransport server = new TcpTransport("server", "127.0.0.1", 0, true);
+        server.open((bytes, time) -> serverReceived.add(bytes));
+        TcpTransport client = new TcpTransport("client", "127.0.0.1", server.getLocalPort(), false);
+        client.open((bytes, time) -> {
+            assertEquals(Transport.LIVE, time);
+            clientReceived.add(bytes);
+        });
+
+        try {
+            byte[] large = new byte[256 * 1024];
+            for (int i = 0; i < large.length; i++)
+                large[i] = (byte) i;
+            client.write(large);
+            assertEquals(large.length, collect(serverReceived, large.length).length);
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!server.isConnected() && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            server.write("AT\r".getBytes(StandardCharsets.US_ASCII));
+            assertEquals("AT\r", new String(collect(clientReceived, 3), StandardCharsets.US_ASCII));
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+
+    @Test
+    void replaysCaptureWithOriginalTimes() throws Exception {
+        File capture = new File(directory, "capture");
+        try (CaptureLog captureLog = new CaptureLog(capture, 64 * 1024)) {
+            for (long time = 1000; time < 1100; time++) {
+                byte[] line = ("line " + time + "\n").getBytes(StandardCharsets.US_ASCII);
+                captureLog.append(time, line, 0, line.length);
+            }
+        }
+
+        List<Long> times = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+        ReplayTransport replay = new ReplayTransport("replay", capture, 0);
+        replay.open((bytes, time) -> {
+            times.add(time);
+            lines.add(new String(bytes, StandardCharsets.US_ASCII));
+        });
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!replay.isFinished() && System.nanoTime() < deadline)
+            Thread.sleep(10);
+
+        assertEquals(100, lines.size());
+        assertEquals("line 1000\n", lines.get(0));
+        assertEquals(1099L, (long) times.get(99));
+        // Reading must not roll a new segment into someone else's capture
+        assertEquals(1, capture.list((dir, name) -> name.endsWith(".log")).length);
+    }
+
+    private static byte[] collect(BlockingQueue<byte[]> received, int length) throws InterruptedException, IOException {
+        ByteArrayOutputStream collected = new ByteArrayOutputStream();
+        while (collected.size() < length) {
+            byte[] bytes = received.poll(5, TimeUnit.SECONDS);
+            if (bytes == null)
+                break;
+            collected.write(bytes);
+        }
+        return collected.toByteArray();
+    }
+}